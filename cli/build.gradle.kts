@@ -0,0 +1,75 @@
+plugins {
+    id("application")
+}
+
+description = "Command line tool which builds Annolyze annotation indexes"
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation(project(":"))
+    implementation(project(":internals"))
+    compileOnly("org.jetbrains:annotations:26.0.1")
+    testImplementation("org.jetbrains:annotations:26.0.1")
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.0")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+tasks.compileJava {
+    sourceCompatibility = "17"
+    targetCompatibility = "17"
+}
+
+application {
+    mainClass = "io.github.wasabithumb.annolyze.cli.AnnolyzeCli"
+    applicationName = "${rootProject.name}-cli"
+}
+
+tasks.jar {
+    manifest {
+        attributes("Main-Class" to application.mainClass.get())
+    }
+}
+
+centralPortal {
+    name = "${rootProject.name}-cli"
+    jarTask = tasks.jar
+    sourcesJarTask = tasks.sourcesJar
+    javadocJarTask = tasks.javadocJar
+    pom {
+        name = "Annolyze CLI"
+        description = project.description
+        url = "https://github.com/WasabiThumb/annolyze"
+        licenses {
+            license {
+                name = "The Apache License, Version 2.0"
+                url = "http://www.apache.org/licenses/LICENSE-2.0.txt"
+            }
+        }
+        developers {
+            developer {
+                id = "wasabithumb"
+                email = "wasabithumbs@gmail.com"
+                organization = "Wasabi Codes"
+                organizationUrl = "https://wasabithumb.github.io/"
+                timezone = "-5"
+            }
+        }
+        scm {
+            connection = "scm:git:git://github.com/WasabiThumb/annolyze.git"
+            url = "https://github.com/WasabiThumb/annolyze"
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.wasabithumb.annolyze.cli;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.ClassNameFilter;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.daemon.AnnolyzeDaemon;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Entry point of the command line tool, which builds {@link AnnotationIndex annotation indexes} over archives and
+ * directories so that build tools can produce them without any Java glue.
+ * @see AnnolyzeCliOptions#USAGE
+ */
+public final class AnnolyzeCli {
+
+    private static final int EXIT_ERROR = 1;
+    private static final int EXIT_USAGE = 2;
+
+    public static void main(@NotNull String @NotNull [] args) {
+        final int code = run(args, System.out, System.err);
+        if (code != 0) System.exit(code);
+    }
+
+    /**
+     * Runs the tool and returns its exit code.
+     */
+    public static int run(@NotNull String @NotNull [] args, @NotNull PrintStream out, @NotNull PrintStream err) {
+        final AnnolyzeCliOptions options;
+        try {
+            options = AnnolyzeCliOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println("annolyze: " + e.getMessage());
+            err.println(AnnolyzeCliOptions.USAGE);
+            return EXIT_USAGE;
+        }
+        if (options.help) {
+            out.println(AnnolyzeCliOptions.USAGE);
+            return 0;
+        }
+
+        try {
+            (new AnnolyzeCli(options, out)).run();
+        } catch (IOException | RuntimeException e) {
+            err.println("annolyze: " + e);
+            return EXIT_ERROR;
+        }
+        return 0;
+    }
+
+    //
+
+    private final AnnolyzeCliOptions options;
+    private final PrintStream out;
+
+    private AnnolyzeCli(@NotNull AnnolyzeCliOptions options, @NotNull PrintStream out) {
+        this.options = options;
+        this.out = out;
+    }
+
+    private void run() throws IOException {
+        if (this.options.daemon != null) {
+            this.daemon(this.options.daemon);
+            return;
+        }
+
+        // Injected indexes are picked up by the combined build below, so inject first
+        if (this.options.inject) {
+            for (File file : this.options.inputs) this.inject(file);
+        }
+
+        AnnolyzeClassSource source = AnnolyzeComposite.ofFiles(this.options.inputs).parallelism(this.options.threads);
+        final ClassNameFilter filter = this.options.filter();
+        if (filter != null) source = source.filter(filter);
+
+        final long start = System.nanoTime();
+        final AnnotationIndex index = AnnotationIndex.build(source, this.options.elements);
+        final long elapsed = System.nanoTime() - start;
+        this.summarize("Indexed " + this.options.inputs.size() + " input(s)", index, elapsed);
+
+        if (this.options.output != null) {
+            index.write(this.options.output.toPath());
+            this.print("Wrote " + this.options.output.length() + " bytes to " + this.options.output);
+        }
+    }
+
+    private void daemon(@NotNull String socket) throws IOException {
+        final Path path = socket.equals("default") ? AnnolyzeDaemon.defaultSocket() : Path.of(socket);
+        final AnnolyzeDaemon daemon = AnnolyzeDaemon.start(path, this.options.threads);
+        try {
+            for (File file : this.options.inputs) {
+                final long start = System.nanoTime();
+                daemon.warm(file);
+                this.print(String.format(Locale.ROOT, "Warmed %s in %.1f ms", file, (System.nanoTime() - start) / 1e6d));
+            }
+        } catch (IOException | RuntimeException e) {
+            daemon.close();
+            throw e;
+        }
+
+        // Removes the socket file on Ctrl+C or SIGTERM
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException ignored) { }
+        }, "annolyze-daemon-shutdown"));
+        this.print("Listening on " + daemon.socket());
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            daemon.close();
+        }
+    }
+
+    private void inject(@NotNull File file) throws IOException {
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        if (!file.isFile() || !(name.endsWith(".jar") || name.endsWith(".zip"))) {
+            this.print("Skipping " + file + "; only JAR and ZIP files can carry an index");
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final AnnotationIndex index = AnnotationIndex.build(AnnolyzeArchive.of(file).parallelism(this.options.threads));
+        index.embed(file);
+        this.summarize("Injected " + file, index, System.nanoTime() - start);
+    }
+
+    private void summarize(@NotNull String action, @NotNull AnnotationIndex index, long nanos) {
+        long classes = 0L;
+        long fields = 0L;
+        long methods = 0L;
+        for (ClassReference annotation : index.annotations()) {
+            classes += index.classes(annotation).size();
+            fields += index.fields(annotation).size();
+            methods += index.methods(annotation).size();
+        }
+        this.print(String.format(
+                Locale.ROOT,
+                "%s in %.1f ms: %d annotations, applied %d times to classes, %d to fields and %d to methods",
+                action,
+                nanos / 1e6d,
+                index.annotations().size(),
+                classes,
+                fields,
+                methods
+        ));
+    }
+
+    private void print(@NotNull String message) {
+        if (!this.options.quiet) this.out.println(message);
+    }
+
+}
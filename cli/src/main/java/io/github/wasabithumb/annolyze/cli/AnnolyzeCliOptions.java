@@ -0,0 +1,148 @@
+package io.github.wasabithumb.annolyze.cli;
+
+import io.github.wasabithumb.annolyze.ClassNameFilter;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.lang.annotation.ElementType;
+import java.util.*;
+
+/**
+ * Command line options for {@link AnnolyzeCli}.
+ */
+@ApiStatus.Internal
+final class AnnolyzeCliOptions {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: annolyze-cli [options] <jar|directory>...",
+            "Builds an annotation index over the given archives and directories. Arguments may also be class paths.",
+            "With --daemon, serves them to clients on a Unix domain socket instead, until interrupted.",
+            "",
+            "  -o, --output <file>      Write the index of all inputs to a file",
+            "      --inject             Embed an index into each input JAR or ZIP",
+            "  -t, --threads <n>        Read classes on up to n threads (default: available processors)",
+            "  -i, --include <glob>     Only index classes matching the glob; may be repeated",
+            "  -x, --exclude <glob>     Do not index classes matching the glob; may be repeated",
+            "  -p, --projection <list>  Comma separated elements to index: types, fields, methods (default: all)",
+            "      --daemon <socket>    Run a daemon on the socket (\"default\" for the per-user socket)",
+            "  -q, --quiet              Do not print a summary",
+            "  -h, --help               Print this message"
+    );
+
+    /**
+     * Parses the arguments of the tool.
+     * @throws IllegalArgumentException The arguments are invalid; the message is suitable for the user.
+     */
+    static @NotNull AnnolyzeCliOptions parse(@NotNull String @NotNull [] args) throws IllegalArgumentException {
+        final AnnolyzeCliOptions ret = new AnnolyzeCliOptions();
+        boolean literal = false;
+        for (int i=0; i < args.length; i++) {
+            final String arg = args[i];
+            if (literal || !arg.startsWith("-") || arg.equals("-")) {
+                ret.addInputs(arg);
+                continue;
+            }
+            switch (arg) {
+                case "--" -> literal = true;
+                case "-o", "--output" -> ret.output = new File(value(args, ++i, arg));
+                case "--inject" -> ret.inject = true;
+                case "-t", "--threads" -> ret.threads = threads(value(args, ++i, arg));
+                case "-i", "--include" -> ret.includes.add(value(args, ++i, arg));
+                case "-x", "--exclude" -> ret.excludes.add(value(args, ++i, arg));
+                case "-p", "--projection" -> ret.elements = projection(value(args, ++i, arg));
+                case "--daemon" -> ret.daemon = value(args, ++i, arg);
+                case "-q", "--quiet" -> ret.quiet = true;
+                case "-h", "--help" -> ret.help = true;
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        if (ret.help) return ret;
+        if (ret.daemon != null) {
+            // The daemon serves whole archives and directories to its clients, and warms the inputs if any
+            if (ret.output != null || ret.inject || ret.filter() != null || ret.elements.size() != 3)
+                throw new IllegalArgumentException("--daemon cannot be combined with other indexing options");
+            return ret;
+        }
+        if (ret.inputs.isEmpty()) throw new IllegalArgumentException("No inputs given");
+        if (ret.inject && (ret.filter() != null || ret.elements.size() != 3)) {
+            // The library trusts an embedded index to describe every class in its archive
+            throw new IllegalArgumentException("--inject cannot be combined with filters or a projection");
+        }
+        return ret;
+    }
+
+    private static @NotNull String value(@NotNull String @NotNull [] args, int index, @NotNull String option) {
+        if (index >= args.length) throw new IllegalArgumentException("Option " + option + " requires a value");
+        return args[index];
+    }
+
+    private static int threads(@NotNull String value) {
+        final int ret;
+        try {
+            ret = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid thread count \"" + value + "\"");
+        }
+        if (ret < 1) throw new IllegalArgumentException("Thread count must be at least 1");
+        return ret;
+    }
+
+    private static @NotNull Set<ElementType> projection(@NotNull String value) {
+        final Set<ElementType> ret = EnumSet.noneOf(ElementType.class);
+        for (String part : value.split(",")) {
+            switch (part.trim().toLowerCase(Locale.ROOT)) {
+                case "types", "type", "classes", "class" -> ret.add(ElementType.TYPE);
+                case "fields", "field" -> ret.add(ElementType.FIELD);
+                case "methods", "method" -> ret.add(ElementType.METHOD);
+                default -> throw new IllegalArgumentException("Unknown projection element \"" + part + "\"");
+            }
+        }
+        return ret;
+    }
+
+    //
+
+    final List<File> inputs = new ArrayList<>();
+    final List<String> includes = new ArrayList<>();
+    final List<String> excludes = new ArrayList<>();
+    @Nullable File output = null;
+    boolean inject = false;
+    @Nullable String daemon = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    @NotNull Set<ElementType> elements = EnumSet.of(ElementType.TYPE, ElementType.FIELD, ElementType.METHOD);
+    boolean quiet = false;
+    boolean help = false;
+
+    private AnnolyzeCliOptions() { }
+
+    private void addInputs(@NotNull String arg) {
+        for (String part : arg.split(File.pathSeparator)) {
+            if (part.isEmpty()) continue;
+            final File file = new File(part);
+            if (!file.exists()) throw new IllegalArgumentException("Input \"" + part + "\" does not exist");
+            this.inputs.add(file);
+        }
+    }
+
+    /**
+     * Combines the include and exclude globs, or returns null if neither were given.
+     */
+    @Nullable ClassNameFilter filter() {
+        ClassNameFilter include = null;
+        for (String glob : this.includes) {
+            final ClassNameFilter next = ClassNameFilter.glob(glob);
+            include = (include == null) ? next : include.or(next);
+        }
+        ClassNameFilter exclude = null;
+        for (String glob : this.excludes) {
+            final ClassNameFilter next = ClassNameFilter.glob(glob);
+            exclude = (exclude == null) ? next : exclude.or(next);
+        }
+        if (exclude == null) return include;
+        return (include == null) ? exclude.negate() : include.and(exclude.negate());
+    }
+
+}
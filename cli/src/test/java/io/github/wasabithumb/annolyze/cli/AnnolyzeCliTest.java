@@ -0,0 +1,257 @@
+package io.github.wasabithumb.annolyze.cli;
+
+import io.github.wasabithumb.annolyze.ClassNameFilter;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.annotation.ElementType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnnolyzeCliTest {
+
+    private static final ClassReference DEPRECATED = ClassReference.of(Deprecated.class);
+    private static final String PREFIX = AnnolyzeCliTest.class.getName().replace('.', '/');
+
+    // Ensure that every option is parsed into its field, and that inputs may be given as class paths
+    @Test()
+    void options() {
+        assertDoesNotThrow(() -> {
+            final Path dir = Files.createTempDirectory("annolyze");
+            try {
+                final Path a = Files.createDirectory(dir.resolve("a"));
+                final Path b = Files.createDirectory(dir.resolve("b"));
+                final Path out = dir.resolve("out.idx");
+                final AnnolyzeCliOptions options = AnnolyzeCliOptions.parse(new String[] {
+                        "-t", "3",
+                        "--include", "**/cli/*",
+                        "-x", "*Other",
+                        "--projection", "fields, METHOD",
+                        "-o", out.toString(),
+                        "-q",
+                        a + File.pathSeparator + b,
+                        "--", a.toString()
+                });
+                assertEquals(3, options.threads);
+                assertEquals(List.of("**/cli/*"), options.includes);
+                assertEquals(List.of("*Other"), options.excludes);
+                assertEquals(EnumSet.of(ElementType.FIELD, ElementType.METHOD), options.elements);
+                assertEquals(out.toFile(), options.output);
+                assertTrue(options.quiet);
+                assertFalse(options.inject);
+                assertFalse(options.help);
+                assertNull(options.daemon);
+                assertEquals(List.of(a.toFile(), b.toFile(), a.toFile()), options.inputs);
+
+                // Includes are combined with or, then excludes are removed
+                final ClassNameFilter filter = Objects.requireNonNull(options.filter());
+                assertTrue(filter.test(PREFIX + "$Sample"));
+                assertFalse(filter.test(PREFIX + "$Other"));
+                assertFalse(filter.test("io/github/wasabithumb/annolyze/Annolyze"));
+                assertNull(AnnolyzeCliOptions.parse(new String[] { a.toString() }).filter());
+                assertFalse(Objects.requireNonNull(AnnolyzeCliOptions.parse(new String[] { "-x", "*Other", a.toString() })
+                        .filter()).test(PREFIX + "$Other"));
+
+                final AnnolyzeCliOptions inject = AnnolyzeCliOptions.parse(new String[] { "--inject", a.toString() });
+                assertTrue(inject.inject);
+                assertEquals(Set.of(ElementType.TYPE, ElementType.FIELD, ElementType.METHOD), inject.elements);
+                assertTrue(AnnolyzeCliOptions.parse(new String[] { "--help" }).help);
+            } finally {
+                delete(dir);
+            }
+        });
+    }
+
+    // Ensure that invalid arguments are rejected with a message, and that the tool reports them with the usage
+    @Test()
+    void invalid() {
+        assertDoesNotThrow(() -> {
+            final Path dir = Files.createTempDirectory("annolyze");
+            try {
+                final String in = dir.toString();
+                for (String[] args : List.of(
+                        new String[] { "--bogus", in },
+                        new String[] { in, "-o" },
+                        new String[] { "-t", "0", in },
+                        new String[] { "--threads", "many", in },
+                        new String[] { "-p", "types,constructors", in },
+                        new String[] { dir.resolve("missing").toString() },
+                        new String[] { "-q" },
+                        new String[] { "--inject", "-i", "*", in },
+                        new String[] { "--inject", "-p", "types", in },
+                        new String[] { "--daemon", "default", "-o", dir.resolve("out.idx").toString() }
+                )) {
+                    final IllegalArgumentException e = assertThrows(
+                            IllegalArgumentException.class,
+                            () -> AnnolyzeCliOptions.parse(args)
+                    );
+                    assertNotNull(e.getMessage());
+
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+                    assertEquals(2, AnnolyzeCli.run(args, print(out), print(err)));
+                    assertEquals(0, out.size());
+                    final String message = err.toString(StandardCharsets.UTF_8);
+                    assertTrue(message.startsWith("annolyze: " + e.getMessage()));
+                    assertTrue(message.contains(AnnolyzeCliOptions.USAGE));
+                }
+            } finally {
+                delete(dir);
+            }
+        });
+    }
+
+    // Ensure that the tool writes an index of its inputs, honoring filters and projections
+    @Test()
+    void output() {
+        assertDoesNotThrow(() -> {
+            final Path dir = Files.createTempDirectory("annolyze");
+            try {
+                final Path classes = dir.resolve("classes");
+                putClasses(classes);
+                final Path file = dir.resolve("out.idx");
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(0, run(out, "-t", "2", "-o", file.toString(), classes.toString()));
+                final String summary = out.toString(StandardCharsets.UTF_8);
+                assertTrue(summary.startsWith("Indexed 1 input(s) in "));
+                assertTrue(summary.contains("Wrote " + Files.size(file) + " bytes to " + file));
+                AnnotationIndex index = AnnotationIndex.open(file);
+                assertEquals(Set.of(sample(), other()), Set.copyOf(index.classes(DEPRECATED)));
+                assertEquals(1, index.fields(DEPRECATED).size());
+                assertEquals(1, index.methods(DEPRECATED).size());
+
+                assertEquals(0, run(new ByteArrayOutputStream(), "-x", "*Other", "-o", file.toString(),
+                        classes.toString()));
+                index = AnnotationIndex.open(file);
+                assertEquals(List.of(sample()), index.classes(DEPRECATED));
+
+                assertEquals(0, run(new ByteArrayOutputStream(), "-i", "*Other", "-o", file.toString(),
+                        classes.toString()));
+                index = AnnotationIndex.open(file);
+                assertEquals(List.of(other()), index.classes(DEPRECATED));
+                assertEquals(0, index.fields(DEPRECATED).size());
+
+                assertEquals(0, run(new ByteArrayOutputStream(), "-p", "methods", "-o", file.toString(),
+                        classes.toString()));
+                index = AnnotationIndex.open(file);
+                assertEquals(0, index.classes(DEPRECATED).size());
+                assertEquals(0, index.fields(DEPRECATED).size());
+                assertEquals(1, index.methods(DEPRECATED).size());
+
+                // Quiet runs print nothing
+                final ByteArrayOutputStream quiet = new ByteArrayOutputStream();
+                assertEquals(0, run(quiet, "-q", "-o", file.toString(), classes.toString()));
+                assertEquals(0, quiet.size());
+            } finally {
+                delete(dir);
+            }
+        });
+    }
+
+    // Ensure that --inject embeds an index in archives and skips other inputs
+    @Test()
+    void inject() {
+        assertDoesNotThrow(() -> {
+            final Path dir = Files.createTempDirectory("annolyze");
+            try {
+                final Path classes = dir.resolve("classes");
+                putClasses(classes);
+                final Path jar = dir.resolve("sample.jar");
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar));
+                     Stream<Path> stream = Files.walk(classes)
+                ) {
+                    for (Path path : stream.filter(Files::isRegularFile).toList()) {
+                        zos.putNextEntry(new ZipEntry(classes.relativize(path).toString().replace(File.separatorChar, '/')));
+                        Files.copy(path, zos);
+                        zos.closeEntry();
+                    }
+                }
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(0, run(out, "--inject", jar.toString(), classes.toString()));
+                final String summary = out.toString(StandardCharsets.UTF_8);
+                assertTrue(summary.contains("Injected " + jar + " in "));
+                assertTrue(summary.contains("Skipping " + classes));
+                try (ZipFile zip = new ZipFile(jar.toFile())) {
+                    assertNotNull(zip.getEntry("META-INF/annolyze/index.bin"));
+                    assertNotNull(zip.getEntry("META-INF/annolyze/index.crc"));
+                }
+            } finally {
+                delete(dir);
+            }
+        });
+    }
+
+    //
+
+    private static int run(@NotNull ByteArrayOutputStream out, @NotNull String @NotNull ... args) {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int ret = AnnolyzeCli.run(args, print(out), print(err));
+        assertEquals("", err.toString(StandardCharsets.UTF_8));
+        return ret;
+    }
+
+    private static @NotNull PrintStream print(@NotNull ByteArrayOutputStream out) {
+        return new PrintStream(out, true, StandardCharsets.UTF_8);
+    }
+
+    private static @NotNull ClassReference sample() {
+        return ClassReference.of(Sample.class);
+    }
+
+    private static @NotNull ClassReference other() {
+        return ClassReference.of(Other.class);
+    }
+
+    private static void putClasses(@NotNull Path dir) throws Exception {
+        for (Class<?> cls : List.of(Sample.class, Other.class)) {
+            final Path file = dir.resolve(cls.getName().replace('.', File.separatorChar) + ".class");
+            Files.createDirectories(file.getParent());
+            try (InputStream is = Objects.requireNonNull(cls.getResourceAsStream(file.getFileName().toString()))) {
+                Files.copy(is, file);
+            }
+        }
+    }
+
+    private static void delete(@NotNull Path dir) throws Exception {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    //
+
+    @Deprecated
+    static final class Sample {
+
+        @Deprecated
+        int field;
+
+        @Deprecated
+        void method() { }
+
+    }
+
+    @Deprecated
+    static final class Other { }
+
+}
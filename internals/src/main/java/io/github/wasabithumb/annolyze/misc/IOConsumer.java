@@ -0,0 +1,14 @@
+package io.github.wasabithumb.annolyze.misc;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+@ApiStatus.Internal
+@FunctionalInterface
+public interface IOConsumer<T> {
+
+    void accept(@NotNull T arg) throws IOException;
+
+}
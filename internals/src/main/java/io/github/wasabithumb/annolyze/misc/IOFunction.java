@@ -0,0 +1,14 @@
+package io.github.wasabithumb.annolyze.misc;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+@ApiStatus.Internal
+@FunctionalInterface
+public interface IOFunction<A, B> {
+
+    @NotNull B apply(@NotNull A arg) throws IOException;
+
+}
@@ -0,0 +1,64 @@
+package io.github.wasabithumb.annolyze.misc;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+@ApiStatus.Internal
+public final class IOUtil {
+
+    /**
+     * Suffix of the temporary files created by {@link #writeAtomically(Path, IOConsumer)}.
+     */
+    @ApiStatus.Internal
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Closes every resource, even if some fail to close. The first failure is thrown once all resources have
+     * been closed, with any later failures attached as suppressed exceptions.
+     */
+    @ApiStatus.Internal
+    public static void closeAll(@NotNull Iterable<? extends Closeable> resources) throws IOException {
+        IOException ex = null;
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                if (ex == null) {
+                    ex = e;
+                } else {
+                    ex.addSuppressed(e);
+                }
+            }
+        }
+        if (ex != null) throw ex;
+    }
+
+    /**
+     * Writes a file by way of a temporary file in the same directory, which is then moved over the file;
+     * atomically where supported. The temporary file is deleted if writing or moving it fails.
+     */
+    @ApiStatus.Internal
+    public static void writeAtomically(@NotNull Path file, @NotNull IOConsumer<Path> writer) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            writer.accept(tmp);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package io.github.wasabithumb.annolyze.misc;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ApiStatus.Internal
+public final class ParallelUtil {
+
+    /**
+     * Applies the function to each element of the list, preserving order. If the parallelism is greater than 1,
+     * the work is distributed over a bounded {@link ForkJoinPool} of that size.
+     */
+    @ApiStatus.Internal
+    public static <A, B> @NotNull List<B> map(
+            @NotNull List<A> in,
+            @NotNull IOFunction<A, B> fn,
+            int parallelism
+    ) throws IOException {
+        final int size = in.size();
+        if (parallelism <= 1 || size < 2) {
+            final List<B> ret = new ArrayList<>(size);
+            for (A a : in) ret.add(fn.apply(a));
+            return ret;
+        }
+
+        final Object[] out = new Object[size];
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, size));
+        try {
+            pool.invoke(new MapAction<>(in, fn, out, 0, size));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        @SuppressWarnings("unchecked")
+        final List<B> ret = (List<B>) Arrays.asList(out);
+        return ret;
+    }
+
+    /**
+     * Applies the function to each element of the list in order until one returns a present value, which is
+     * returned. If the parallelism is greater than 1, workers on a bounded {@link ForkJoinPool} take elements in
+     * order and stop as soon as an earlier element has produced a value or failed, so the result (or exception) is
+     * always that of the earliest element, as if run serially.
+     */
+    @ApiStatus.Internal
+    public static <A, B> @NotNull Optional<B> findFirst(
+            @NotNull List<A> in,
+            @NotNull IOFunction<A, Optional<B>> fn,
+            int parallelism
+    ) throws IOException {
+        final int size = in.size();
+        if (parallelism <= 1 || size < 2) {
+            Optional<B> ret;
+            for (A a : in) {
+                ret = fn.apply(a);
+                if (ret.isPresent()) return ret;
+            }
+            return Optional.empty();
+        }
+
+        final int workers = Math.min(parallelism, size);
+        final AtomicInteger next = new AtomicInteger(0);
+        final AtomicInteger limit = new AtomicInteger(size);
+        final Object[] out = new Object[size];
+        final ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+            for (int i=0; i < workers; i++) {
+                tasks.add(pool.submit(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < limit.get()) {
+                        try {
+                            final Optional<B> value = fn.apply(in.get(index));
+                            if (value.isEmpty()) continue;
+                            out[index] = value.get();
+                        } catch (IOException | RuntimeException | Error e) {
+                            out[index] = new Failure(e);
+                        }
+                        limit.accumulateAndGet(index, Math::min);
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) task.join();
+        } finally {
+            pool.shutdown();
+        }
+
+        final int index = limit.get();
+        if (index == size) return Optional.empty();
+        if (out[index] instanceof Failure failure) {
+            final Throwable t = failure.cause();
+            if (t instanceof IOException e) throw e;
+            if (t instanceof RuntimeException e) throw e;
+            throw (Error) t;
+        }
+
+        @SuppressWarnings("unchecked")
+        final B ret = (B) out[index];
+        return Optional.of(ret);
+    }
+
+    /**
+     * Returns the default parallelism for bulk operations; the number of available processors.
+     */
+    @ApiStatus.Internal
+    public static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    //
+
+    private record Failure(@NotNull Throwable cause) { }
+
+    private static final class MapAction<A, B> extends RecursiveAction {
+
+        private static final int THRESHOLD = 8;
+
+        private final List<A> in;
+        private final IOFunction<A, B> fn;
+        private final Object[] out;
+        private final int start;
+        private final int end;
+
+        MapAction(
+                @NotNull List<A> in,
+                @NotNull IOFunction<A, B> fn,
+                @NotNull Object[] out,
+                int start,
+                int end
+        ) {
+            this.in = in;
+            this.fn = fn;
+            this.out = out;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if ((this.end - this.start) <= THRESHOLD) {
+                try {
+                    for (int i=this.start; i < this.end; i++) this.out[i] = this.fn.apply(this.in.get(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            final int mid = (this.start + this.end) >>> 1;
+            invokeAll(
+                    new MapAction<>(this.in, this.fn, this.out, this.start, mid),
+                    new MapAction<>(this.in, this.fn, this.out, mid, this.end)
+            );
+        }
+
+    }
+
+}
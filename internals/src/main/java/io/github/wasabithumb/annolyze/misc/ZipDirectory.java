@@ -0,0 +1,230 @@
+package io.github.wasabithumb.annolyze.misc;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal reader for the central directory of a ZIP file, exposing the local header offset of each entry so that
+ * entries can later be read with a single positioned read. Data prepended to the archive (as in JMOD files or
+ * self-extracting archives) is accounted for.
+ */
+@ApiStatus.Internal
+public final class ZipDirectory {
+
+    private static final int SIG_EOCD = 0x06054b50;
+    private static final int SIG_ZIP64_LOCATOR = 0x07064b50;
+    private static final int SIG_ZIP64_EOCD = 0x06064b50;
+    private static final int SIG_CEN = 0x02014b50;
+    private static final int SIG_LOC = 0x04034b50;
+
+    private static final int EOCD_LEN = 22;
+    private static final int ZIP64_LOCATOR_LEN = 20;
+    private static final int ZIP64_EOCD_LEN = 56;
+    private static final int CEN_LEN = 46;
+    private static final int LOC_LEN = 30;
+
+    /**
+     * Extra bytes read past the end of the file name when reading an entry, in the hope that the local
+     * extra field fits and no second read is required.
+     */
+    private static final int LOC_EXTRA_SLACK = 64;
+
+    /**
+     * Reads all entries from the central directory of the archive open on the given channel.
+     * @throws ZipException The archive is malformed.
+     */
+    @ApiStatus.Internal
+    public static @NotNull List<Entry> read(@NotNull FileChannel channel) throws IOException {
+        final long fileSize = channel.size();
+        final int tailLen = (int) Math.min(fileSize, EOCD_LEN + 0xFFFF);
+        final ByteBuffer tail = readFully(channel, fileSize - tailLen, tailLen);
+
+        int eocd = -1;
+        for (int i=(tailLen - EOCD_LEN); i >= 0; i--) {
+            if (tail.getInt(i) == SIG_EOCD) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) throw new ZipException("End of central directory not found");
+        final long eocdPos = fileSize - tailLen + eocd;
+
+        long total = Short.toUnsignedLong(tail.getShort(eocd + 10));
+        long cenSize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long cenOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+        long cenPos = eocdPos - cenSize;
+
+        if (total == 0xFFFFL || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) {
+            final long locatorPos = eocdPos - ZIP64_LOCATOR_LEN;
+            if (locatorPos < 0) throw new ZipException("ZIP64 end of central directory locator not found");
+            final ByteBuffer locator = readFully(channel, locatorPos, ZIP64_LOCATOR_LEN);
+            if (locator.getInt(0) != SIG_ZIP64_LOCATOR)
+                throw new ZipException("ZIP64 end of central directory locator not found");
+
+            long zip64Pos = locator.getLong(8);
+            ByteBuffer zip64 = (zip64Pos + ZIP64_EOCD_LEN <= fileSize) ?
+                    readFully(channel, zip64Pos, ZIP64_EOCD_LEN) : null;
+            if (zip64 == null || zip64.getInt(0) != SIG_ZIP64_EOCD) {
+                // Archive has prepended data; assume the record directly precedes the locator
+                zip64Pos = locatorPos - ZIP64_EOCD_LEN;
+                zip64 = readFully(channel, zip64Pos, ZIP64_EOCD_LEN);
+                if (zip64.getInt(0) != SIG_ZIP64_EOCD)
+                    throw new ZipException("ZIP64 end of central directory not found");
+            }
+            total = zip64.getLong(32);
+            cenSize = zip64.getLong(40);
+            cenOffset = zip64.getLong(48);
+            cenPos = zip64Pos - cenSize;
+        }
+
+        if (cenPos < 0 || cenSize > Integer.MAX_VALUE)
+            throw new ZipException("Invalid central directory (offset " + cenPos + ", size " + cenSize + ")");
+
+        // Offsets in the central directory are relative to the start of the archive, which may not be the
+        // start of the file
+        final long base = cenPos - cenOffset;
+        final ByteBuffer cen = readFully(channel, cenPos, (int) cenSize);
+        final List<Entry> ret = new ArrayList<>((int) Math.min(total, 0xFFFFL));
+
+        int head = 0;
+        while (head + CEN_LEN <= cen.limit()) {
+            if (cen.getInt(head) != SIG_CEN) break;
+
+            final int method = Short.toUnsignedInt(cen.getShort(head + 10));
+            final long crc = Integer.toUnsignedLong(cen.getInt(head + 16));
+            long compressedSize = Integer.toUnsignedLong(cen.getInt(head + 20));
+            long size = Integer.toUnsignedLong(cen.getInt(head + 24));
+            final int nameLen = Short.toUnsignedInt(cen.getShort(head + 28));
+            final int extraLen = Short.toUnsignedInt(cen.getShort(head + 30));
+            final int commentLen = Short.toUnsignedInt(cen.getShort(head + 32));
+            long offset = Integer.toUnsignedLong(cen.getInt(head + 42));
+
+            final int nameStart = head + CEN_LEN;
+            if (nameStart + nameLen + extraLen > cen.limit()) throw new ZipException("Truncated central directory");
+            final byte[] nameBytes = new byte[nameLen];
+            cen.get(nameStart, nameBytes);
+
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+                // ZIP64 extended information extra field
+                int extra = nameStart + nameLen;
+                final int extraEnd = extra + extraLen;
+                while (extra + 4 <= extraEnd) {
+                    final int tag = Short.toUnsignedInt(cen.getShort(extra));
+                    final int len = Short.toUnsignedInt(cen.getShort(extra + 2));
+                    if (tag == 0x0001) {
+                        int field = extra + 4;
+                        if (size == 0xFFFFFFFFL) {
+                            size = cen.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = cen.getLong(field);
+                            field += 8;
+                        }
+                        if (offset == 0xFFFFFFFFL) offset = cen.getLong(field);
+                        break;
+                    }
+                    extra += 4 + len;
+                }
+            }
+
+            ret.add(new Entry(
+                    new String(nameBytes, StandardCharsets.UTF_8),
+                    method,
+                    crc,
+                    compressedSize,
+                    size,
+                    base + offset
+            ));
+            head = nameStart + nameLen + extraLen + commentLen;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads and inflates the data for an entry previously returned by {@link #read(FileChannel)}. In the common
+     * case this is one positioned read of the local header and entry data together.
+     * @throws ZipException The entry is malformed or uses an unsupported compression method.
+     */
+    @ApiStatus.Internal
+    public static @NotNull ByteBuffer readEntry(@NotNull FileChannel channel, @NotNull Entry entry) throws IOException {
+        if (entry.compressedSize() > Integer.MAX_VALUE || entry.size() > Integer.MAX_VALUE)
+            throw new ZipException("Entry " + entry.name() + " is too large");
+
+        final int compressedSize = (int) entry.compressedSize();
+        final int guess = LOC_LEN + entry.name().length() + LOC_EXTRA_SLACK + compressedSize;
+        final int available = (int) Math.min(guess, channel.size() - entry.localHeaderOffset());
+        ByteBuffer buf = readFully(channel, entry.localHeaderOffset(), available);
+        if (available < LOC_LEN || buf.getInt(0) != SIG_LOC)
+            throw new ZipException("Invalid local header for entry " + entry.name());
+
+        final int dataStart = LOC_LEN + Short.toUnsignedInt(buf.getShort(26)) + Short.toUnsignedInt(buf.getShort(28));
+        if (dataStart + compressedSize <= available) {
+            buf.position(dataStart).limit(dataStart + compressedSize);
+        } else {
+            buf = readFully(channel, entry.localHeaderOffset() + dataStart, compressedSize);
+        }
+
+        switch (entry.method()) {
+            case ZipEntry.STORED:
+                return buf.slice();
+            case ZipEntry.DEFLATED:
+                final ByteBuffer out = ByteBuffer.allocate((int) entry.size());
+                final Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(buf);
+                    while (out.hasRemaining() && !inflater.finished()) {
+                        if (inflater.inflate(out) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new ZipException("Unexpected end of deflated data for entry " + entry.name());
+                        }
+                    }
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid deflated data for entry " + entry.name() + ": " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+                return out.flip();
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method() + " for entry " +
+                        entry.name());
+        }
+    }
+
+    private static @NotNull ByteBuffer readFully(@NotNull FileChannel channel, long pos, int len) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) == -1) throw new EOFException("Unexpected end of archive");
+        }
+        return buf.flip();
+    }
+
+    //
+
+    /**
+     * An entry in the central directory. The local header offset is absolute within the file.
+     */
+    @ApiStatus.Internal
+    public record Entry(
+            @NotNull String name,
+            int method,
+            long crc,
+            long compressedSize,
+            long size,
+            long localHeaderOffset
+    ) { }
+
+}
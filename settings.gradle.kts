@@ -1,2 +1,3 @@
 rootProject.name = "annolyze"
 include("internals")
+include("cli")
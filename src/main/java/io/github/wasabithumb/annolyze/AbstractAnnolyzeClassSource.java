@@ -0,0 +1,126 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileBufferReader;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Implements {@link #list(boolean)}, {@link #readAll(boolean)}, {@link #stream(boolean)},
+ * {@link #iterator(boolean)}, {@link #publisher(boolean, Executor)}, the search methods and the asynchronous
+ * variants in terms of {@link #scan(boolean)}.
+ */
+@ApiStatus.Internal
+public abstract class AbstractAnnolyzeClassSource implements AnnolyzeClassSource {
+
+    protected final int parallelism;
+    protected AbstractAnnolyzeClassSource(int parallelism) throws IllegalArgumentException {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public int parallelism() {
+        return this.parallelism;
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource filter(@NotNull ClassNameFilter filter) {
+        return new FilteredClassSource(this, filter, "", this.parallelism);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<String> list(boolean recursive) throws IOException {
+        try (AnnolyzeClassScan scan = this.scan(recursive)) {
+            final List<AnnolyzeClassEntry> entries = scan.entries();
+            final String[] ret = new String[entries.size()];
+            for (int i=0; i < ret.length; i++) ret[i] = entries.get(i).name();
+            return List.of(ret);
+        }
+    }
+
+    @Override
+    public @NotNull Stream<ClassFile> stream(boolean recursive) throws IOException {
+        final AnnolyzeClassScan scan = this.scan(recursive);
+        return StreamSupport.stream(new ClassFileSpliterator(scan.entries()), false).onClose(() -> {
+            try {
+                scan.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassIterator iterator(boolean recursive) throws IOException {
+        return new AnnolyzeClassIteratorImpl(this.scan(recursive));
+    }
+
+    @Override
+    public @NotNull Flow.Publisher<ClassFile> publisher(boolean recursive, @NotNull Executor executor) {
+        return new ClassFilePublisher(this, recursive, executor);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<ClassFile> readAsync(@NotNull String className, @NotNull Executor executor) {
+        return AsyncSupport.supply(() -> this.read(className), executor);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<String>> listAsync(boolean recursive, @NotNull Executor executor) {
+        return AsyncSupport.supply(() -> this.list(recursive), executor);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<ClassFile>> readAllAsync(boolean recursive, @NotNull Executor executor) {
+        return AsyncSupport.readAll(this, recursive, this.parallelism, executor);
+    }
+
+    @Override
+    public @NotNull Optional<ClassFile> findFirst(
+            @Nullable ConstantPoolFilter prefilter,
+            @NotNull Predicate<? super ClassFile> predicate
+    ) throws IOException {
+        try (AnnolyzeClassScan scan = this.scan(true)) {
+            return ParallelUtil.findFirst(scan.entries(), (AnnolyzeClassEntry entry) -> {
+                final ClassFile cf;
+                if (prefilter == null) {
+                    cf = entry.read();
+                } else {
+                    final ByteBuffer buf = entry.bytes();
+                    if (!prefilter.test(buf)) return Optional.empty();
+                    cf = (new ClassFileBufferReader(buf)).readClassFile();
+                }
+                return predicate.test(cf) ? Optional.of(cf) : Optional.empty();
+            }, this.parallelism);
+        }
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<ClassFile> readAll(boolean recursive) throws IOException {
+        try (AnnolyzeClassScan scan = this.scan(recursive)) {
+            return Collections.unmodifiableList(ParallelUtil.map(
+                    scan.entries(),
+                    AnnolyzeClassEntry::read,
+                    this.parallelism
+            ));
+        }
+    }
+
+}
@@ -1,15 +1,23 @@
 package io.github.wasabithumb.annolyze;
 
 import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
 import io.github.wasabithumb.annolyze.directory.AnnolyzeDirectory;
 import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileBufferReader;
 import io.github.wasabithumb.annolyze.file.ClassFileInputStream;
 import io.github.wasabithumb.annolyze.misc.PathUtil;
+import io.github.wasabithumb.annolyze.runtime.AnnolyzeRuntimeImage;
 
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Entry point for the Annolyze library.
@@ -43,6 +51,19 @@ public final class Annolyze {
         return (new ClassFileInputStream(stream)).readClassFile();
     }
 
+    /**
+     * Reads a class file skeleton from the remaining content of the provided buffer, advancing its position.
+     * The buffer is not retained and may be reused once this method returns.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data. Includes
+     * {@link io.github.wasabithumb.annolyze.file.except.ClassFileIncompleteDataException ClassFileIncompleteDataException}
+     * when the end of the buffer cuts off class file data.
+     * @throws IOException A generic IO exception; only thrown for buffers backed by a mapped file.
+     */
+    public static @NotNull ClassFile read(@NotNull ByteBuffer buffer) throws IOException {
+        return (new ClassFileBufferReader(buffer)).readClassFile();
+    }
+
     /**
      * Reads a class file skeleton from the provided file.
      * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
@@ -60,6 +81,23 @@ public final class Annolyze {
         }
     }
 
+    /**
+     * Reads a class file skeleton from the provided file on a new virtual thread, if supported by the runtime,
+     * otherwise on a shared pool of daemon threads.
+     * @see #read(File)
+     */
+    public static @NotNull CompletableFuture<ClassFile> readAsync(@NotNull File file) {
+        return readAsync(file, AsyncSupport.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Reads a class file skeleton from the provided file on the given executor.
+     * @see #read(File)
+     */
+    public static @NotNull CompletableFuture<ClassFile> readAsync(@NotNull File file, @NotNull Executor executor) {
+        return AsyncSupport.supply(() -> read(file), executor);
+    }
+
     // Using ClassLoader
 
     private static @NotNull ClassFile read(
@@ -103,8 +141,8 @@ public final class Annolyze {
     // Using Archive
 
     /**
-     * Provides a wrapper around the specified archive (JAR or ZIP) that assists with inspecting the class files that
-     * it contains.
+     * Provides a wrapper around the specified archive (JAR, ZIP or JMOD) that assists with inspecting the class files
+     * that it contains.
      * @throws IllegalArgumentException Provided file is not an archive.
      */
     public static @NotNull AnnolyzeArchive archive(@NotNull File file) throws IllegalArgumentException {
@@ -137,6 +175,15 @@ public final class Annolyze {
         return AnnolyzeDirectory.of(dir);
     }
 
+    /**
+     * Provides a wrapper around the specified directory that assists with inspecting the class files that
+     * it contains.
+     * @throws IllegalArgumentException Provided path is not a directory.
+     */
+    public static @NotNull AnnolyzeDirectory directory(@NotNull Path dir) throws IllegalArgumentException {
+        return AnnolyzeDirectory.of(dir);
+    }
+
     /**
      * Provides the {@link #directory(File)} instance for the <i>code source of the class invoking this method</i>.
      * This is hacky, but provides a very good implementation of logic you might otherwise seek to implement.
@@ -152,6 +199,37 @@ public final class Annolyze {
         }
     }
 
+    // Using Composite
+
+    /**
+     * Provides a wrapper around the specified archives (JAR, ZIP or JMOD) and directories that assists with inspecting
+     * the class files they contain. Earlier files shadow classes of the same name in later files.
+     * @throws IllegalArgumentException A provided file is neither an archive nor a directory.
+     */
+    public static @NotNull AnnolyzeComposite composite(@NotNull File @NotNull ... files) throws IllegalArgumentException {
+        return AnnolyzeComposite.ofFiles(Arrays.asList(files));
+    }
+
+    /**
+     * Provides the {@link #composite(File...)} instance for the {@code java.class.path} of the running JVM.
+     * @see AnnolyzeComposite#classPath()
+     */
+    public static @NotNull AnnolyzeComposite classPath() {
+        return AnnolyzeComposite.classPath();
+    }
+
+    // Using Runtime Image
+
+    /**
+     * Provides a wrapper around the runtime image of the running JVM ({@code jrt:/}) that assists with inspecting
+     * the class files of its modules without loading them.
+     * @throws IOException The runtime image is not available.
+     * @see AnnolyzeRuntimeImage#modules(String...)
+     */
+    public static @NotNull AnnolyzeRuntimeImage runtimeImage() throws IOException {
+        return AnnolyzeRuntimeImage.current();
+    }
+
     // Utilities
 
     private static @NotNull File getCallerSource() throws IllegalStateException {
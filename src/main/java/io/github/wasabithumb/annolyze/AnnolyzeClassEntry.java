@@ -0,0 +1,56 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A class file which has been located within an {@link AnnolyzeClassSource} but not yet read. Entries are only
+ * valid while the {@link AnnolyzeClassScan scan} which produced them is open.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeClassEntry {
+
+    /**
+     * The name of the class, relative to the source which was scanned. This is the same value that would be
+     * returned by {@link AnnolyzeClassSource#list(boolean) list} for this class.
+     */
+    @NotNull String name();
+
+    /**
+     * The size in bytes of the class file data, or -1 if unknown.
+     */
+    long size();
+
+    /**
+     * Reads the raw class file data for this entry into a new buffer, without parsing it.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    @NotNull ByteBuffer bytes() throws IOException;
+
+    /**
+     * Returns a value which changes whenever the class file data of this entry changes, computed as cheaply as the
+     * source allows. Archive entries use the CRC and size recorded in the central directory, and files use their
+     * size and modification time; other entries fall back to a checksum of their data, which reads but does not
+     * parse it.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    default long fingerprint() throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(this.bytes());
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the class skeleton for this entry.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    @NotNull ClassFile read() throws IOException;
+
+}
@@ -0,0 +1,26 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * An iterator which reads class files from an {@link AnnolyzeClassSource} one at a time as they are requested.
+ * Any resources held by the underlying {@link AnnolyzeClassScan scan} are released once the iterator is exhausted
+ * or {@link #close() closed}. IO exceptions are thrown as {@link UncheckedIOException}.
+ * @see AnnolyzeClassSource#iterator(boolean)
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeClassIterator extends Iterator<ClassFile>, Closeable {
+
+    /**
+     * Releases any resources held by this iterator. Does nothing if already closed.
+     * @throws UncheckedIOException A generic IO exception.
+     */
+    @Override
+    void close() throws UncheckedIOException;
+
+}
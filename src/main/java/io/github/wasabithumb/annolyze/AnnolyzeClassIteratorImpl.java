@@ -0,0 +1,55 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+@ApiStatus.Internal
+final class AnnolyzeClassIteratorImpl implements AnnolyzeClassIterator {
+
+    private final AnnolyzeClassScan scan;
+    private final List<AnnolyzeClassEntry> entries;
+    private int head = 0;
+    private boolean closed = false;
+
+    AnnolyzeClassIteratorImpl(@NotNull AnnolyzeClassScan scan) {
+        this.scan = scan;
+        this.entries = scan.entries();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.closed) return false;
+        if (this.head < this.entries.size()) return true;
+        this.close();
+        return false;
+    }
+
+    @Override
+    public @NotNull ClassFile next() throws UncheckedIOException {
+        if (!this.hasNext()) throw new NoSuchElementException();
+        final AnnolyzeClassEntry entry = this.entries.get(this.head++);
+        try {
+            return entry.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws UncheckedIOException {
+        if (this.closed) return;
+        this.closed = true;
+        try {
+            this.scan.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
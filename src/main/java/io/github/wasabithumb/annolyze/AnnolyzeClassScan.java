@@ -0,0 +1,42 @@
+package io.github.wasabithumb.annolyze;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The class files found in an {@link AnnolyzeClassSource}, enumerated without reading any class data.
+ * A scan may hold resources (such as an open archive) until it is {@link #close() closed}.
+ * @see AnnolyzeClassSource#scan(boolean)
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeClassScan extends Closeable {
+
+    @ApiStatus.Internal
+    static @NotNull AnnolyzeClassScan of(
+            @NotNull List<? extends AnnolyzeClassEntry> entries,
+            @Nullable Closeable resource
+    ) {
+        return new AnnolyzeClassScanImpl(entries, resource);
+    }
+
+    //
+
+    /**
+     * The entries found by this scan, in a stable order.
+     */
+    @NotNull @Unmodifiable List<AnnolyzeClassEntry> entries();
+
+    /**
+     * Releases any resources held by this scan. Entries may not be read after this is called.
+     * @throws IOException A generic IO exception.
+     */
+    @Override
+    void close() throws IOException;
+
+}
@@ -0,0 +1,34 @@
+package io.github.wasabithumb.annolyze;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+@ApiStatus.Internal
+final class AnnolyzeClassScanImpl implements AnnolyzeClassScan {
+
+    private final List<AnnolyzeClassEntry> entries;
+    private final Closeable resource;
+
+    AnnolyzeClassScanImpl(@NotNull List<? extends AnnolyzeClassEntry> entries, @Nullable Closeable resource) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.resource = resource;
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<AnnolyzeClassEntry> entries() {
+        return this.entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.resource != null) this.resource.close();
+    }
+
+}
@@ -3,11 +3,22 @@ package io.github.wasabithumb.annolyze;
 import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
 import io.github.wasabithumb.annolyze.file.ClassFile;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Utility for reading out the class files from a source.
@@ -27,6 +38,30 @@ public interface AnnolyzeClassSource {
     @NotNull
     AnnolyzeClassSource sub(@NotNull String pkg);
 
+    /**
+     * Returns a view of this source which reads class files on a bounded pool of up to the given number of
+     * threads. The default is 1 (serial). The order of results does not depend on this setting.
+     * @throws IllegalArgumentException Parallelism is less than 1.
+     */
+    @Contract("_ -> new")
+    @NotNull AnnolyzeClassSource parallelism(int parallelism) throws IllegalArgumentException;
+
+    /**
+     * Returns the number of threads on which this view reads class files in bulk.
+     * @see #parallelism(int)
+     */
+    int parallelism();
+
+    /**
+     * Returns a view of this source which only includes classes accepted by the given filter. Entry names are tested
+     * before any class data is read or inflated. Names are relative to this view, and are passed to the filter in
+     * internal form (e.g. {@code com/acme/Foo$Bar}). Classes rejected by the filter can not be
+     * {@link #read(String) read} through the view.
+     * @see ClassNameFilter#glob(String)
+     */
+    @Contract("_ -> new")
+    @NotNull AnnolyzeClassSource filter(@NotNull ClassNameFilter filter);
+
     /**
      * Reads from this source the class skeleton with the given name.
      * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
@@ -53,6 +88,170 @@ public interface AnnolyzeClassSource {
         return this.list(true);
     }
 
+    /**
+     * Enumerates the class files in this source without reading them. The returned scan must be closed.
+     * @param recursive If false, only top-level classes will be included.
+     * @see #list(boolean)
+     * @throws IOException A generic IO exception.
+     */
+    @NotNull AnnolyzeClassScan scan(final boolean recursive) throws IOException;
+
+    /**
+     * Enumerates the class files in this source without reading them. Alias for {@code scan(true)}.
+     * @see #scan(boolean)
+     * @throws IOException A generic IO exception.
+     */
+    default @NotNull AnnolyzeClassScan scan() throws IOException {
+        return this.scan(true);
+    }
+
+    /**
+     * Returns a stream which reads the class skeletons in this source lazily, as they are consumed. The stream
+     * holds the resources of a {@link #scan(boolean) scan} and should be closed, for instance with
+     * try-with-resources. It may be made {@link Stream#parallel() parallel}, in which case the classes are split
+     * evenly across workers. IO exceptions during reading are thrown as {@link UncheckedIOException}.
+     * @param recursive If false, only top-level classes will be read.
+     * @throws IOException A generic IO exception while enumerating the classes.
+     */
+    @NotNull Stream<ClassFile> stream(final boolean recursive) throws IOException;
+
+    /**
+     * Returns a stream which reads the class skeletons in this source lazily. Alias for {@code stream(true)}.
+     * @see #stream(boolean)
+     * @throws IOException A generic IO exception while enumerating the classes.
+     */
+    default @NotNull Stream<ClassFile> stream() throws IOException {
+        return this.stream(true);
+    }
+
+    /**
+     * Returns an iterator which reads the class skeletons in this source lazily, one per call to
+     * {@link Iterator#next() next()}. The iterator closes itself once exhausted, and should otherwise be closed.
+     * @param recursive If false, only top-level classes will be read.
+     * @throws IOException A generic IO exception while enumerating the classes.
+     */
+    @NotNull AnnolyzeClassIterator iterator(final boolean recursive) throws IOException;
+
+    /**
+     * Returns an iterator which reads the class skeletons in this source lazily. Alias for {@code iterator(true)}.
+     * @see #iterator(boolean)
+     * @throws IOException A generic IO exception while enumerating the classes.
+     */
+    default @NotNull AnnolyzeClassIterator iterator() throws IOException {
+        return this.iterator(true);
+    }
+
+    /**
+     * Returns a publisher of the class skeletons in this source. Each subscriber receives every class in order,
+     * and classes are only read while the subscriber has outstanding {@link Flow.Subscription#request(long) demand},
+     * so reading pauses when the subscriber falls behind. Classes are read as separate tasks on the given executor,
+     * up to {@link #parallelism()} at once and no more than the outstanding demand; signals to a subscriber also
+     * run on the executor, one at a time and in order.
+     * @param recursive If false, only top-level classes will be published.
+     * @param executor The executor to read and signal on.
+     */
+    @NotNull Flow.Publisher<ClassFile> publisher(final boolean recursive, @NotNull Executor executor);
+
+    /**
+     * Returns a publisher of all class skeletons in this source, reading on the
+     * {@link ForkJoinPool#commonPool() common pool}.
+     * @see #publisher(boolean, Executor)
+     */
+    default @NotNull Flow.Publisher<ClassFile> publisher() {
+        return this.publisher(true, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads from this source the class skeleton with the given name on the given executor.
+     * @see #read(String)
+     */
+    @NotNull CompletableFuture<ClassFile> readAsync(final @NotNull String className, @NotNull Executor executor);
+
+    /**
+     * Reads from this source the class skeleton with the given name on a new virtual thread, if supported by the
+     * runtime, otherwise on a shared pool of daemon threads.
+     * @see #read(String)
+     */
+    default @NotNull CompletableFuture<ClassFile> readAsync(final @NotNull String className) {
+        return this.readAsync(className, AsyncSupport.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Lists the classes in this source on the given executor.
+     * @see #list(boolean)
+     */
+    @NotNull CompletableFuture<List<String>> listAsync(final boolean recursive, @NotNull Executor executor);
+
+    /**
+     * Lists the classes in this source on a new virtual thread, if supported by the runtime, otherwise on a shared
+     * pool of daemon threads.
+     * @see #list(boolean)
+     */
+    default @NotNull CompletableFuture<List<String>> listAsync(final boolean recursive) {
+        return this.listAsync(recursive, AsyncSupport.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Reads all class skeletons in this source on the given executor, using up to {@link #parallelism(int)} tasks.
+     * {@link CompletableFuture#cancel(boolean) Cancelling} the returned future stops reading at the next class and
+     * releases the underlying scan.
+     * @see #readAll(boolean)
+     */
+    @NotNull CompletableFuture<List<ClassFile>> readAllAsync(final boolean recursive, @NotNull Executor executor);
+
+    /**
+     * Reads all class skeletons in this source on virtual threads, if supported by the runtime, otherwise on a
+     * shared pool of daemon threads.
+     * @see #readAllAsync(boolean, Executor)
+     */
+    default @NotNull CompletableFuture<List<ClassFile>> readAllAsync(final boolean recursive) {
+        return this.readAllAsync(recursive, AsyncSupport.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Reads the classes in this source in order until one matches the predicate, and returns it. With a
+     * {@link #parallelism(int) parallelism} greater than 1, classes are read concurrently and all workers stop as
+     * soon as a match is found; the result is still the first match in order.
+     * @param prefilter If not null, classes which it rejects are skipped without being parsed.
+     * @param predicate The test which a class must pass to be returned.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws IOException A generic IO exception from the backing stream.
+     */
+    @NotNull Optional<ClassFile> findFirst(
+            @Nullable ConstantPoolFilter prefilter,
+            @NotNull Predicate<? super ClassFile> predicate
+    ) throws IOException;
+
+    /**
+     * Reads the classes in this source in order until one matches the predicate, and returns it.
+     * @see #findFirst(ConstantPoolFilter, Predicate)
+     */
+    default @NotNull Optional<ClassFile> findFirst(@NotNull Predicate<? super ClassFile> predicate) throws IOException {
+        return this.findFirst(null, predicate);
+    }
+
+    /**
+     * Returns true if any class in this source matches the predicate, stopping at the first match.
+     * @param prefilter If not null, classes which it rejects are skipped without being parsed.
+     * @param predicate The test which a class must pass.
+     * @see #findFirst(ConstantPoolFilter, Predicate)
+     */
+    default boolean anyMatch(
+            @Nullable ConstantPoolFilter prefilter,
+            @NotNull Predicate<? super ClassFile> predicate
+    ) throws IOException {
+        return this.findFirst(prefilter, predicate).isPresent();
+    }
+
+    /**
+     * Returns true if any class in this source matches the predicate, stopping at the first match.
+     * @see #findFirst(ConstantPoolFilter, Predicate)
+     */
+    default boolean anyMatch(@NotNull Predicate<? super ClassFile> predicate) throws IOException {
+        return this.anyMatch(null, predicate);
+    }
+
     /**
      * Reads all class skeletons in this source.
      * @param recursive If false, only top-level classes will be read.
@@ -0,0 +1,142 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.misc.IOSupplier;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backs the asynchronous variants of the blocking API. Tasks check whether their result future is already done
+ * (for instance {@link CompletableFuture#cancel(boolean) cancelled}) before starting and between entries, so that
+ * cancelling a bulk read stops it at the next class.
+ */
+@ApiStatus.Internal
+final class AsyncSupport {
+
+    /**
+     * Runs each task on a new virtual thread if the runtime supports them (Java 21+), otherwise on a cached pool of
+     * daemon threads.
+     */
+    static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    private static @NotNull Executor createDefaultExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Virtual threads are unavailable (or in preview) on this runtime
+        }
+
+        final AtomicInteger counter = new AtomicInteger(0);
+        return Executors.newCachedThreadPool((Runnable r) -> {
+            final Thread thread = new Thread(r, "annolyze-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //
+
+    static <T> @NotNull CompletableFuture<T> supply(@NotNull IOSupplier<T> task, @NotNull Executor executor) {
+        final CompletableFuture<T> ret = new CompletableFuture<>();
+        execute(executor, ret, () -> {
+            if (ret.isDone()) return;
+            try {
+                ret.complete(task.get());
+            } catch (Throwable t) {
+                ret.completeExceptionally(t);
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Reads every entry of a scan of the source, split into up to {@code parallelism} contiguous ranges which run as
+     * separate tasks on the executor. The scan is closed once all ranges have stopped.
+     */
+    static @NotNull CompletableFuture<List<ClassFile>> readAll(
+            @NotNull AnnolyzeClassSource source,
+            boolean recursive,
+            int parallelism,
+            @NotNull Executor executor
+    ) {
+        final CompletableFuture<List<ClassFile>> ret = new CompletableFuture<>();
+        execute(executor, ret, () -> {
+            if (ret.isDone()) return;
+            final AnnolyzeClassScan scan;
+            try {
+                scan = source.scan(recursive);
+            } catch (Throwable t) {
+                ret.completeExceptionally(t);
+                return;
+            }
+
+            final List<AnnolyzeClassEntry> entries = scan.entries();
+            final int size = entries.size();
+            final ClassFile[] out = new ClassFile[size];
+            final int chunks = Math.max(1, Math.min(parallelism, size));
+            final CompletableFuture<?>[] parts = new CompletableFuture<?>[chunks];
+            for (int i=0; i < chunks; i++) {
+                final int start = (int) ((long) size * i / chunks);
+                final int end = (int) ((long) size * (i + 1) / chunks);
+                final CompletableFuture<Void> part = new CompletableFuture<>();
+                parts[i] = part;
+                execute(executor, part, () -> readRange(entries, out, start, end, ret, part));
+            }
+
+            CompletableFuture.allOf(parts).whenComplete((Void v, Throwable t) -> {
+                try {
+                    scan.close();
+                } catch (IOException e) {
+                    ret.completeExceptionally(e);
+                }
+                // Ranges only fail their own future if the executor rejected them
+                if (t != null) ret.completeExceptionally((t instanceof CompletionException) ? t.getCause() : t);
+                // No-op if a range has already failed the result, or it was cancelled
+                ret.complete(Collections.unmodifiableList(Arrays.asList(out)));
+            });
+        });
+        return ret;
+    }
+
+    private static void readRange(
+            @NotNull List<AnnolyzeClassEntry> entries,
+            @NotNull ClassFile @NotNull [] out,
+            int start,
+            int end,
+            @NotNull CompletableFuture<?> result,
+            @NotNull CompletableFuture<Void> part
+    ) {
+        try {
+            for (int i=start; i < end; i++) {
+                if (result.isDone()) break;
+                out[i] = entries.get(i).read();
+            }
+        } catch (Throwable t) {
+            // Fail the result first so that other ranges stop early
+            result.completeExceptionally(t);
+        }
+        part.complete(null);
+    }
+
+    private static void execute(
+            @NotNull Executor executor,
+            @NotNull CompletableFuture<?> future,
+            @NotNull Runnable task
+    ) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+}
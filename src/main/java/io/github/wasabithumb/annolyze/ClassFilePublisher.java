@@ -0,0 +1,224 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the class files of a source to each subscriber in order. Every subscription opens its own
+ * {@link AnnolyzeClassScan scan} when first requested, and reads up to {@link AnnolyzeClassSource#parallelism()}
+ * entries at once as separate tasks on the executor, but never more than the subscriber has outstanding demand for.
+ * A slow subscriber therefore pauses reading rather than accumulating skeletons.
+ */
+@ApiStatus.Internal
+final class ClassFilePublisher implements Flow.Publisher<ClassFile> {
+
+    private final AnnolyzeClassSource source;
+    private final boolean recursive;
+    private final Executor executor;
+
+    ClassFilePublisher(@NotNull AnnolyzeClassSource source, boolean recursive, @NotNull Executor executor) {
+        this.source = source;
+        this.recursive = recursive;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(@NotNull Flow.Subscriber<? super ClassFile> subscriber) {
+        Objects.requireNonNull(subscriber);
+        final Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    //
+
+    /**
+     * Signals are only ever sent from {@link #drain()}, which runs on the executor and is entered by one thread at
+     * a time (guarded by {@link #wip}), so that {@code onNext} calls are serialized. Reads run as their own tasks,
+     * and schedule a drain when they complete; their results are delivered in scan order.
+     */
+    private final class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ClassFile> subscriber;
+        private final AtomicLong demand = new AtomicLong(0L);
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private volatile boolean cancelled = false;
+        private volatile Throwable invalidRequest = null;
+
+        // Only accessed from drain()
+        private AnnolyzeClassScan scan = null;
+        private List<AnnolyzeClassEntry> entries = null;
+        private final Queue<CompletableFuture<ClassFile>> reading = new ArrayDeque<>();
+        private int head = 0;
+        private boolean done = false;
+
+        Subscription(@NotNull Flow.Subscriber<? super ClassFile> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                this.invalidRequest = new IllegalArgumentException("Requested " + n + " elements (must be positive)");
+            } else {
+                long current;
+                long next;
+                do {
+                    current = this.demand.get();
+                    if (current == Long.MAX_VALUE) break;
+                    next = current + n;
+                    if (next < 0L) next = Long.MAX_VALUE;
+                } while (!this.demand.compareAndSet(current, next));
+            }
+            this.schedule();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            this.schedule();
+        }
+
+        private void schedule() {
+            if (this.wip.getAndIncrement() != 0) return;
+            try {
+                ClassFilePublisher.this.executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // No drain is running and none will be; signal from here and keep wip raised for good
+                if (this.done || this.cancelled) {
+                    this.closeScan();
+                    return;
+                }
+                this.terminate(e);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (this.done) {
+                    this.release();
+                } else {
+                    this.drain0();
+                }
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain0() {
+            if (this.cancelled) {
+                this.done = true;
+                this.release();
+                return;
+            }
+            final Throwable invalid = this.invalidRequest;
+            if (invalid != null) {
+                this.terminate(invalid);
+                return;
+            }
+            if (this.demand.get() == 0L) return;
+
+            if (this.entries == null) {
+                try {
+                    this.scan = ClassFilePublisher.this.source.scan(ClassFilePublisher.this.recursive);
+                } catch (IOException | RuntimeException e) {
+                    this.terminate(e);
+                    return;
+                }
+                this.entries = this.scan.entries();
+            }
+
+            // Deliver the reads which have completed, in order
+            CompletableFuture<ClassFile> first;
+            while ((first = this.reading.peek()) != null && first.isDone()) {
+                if (this.cancelled) {
+                    this.done = true;
+                    this.release();
+                    return;
+                }
+                this.reading.poll();
+                final ClassFile next;
+                try {
+                    next = first.join();
+                } catch (CompletionException | CancellationException e) {
+                    this.terminate((e.getCause() == null) ? e : e.getCause());
+                    return;
+                }
+                try {
+                    this.subscriber.onNext(next);
+                } catch (RuntimeException e) {
+                    // Misbehaving subscriber; treat as a cancellation so that the scan is released
+                    this.cancelled = true;
+                    this.done = true;
+                    this.release();
+                    throw e;
+                }
+                this.demand.decrementAndGet();
+            }
+
+            // Start reads for outstanding demand which no read covers yet
+            final int parallelism = ClassFilePublisher.this.source.parallelism();
+            final long demand = this.demand.get();
+            while (this.head < this.entries.size() && this.reading.size() < parallelism && this.reading.size() < demand) {
+                final AnnolyzeClassEntry entry = this.entries.get(this.head++);
+                final CompletableFuture<ClassFile> read = AsyncSupport.supply(entry::read, ClassFilePublisher.this.executor);
+                this.reading.add(read);
+                read.whenComplete((ClassFile cf, Throwable t) -> this.schedule());
+            }
+
+            if (this.head < this.entries.size() || !this.reading.isEmpty()) return;
+            this.done = true;
+            final IOException closeError = this.closeScan();
+            if (this.cancelled) return;
+            if (closeError == null) {
+                this.subscriber.onComplete();
+            } else {
+                this.subscriber.onError(closeError);
+            }
+        }
+
+        private void terminate(@NotNull Throwable t) {
+            this.done = true;
+            final IOException closeError = this.release();
+            if (closeError != null) t.addSuppressed(closeError);
+            if (!this.cancelled) this.subscriber.onError(t);
+        }
+
+        /**
+         * Closes the scan once no read is in flight, returning the exception raised while closing if any. Reads
+         * which are still running schedule another drain when they complete, which tries again.
+         */
+        private @Nullable IOException release() {
+            this.reading.removeIf(CompletableFuture::isDone);
+            if (!this.reading.isEmpty()) return null;
+            return this.closeScan();
+        }
+
+        /**
+         * Closes the scan if open, returning the exception raised while closing if any.
+         */
+        private @Nullable IOException closeScan() {
+            final AnnolyzeClassScan scan = this.scan;
+            if (scan == null) return null;
+            this.scan = null;
+            try {
+                scan.close();
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,82 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Reads the entries of a scan as they are consumed. Splits by halving the remaining range of entries, so that
+ * parallel streams divide work evenly without buffering.
+ */
+@ApiStatus.Internal
+final class ClassFileSpliterator implements Spliterator<ClassFile> {
+
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+
+    private final List<AnnolyzeClassEntry> entries;
+    private int head;
+    private final int end;
+
+    ClassFileSpliterator(@NotNull List<AnnolyzeClassEntry> entries, int head, int end) {
+        this.entries = entries;
+        this.head = head;
+        this.end = end;
+    }
+
+    ClassFileSpliterator(@NotNull List<AnnolyzeClassEntry> entries) {
+        this(entries, 0, entries.size());
+    }
+
+    @Override
+    public boolean tryAdvance(@NotNull Consumer<? super ClassFile> action) throws UncheckedIOException {
+        if (this.head >= this.end) return false;
+        action.accept(read(this.entries.get(this.head++)));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(@NotNull Consumer<? super ClassFile> action) throws UncheckedIOException {
+        final int end = this.end;
+        int i = this.head;
+        try {
+            for (; i < end; i++) action.accept(read(this.entries.get(i)));
+        } finally {
+            this.head = end;
+        }
+    }
+
+    @Override
+    public @Nullable Spliterator<ClassFile> trySplit() {
+        final int mid = (this.head + this.end) >>> 1;
+        if (mid <= this.head) return null;
+        final ClassFileSpliterator ret = new ClassFileSpliterator(this.entries, this.head, mid);
+        this.head = mid;
+        return ret;
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.end - this.head;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    private static @NotNull ClassFile read(@NotNull AnnolyzeClassEntry entry) throws UncheckedIOException {
+        try {
+            return entry.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
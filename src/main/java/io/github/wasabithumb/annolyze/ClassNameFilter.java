@@ -0,0 +1,70 @@
+package io.github.wasabithumb.annolyze;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.regex.Pattern;
+
+/**
+ * A predicate on the internal name of a class (such as {@code com/acme/Foo$Bar}), applied to the names of
+ * archive or directory entries before any class data is read.
+ * @see AnnolyzeClassSource#filter(ClassNameFilter)
+ */
+@FunctionalInterface
+public interface ClassNameFilter {
+
+    /**
+     * <p>
+     *     Compiles a glob into a filter. Either {@code .} or {@code /} may separate packages. {@code *} matches any
+     *     part of a single name, {@code **} matches any number of packages (including none) and {@code ?} matches
+     *     one character within a name.
+     * </p>
+     * <p>
+     *     A glob containing no separator is matched against the simple name only, so {@code *Controller} matches
+     *     {@code com/acme/web/UserController} and {@code *$*} matches every nested class.
+     * </p>
+     */
+    @Contract("_ -> new")
+    static @NotNull ClassNameFilter glob(@NotNull String glob) {
+        return ClassNameFilterImpl.glob(glob);
+    }
+
+    /**
+     * Creates a filter which accepts internal names that entirely match the given expression.
+     */
+    @Contract("_ -> new")
+    static @NotNull ClassNameFilter regex(@NotNull Pattern pattern) {
+        return (String internalName) -> pattern.matcher(internalName).matches();
+    }
+
+    /**
+     * Creates a filter which accepts internal names that entirely match the given expression.
+     */
+    @Contract("_ -> new")
+    static @NotNull ClassNameFilter regex(@NotNull String pattern) {
+        return regex(Pattern.compile(pattern));
+    }
+
+    //
+
+    /**
+     * Returns true if the class with the given internal name should be included.
+     */
+    boolean test(@NotNull String internalName);
+
+    @Contract("-> new")
+    default @NotNull ClassNameFilter negate() {
+        return (String internalName) -> !this.test(internalName);
+    }
+
+    @Contract("_ -> new")
+    default @NotNull ClassNameFilter and(@NotNull ClassNameFilter other) {
+        return (String internalName) -> this.test(internalName) && other.test(internalName);
+    }
+
+    @Contract("_ -> new")
+    default @NotNull ClassNameFilter or(@NotNull ClassNameFilter other) {
+        return (String internalName) -> this.test(internalName) || other.test(internalName);
+    }
+
+}
@@ -0,0 +1,77 @@
+package io.github.wasabithumb.annolyze;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.regex.Pattern;
+
+@ApiStatus.Internal
+final class ClassNameFilterImpl implements ClassNameFilter {
+
+    static @NotNull ClassNameFilterImpl glob(@NotNull String glob) {
+        final int len = glob.length();
+        boolean simple = true;
+        for (int i=0; i < len; i++) {
+            if (isSeparator(glob.charAt(i))) {
+                simple = false;
+                break;
+            }
+        }
+
+        final StringBuilder regex = new StringBuilder(len + 16);
+        char c;
+        for (int i=0; i < len; i++) {
+            c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < len && glob.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < len && isSeparator(glob.charAt(i + 1))) {
+                        // "**." may also match no packages at all
+                        i++;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (isSeparator(c)) {
+                regex.append('/');
+            } else if ("\\^$|+()[]{}".indexOf(c) != -1) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+
+        return new ClassNameFilterImpl(Pattern.compile(regex.toString()), simple);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == '/';
+    }
+
+    //
+
+    private final Pattern pattern;
+    private final boolean simple;
+
+    private ClassNameFilterImpl(@NotNull Pattern pattern, boolean simple) {
+        this.pattern = pattern;
+        this.simple = simple;
+    }
+
+    @Override
+    public boolean test(@NotNull String internalName) {
+        if (this.simple) internalName = internalName.substring(internalName.lastIndexOf('/') + 1);
+        return this.pattern.matcher(internalName).matches();
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "ClassNameFilter[" + this.pattern.pattern() + "]";
+    }
+
+}
@@ -0,0 +1,84 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.misc.PathUtil;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+
+/**
+ * A cheap test on the raw data of a class file, run before the class is parsed. A filter may accept classes which
+ * turn out not to match (false positives), but must never reject a class which would match.
+ * @see AnnolyzeClassSource#findFirst(ConstantPoolFilter, java.util.function.Predicate)
+ */
+@FunctionalInterface
+public interface ConstantPoolFilter {
+
+    /**
+     * Creates a filter which accepts classes whose constant pool holds every one of the given strings as a
+     * {@code CONSTANT_Utf8} entry. Names, descriptors and string literals all appear as such entries.
+     */
+    @Contract("_ -> new")
+    static @NotNull ConstantPoolFilter containsAll(@NotNull String @NotNull ... constants) {
+        return new ConstantPoolFilterImpl(constants, true);
+    }
+
+    /**
+     * Creates a filter which accepts classes whose constant pool holds at least one of the given strings as a
+     * {@code CONSTANT_Utf8} entry.
+     */
+    @Contract("_ -> new")
+    static @NotNull ConstantPoolFilter containsAny(@NotNull String @NotNull ... constants) {
+        return new ConstantPoolFilterImpl(constants, false);
+    }
+
+    /**
+     * Creates a filter which accepts classes that may use the annotation with the given binary class name, that
+     * is, whose constant pool holds its descriptor. Packages are separated by dots, but nested classes by
+     * {@code $} as in {@link Class#getName()}; {@code a.Outer.Inner} never matches {@code a.Outer$Inner}.
+     * @see #annotation(ClassReference)
+     */
+    @Contract("_ -> new")
+    static @NotNull ConstantPoolFilter annotation(@NotNull String className) {
+        return containsAll("L" + PathUtil.dotsToSlashes(className, false) + ";");
+    }
+
+    /**
+     * Creates a filter which accepts classes that may use the given annotation.
+     * @see #annotation(String)
+     */
+    @Contract("_ -> new")
+    static @NotNull ConstantPoolFilter annotation(@NotNull ClassReference annotation) {
+        return containsAll(annotation.toString());
+    }
+
+    /**
+     * Creates a filter which accepts classes that may use the given annotation.
+     * @see #annotation(String)
+     */
+    @Contract("_ -> new")
+    static @NotNull ConstantPoolFilter annotation(@NotNull Class<? extends Annotation> annotation) {
+        return annotation(ClassReference.of(annotation));
+    }
+
+    //
+
+    /**
+     * Returns false only if the class file in the remaining content of the buffer can not match. The position
+     * of the buffer is not changed.
+     */
+    boolean test(@NotNull ByteBuffer classFile);
+
+    @Contract("_ -> new")
+    default @NotNull ConstantPoolFilter and(@NotNull ConstantPoolFilter other) {
+        return (ByteBuffer classFile) -> this.test(classFile) && other.test(classFile);
+    }
+
+    @Contract("_ -> new")
+    default @NotNull ConstantPoolFilter or(@NotNull ConstantPoolFilter other) {
+        return (ByteBuffer classFile) -> this.test(classFile) || other.test(classFile);
+    }
+
+}
@@ -0,0 +1,131 @@
+package io.github.wasabithumb.annolyze;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the constant pool of a class file without decoding it, comparing the bytes of each {@code CONSTANT_Utf8}
+ * entry against the wanted strings in modified UTF-8 form. Data which can not be walked is accepted, so that the
+ * parser is the one to report it.
+ */
+@ApiStatus.Internal
+final class ConstantPoolFilterImpl implements ConstantPoolFilter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private final byte[][] constants;
+    private final boolean all;
+
+    ConstantPoolFilterImpl(@NotNull String @NotNull [] constants, boolean all) {
+        this.constants = new byte[constants.length][];
+        for (int i=0; i < constants.length; i++) this.constants[i] = encode(constants[i]);
+        this.all = all;
+    }
+
+    @Override
+    public boolean test(@NotNull ByteBuffer classFile) {
+        if (this.constants.length == 0) return this.all;
+        try {
+            return this.test0(classFile);
+        } catch (IndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    private boolean test0(@NotNull ByteBuffer buf) {
+        int head = buf.position();
+        if (buf.getInt(head) != MAGIC) return true;
+        final int count = Short.toUnsignedInt(buf.getShort(head + 8));
+        head += 10;
+
+        final boolean[] found = new boolean[this.constants.length];
+        int remaining = this.constants.length;
+        int tag;
+        int len;
+        for (int i=1; i < count; i++) {
+            tag = buf.get(head) & 0xFF;
+            switch (tag) {
+                case 1: // Utf8
+                    len = Short.toUnsignedInt(buf.getShort(head + 1));
+                    for (int z=0; z < found.length; z++) {
+                        if (found[z] || !this.matches(buf, head + 3, len, z)) continue;
+                        if (!this.all) return true;
+                        found[z] = true;
+                        if (--remaining == 0) return true;
+                    }
+                    head += 3 + len;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    head += 5;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    head += 9;
+                    i++; // Occupies two slots
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    head += 3;
+                    break;
+                case 15: // MethodHandle
+                    head += 4;
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(@NotNull ByteBuffer buf, int start, int len, int index) {
+        final byte[] constant = this.constants[index];
+        if (constant.length != len) return false;
+        for (int i=0; i < len; i++) {
+            if (buf.get(start + i) != constant[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a string as modified UTF-8, as stored in {@code CONSTANT_Utf8} entries.
+     */
+    private static byte @NotNull [] encode(@NotNull String str) {
+        final int strLen = str.length();
+        int len = 0;
+        char c;
+        for (int i=0; i < strLen; i++) {
+            c = str.charAt(i);
+            len += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF) ? 2 : 3;
+        }
+
+        final byte[] ret = new byte[len];
+        int head = 0;
+        for (int i=0; i < strLen; i++) {
+            c = str.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                ret[head++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                ret[head++] = (byte) (0xC0 | (c >> 6));
+                ret[head++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                ret[head++] = (byte) (0xE0 | (c >> 12));
+                ret[head++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                ret[head++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,75 @@
+package io.github.wasabithumb.annolyze;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A view of another source which only includes classes accepted by a {@link ClassNameFilter}. Names are tested
+ * relative to the view on which {@link AnnolyzeClassSource#filter(ClassNameFilter) filter} was called, even if
+ * {@link #sub(String) sub} is called on the filtered view afterwards.
+ */
+@ApiStatus.Internal
+final class FilteredClassSource extends AbstractAnnolyzeClassSource {
+
+    private final AnnolyzeClassSource delegate;
+    private final ClassNameFilter filter;
+    private final String prefix;
+
+    FilteredClassSource(
+            @NotNull AnnolyzeClassSource delegate,
+            @NotNull ClassNameFilter filter,
+            @NotNull String prefix,
+            int parallelism
+    ) throws IllegalArgumentException {
+        super(parallelism);
+        this.delegate = delegate;
+        this.filter = filter;
+        this.prefix = prefix;
+    }
+
+    private boolean accepts(@NotNull String name) {
+        return this.filter.test((this.prefix + name).replace('.', '/'));
+    }
+
+    //
+
+    @Override
+    public @NotNull AnnolyzeClassSource sub(@NotNull String pkg) {
+        return new FilteredClassSource(
+                this.delegate.sub(pkg),
+                this.filter,
+                this.prefix + pkg + ".",
+                this.parallelism
+        );
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource parallelism(int parallelism) throws IllegalArgumentException {
+        return new FilteredClassSource(this.delegate.parallelism(parallelism), this.filter, this.prefix, parallelism);
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        if (!this.accepts(className))
+            throw new FileNotFoundException("Class " + this.prefix + className + " is excluded by the filter of this view");
+        return this.delegate.read(className);
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        final AnnolyzeClassScan scan = this.delegate.scan(recursive);
+        final List<AnnolyzeClassEntry> entries = scan.entries();
+        final List<AnnolyzeClassEntry> ret = new ArrayList<>(entries.size());
+        for (AnnolyzeClassEntry entry : entries) {
+            if (this.accepts(entry.name())) ret.add(entry);
+        }
+        return AnnolyzeClassScan.of(ret, scan);
+    }
+
+}
@@ -4,31 +4,76 @@ import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.Locale;
 
 /**
- * Utility for reading out the class files in an archive.
+ * Utility for reading out the class files in an archive. JMOD files are also supported, in which case class names
+ * are relative to the {@code classes/} directory of the module.
  */
 @ApiStatus.NonExtendable
 public interface AnnolyzeArchive extends AnnolyzeClassSource {
 
+    /**
+     * JMOD files hold class files under this directory, and are prefixed with a 4-byte header which
+     * {@link java.util.zip.ZipFile ZipFile} skips.
+     */
+    @ApiStatus.Internal
+    String JMOD_ROOT = "classes/";
+
     @Contract(value = "_ -> new")
     static @NotNull AnnolyzeArchive of(@NotNull File file) throws IllegalArgumentException {
         if (!file.isFile())
             throw new IllegalArgumentException("Path \"" + file + "\" is not a file");
 
         final String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jmod"))
+            return new AnnolyzeArchiveImpl(file, JMOD_ROOT);
         if (!name.endsWith(".jar") && !name.endsWith(".zip"))
-            throw new IllegalArgumentException("File \"" + file + "\" is not an archive (JAR or ZIP)");
+            throw new IllegalArgumentException("File \"" + file + "\" is not an archive (JAR, ZIP or JMOD)");
+
+        return new AnnolyzeArchiveImpl(file, "");
+    }
 
-        return new AnnolyzeArchiveImpl(file);
+    /**
+     * Returns true if the given file name has an extension supported by {@link #of(File)}.
+     */
+    static boolean isArchiveName(@NotNull String name) {
+        name = name.toLowerCase(Locale.ROOT);
+        return name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(".jmod");
     }
 
     //
 
+    /**
+     * The archive file backing this source.
+     */
+    @NotNull File file();
+
+    /**
+     * The package that this view is rooted at, as per {@link #sub(String)}. Empty for the root of the archive.
+     */
+    @NotNull String pkg();
+
+    /**
+     * Returns the name of the archive entry which holds (or would hold) the class with the given name, relative to
+     * this view.
+     */
+    @NotNull String entryName(@NotNull String className);
+
+    /**
+     * Returns the name of the class held by the archive entry with the given name, or null if the entry is not a
+     * class listed by this view. Inverse of {@link #entryName(String)}.
+     */
+    @Nullable String className(@NotNull String entryName);
+
     @Override
     @NotNull AnnolyzeArchive sub(@NotNull String pkg);
 
+    @Override
+    @Contract("_ -> new")
+    @NotNull AnnolyzeArchive parallelism(int parallelism) throws IllegalArgumentException;
+
 }
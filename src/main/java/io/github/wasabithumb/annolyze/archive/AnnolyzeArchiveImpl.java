@@ -1,77 +1,125 @@
 package io.github.wasabithumb.annolyze.archive;
 
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
 import io.github.wasabithumb.annolyze.file.ClassFile;
 import io.github.wasabithumb.annolyze.file.ClassFileInputStream;
-import io.github.wasabithumb.annolyze.misc.IOBiFunction;
 import static io.github.wasabithumb.annolyze.misc.PathUtil.*;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Unmodifiable;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 /**
  * Utility for reading out the class files in an archive.
  */
 @ApiStatus.Internal
-class AnnolyzeArchiveImpl implements AnnolyzeArchive {
+class AnnolyzeArchiveImpl extends AbstractAnnolyzeClassSource implements AnnolyzeArchive {
 
     private static final String PACKAGE_INFO = "package-info";
+    private static final String MODULE_INFO = "module-info" + DOT_CLASS;
 
     protected final File file;
+    protected final String root;
     protected final String prefix;
 
     @ApiStatus.Internal
-    protected AnnolyzeArchiveImpl(@NotNull File file, @NotNull String prefix) {
+    protected AnnolyzeArchiveImpl(@NotNull File file, @NotNull String root, @NotNull String prefix, int parallelism) {
+        super(parallelism);
         this.file = file;
+        this.root = root;
         this.prefix = prefix;
     }
 
     @ApiStatus.Internal
-    AnnolyzeArchiveImpl(@NotNull File file) {
-        this(file, "");
+    AnnolyzeArchiveImpl(@NotNull File file, @NotNull String root) {
+        this(file, root, root, 1);
     }
 
     //
 
+    @Override
+    public @NotNull File file() {
+        return this.file;
+    }
+
+    @Override
+    public @NotNull String pkg() {
+        final int start = this.root.length();
+        final int len = this.prefix.length();
+        if (len == start) return "";
+        return slashesToDots(this.prefix.substring(start, len - 1));
+    }
+
+    @Override
+    public @NotNull String entryName(@NotNull String className) {
+        return this.prefix + classNameToPath(className);
+    }
+
+    @Override
+    public @Nullable String className(@NotNull String entryName) {
+        if (!this.shouldIncludeListEntry(entryName, true)) return null;
+        return slashesToDots(entryName.substring(this.prefix.length(), entryName.length() - 6));
+    }
+
     @Override
     public @NotNull AnnolyzeArchiveImpl sub(@NotNull String pkg) {
-        return new AnnolyzeArchiveImpl(this.file, this.prefix + dotsToSlashes(pkg, false) + "/");
+        return new AnnolyzeArchiveImpl(
+                this.file,
+                this.root,
+                this.prefix + dotsToSlashes(pkg, false) + "/",
+                this.parallelism
+        );
+    }
+
+    @Override
+    public @NotNull AnnolyzeArchiveImpl parallelism(int parallelism) throws IllegalArgumentException {
+        return new AnnolyzeArchiveImpl(this.file, this.root, this.prefix, parallelism);
     }
 
     public @NotNull ClassFile read(final @NotNull String className) throws IOException {
         try (ZipFile zf = new ZipFile(this.file)) {
-            ZipEntry ze = zf.getEntry(this.prefix + classNameToPath(className));
+            ZipEntry ze = zf.getEntry(this.entryName(className));
             if (ze == null) {
-                throw new IOException("Class " + this.getPrefixAsPackage() + className + " not found in archive @ " +
-                        this.file.getAbsolutePath());
+                throw new FileNotFoundException("Class " + this.getPrefixAsPackage() + className +
+                        " not found in archive @ " + this.file.getAbsolutePath());
             }
             return this.readStream(zf.getInputStream(ze), true);
         }
     }
 
+    /**
+     * Enumerates the class files in the central directory of this archive. No entry data is inflated until
+     * an entry is read.
+     */
     @Override
-    public @NotNull @Unmodifiable List<String> list(final boolean recursive) throws IOException {
-        return this.listInternal((ZipEntry ze, InputStream ignored) -> {
-            String name = ze.getName();
-            name = name.substring(this.prefix.length(), name.length() - 6);
-            if (recursive) name = slashesToDots(name);
-            return name;
-        }, recursive);
-    }
-
-    @Override
-    public @NotNull @Unmodifiable List<ClassFile> readAll(final boolean recursive) throws IOException {
-        return this.listInternal(
-                (ZipEntry ignored, InputStream stream) -> this.readStream(stream, false),
-                recursive
-        );
+    public @NotNull AnnolyzeClassScan scan(final boolean recursive) throws IOException {
+        final ZipFile zf = new ZipFile(this.file);
+        try {
+            final List<Entry> entries = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> en = zf.entries();
+            ZipEntry ze;
+            String name;
+            while (en.hasMoreElements()) {
+                ze = en.nextElement();
+                name = ze.getName();
+                if (!this.shouldIncludeListEntry(name, recursive)) continue;
+                name = slashesToDots(name.substring(this.prefix.length(), name.length() - 6));
+                entries.add(new Entry(name, zf, ze));
+            }
+            return AnnolyzeClassScan.of(entries, zf);
+        } catch (RuntimeException e) {
+            zf.close();
+            throw e;
+        }
     }
 
     //
@@ -87,23 +135,6 @@ class AnnolyzeArchiveImpl implements AnnolyzeArchive {
         }
     }
 
-    protected <T> @NotNull List<T> listInternal(
-            @NotNull IOBiFunction<ZipEntry, InputStream, T> fn,
-            boolean recursive
-    ) throws IOException {
-        try (FileInputStream fis = new FileInputStream(this.file);
-             ZipInputStream zis = new ZipInputStream(fis)
-        ) {
-            List<T> ret = new LinkedList<>();
-            ZipEntry ze;
-            while ((ze = zis.getNextEntry()) != null) {
-                if (!this.shouldIncludeListEntry(ze.getName(), recursive)) continue;
-                ret.add(fn.apply(ze, zis));
-            }
-            return Collections.unmodifiableList(ret);
-        }
-    }
-
     protected boolean shouldIncludeListEntry(@NotNull String name, boolean recursive) {
         final int prefixLen = this.prefix.length();
         if (name.length() <= prefixLen) return false;
@@ -131,6 +162,10 @@ class AnnolyzeArchiveImpl implements AnnolyzeArchive {
             if (match) return false;
         }
 
+        // Exclude the module descriptor of a JMOD, matching the runtime image
+        if (!this.root.isEmpty() && name.length() == this.root.length() + MODULE_INFO.length() &&
+                name.endsWith(MODULE_INFO)) return false;
+
         if (!recursive) {
             for (int i=prefixLen; i < subNameEnd; i++) {
                 if (name.charAt(i) == '/') return false;
@@ -141,7 +176,52 @@ class AnnolyzeArchiveImpl implements AnnolyzeArchive {
     }
 
     protected @NotNull String getPrefixAsPackage() {
-        return slashesToDots(this.prefix);
+        return slashesToDots(this.prefix.substring(this.root.length()));
+    }
+
+    //
+
+    private final class Entry implements AnnolyzeClassEntry {
+
+        private final String name;
+        private final ZipFile zipFile;
+        private final ZipEntry zipEntry;
+
+        Entry(@NotNull String name, @NotNull ZipFile zipFile, @NotNull ZipEntry zipEntry) {
+            this.name = name;
+            this.zipFile = zipFile;
+            this.zipEntry = zipEntry;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return this.name;
+        }
+
+        @Override
+        public long size() {
+            return this.zipEntry.getSize();
+        }
+
+        @Override
+        public long fingerprint() throws IOException {
+            final long crc = this.zipEntry.getCrc();
+            if (crc == -1L) return AnnolyzeClassEntry.super.fingerprint();
+            return (crc << 32) | (this.zipEntry.getSize() & 0xFFFFFFFFL);
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            try (InputStream is = this.zipFile.getInputStream(this.zipEntry)) {
+                return ByteBuffer.wrap(is.readAllBytes());
+            }
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return AnnolyzeArchiveImpl.this.readStream(this.zipFile.getInputStream(this.zipEntry), true);
+        }
+
     }
 
 }
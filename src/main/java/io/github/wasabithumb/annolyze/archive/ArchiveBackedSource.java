@@ -0,0 +1,20 @@
+package io.github.wasabithumb.annolyze.archive;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A view which yields exactly the classes of an archive, only read by other means, such as through a cache.
+ * {@link io.github.wasabithumb.annolyze.index.AnnotationIndex#build(AnnolyzeClassSource) Index builds} use an
+ * index embedded in the archive as they would for the archive itself.
+ */
+@ApiStatus.Internal
+public interface ArchiveBackedSource extends AnnolyzeClassSource {
+
+    /**
+     * The archive whose classes this view yields, or null if it is not backed by an archive.
+     */
+    @Nullable AnnolyzeArchive archive();
+
+}
@@ -0,0 +1,40 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A snapshot of the statistics of an {@link AnnolyzeMemoryCache}.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeCacheStats {
+
+    /**
+     * The number of reads served without parsing, including reads which waited for a concurrent load of the same
+     * class and reads served from the soft tier.
+     */
+    long hits();
+
+    /**
+     * The number of {@link #hits() hits} served from the soft tier.
+     */
+    long softHits();
+
+    /**
+     * The number of reads which parsed a class. This is also the number of loads.
+     */
+    long misses();
+
+    /**
+     * The number of classes evicted from the strong tier to stay within the weight limit.
+     */
+    long evictions();
+
+    /**
+     * The fraction of reads which were hits, or 1 if there have been no reads.
+     */
+    default double hitRate() {
+        final long total = this.hits() + this.misses();
+        return (total == 0L) ? 1d : ((double) this.hits() / total);
+    }
+
+}
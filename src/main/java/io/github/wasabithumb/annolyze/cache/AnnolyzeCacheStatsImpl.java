@@ -0,0 +1,11 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import org.jetbrains.annotations.ApiStatus;
+
+@ApiStatus.Internal
+record AnnolyzeCacheStatsImpl(
+        long hits,
+        long softHits,
+        long misses,
+        long evictions
+) implements AnnolyzeCacheStats { }
@@ -0,0 +1,91 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A persistent cache of parsed class skeletons, stored in a directory which may be shared by any number of JVMs at
+ * once. Entries are addressed by content: classes in an {@link AnnolyzeArchive archive} by the path of the archive
+ * and the name, CRC and size of their entry, which costs no reads of class data, and other classes by a SHA-256
+ * hash of their data, which costs a read but no parse.
+ * <p>
+ * Entries are stored as {@link io.github.wasabithumb.annolyze.file.ClassFileSkeleton skeletons}, written to a
+ * temporary file and renamed into place, so readers never see a partial entry. When the total size of the cache
+ * exceeds its limit, the least recently used entries are deleted. Failures to write to the cache are ignored; the
+ * cache is only ever an optimization.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeDiskCache {
+
+    /**
+     * The size limit used by {@link #open(Path)}, 256 MiB.
+     */
+    long DEFAULT_MAX_SIZE = 256L << 20;
+
+    /**
+     * Opens the cache in the given directory with the {@link #DEFAULT_MAX_SIZE default} size limit, creating the
+     * directory if it does not exist.
+     * @throws IOException A generic IO exception.
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeDiskCache open(@NotNull Path directory) throws IOException {
+        return open(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Opens the cache in the given directory, creating the directory if it does not exist.
+     * @param maxSize The size in bytes above which least recently used entries are deleted.
+     * @throws IllegalArgumentException The size limit is not positive.
+     * @throws IOException A generic IO exception.
+     */
+    @Contract("_, _ -> new")
+    static @NotNull AnnolyzeDiskCache open(@NotNull Path directory, long maxSize) throws IOException {
+        return new AnnolyzeDiskCacheImpl(directory, maxSize);
+    }
+
+    //
+
+    /**
+     * The directory holding the entries of this cache.
+     */
+    @NotNull Path directory();
+
+    /**
+     * The size in bytes above which least recently used entries are deleted.
+     */
+    long maxSize();
+
+    /**
+     * Returns a view of the given source whose scans read classes through this cache. Composites are wrapped
+     * source by source, so that archives within them are still addressed by entry, and an
+     * {@link io.github.wasabithumb.annolyze.index.AnnotationIndex#embed(java.io.File) embedded index} in a wrapped
+     * archive is still used by index builds. Classes read by name with {@link AnnolyzeClassSource#read(String)} are
+     * not cached, since entries are addressed by their data.
+     */
+    @Contract("_ -> new")
+    @NotNull AnnolyzeClassSource wrap(@NotNull AnnolyzeClassSource source);
+
+    /**
+     * Reads an entry through this cache, addressing it by a hash of its data.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    @NotNull ClassFile read(@NotNull AnnolyzeClassEntry entry) throws IOException;
+
+    /**
+     * Deletes least recently used entries until the cache is within its size limit, and removes temporary files
+     * abandoned by writers which did not finish. This runs automatically as entries are written.
+     * @throws IOException A generic IO exception.
+     */
+    void trim() throws IOException;
+
+}
@@ -0,0 +1,256 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileBufferReader;
+import io.github.wasabithumb.annolyze.file.ClassFileSkeleton;
+import io.github.wasabithumb.annolyze.file.except.ClassFileReadException;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+@ApiStatus.Internal
+final class AnnolyzeDiskCacheImpl implements AnnolyzeDiskCache {
+
+    private static final String ENTRY_SUFFIX = ".bin";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Entries are only marked as used if they were last marked longer ago than this, so that a hot entry does not
+     * cost a write on every read.
+     */
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * Temporary files older than this are assumed to belong to a writer which died.
+     */
+    private static final long ABANDONED_MILLIS = TimeUnit.HOURS.toMillis(1L);
+
+    private final Path directory;
+    private final long maxSize;
+    private final AtomicLong written = new AtomicLong();
+    private final ReentrantLock trimLock = new ReentrantLock();
+
+    AnnolyzeDiskCacheImpl(@NotNull Path directory, long maxSize) throws IOException {
+        if (maxSize <= 0L) throw new IllegalArgumentException("Maximum cache size must be positive");
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    //
+
+    @Override
+    public @NotNull Path directory() {
+        return this.directory;
+    }
+
+    @Override
+    public long maxSize() {
+        return this.maxSize;
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource wrap(@NotNull AnnolyzeClassSource source) {
+        if (source instanceof AnnolyzeComposite composite) {
+            final List<AnnolyzeClassSource> sources = new ArrayList<>(composite.sources().size());
+            for (AnnolyzeClassSource s : composite.sources()) sources.add(this.wrap(s));
+            return AnnolyzeComposite.of(sources).parallelism(composite.parallelism());
+        }
+        return new CachedClassSource(this, source, source.parallelism());
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull AnnolyzeClassEntry entry) throws IOException {
+        return this.read(entry, null);
+    }
+
+    /**
+     * Reads an entry through this cache. If the archive containing the entry is given, the entry is addressed by
+     * its CRC and size, otherwise by a hash of its data.
+     */
+    @NotNull ClassFile read(@NotNull AnnolyzeClassEntry entry, @Nullable AnnolyzeArchive archive) throws IOException {
+        final MessageDigest digest = sha256();
+        if (archive != null) {
+            digest.update(archive.file().getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(archive.entryName(entry.name()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(ByteBuffer.allocate(8).putLong(0, entry.fingerprint()));
+
+            final Path path = this.path(digest.digest());
+            ClassFile ret = this.load(path);
+            if (ret == null) {
+                ret = entry.read();
+                this.store(path, ret);
+            }
+            return ret;
+        }
+
+        final ByteBuffer bytes = entry.bytes();
+        digest.update(bytes.duplicate());
+
+        final Path path = this.path(digest.digest());
+        ClassFile ret = this.load(path);
+        if (ret == null) {
+            ret = (new ClassFileBufferReader(bytes)).readClassFile();
+            this.store(path, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public void trim() throws IOException {
+        this.trimLock.lock();
+        try {
+            this.trim0();
+        } finally {
+            this.trimLock.unlock();
+        }
+    }
+
+    //
+
+    private @NotNull Path path(byte @NotNull [] hash) {
+        final char[] chars = new char[hash.length * 2];
+        for (int i=0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return this.directory.resolve(new String(chars, 0, 2))
+                .resolve(new String(chars, 2, chars.length - 2) + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Reads the entry at the given path, or returns null if it is missing or unreadable.
+     */
+    private @Nullable ClassFile load(@NotNull Path path) throws IOException {
+        final byte[] data;
+        final FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(path);
+            data = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        final ClassFile ret;
+        try {
+            ret = ClassFileSkeleton.read(data);
+        } catch (ClassFileReadException e) {
+            // Corrupt or outdated entry; it is replaced once the class has been read again
+            return null;
+        }
+
+        final long now = System.currentTimeMillis();
+        if (now - modified.toMillis() > TOUCH_INTERVAL_MILLIS) {
+            try {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+            } catch (IOException ignored) {
+                // Another process may be replacing or deleting the entry
+            }
+        }
+        return ret;
+    }
+
+    private void store(@NotNull Path path, @NotNull ClassFile cf) {
+        final byte[] data = ClassFileSkeleton.toByteArray(cf);
+        try {
+            IOUtil.writeAtomically(path, (Path tmp) -> Files.write(tmp, data));
+        } catch (IOException ignored) {
+            // The cache is only an optimization; a read-only or full disk must not fail the read
+            return;
+        }
+
+        // Trim once roughly an eighth of the limit has been written, without blocking other writers
+        if (this.written.addAndGet(data.length) < (this.maxSize >> 3)) return;
+        if (!this.trimLock.tryLock()) return;
+        try {
+            this.written.set(0L);
+            this.trim0();
+        } catch (IOException ignored) {
+            // Retried after the next eighth
+        } finally {
+            this.trimLock.unlock();
+        }
+    }
+
+    private void trim0() throws IOException {
+        final List<Stored> entries = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        Files.walkFileTree(this.directory, new SimpleFileVisitor<>() {
+
+            @Override
+            public @NotNull FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(new Stored(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                } else if (name.endsWith(IOUtil.TEMP_SUFFIX) && now - attrs.lastModifiedTime().toMillis() > ABANDONED_MILLIS) {
+                    deleteQuietly(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc)
+                    throws IOException {
+                // Another process may have deleted the file during the walk
+                if (exc instanceof NoSuchFileException) return FileVisitResult.CONTINUE;
+                throw exc;
+            }
+
+        });
+
+        long total = 0L;
+        for (Stored entry : entries) total += entry.size();
+        if (total <= this.maxSize) return;
+
+        // Trim to three quarters of the limit, so that trimming does not run again immediately
+        final long target = this.maxSize - (this.maxSize >> 2);
+        entries.sort(Comparator.comparingLong(Stored::modified));
+        for (Stored entry : entries) {
+            if (total <= target) break;
+            if (deleteQuietly(entry.path())) total -= entry.size();
+        }
+    }
+
+    private static boolean deleteQuietly(@NotNull Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static @NotNull MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required to be supported", e);
+        }
+    }
+
+    //
+
+    private record Stored(@NotNull Path path, long size, long modified) { }
+
+}
@@ -0,0 +1,89 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An in-memory cache of parsed class skeletons, shared by any number of {@link #wrap(AnnolyzeClassSource) wrapped}
+ * sources. Each class is weighed by an estimate of the heap held by its skeleton, and the least recently used
+ * classes are evicted once the total weight exceeds a limit. Evicted classes may optionally be kept in a second
+ * tier of {@link java.lang.ref.SoftReference soft references}, which the garbage collector clears under memory
+ * pressure.
+ * <p>
+ * Concurrent misses for the same class are coalesced, so that each class is parsed at most once at a time; the
+ * other callers wait for the first. The cache does not observe changes to its sources; call
+ * {@link #invalidateAll()} after a source has changed.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeMemoryCache {
+
+    /**
+     * Creates a cache which holds up to the given weight, with no soft tier.
+     * @param maxWeight The limit on the estimated size in bytes of the cached skeletons.
+     * @throws IllegalArgumentException The limit is not positive.
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeMemoryCache of(long maxWeight) {
+        return of(maxWeight, false);
+    }
+
+    /**
+     * Creates a cache which holds up to the given weight.
+     * @param maxWeight The limit on the estimated size in bytes of the cached skeletons.
+     * @param softTier If true, evicted classes are kept softly reachable until the garbage collector clears them.
+     * @throws IllegalArgumentException The limit is not positive.
+     */
+    @Contract("_, _ -> new")
+    static @NotNull AnnolyzeMemoryCache of(long maxWeight, boolean softTier) {
+        return new AnnolyzeMemoryCacheImpl(maxWeight, softTier);
+    }
+
+    /**
+     * Estimates the heap held by a class skeleton, in bytes. This is the weight used by the cache.
+     */
+    static long weigh(@NotNull ClassFile cf) {
+        return AnnolyzeMemoryCacheImpl.weigh(cf);
+    }
+
+    //
+
+    /**
+     * Returns a view of the given source whose reads, by name or through a {@link AnnolyzeClassSource#scan(boolean)
+     * scan}, are served from this cache. Views obtained from the returned source with
+     * {@link AnnolyzeClassSource#sub(String) sub} or {@link AnnolyzeClassSource#parallelism(int) parallelism}
+     * share its entries. Composites are wrapped source by source, so that an
+     * {@link io.github.wasabithumb.annolyze.index.AnnotationIndex#embed(java.io.File) embedded index} in a wrapped
+     * archive is still used by index builds.
+     */
+    @Contract("_ -> new")
+    @NotNull AnnolyzeClassSource wrap(@NotNull AnnolyzeClassSource source);
+
+    /**
+     * The limit on the total weight of the classes held strongly by this cache.
+     */
+    long maxWeight();
+
+    /**
+     * The total weight of the classes currently held strongly by this cache.
+     */
+    long weight();
+
+    /**
+     * The number of classes currently held strongly by this cache.
+     */
+    int size();
+
+    /**
+     * Returns the statistics accumulated since this cache was created.
+     */
+    @NotNull AnnolyzeCacheStats stats();
+
+    /**
+     * Discards every class held by this cache, including the soft tier. Loads in progress are not interrupted.
+     */
+    void invalidateAll();
+
+}
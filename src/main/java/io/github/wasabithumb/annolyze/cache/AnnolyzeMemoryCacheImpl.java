@@ -0,0 +1,242 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.misc.IOSupplier;
+import io.github.wasabithumb.annolyze.reference.member.MemberReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@ApiStatus.Internal
+final class AnnolyzeMemoryCacheImpl implements AnnolyzeMemoryCache {
+
+    // Rough per-object costs on a 64-bit JVM with compressed references
+    private static final long CLASS_WEIGHT = 160L;
+    private static final long MEMBER_WEIGHT = 120L;
+    private static final long ANNOTATION_WEIGHT = 48L;
+
+    static long weigh(@NotNull ClassFile cf) {
+        long ret = CLASS_WEIGHT + 2L * cf.name().length();
+        ret += ANNOTATION_WEIGHT * cf.getAnnotations().size();
+        for (MemberReference<?> member : cf.getMembers()) {
+            ret += MEMBER_WEIGHT + 2L * (member.name().length() + member.descriptor().length());
+            ret += ANNOTATION_WEIGHT * cf.getAnnotations(member).size();
+        }
+        return ret;
+    }
+
+    //
+
+    private final long maxWeight;
+    private final boolean softTier;
+    private final LinkedHashMap<Key, Strong> strong = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Soft> soft = new HashMap<>();
+    private final ReferenceQueue<ClassFile> queue = new ReferenceQueue<>();
+    private final Map<Key, CompletableFuture<ClassFile>> loading = new ConcurrentHashMap<>();
+    private long weight = 0L;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder softHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    AnnolyzeMemoryCacheImpl(long maxWeight, boolean softTier) {
+        if (maxWeight <= 0L) throw new IllegalArgumentException("Maximum weight must be positive");
+        this.maxWeight = maxWeight;
+        this.softTier = softTier;
+    }
+
+    //
+
+    @Override
+    public @NotNull AnnolyzeClassSource wrap(@NotNull AnnolyzeClassSource source) {
+        if (source instanceof AnnolyzeComposite composite) {
+            final List<AnnolyzeClassSource> sources = new ArrayList<>(composite.sources().size());
+            for (AnnolyzeClassSource s : composite.sources()) sources.add(this.wrap(s));
+            return AnnolyzeComposite.of(sources).parallelism(composite.parallelism());
+        }
+        return new MemoryCachedClassSource(this, source, source, "", source.parallelism());
+    }
+
+    @Override
+    public long maxWeight() {
+        return this.maxWeight;
+    }
+
+    @Override
+    public synchronized long weight() {
+        return this.weight;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.strong.size();
+    }
+
+    @Override
+    public @NotNull AnnolyzeCacheStats stats() {
+        return new AnnolyzeCacheStatsImpl(
+                this.hits.sum(),
+                this.softHits.sum(),
+                this.misses.sum(),
+                this.evictions.sum()
+        );
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        this.strong.clear();
+        this.soft.clear();
+        this.weight = 0L;
+        while (this.queue.poll() != null);
+    }
+
+    //
+
+    /**
+     * Returns the cached class for the key, or loads it. If another thread is already loading the same key, waits
+     * for that load instead of starting another.
+     */
+    @NotNull ClassFile get(@NotNull Key key, @NotNull IOSupplier<ClassFile> loader) throws IOException {
+        ClassFile ret = this.lookup(key);
+        if (ret != null) return ret;
+
+        final CompletableFuture<ClassFile> future = new CompletableFuture<>();
+        final CompletableFuture<ClassFile> existing = this.loading.putIfAbsent(key, future);
+        if (existing != null) {
+            ret = await(existing);
+            this.hits.increment();
+            return ret;
+        }
+
+        try {
+            // The key may have been loaded between the lookup and claiming the load
+            ret = this.lookup(key);
+            if (ret == null) {
+                this.misses.increment();
+                ret = loader.get();
+                this.put(key, ret);
+            }
+            future.complete(ret);
+            return ret;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loading.remove(key, future);
+        }
+    }
+
+    private synchronized @Nullable ClassFile lookup(@NotNull Key key) {
+        final Strong entry = this.strong.get(key);
+        if (entry != null) {
+            this.hits.increment();
+            return entry.value();
+        }
+        if (!this.softTier) return null;
+
+        this.expunge();
+        final Soft ref = this.soft.remove(key);
+        final ClassFile value = (ref == null) ? null : ref.get();
+        if (value == null) return null;
+        this.hits.increment();
+        this.softHits.increment();
+        this.insert(key, value, weigh(value));
+        return value;
+    }
+
+    private synchronized void put(@NotNull Key key, @NotNull ClassFile value) {
+        final long w = weigh(value);
+        if (this.softTier) {
+            this.expunge();
+            this.soft.remove(key);
+        }
+        this.insert(key, value, w);
+    }
+
+    private void insert(@NotNull Key key, @NotNull ClassFile value, long w) {
+        final Strong old = this.strong.put(key, new Strong(value, w));
+        if (old != null) this.weight -= old.weight();
+        this.weight += w;
+
+        final Iterator<Map.Entry<Key, Strong>> it = this.strong.entrySet().iterator();
+        while (this.weight > this.maxWeight && it.hasNext()) {
+            final Map.Entry<Key, Strong> eldest = it.next();
+            it.remove();
+            this.weight -= eldest.getValue().weight();
+            this.evictions.increment();
+            if (this.softTier) {
+                this.soft.put(eldest.getKey(), new Soft(eldest.getKey(), eldest.getValue().value(), this.queue));
+            }
+        }
+    }
+
+    /**
+     * Removes soft tier entries whose referent has been cleared by the garbage collector.
+     */
+    private void expunge() {
+        Reference<? extends ClassFile> ref;
+        while ((ref = this.queue.poll()) != null) {
+            final Soft entry = (Soft) ref;
+            this.soft.remove(entry.key, entry);
+        }
+    }
+
+    private static @NotNull ClassFile await(@NotNull CompletableFuture<ClassFile> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    //
+
+    /**
+     * A class name relative to a source passed to {@link #wrap(AnnolyzeClassSource)}.
+     */
+    record Key(@NotNull AnnolyzeClassSource source, @NotNull String name) {
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key other)) return false;
+            return this.source == other.source && this.name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.source) + this.name.hashCode();
+        }
+
+    }
+
+    private record Strong(@NotNull ClassFile value, long weight) { }
+
+    private static final class Soft extends SoftReference<ClassFile> {
+
+        private final Key key;
+
+        Soft(@NotNull Key key, @NotNull ClassFile value, @NotNull ReferenceQueue<ClassFile> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.archive.ArchiveBackedSource;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A view of another source whose scan entries are read through an {@link AnnolyzeDiskCache}. A view of an archive
+ * passes the archive on, so that index builds still use an index embedded in it.
+ */
+@ApiStatus.Internal
+final class CachedClassSource extends AbstractAnnolyzeClassSource implements ArchiveBackedSource {
+
+    private final AnnolyzeDiskCacheImpl cache;
+    private final AnnolyzeClassSource delegate;
+
+    CachedClassSource(
+            @NotNull AnnolyzeDiskCacheImpl cache,
+            @NotNull AnnolyzeClassSource delegate,
+            int parallelism
+    ) throws IllegalArgumentException {
+        super(parallelism);
+        this.cache = cache;
+        this.delegate = delegate;
+    }
+
+    //
+
+    @Override
+    public @Nullable AnnolyzeArchive archive() {
+        return (this.delegate instanceof AnnolyzeArchive archive) ? archive : null;
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource sub(@NotNull String pkg) {
+        return new CachedClassSource(this.cache, this.delegate.sub(pkg), this.parallelism);
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource parallelism(int parallelism) throws IllegalArgumentException {
+        return new CachedClassSource(this.cache, this.delegate.parallelism(parallelism), parallelism);
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        // Not cached: entries are addressed by their data, which would have to be read to look one up
+        return this.delegate.read(className);
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        final AnnolyzeArchive archive = this.archive();
+        final AnnolyzeClassScan scan = this.delegate.scan(recursive);
+        final List<AnnolyzeClassEntry> entries = scan.entries();
+        final List<AnnolyzeClassEntry> ret = new ArrayList<>(entries.size());
+        for (AnnolyzeClassEntry entry : entries) ret.add(new Entry(entry, archive));
+        return AnnolyzeClassScan.of(ret, scan);
+    }
+
+    //
+
+    private final class Entry implements AnnolyzeClassEntry {
+
+        private final AnnolyzeClassEntry delegate;
+        private final AnnolyzeArchive archive;
+
+        Entry(@NotNull AnnolyzeClassEntry delegate, @Nullable AnnolyzeArchive archive) {
+            this.delegate = delegate;
+            this.archive = archive;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return this.delegate.name();
+        }
+
+        @Override
+        public long size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return this.delegate.bytes();
+        }
+
+        @Override
+        public long fingerprint() throws IOException {
+            return this.delegate.fingerprint();
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return CachedClassSource.this.cache.read(this.delegate, this.archive);
+        }
+
+    }
+
+}
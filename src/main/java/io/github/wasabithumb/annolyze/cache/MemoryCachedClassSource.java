@@ -0,0 +1,134 @@
+package io.github.wasabithumb.annolyze.cache;
+
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.archive.ArchiveBackedSource;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A view of another source whose reads are served from an {@link AnnolyzeMemoryCache}. Classes are keyed by their
+ * name relative to the source which was wrapped, so that views created with {@link #sub(String) sub} share entries
+ * with the view they came from. A view of an archive passes the archive on, so that index builds still use an index
+ * embedded in it.
+ */
+@ApiStatus.Internal
+final class MemoryCachedClassSource extends AbstractAnnolyzeClassSource implements ArchiveBackedSource {
+
+    private final AnnolyzeMemoryCacheImpl cache;
+    private final AnnolyzeClassSource root;
+    private final AnnolyzeClassSource delegate;
+    private final String prefix;
+
+    MemoryCachedClassSource(
+            @NotNull AnnolyzeMemoryCacheImpl cache,
+            @NotNull AnnolyzeClassSource root,
+            @NotNull AnnolyzeClassSource delegate,
+            @NotNull String prefix,
+            int parallelism
+    ) throws IllegalArgumentException {
+        super(parallelism);
+        this.cache = cache;
+        this.root = root;
+        this.delegate = delegate;
+        this.prefix = prefix;
+    }
+
+    private @NotNull AnnolyzeMemoryCacheImpl.Key key(@NotNull String name) {
+        return new AnnolyzeMemoryCacheImpl.Key(this.root, this.prefix + name);
+    }
+
+    //
+
+    @Override
+    public @Nullable AnnolyzeArchive archive() {
+        return (this.delegate instanceof AnnolyzeArchive archive) ? archive : null;
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource sub(@NotNull String pkg) {
+        return new MemoryCachedClassSource(
+                this.cache,
+                this.root,
+                this.delegate.sub(pkg),
+                this.prefix + pkg + ".",
+                this.parallelism
+        );
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource parallelism(int parallelism) throws IllegalArgumentException {
+        return new MemoryCachedClassSource(
+                this.cache,
+                this.root,
+                this.delegate.parallelism(parallelism),
+                this.prefix,
+                parallelism
+        );
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        return this.cache.get(this.key(className), () -> this.delegate.read(className));
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        final AnnolyzeClassScan scan = this.delegate.scan(recursive);
+        final List<AnnolyzeClassEntry> entries = scan.entries();
+        final List<AnnolyzeClassEntry> ret = new ArrayList<>(entries.size());
+        for (AnnolyzeClassEntry entry : entries) ret.add(new Entry(entry));
+        return AnnolyzeClassScan.of(ret, scan);
+    }
+
+    //
+
+    private final class Entry implements AnnolyzeClassEntry {
+
+        private final AnnolyzeClassEntry delegate;
+
+        Entry(@NotNull AnnolyzeClassEntry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return this.delegate.name();
+        }
+
+        @Override
+        public long size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return this.delegate.bytes();
+        }
+
+        @Override
+        public long fingerprint() throws IOException {
+            return this.delegate.fingerprint();
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return MemoryCachedClassSource.this.cache.get(
+                    MemoryCachedClassSource.this.key(this.delegate.name()),
+                    this.delegate::read
+            );
+        }
+
+    }
+
+}
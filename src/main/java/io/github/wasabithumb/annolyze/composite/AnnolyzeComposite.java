@@ -0,0 +1,115 @@
+package io.github.wasabithumb.annolyze.composite;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.directory.AnnolyzeDirectory;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Utility for reading out the class files in an ordered list of sources, such as a class path. When several
+ * sources contain a class with the same name, the first source wins and the others are never read.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeComposite extends AnnolyzeClassSource {
+
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeComposite of(@NotNull List<? extends AnnolyzeClassSource> sources) {
+        return new AnnolyzeCompositeImpl(List.copyOf(sources));
+    }
+
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeComposite of(@NotNull AnnolyzeClassSource @NotNull ... sources) {
+        return of(List.of(sources));
+    }
+
+    /**
+     * Creates a composite of the given archives (JAR, ZIP or JMOD) and directories, in order.
+     * @throws IllegalArgumentException A file is neither an archive nor a directory.
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeComposite ofFiles(@NotNull Collection<? extends File> files) throws IllegalArgumentException {
+        final List<AnnolyzeClassSource> sources = new ArrayList<>(files.size());
+        for (File file : files) {
+            if (file.isDirectory()) {
+                sources.add(AnnolyzeDirectory.of(file));
+            } else {
+                sources.add(AnnolyzeArchive.of(file));
+            }
+        }
+        return new AnnolyzeCompositeImpl(sources);
+    }
+
+    /**
+     * Creates a composite of the entries on the {@code java.class.path} of the running JVM. Entries which do not
+     * exist, or which are neither archives nor directories, are skipped.
+     */
+    @Contract("-> new")
+    static @NotNull AnnolyzeComposite classPath() {
+        final String prop = System.getProperty("java.class.path", "");
+        final List<AnnolyzeClassSource> sources = new ArrayList<>();
+        for (String part : prop.split(File.pathSeparator)) {
+            if (part.isEmpty()) continue;
+            final File file = new File(part);
+            if (file.isDirectory()) {
+                sources.add(AnnolyzeDirectory.of(file));
+            } else if (file.isFile() && AnnolyzeArchive.isArchiveName(file.getName())) {
+                sources.add(AnnolyzeArchive.of(file));
+            }
+        }
+        return new AnnolyzeCompositeImpl(sources);
+    }
+
+    //
+
+    /**
+     * The sources in this composite, in order of precedence.
+     */
+    @NotNull @Unmodifiable List<AnnolyzeClassSource> sources();
+
+    /**
+     * {@inheritDoc}
+     * Sources which do not contain the package are omitted from the result.
+     */
+    @Override
+    @NotNull AnnolyzeComposite sub(@NotNull String pkg);
+
+    /**
+     * {@inheritDoc}
+     * Reads are scheduled across the entries of all sources with work stealing, so a single large source
+     * does not hold up the others.
+     */
+    @Override
+    @Contract("_ -> new")
+    @NotNull AnnolyzeComposite parallelism(int parallelism) throws IllegalArgumentException;
+
+    /**
+     * Returns a view of this composite whose scans parse byte-identical classes once, such as a class which is
+     * also shaded under another name, or copied into the versioned entries of a multi-release JAR. Entries of
+     * archives which share a CRC and size in the central directory are confirmed by a SHA-256 hash of their data
+     * when read, and every copy with the same hash is returned the same {@link ClassFile} instance. Other entries,
+     * and {@link #read(String)}, are unaffected. Classes shadowed by name are dropped before this applies.
+     * {@link io.github.wasabithumb.annolyze.index.AnnotationIndex#build(AnnolyzeClassSource) Index builds} scan
+     * the sources of a composite one by one, and do not deduplicate.
+     */
+    @Contract("-> new")
+    @NotNull AnnolyzeComposite deduplicated();
+
+    /**
+     * Finds the class files of which byte-identical copies exist in several places across the archives of this
+     * composite, including copies shadowed by name. Only entries sharing a CRC and size with another are read, to
+     * confirm them by hash; nothing is parsed. Groups are in order of their first copy.
+     * @throws IOException A generic IO exception.
+     */
+    @NotNull @Unmodifiable List<AnnolyzeDuplicateGroup> duplicates() throws IOException;
+
+}
@@ -0,0 +1,126 @@
+package io.github.wasabithumb.annolyze.composite;
+
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+
+@ApiStatus.Internal
+class AnnolyzeCompositeImpl extends AbstractAnnolyzeClassSource implements AnnolyzeComposite {
+
+    protected final List<AnnolyzeClassSource> sources;
+    protected final boolean deduplicate;
+
+    @ApiStatus.Internal
+    AnnolyzeCompositeImpl(@NotNull List<AnnolyzeClassSource> sources, int parallelism, boolean deduplicate) {
+        super(parallelism);
+        this.sources = Collections.unmodifiableList(sources);
+        this.deduplicate = deduplicate;
+    }
+
+    @ApiStatus.Internal
+    AnnolyzeCompositeImpl(@NotNull List<AnnolyzeClassSource> sources, int parallelism) {
+        this(sources, parallelism, false);
+    }
+
+    @ApiStatus.Internal
+    AnnolyzeCompositeImpl(@NotNull List<AnnolyzeClassSource> sources) {
+        this(sources, 1);
+    }
+
+    //
+
+    @Override
+    public @NotNull @Unmodifiable List<AnnolyzeClassSource> sources() {
+        return this.sources;
+    }
+
+    @Override
+    public @NotNull AnnolyzeComposite sub(@NotNull String pkg) {
+        final List<AnnolyzeClassSource> subs = new ArrayList<>(this.sources.size());
+        for (AnnolyzeClassSource source : this.sources) {
+            try {
+                subs.add(source.sub(pkg));
+            } catch (IllegalArgumentException ignored) {
+                // Source does not contain the package (e.g. directory does not exist)
+            }
+        }
+        return new AnnolyzeCompositeImpl(subs, this.parallelism, this.deduplicate);
+    }
+
+    @Override
+    public @NotNull AnnolyzeComposite parallelism(int parallelism) throws IllegalArgumentException {
+        return new AnnolyzeCompositeImpl(this.sources, parallelism, this.deduplicate);
+    }
+
+    @Override
+    public @NotNull AnnolyzeComposite deduplicated() {
+        return new AnnolyzeCompositeImpl(this.sources, this.parallelism, true);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<AnnolyzeDuplicateGroup> duplicates() throws IOException {
+        return ContentDeduplicator.duplicates(this.sources, this.parallelism);
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        for (AnnolyzeClassSource source : this.sources) {
+            try {
+                return source.read(className);
+            } catch (FileNotFoundException | NoSuchFileException ignored) {
+                // Not present in this source, try the next
+            }
+        }
+        throw new FileNotFoundException("Class " + className + " not found in any of " + this.sources.size() +
+                " sources");
+    }
+
+    /**
+     * Scans each source in order, keeping only the first entry for each class name. Shadowed entries are dropped
+     * here, before anything is read. When deduplicating, archive entries are then grouped by content.
+     */
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        final List<AnnolyzeClassScan> scans = new ArrayList<>(this.sources.size());
+        try {
+            final List<AnnolyzeClassEntry> entries = new ArrayList<>();
+            final Set<String> seen = new HashSet<>();
+            final BitSet archived = new BitSet();
+            AnnolyzeClassScan scan;
+            for (AnnolyzeClassSource source : this.sources) {
+                scan = source.scan(recursive);
+                scans.add(scan);
+                final boolean archive = this.deduplicate && (source instanceof AnnolyzeArchive);
+                for (AnnolyzeClassEntry entry : scan.entries()) {
+                    if (!seen.add(entry.name())) continue;
+                    if (archive) archived.set(entries.size());
+                    entries.add(entry);
+                }
+            }
+            return AnnolyzeClassScan.of(
+                    this.deduplicate ? ContentDeduplicator.wrap(entries, archived) : entries,
+                    () -> IOUtil.closeAll(scans)
+            );
+        } catch (IOException | RuntimeException e) {
+            try {
+                IOUtil.closeAll(scans);
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+    }
+
+}
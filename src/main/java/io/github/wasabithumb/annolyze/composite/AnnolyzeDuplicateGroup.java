@@ -0,0 +1,38 @@
+package io.github.wasabithumb.annolyze.composite;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.List;
+
+/**
+ * Byte-identical copies of a class file found in several places within an {@link AnnolyzeComposite}, such as a
+ * library which is also shaded into another archive.
+ * @see AnnolyzeComposite#duplicates()
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeDuplicateGroup {
+
+    /**
+     * The SHA-256 hash of the class file data, in lowercase hexadecimal.
+     */
+    @NotNull String hash();
+
+    /**
+     * The size in bytes of the class file data.
+     */
+    long size();
+
+    /**
+     * The source holding each copy, in order of precedence. A source holding several copies appears once for each.
+     */
+    @NotNull @Unmodifiable List<AnnolyzeClassSource> sources();
+
+    /**
+     * The name of each copy within its source, in the same order as {@link #sources()}.
+     */
+    @NotNull @Unmodifiable List<String> names();
+
+}
@@ -0,0 +1,15 @@
+package io.github.wasabithumb.annolyze.composite;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+@ApiStatus.Internal
+record AnnolyzeDuplicateGroupImpl(
+        @NotNull String hash,
+        long size,
+        @NotNull List<AnnolyzeClassSource> sources,
+        @NotNull List<String> names
+) implements AnnolyzeDuplicateGroup { }
@@ -0,0 +1,219 @@
+package io.github.wasabithumb.annolyze.composite;
+
+import io.github.wasabithumb.annolyze.Annolyze;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds byte-identical class files across the archives of a composite. Archive entries are grouped by the CRC and
+ * size recorded in the central directory, which costs no reads, and only entries sharing both are read and
+ * confirmed by a SHA-256 hash of their data.
+ */
+@ApiStatus.Internal
+final class ContentDeduplicator {
+
+    /**
+     * Wraps the archive entries among the given entries which share a CRC and size with another, so that copies
+     * with identical data are parsed once and share a single {@link ClassFile}.
+     * @param archived The indices of the entries which belong to an archive.
+     */
+    static @NotNull List<AnnolyzeClassEntry> wrap(
+            @NotNull List<AnnolyzeClassEntry> entries,
+            @NotNull BitSet archived
+    ) throws IOException {
+        final long[] keys = new long[entries.size()];
+        final Map<Long, Group> groups = new HashMap<>();
+        for (int i = archived.nextSetBit(0); i >= 0; i = archived.nextSetBit(i + 1)) {
+            keys[i] = entries.get(i).fingerprint();
+            groups.computeIfAbsent(keys[i], (Long k) -> new Group()).size++;
+        }
+
+        final List<AnnolyzeClassEntry> ret = new ArrayList<>(entries);
+        for (int i = archived.nextSetBit(0); i >= 0; i = archived.nextSetBit(i + 1)) {
+            final Group group = groups.get(keys[i]);
+            if (group.size < 2) continue;
+            group.pending.incrementAndGet();
+            ret.set(i, new SharedEntry(entries.get(i), group));
+        }
+        return ret;
+    }
+
+    static @NotNull @Unmodifiable List<AnnolyzeDuplicateGroup> duplicates(
+            @NotNull List<AnnolyzeClassSource> sources,
+            int parallelism
+    ) throws IOException {
+        final List<AnnolyzeClassSource> flat = new ArrayList<>();
+        flatten(sources, flat);
+
+        final List<AnnolyzeClassScan> scans = new ArrayList<>(flat.size());
+        try {
+            final Map<Long, List<Copy>> candidates = new LinkedHashMap<>();
+            for (AnnolyzeClassSource source : flat) {
+                if (!(source instanceof AnnolyzeArchive)) continue;
+                final AnnolyzeClassScan scan = source.scan(true);
+                scans.add(scan);
+                for (AnnolyzeClassEntry entry : scan.entries()) {
+                    candidates.computeIfAbsent(entry.fingerprint(), (Long k) -> new ArrayList<>(1))
+                            .add(new Copy(source, entry));
+                }
+            }
+
+            final List<Copy> unconfirmed = new ArrayList<>();
+            for (List<Copy> copies : candidates.values()) {
+                if (copies.size() > 1) unconfirmed.addAll(copies);
+            }
+            final List<byte[]> hashes = ParallelUtil.map(
+                    unconfirmed,
+                    (Copy copy) -> sha256(copy.entry().bytes()),
+                    parallelism
+            );
+
+            // A CRC and size shared by different data splits into one group per hash
+            final Map<ByteBuffer, List<Copy>> confirmed = new LinkedHashMap<>();
+            for (int i=0; i < hashes.size(); i++) {
+                confirmed.computeIfAbsent(ByteBuffer.wrap(hashes.get(i)), (ByteBuffer k) -> new ArrayList<>(2))
+                        .add(unconfirmed.get(i));
+            }
+
+            final HexFormat hex = HexFormat.of();
+            final List<AnnolyzeDuplicateGroup> ret = new ArrayList<>();
+            for (Map.Entry<ByteBuffer, List<Copy>> group : confirmed.entrySet()) {
+                final List<Copy> copies = group.getValue();
+                if (copies.size() < 2) continue;
+                final AnnolyzeClassSource[] groupSources = new AnnolyzeClassSource[copies.size()];
+                final String[] names = new String[copies.size()];
+                for (int i=0; i < names.length; i++) {
+                    groupSources[i] = copies.get(i).source();
+                    names[i] = copies.get(i).entry().name();
+                }
+                ret.add(new AnnolyzeDuplicateGroupImpl(
+                        hex.formatHex(group.getKey().array()),
+                        copies.get(0).entry().size(),
+                        List.of(groupSources),
+                        List.of(names)
+                ));
+            }
+            return Collections.unmodifiableList(ret);
+        } finally {
+            IOUtil.closeAll(scans);
+        }
+    }
+
+    private static void flatten(@NotNull List<AnnolyzeClassSource> sources, @NotNull List<AnnolyzeClassSource> out) {
+        for (AnnolyzeClassSource source : sources) {
+            if (source instanceof AnnolyzeComposite composite) {
+                flatten(composite.sources(), out);
+            } else {
+                out.add(source);
+            }
+        }
+    }
+
+    private static byte @NotNull [] sha256(@NotNull ByteBuffer data) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required to be supported", e);
+        }
+        digest.update(data);
+        return digest.digest();
+    }
+
+    private ContentDeduplicator() { }
+
+    //
+
+    private record Copy(@NotNull AnnolyzeClassSource source, @NotNull AnnolyzeClassEntry entry) { }
+
+    /**
+     * The entries of a scan which share a CRC and size. Parsed classes are kept by hash until every entry of the
+     * group has been read once, so that a scan read lazily does not retain them.
+     */
+    private static final class Group {
+
+        private int size = 0;
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private final Map<ByteBuffer, CompletableFuture<ClassFile>> parsed = new ConcurrentHashMap<>();
+
+    }
+
+    private static final class SharedEntry implements AnnolyzeClassEntry {
+
+        private final AnnolyzeClassEntry delegate;
+        private final Group group;
+
+        SharedEntry(@NotNull AnnolyzeClassEntry delegate, @NotNull Group group) {
+            this.delegate = delegate;
+            this.group = group;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return this.delegate.name();
+        }
+
+        @Override
+        public long size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return this.delegate.bytes();
+        }
+
+        @Override
+        public long fingerprint() throws IOException {
+            return this.delegate.fingerprint();
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            final ByteBuffer bytes = this.delegate.bytes();
+            final ByteBuffer hash = ByteBuffer.wrap(sha256(bytes.duplicate()));
+            final CompletableFuture<ClassFile> future = new CompletableFuture<>();
+            final CompletableFuture<ClassFile> existing = this.group.parsed.putIfAbsent(hash, future);
+            try {
+                if (existing != null) {
+                    try {
+                        return existing.join();
+                    } catch (CompletionException e) {
+                        // The copy which was parsed first failed; this copy reports its own failure
+                        return Annolyze.read(bytes);
+                    }
+                }
+                try {
+                    final ClassFile ret = Annolyze.read(bytes);
+                    future.complete(ret);
+                    return ret;
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+            } finally {
+                if (this.group.pending.decrementAndGet() <= 0) this.group.parsed.clear();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * A long-running server which keeps the class skeletons and annotation indexes of archives and directories warm
+ * for many client JVMs on the same machine, such as the forks of a build. Clients connect over a Unix domain socket
+ * through an {@link AnnolyzeDaemonSource}, and fall back to reading classes themselves when no daemon is running.
+ * <p>
+ * Each archive or directory is read in full on its first request. Later requests only rescan it, which reads no
+ * class data unless classes have changed; an archive is not even rescanned while its size and modification time
+ * are unchanged, nor a directory while no change has been reported for it. A bounded number of archives and
+ * directories is kept warm, and the least recently requested one is dropped first.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeDaemon extends Closeable {
+
+    /**
+     * The time allowed for a daemon to answer a request from a source, used by {@link #source(Path, File)}.
+     */
+    @NotNull Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30L);
+
+    /**
+     * The socket used by default: in {@code $XDG_RUNTIME_DIR} where set, and otherwise in a directory of the
+     * temporary directory named after the current user, which the daemon creates readable by that user only.
+     * Clients only trust a socket owned by their own user.
+     */
+    static @NotNull Path defaultSocket() {
+        final String runtime = System.getenv("XDG_RUNTIME_DIR");
+        if (runtime != null && !runtime.isEmpty()) return Path.of(runtime, "annolyze.sock");
+        return Path.of(System.getProperty("java.io.tmpdir"), "annolyze-" + System.getProperty("user.name"), "annolyze.sock");
+    }
+
+    /**
+     * Starts a daemon listening on the given socket, which reads classes on as many threads as there are available
+     * processors.
+     * @throws IOException A daemon is already listening on the socket, or a generic IO exception.
+     * @see #start(Path, int)
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeDaemon start(@NotNull Path socket) throws IOException {
+        return start(socket, ParallelUtil.defaultParallelism());
+    }
+
+    /**
+     * Starts a daemon listening on the given socket. A socket file left behind by a daemon which is no longer
+     * running is replaced. Missing parent directories are created accessible to the current user only, as is the
+     * socket itself.
+     * @param parallelism The number of threads on which each archive or directory is read.
+     * @throws IllegalArgumentException Parallelism is less than 1.
+     * @throws IOException A daemon is already listening on the socket, or a generic IO exception.
+     */
+    @Contract("_, _ -> new")
+    static @NotNull AnnolyzeDaemon start(@NotNull Path socket, int parallelism) throws IOException {
+        return new AnnolyzeDaemonImpl(socket, parallelism);
+    }
+
+    /**
+     * Returns a source over the given archive or directory which is served by the daemon listening on the given
+     * socket, if any. No connection is made until the source is used, and requests time out after
+     * {@link #DEFAULT_TIMEOUT}.
+     * @throws IllegalArgumentException The file is neither a directory nor an archive.
+     * @see AnnolyzeDaemonSource
+     */
+    @Contract("_, _ -> new")
+    static @NotNull AnnolyzeDaemonSource source(@NotNull Path socket, @NotNull File file) throws IllegalArgumentException {
+        return source(socket, file, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Returns a source over the given archive or directory which is served by the daemon listening on the given
+     * socket, if any. A request which the daemon does not answer within the timeout is abandoned, and the source
+     * reads the classes itself.
+     * @throws IllegalArgumentException The file is neither a directory nor an archive, or the timeout is not
+     * positive.
+     * @see #source(Path, File)
+     */
+    @Contract("_, _, _ -> new")
+    static @NotNull AnnolyzeDaemonSource source(
+            @NotNull Path socket,
+            @NotNull File file,
+            @NotNull Duration timeout
+    ) throws IllegalArgumentException {
+        if (timeout.isNegative() || timeout.isZero())
+            throw new IllegalArgumentException("Timeout must be positive (got " + timeout + ")");
+        return DaemonClassSource.of(new DaemonClient(socket, timeout), file);
+    }
+
+    /**
+     * Returns a source over the given archive or directory which is served by the daemon listening on the
+     * {@link #defaultSocket() default socket}, if any.
+     * @throws IllegalArgumentException The file is neither a directory nor an archive.
+     * @see #source(Path, File)
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeDaemonSource source(@NotNull File file) throws IllegalArgumentException {
+        return source(defaultSocket(), file);
+    }
+
+    //
+
+    /**
+     * The socket which this daemon listens on.
+     */
+    @NotNull Path socket();
+
+    /**
+     * Reads an archive or directory now, rather than on its first request.
+     * @throws IOException A generic IO exception, including failure to read a class.
+     */
+    void warm(@NotNull File file) throws IOException;
+
+    /**
+     * Stops listening, closes all client connections and removes the socket file. Clients fall back to reading
+     * classes themselves.
+     * @throws IOException A generic IO exception.
+     */
+    @Override
+    void close() throws IOException;
+
+}
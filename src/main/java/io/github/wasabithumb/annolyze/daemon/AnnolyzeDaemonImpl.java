@@ -0,0 +1,297 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.wasabithumb.annolyze.daemon.DaemonProtocol.*;
+
+@ApiStatus.Internal
+final class AnnolyzeDaemonImpl implements AnnolyzeDaemon {
+
+    /**
+     * The number of archives and directories kept warm at once. The least recently requested one is dropped to
+     * make room for another, and is read in full again if it is requested later.
+     */
+    private static final int MAX_ROOTS = 64;
+
+    private final Path socket;
+    private final int parallelism;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+    private final ExecutorService workers;
+    private final Map<Path, DaemonRoot> roots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    AnnolyzeDaemonImpl(@NotNull Path socket, int parallelism) throws IOException {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.socket = socket;
+        this.parallelism = parallelism;
+
+        if (Files.exists(socket)) {
+            if (DaemonClient.probe(socket))
+                throw new IOException("A daemon is already listening on " + socket);
+            // Left behind by a daemon which did not shut down cleanly
+            Files.deleteIfExists(socket);
+        }
+        final Path parent = socket.toAbsolutePath().getParent();
+        if (parent != null && !Files.isDirectory(parent)) createPrivateDirectories(parent);
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bindPrivate(this.server, socket);
+        } catch (IOException e) {
+            this.server.close();
+            throw e;
+        }
+
+        final AtomicInteger counter = new AtomicInteger(0);
+        this.workers = Executors.newCachedThreadPool((Runnable r) -> {
+            final Thread thread = new Thread(r, "annolyze-daemon-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.thread = new Thread(this::run, "annolyze-daemon-accept");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    //
+
+    @Override
+    public @NotNull Path socket() {
+        return this.socket;
+    }
+
+    @Override
+    public void warm(@NotNull File file) throws IOException {
+        this.root(file.getPath()).refresh();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        this.server.close();
+        for (SocketChannel client : this.clients) closeQuietly(client);
+        this.workers.shutdownNow();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final List<DaemonRoot> roots;
+        synchronized (this.roots) {
+            roots = new ArrayList<>(this.roots.values());
+            this.roots.clear();
+        }
+        for (DaemonRoot root : roots) closeQuietly(root);
+        Files.deleteIfExists(this.socket);
+    }
+
+    //
+
+    private void run() {
+        while (!this.closed) {
+            final SocketChannel client;
+            try {
+                client = this.server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (this.closed) return;
+                continue;
+            }
+            this.clients.add(client);
+            try {
+                this.workers.execute(() -> this.serve(client));
+            } catch (RuntimeException e) {
+                // Rejected while closing
+                this.clients.remove(client);
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private void serve(@NotNull SocketChannel client) {
+        try (client) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            if (in.readInt() != MAGIC) return;
+            final int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                out.writeByte(STATUS_ERROR);
+                out.writeUTF("Unsupported protocol version " + version + " (expected " + VERSION + ")");
+                out.flush();
+                return;
+            }
+            out.writeByte(STATUS_OK);
+            out.flush();
+
+            int op;
+            while ((op = in.read()) != -1) {
+                final String root = in.readUTF();
+                final String prefix = in.readUTF();
+                final boolean recursive = in.readBoolean();
+                final String name = (op == OP_READ) ? in.readUTF() : null;
+                this.handle(out, op, root, prefix, recursive, name);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // The client went away, or the daemon is closing
+        } finally {
+            this.clients.remove(client);
+        }
+    }
+
+    /**
+     * Answers one request. Failures to bring the root up to date are reported to the client, which then reads the
+     * classes itself; failures to write the response end the connection.
+     */
+    private void handle(
+            @NotNull DataOutputStream out,
+            int op,
+            @NotNull String root,
+            @NotNull String prefix,
+            boolean recursive,
+            @Nullable String name
+    ) throws IOException {
+        final DaemonRoot.State state;
+        byte[] index = null;
+        try {
+            state = this.root(root).refresh();
+            if (op == OP_INDEX) index = state.index(prefix, recursive);
+        } catch (IOException | RuntimeException e) {
+            out.writeByte(STATUS_ERROR);
+            out.writeUTF(String.valueOf(e));
+            return;
+        }
+
+        switch (op) {
+            case OP_LIST -> {
+                final List<DaemonRoot.Entry> entries = view(state, prefix, recursive);
+                out.writeByte(STATUS_OK);
+                out.writeInt(entries.size());
+                for (DaemonRoot.Entry entry : entries) out.writeUTF(entry.name().substring(prefix.length()));
+            }
+            case OP_SCAN -> {
+                final List<DaemonRoot.Entry> entries = view(state, prefix, recursive);
+                out.writeByte(STATUS_OK);
+                out.writeInt(entries.size());
+                for (DaemonRoot.Entry entry : entries) {
+                    out.writeUTF(entry.name().substring(prefix.length()));
+                    out.writeLong(entry.fingerprint());
+                    out.writeLong(entry.size());
+                    writeBytes(out, entry.skeleton());
+                }
+            }
+            case OP_READ -> {
+                final DaemonRoot.Entry entry = state.byName().get(prefix + name);
+                if (entry == null) {
+                    out.writeByte(STATUS_NOT_FOUND);
+                } else {
+                    out.writeByte(STATUS_OK);
+                    writeBytes(out, entry.skeleton());
+                }
+            }
+            case OP_INDEX -> {
+                out.writeByte(STATUS_OK);
+                writeBytes(out, index);
+            }
+            default -> {
+                out.writeByte(STATUS_ERROR);
+                out.writeUTF("Unknown operation " + op);
+            }
+        }
+    }
+
+    private @NotNull DaemonRoot root(@NotNull String path) throws IOException {
+        final Path key = Path.of(path).toAbsolutePath().normalize();
+        final DaemonRoot ret;
+        DaemonRoot evicted = null;
+        synchronized (this.roots) {
+            final DaemonRoot existing = this.roots.get(key);
+            if (existing != null) return existing;
+            ret = DaemonRoot.of(key, this.parallelism);
+            this.roots.put(key, ret);
+            if (this.roots.size() > MAX_ROOTS) {
+                final Iterator<DaemonRoot> it = this.roots.values().iterator();
+                evicted = it.next();
+                it.remove();
+            }
+        }
+        // Closing waits for a refresh in progress, which must not hold up other requests
+        if (evicted != null) closeQuietly(evicted);
+        return ret;
+    }
+
+    private static @NotNull List<DaemonRoot.Entry> view(
+            @NotNull DaemonRoot.State state,
+            @NotNull String prefix,
+            boolean recursive
+    ) {
+        if (prefix.isEmpty() && recursive) return state.entries();
+        return state.entries().stream()
+                .filter((DaemonRoot.Entry entry) -> inView(entry.name(), prefix, recursive))
+                .toList();
+    }
+
+    /**
+     * Binds the server so that other users can never connect, not even briefly. A socket file takes its permissions
+     * from the umask, which Java cannot change, so the socket is bound inside a new directory accessible to the
+     * current user only, restricted, and then renamed into place.
+     */
+    private static void bindPrivate(@NotNull ServerSocketChannel server, @NotNull Path socket) throws IOException {
+        if (!socket.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            return;
+        }
+        final Path dir = Files.createTempDirectory(
+                socket.toAbsolutePath().getParent(),
+                ".annolyze",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))
+        );
+        // Kept short, since socket paths are limited to around a hundred bytes
+        final Path tmp = dir.resolve("s");
+        try {
+            server.bind(UnixDomainSocketAddress.of(tmp));
+            Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            Files.move(tmp, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+            Files.delete(dir);
+        }
+    }
+
+    private static void createPrivateDirectories(@NotNull Path dir) throws IOException {
+        if (dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(dir);
+        }
+    }
+
+    private static void closeQuietly(@NotNull Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) { }
+    }
+
+}
@@ -0,0 +1,62 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A source over an archive or directory which asks an {@link AnnolyzeDaemon} for its classes, and reads them
+ * itself when no daemon is running or the daemon fails. Scans receive the skeletons of all classes in a single
+ * response, so reading the classes of a scan costs no further requests; {@link #read(String)} costs one request
+ * per class.
+ * <p>
+ * Class data is only ever read locally: {@link io.github.wasabithumb.annolyze.AnnolyzeClassEntry#bytes() bytes}
+ * of a scan entry, and searches with a
+ * {@link io.github.wasabithumb.annolyze.ConstantPoolFilter constant pool filter}, do not use the daemon.
+ * <p>
+ * Connections to the daemon are pooled between requests, and shared with the sources derived from this one by
+ * {@link #sub(String)} and {@link #parallelism(int)}; {@link #close() Closing} any of them releases the pool.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeDaemonSource extends AnnolyzeClassSource, Closeable {
+
+    /**
+     * The archive or directory backing this source.
+     */
+    @NotNull File file();
+
+    /**
+     * Returns true if a daemon currently accepts connections on the socket of this source.
+     */
+    boolean isDaemonRunning();
+
+    /**
+     * Returns an index over the classes of this source, as kept warm by the daemon. Without a daemon, this builds
+     * the index locally as {@link AnnotationIndex#build(AnnolyzeClassSource)} does.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    @NotNull AnnotationIndex index() throws IOException;
+
+    /**
+     * Closes the pooled connections of this source and the sources derived from it. They remain usable, but no
+     * longer ask the daemon; classes are read locally instead.
+     */
+    @Override
+    void close();
+
+    @Override
+    @NotNull AnnolyzeDaemonSource sub(@NotNull String pkg);
+
+    @Override
+    @Contract("_ -> new")
+    @NotNull AnnolyzeDaemonSource parallelism(int parallelism) throws IllegalArgumentException;
+
+}
@@ -0,0 +1,247 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import io.github.wasabithumb.annolyze.*;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.directory.AnnolyzeDirectory;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileSkeleton;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static io.github.wasabithumb.annolyze.daemon.DaemonProtocol.*;
+
+@ApiStatus.Internal
+final class DaemonClassSource extends AbstractAnnolyzeClassSource implements AnnolyzeDaemonSource {
+
+    static @NotNull DaemonClassSource of(
+            @NotNull DaemonClient client,
+            @NotNull File file
+    ) throws IllegalArgumentException {
+        final AnnolyzeClassSource local = file.isDirectory() ? AnnolyzeDirectory.of(file) : AnnolyzeArchive.of(file);
+        return new DaemonClassSource(client, file, file.getAbsolutePath(), "", local, local.parallelism());
+    }
+
+    //
+
+    private final DaemonClient client;
+    private final File file;
+    private final String root;
+    private final String prefix;
+    private final AnnolyzeClassSource local;
+
+    private DaemonClassSource(
+            @NotNull DaemonClient client,
+            @NotNull File file,
+            @NotNull String root,
+            @NotNull String prefix,
+            @NotNull AnnolyzeClassSource local,
+            int parallelism
+    ) throws IllegalArgumentException {
+        super(parallelism);
+        this.client = client;
+        this.file = file;
+        this.root = root;
+        this.prefix = prefix;
+        this.local = local;
+    }
+
+    //
+
+    @Override
+    public @NotNull File file() {
+        return this.file;
+    }
+
+    @Override
+    public boolean isDaemonRunning() {
+        return this.client.ping();
+    }
+
+    @Override
+    public @NotNull AnnotationIndex index() throws IOException {
+        // Responses are decoded while reading them, so that malformed ones fall back to the local source
+        final AnnotationIndex ret = this.client.request(
+                OP_INDEX,
+                this.root,
+                this.prefix,
+                true,
+                null,
+                (DataInputStream in) -> AnnotationIndex.read(ByteBuffer.wrap(readBytes(in)))
+        );
+        return (ret == null) ? AnnotationIndex.build(this.local) : ret;
+    }
+
+    @Override
+    public void close() {
+        this.client.close();
+    }
+
+    @Override
+    public @NotNull AnnolyzeDaemonSource sub(@NotNull String pkg) {
+        return new DaemonClassSource(
+                this.client,
+                this.file,
+                this.root,
+                this.prefix + pkg + ".",
+                this.local.sub(pkg),
+                this.parallelism
+        );
+    }
+
+    @Override
+    public @NotNull AnnolyzeDaemonSource parallelism(int parallelism) throws IllegalArgumentException {
+        return new DaemonClassSource(
+                this.client,
+                this.file,
+                this.root,
+                this.prefix,
+                this.local.parallelism(parallelism),
+                parallelism
+        );
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        final ClassFile ret = this.client.request(
+                OP_READ,
+                this.root,
+                this.prefix,
+                true,
+                className,
+                (DataInputStream in) -> ClassFileSkeleton.read(readBytes(in))
+        );
+        return (ret == null) ? this.local.read(className) : ret;
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<String> list(boolean recursive) throws IOException {
+        final List<String> ret = this.client.request(OP_LIST, this.root, this.prefix, recursive, null, DaemonClassSource::readNames);
+        return (ret == null) ? this.local.list(recursive) : ret;
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        final LocalScan ret = this.client.request(
+                OP_SCAN,
+                this.root,
+                this.prefix,
+                recursive,
+                null,
+                this::readEntries
+        );
+        return (ret == null) ? this.local.scan(recursive) : AnnolyzeClassScan.of(ret.entries, ret);
+    }
+
+    @Override
+    public @NotNull Optional<ClassFile> findFirst(
+            @Nullable ConstantPoolFilter prefilter,
+            @NotNull Predicate<? super ClassFile> predicate
+    ) throws IOException {
+        // Constant pool filters need class data, which the daemon does not serve
+        if (prefilter != null) return this.local.findFirst(prefilter, predicate);
+        return super.findFirst(null, predicate);
+    }
+
+    private @NotNull LocalScan readEntries(@NotNull DataInputStream in) throws IOException {
+        final int count = readCount(in);
+        final LocalScan ret = new LocalScan();
+        for (int i=0; i < count; i++) {
+            ret.entries.add(new Entry(ret, in.readUTF(), in.readLong(), in.readLong(), readBytes(in)));
+        }
+        return ret;
+    }
+
+    private static @NotNull List<String> readNames(@NotNull DataInputStream in) throws IOException {
+        final int count = readCount(in);
+        final List<String> ret = new ArrayList<>(Math.min(count, 1024));
+        for (int i=0; i < count; i++) ret.add(in.readUTF());
+        return Collections.unmodifiableList(ret);
+    }
+
+    //
+
+    /**
+     * The entries of a scan answered by the daemon. Class data is not served by the daemon, so the first entry
+     * asked for its bytes scans the local source once for the whole scan.
+     */
+    private final class LocalScan implements Closeable {
+
+        private final List<AnnolyzeClassEntry> entries = new ArrayList<>();
+        private AnnolyzeClassScan scan = null;
+        private Map<String, AnnolyzeClassEntry> byName = null;
+        private boolean closed = false;
+
+        synchronized @NotNull AnnolyzeClassEntry find(@NotNull String name) throws IOException {
+            if (this.closed) throw new IOException("Scan is closed");
+            if (this.byName == null) {
+                this.scan = DaemonClassSource.this.local.scan(true);
+                final Map<String, AnnolyzeClassEntry> map = new HashMap<>();
+                for (AnnolyzeClassEntry entry : this.scan.entries()) map.putIfAbsent(entry.name(), entry);
+                this.byName = map;
+            }
+            final AnnolyzeClassEntry ret = this.byName.get(name);
+            if (ret == null) throw new FileNotFoundException("Class " + name + " was removed");
+            return ret;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            this.closed = true;
+            this.byName = null;
+            if (this.scan != null) this.scan.close();
+        }
+
+    }
+
+    private static final class Entry implements AnnolyzeClassEntry {
+
+        private final LocalScan local;
+        private final String name;
+        private final long fingerprint;
+        private final long size;
+        private final byte[] skeleton;
+
+        Entry(@NotNull LocalScan local, @NotNull String name, long fingerprint, long size, byte @NotNull [] skeleton) {
+            this.local = local;
+            this.name = name;
+            this.fingerprint = fingerprint;
+            this.size = size;
+            this.skeleton = skeleton;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return this.name;
+        }
+
+        @Override
+        public long size() {
+            return this.size;
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return this.local.find(this.name).bytes();
+        }
+
+        @Override
+        public long fingerprint() {
+            return this.fingerprint;
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return ClassFileSkeleton.read(this.skeleton);
+        }
+
+    }
+
+}
@@ -0,0 +1,238 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import static io.github.wasabithumb.annolyze.daemon.DaemonProtocol.*;
+
+/**
+ * The client side of the daemon protocol. Connections are opened on demand and pooled, so that concurrent requests
+ * from one JVM use separate connections. Every failure, including there being no daemon at all, is reported as a
+ * missing answer so that the caller can fall back to reading classes itself. That includes a daemon which does not
+ * answer within the timeout; its connection is closed from a timer thread, since reads on Unix domain socket
+ * channels cannot time out by themselves.
+ */
+@ApiStatus.Internal
+final class DaemonClient {
+
+    private static final ScheduledThreadPoolExecutor DEADLINES = createDeadlines();
+
+    private static @NotNull ScheduledThreadPoolExecutor createDeadlines() {
+        final ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+            final Thread thread = new Thread(r, "annolyze-daemon-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Nearly every deadline is cancelled, and would otherwise be held until it expires
+        ret.setRemoveOnCancelPolicy(true);
+        return ret;
+    }
+
+    /**
+     * Returns true if a daemon accepts connections on the given socket, without keeping a connection open.
+     */
+    static boolean probe(@NotNull Path socket) {
+        return (new DaemonClient(socket, AnnolyzeDaemon.DEFAULT_TIMEOUT)).ping();
+    }
+
+    //
+
+    private final Path socket;
+    private final long timeoutMillis;
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed = false;
+
+    DaemonClient(@NotNull Path socket, @NotNull Duration timeout) {
+        this.socket = socket;
+        this.timeoutMillis = timeout.toMillis();
+    }
+
+    //
+
+    /**
+     * Returns true if a daemon accepts connections on the socket. Pooled connections are not used, since they may
+     * outlive the daemon.
+     */
+    boolean ping() {
+        final Connection connection = this.connect();
+        if (connection == null) return false;
+        connection.close();
+        return true;
+    }
+
+    /**
+     * Closes the pooled connections. Later requests are not sent, and return null.
+     */
+    void close() {
+        this.closed = true;
+        Connection connection;
+        while ((connection = this.idle.poll()) != null) connection.close();
+    }
+
+    /**
+     * Sends a request and reads a successful response, or returns null if the daemon is unavailable, failed, sent
+     * a malformed response, did not answer within the timeout or does not know the class. A pooled connection which
+     * turns out to be stale, such as after the daemon was restarted, is retried once on a new connection.
+     */
+    <T> @Nullable T request(
+            int op,
+            @NotNull String root,
+            @NotNull String prefix,
+            boolean recursive,
+            @Nullable String name,
+            @NotNull Response<T> response
+    ) {
+        if (this.closed) return null;
+        Connection connection = this.idle.poll();
+        final boolean pooled = (connection != null);
+        if (!pooled) connection = this.connect();
+        if (connection == null) return null;
+
+        try {
+            return this.exchange(connection, op, root, prefix, recursive, name, response);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            if (!pooled) return null;
+        }
+
+        // Connections pooled before the failure are likely stale too
+        Connection stale;
+        while ((stale = this.idle.poll()) != null) stale.close();
+        connection = this.connect();
+        if (connection == null) return null;
+        try {
+            return this.exchange(connection, op, root, prefix, recursive, name, response);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            return null;
+        }
+    }
+
+    private <T> @Nullable T exchange(
+            @NotNull Connection connection,
+            int op,
+            @NotNull String root,
+            @NotNull String prefix,
+            boolean recursive,
+            @Nullable String name,
+            @NotNull Response<T> response
+    ) throws IOException {
+        final ScheduledFuture<?> deadline = this.deadline(connection);
+        final T ret;
+        final boolean expired;
+        try {
+            final DataOutputStream out = connection.out;
+            out.writeByte(op);
+            out.writeUTF(root);
+            out.writeUTF(prefix);
+            out.writeBoolean(recursive);
+            if (name != null) out.writeUTF(name);
+            out.flush();
+
+            final DataInputStream in = connection.in;
+            final int status = in.readUnsignedByte();
+            if (status == STATUS_OK) {
+                ret = response.read(in);
+            } else if (status == STATUS_ERROR) {
+                in.readUTF();
+                ret = null;
+            } else if (status == STATUS_NOT_FOUND) {
+                ret = null;
+            } else {
+                throw new StreamCorruptedException("Unknown status " + status);
+            }
+        } finally {
+            expired = !deadline.cancel(false);
+        }
+
+        // A connection closed by its deadline just as the response arrived is not reused
+        if (expired) {
+            connection.close();
+        } else {
+            this.idle.offer(connection);
+            if (this.closed) this.close();
+        }
+        return ret;
+    }
+
+    /**
+     * Schedules the connection to be closed once the timeout has passed, unblocking any read in progress.
+     */
+    private @NotNull ScheduledFuture<?> deadline(@NotNull Connection connection) {
+        return DEADLINES.schedule(connection::close, this.timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private @Nullable Connection connect() {
+        SocketChannel channel = null;
+        try {
+            checkOwner(this.socket);
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(this.socket));
+            final Connection ret = new Connection(channel);
+            final ScheduledFuture<?> deadline = this.deadline(ret);
+            final boolean accepted;
+            try {
+                ret.out.writeInt(MAGIC);
+                ret.out.writeShort(VERSION);
+                ret.out.flush();
+                accepted = (ret.in.readUnsignedByte() == STATUS_OK);
+            } finally {
+                deadline.cancel(false);
+            }
+            if (!accepted || !channel.isOpen()) {
+                ret.close();
+                return null;
+            }
+            return ret;
+        } catch (IOException | UnsupportedOperationException e) {
+            // No daemon is running, the socket belongs to another user, or the platform has no Unix domain sockets
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) { }
+            }
+            return null;
+        }
+    }
+
+    //
+
+    @FunctionalInterface
+    interface Response<T> {
+
+        @NotNull T read(@NotNull DataInputStream in) throws IOException;
+
+    }
+
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(@NotNull SocketChannel channel) {
+            this.channel = channel;
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+
+        void close() {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) { }
+        }
+
+    }
+
+}
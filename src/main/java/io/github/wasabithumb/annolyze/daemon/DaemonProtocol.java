@@ -0,0 +1,104 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserPrincipal;
+
+/**
+ * <p>
+ *     Constants and shared routines for the protocol spoken between an {@link AnnolyzeDaemon} and its clients. All
+ *     integers are big-endian and strings are written as by {@link DataOutputStream#writeUTF(String)}. A client
+ *     opens with {@code u4 magic, u2 version}, to which the daemon answers with a status. Requests then follow one
+ *     at a time on the same connection:
+ * </p>
+ * <pre>
+ * u1 op, utf root, utf package prefix ("" or ending in "."), u1 recursive, then for READ: utf class name
+ * </pre>
+ * <p>
+ *     Each response starts with {@code u1 status}. An error is followed by {@code utf message}, and a success by
+ *     the payload of the operation:
+ * </p>
+ * <ul>
+ *     <li>LIST: {@code u4 count}, then {@code utf name} per class.</li>
+ *     <li>SCAN: {@code u4 count}, then {@code utf name, u8 fingerprint, u8 size, u4 length} and a
+ *     {@link io.github.wasabithumb.annolyze.file.ClassFileSkeleton skeleton} per class.</li>
+ *     <li>READ: {@code u4 length} and a skeleton.</li>
+ *     <li>INDEX: {@code u4 length} and an {@link io.github.wasabithumb.annolyze.index.AnnotationIndex index} in its
+ *     binary format.</li>
+ * </ul>
+ */
+@ApiStatus.Internal
+final class DaemonProtocol {
+
+    static final int MAGIC = 0x414E444D; // ANDM
+    static final int VERSION = 1;
+
+    static final int OP_LIST = 1;
+    static final int OP_SCAN = 2;
+    static final int OP_READ = 3;
+    static final int OP_INDEX = 4;
+
+    static final int STATUS_OK = 0;
+    static final int STATUS_NOT_FOUND = 1;
+    static final int STATUS_ERROR = 2;
+
+    static void writeBytes(@NotNull DataOutputStream out, byte @NotNull [] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the count which leads a list. Lists are read element by element, so a count which is large but not
+     * negative fails only once the stream runs out.
+     */
+    static int readCount(@NotNull DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count < 0) throw new StreamCorruptedException("Negative count " + count);
+        return count;
+    }
+
+    static byte @NotNull [] readBytes(@NotNull DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        if (len < 0) throw new StreamCorruptedException("Negative length " + len);
+        final byte[] ret = new byte[len];
+        in.readFully(ret);
+        return ret;
+    }
+
+    /**
+     * Throws if the file is not owned by the user running this JVM, so that a socket created by another user of the
+     * machine is never trusted to serve classes. File systems without owners are not checked.
+     */
+    static void checkOwner(@NotNull Path path) throws IOException {
+        final UserPrincipal owner;
+        try {
+            owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        final UserPrincipal self = path.getFileSystem()
+                .getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!owner.equals(self)) throw new IOException(path + " is owned by " + owner.getName() + ", not " + self.getName());
+    }
+
+    /**
+     * Returns true if a class name, relative to the root of a source, is within the view with the given package
+     * prefix, as for {@link io.github.wasabithumb.annolyze.AnnolyzeClassSource#scan(boolean) scan}.
+     */
+    static boolean inView(@NotNull String name, @NotNull String prefix, boolean recursive) {
+        if (!name.startsWith(prefix)) return false;
+        return recursive || name.indexOf('.', prefix.length()) == -1;
+    }
+
+    private DaemonProtocol() { }
+
+}
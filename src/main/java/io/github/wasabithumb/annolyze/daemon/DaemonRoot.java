@@ -0,0 +1,283 @@
+package io.github.wasabithumb.annolyze.daemon;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.directory.AnnolyzeDirectory;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileSkeleton;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The warm state of one archive or directory served by a daemon: a skeleton of every class, and an index over
+ * them. Each request {@link #refresh() refreshes} the state first, which only reads classes whose fingerprint has
+ * changed. Archives are not rescanned at all while their size and modification time are unchanged, and directories
+ * are not rescanned while no change has been reported for them, for up to {@link #DIRECTORY_TTL_NANOS}.
+ */
+@ApiStatus.Internal
+final class DaemonRoot implements Closeable {
+
+    /**
+     * The longest time for which a directory is trusted to be unchanged when no change was reported, since some
+     * platforms report changes late or not at all.
+     */
+    private static final long DIRECTORY_TTL_NANOS = TimeUnit.SECONDS.toNanos(2L);
+
+    static @NotNull DaemonRoot of(@NotNull Path path, int parallelism) throws IOException {
+        if (Files.isDirectory(path))
+            return new DaemonRoot(AnnolyzeDirectory.of(path).parallelism(parallelism), null, path);
+        if (Files.isRegularFile(path) && AnnolyzeArchive.isArchiveName(path.getFileName().toString()))
+            return new DaemonRoot(AnnolyzeArchive.of(path.toFile()).parallelism(parallelism), path, null);
+        throw new FileNotFoundException("No archive or directory at " + path);
+    }
+
+    //
+
+    private final AnnolyzeClassSource source;
+    private final Path archive;
+    private final Path directory;
+    private long size = -1L;
+    private long modified = -1L;
+    private long scanned = 0L;
+    private long refreshed = 0L;
+    private WatchService watch = null;
+    private boolean closed = false;
+    private State state = null;
+
+    private DaemonRoot(@NotNull AnnolyzeClassSource source, @Nullable Path archive, @Nullable Path directory) {
+        this.source = source;
+        this.archive = archive;
+        this.directory = directory;
+    }
+
+    //
+
+    /**
+     * Brings the state up to date with the source, and returns it. Concurrent requests are coalesced: a request
+     * which waited for a refresh that started after it arrived is answered by that refresh.
+     * @throws IOException A generic IO exception, including failure to read a class. The previous state is kept.
+     */
+    @NotNull State refresh() throws IOException {
+        final long arrived = System.nanoTime();
+        synchronized (this) {
+            if (this.state != null && this.refreshed - arrived >= 0L) return this.state;
+            this.refreshed = System.nanoTime();
+            return this.refresh0();
+        }
+    }
+
+    private @NotNull State refresh0() throws IOException {
+        final State previous = this.state;
+        long size = -1L;
+        long modified = -1L;
+        if (this.archive != null) {
+            // Taken before the scan, so that a change during the scan is seen by the next refresh
+            final BasicFileAttributes attrs = Files.readAttributes(this.archive, BasicFileAttributes.class);
+            size = attrs.size();
+            modified = attrs.lastModifiedTime().toMillis();
+            if (previous != null && size == this.size && modified == this.modified) return previous;
+        } else if (this.directory != null) {
+            // Changes are polled before the scan, so that a change during the scan is seen by the next refresh
+            final boolean changed = this.pollChanges();
+            final long now = System.nanoTime();
+            if (previous != null && !changed && now - this.scanned < DIRECTORY_TTL_NANOS) return previous;
+            this.scanned = now;
+        }
+
+        final List<Entry> entries;
+        final List<ClassFile> added = new ArrayList<>();
+        final List<ClassFile> changed = new ArrayList<>();
+        try (AnnolyzeClassScan scan = this.source.scan(true)) {
+            final List<AnnolyzeClassEntry> found = scan.entries();
+            final Entry[] kept = new Entry[found.size()];
+            final long[] fingerprints = new long[kept.length];
+            final List<AnnolyzeClassEntry> stale = new ArrayList<>();
+            final List<Integer> staleIndices = new ArrayList<>();
+            for (int i=0; i < kept.length; i++) {
+                final AnnolyzeClassEntry entry = found.get(i);
+                fingerprints[i] = entry.fingerprint();
+                final Entry old = (previous == null) ? null : previous.byName().get(entry.name());
+                if (old != null && old.fingerprint() == fingerprints[i]) {
+                    kept[i] = old;
+                } else {
+                    stale.add(entry);
+                    staleIndices.add(i);
+                }
+            }
+
+            final List<ClassFile> read = ParallelUtil.map(stale, AnnolyzeClassEntry::read, this.source.parallelism());
+            for (int i=0; i < read.size(); i++) {
+                final int index = staleIndices.get(i);
+                final AnnolyzeClassEntry entry = stale.get(i);
+                final ClassFile cf = read.get(i);
+                kept[index] = new Entry(entry.name(), fingerprints[index], entry.size(), ClassFileSkeleton.toByteArray(cf));
+                if (previous != null && previous.byName().containsKey(entry.name())) {
+                    changed.add(cf);
+                } else {
+                    added.add(cf);
+                }
+            }
+            entries = Arrays.asList(kept);
+        }
+
+        final Map<String, Entry> byName = new HashMap<>(entries.size() * 2);
+        for (Entry entry : entries) byName.putIfAbsent(entry.name(), entry);
+        final List<String> removed = new ArrayList<>();
+        if (previous != null) {
+            for (Entry entry : previous.entries()) {
+                if (!byName.containsKey(entry.name())) removed.add(entry.name());
+            }
+        }
+
+        final AnnotationIndex index;
+        if (previous == null) {
+            index = AnnotationIndex.of(added);
+        } else if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+            index = null;
+        } else {
+            index = previous.index().patch(AnnolyzeScanDelta.of(added, changed, removed));
+        }
+
+        this.size = size;
+        this.modified = modified;
+        if (index != null) this.state = new State(List.copyOf(entries), byName, index, new ConcurrentHashMap<>());
+        return this.state;
+    }
+
+    /**
+     * Returns true if a change to the directory may have been missed since the last call. The first call starts
+     * watching the directory and every directory below it; directories created later are watched as they appear.
+     */
+    private boolean pollChanges() throws IOException {
+        if (this.closed) return true;
+        final WatchService watch = this.watch;
+        if (watch == null) {
+            try {
+                this.watch = this.directory.getFileSystem().newWatchService();
+            } catch (UnsupportedOperationException e) {
+                this.closed = true;
+                return true;
+            }
+            this.register(this.directory);
+            return true;
+        }
+
+        boolean changed = false;
+        try {
+            WatchKey key;
+            while ((key = watch.poll()) != null) {
+                changed = true;
+                final Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != StandardWatchEventKinds.ENTRY_CREATE) continue;
+                    final Path child = dir.resolve((Path) event.context());
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) this.register(child);
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            return true;
+        }
+        return changed;
+    }
+
+    /**
+     * Watches a directory and the directories below it. Directories which cannot be watched, such as ones deleted
+     * during the walk, are left to the {@link #DIRECTORY_TTL_NANOS TTL}.
+     */
+    private void register(@NotNull Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public @NotNull FileVisitResult preVisitDirectory(@NotNull Path d, @NotNull BasicFileAttributes attrs) {
+                try {
+                    d.register(
+                            DaemonRoot.this.watch,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY
+                    );
+                } catch (IOException ignored) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Stops watching the directory, if any. A root is closed once it is evicted from the daemon; requests which
+     * still hold it keep working, and rescan the directory every time.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        if (this.watch != null) this.watch.close();
+    }
+
+    //
+
+    /**
+     * A class as served to clients.
+     */
+    record Entry(@NotNull String name, long fingerprint, long size, byte @NotNull [] skeleton) { }
+
+    /**
+     * An immutable snapshot of a root, along with the serialized indexes of the views requested of it so far.
+     */
+    record State(
+            @NotNull List<Entry> entries,
+            @NotNull Map<String, Entry> byName,
+            @NotNull AnnotationIndex index,
+            @NotNull Map<String, byte[]> indexes
+    ) {
+
+        /**
+         * Returns the serialized index of the view with the given package prefix.
+         */
+        byte @NotNull [] index(@NotNull String prefix, boolean recursive) throws IOException {
+            final String key = (recursive ? "r:" : "d:") + prefix;
+            byte[] ret = this.indexes.get(key);
+            if (ret != null) return ret;
+
+            AnnotationIndex view = this.index;
+            if (!prefix.isEmpty() || !recursive) {
+                final List<ClassFile> classes = new ArrayList<>();
+                for (Entry entry : this.entries) {
+                    if (DaemonProtocol.inView(entry.name(), prefix, recursive)) {
+                        classes.add(ClassFileSkeleton.read(entry.skeleton()));
+                    }
+                }
+                view = AnnotationIndex.of(classes);
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            view.write(out);
+            ret = out.toByteArray();
+
+            final byte[] existing = this.indexes.putIfAbsent(key, ret);
+            return (existing == null) ? ret : existing;
+        }
+
+    }
+
+}
@@ -2,9 +2,13 @@ package io.github.wasabithumb.annolyze.directory;
 
 import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 
 /**
  * Utility for reading out the class files in a directory.
@@ -13,6 +17,10 @@ import java.io.File;
 public interface AnnolyzeDirectory extends AnnolyzeClassSource {
 
     static @NotNull AnnolyzeDirectory of(@NotNull File directory) throws IllegalArgumentException {
+        return of(directory.toPath());
+    }
+
+    static @NotNull AnnolyzeDirectory of(@NotNull Path directory) throws IllegalArgumentException {
         return new AnnolyzeDirectoryImpl(directory);
     }
 
@@ -21,4 +29,31 @@ public interface AnnolyzeDirectory extends AnnolyzeClassSource {
     @Override
     @NotNull AnnolyzeDirectory sub(@NotNull String pkg);
 
+    /**
+     * {@inheritDoc}
+     * Subdirectories are also walked in parallel when this is greater than 1.
+     */
+    @Override
+    @Contract("_ -> new")
+    @NotNull AnnolyzeDirectory parallelism(int parallelism) throws IllegalArgumentException;
+
+    /**
+     * Reads every class in this directory and its subdirectories into memory, then keeps them up to date as files
+     * change on disk. Bursts of changes, such as a compiler writing its output, are applied together once no
+     * further change has been seen for the given duration.
+     * @throws IOException A generic IO exception, including failure to read a class.
+     * @see AnnolyzeDirectoryWatcher
+     */
+    @Contract("_ -> new")
+    @NotNull AnnolyzeDirectoryWatcher watch(@NotNull Duration debounce) throws IOException;
+
+    /**
+     * Watches this directory with the {@link AnnolyzeDirectoryWatcher#DEFAULT_DEBOUNCE default} debounce.
+     * @see #watch(Duration)
+     */
+    @Contract("-> new")
+    default @NotNull AnnolyzeDirectoryWatcher watch() throws IOException {
+        return this.watch(AnnolyzeDirectoryWatcher.DEFAULT_DEBOUNCE);
+    }
+
 }
@@ -1,34 +1,47 @@
 package io.github.wasabithumb.annolyze.directory;
 
-import io.github.wasabithumb.annolyze.Annolyze;
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
 import io.github.wasabithumb.annolyze.file.ClassFile;
-import io.github.wasabithumb.annolyze.misc.IOBiFunction;
 import io.github.wasabithumb.annolyze.misc.PathUtil;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Unmodifiable;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 @ApiStatus.Internal
-class AnnolyzeDirectoryImpl implements AnnolyzeDirectory {
+class AnnolyzeDirectoryImpl extends AbstractAnnolyzeClassSource implements AnnolyzeDirectory {
 
-    protected final File dir;
+    private static final String PACKAGE_INFO = "package-info" + PathUtil.DOT_CLASS;
+
+    protected final Path dir;
 
     @ApiStatus.Internal
-    AnnolyzeDirectoryImpl(@NotNull File dir) throws IllegalArgumentException {
-        if (!dir.isDirectory()) throw new IllegalArgumentException("Path \"" + dir.getAbsolutePath() +
+    AnnolyzeDirectoryImpl(@NotNull Path dir, int parallelism) throws IllegalArgumentException {
+        super(parallelism);
+        if (!Files.isDirectory(dir)) throw new IllegalArgumentException("Path \"" + dir.toAbsolutePath() +
                 "\" is not a directory");
         this.dir = dir;
     }
 
-    private @NotNull File navigate(@NotNull String dotPath, boolean addSuffix) {
+    @ApiStatus.Internal
+    AnnolyzeDirectoryImpl(@NotNull Path dir) throws IllegalArgumentException {
+        this(dir, 1);
+    }
+
+    private @NotNull Path navigate(@NotNull String dotPath, boolean addSuffix) {
         final int pkgLen = dotPath.length();
-        File file = this.dir;
+        Path path = this.dir;
         int start = 0;
         int end = 0;
 
@@ -38,102 +51,211 @@ class AnnolyzeDirectoryImpl implements AnnolyzeDirectory {
             if (done || dotPath.charAt(end) == '.') {
                 String chunk = dotPath.substring(start, end);
                 if (done && addSuffix) chunk += PathUtil.DOT_CLASS;
-                file = new File(file, chunk);
+                path = path.resolve(chunk);
                 start = ++end;
             } else {
                 end++;
             }
         } while (!done);
 
-        return file;
+        return path;
     }
 
     @Override
     public @NotNull AnnolyzeDirectory sub(@NotNull String pkg) {
-        return new AnnolyzeDirectoryImpl(this.navigate(pkg, false));
+        return new AnnolyzeDirectoryImpl(this.navigate(pkg, false), this.parallelism);
+    }
+
+    @Override
+    public @NotNull AnnolyzeDirectory parallelism(int parallelism) throws IllegalArgumentException {
+        return new AnnolyzeDirectoryImpl(this.dir, parallelism);
     }
 
     @Override
     public @NotNull ClassFile read(@NotNull String className) throws IOException {
-        final File file = this.navigate(className, true);
-        return Annolyze.read(file);
+        return DirectoryFileReader.read(this.navigate(className, true));
     }
 
     @Override
-    public @NotNull @Unmodifiable List<String> list(boolean recursive) throws IOException {
-        return Collections.unmodifiableList(this.list0(
-                recursive,
-                (String path, File ignored) -> path,
-                true
-        ));
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        return AnnolyzeClassScan.of(this.walk(recursive), null);
     }
 
     @Override
-    public @NotNull @Unmodifiable List<ClassFile> readAll(boolean recursive) throws IOException {
-        return Collections.unmodifiableList(this.list0(
-                recursive,
-                (String ignored, File file) -> Annolyze.read(file),
-                false
-        ));
+    public @NotNull AnnolyzeDirectoryWatcher watch(@NotNull Duration debounce) throws IOException {
+        return new AnnolyzeDirectoryWatcherImpl(this, debounce);
+    }
+
+    //
+
+    /**
+     * Collects the class files in this directory, sorted by name so that results are stable regardless of
+     * the order in which the file system reports them.
+     */
+    private @NotNull List<Entry> walk(boolean recursive) throws IOException {
+        final List<Entry> ret;
+        if (recursive && this.parallelism > 1) {
+            final ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+            try {
+                ret = pool.invoke(new WalkTask(this.dir, "", null));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            ret = new ArrayList<>();
+            Files.walkFileTree(
+                    this.dir,
+                    EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                    recursive ? Integer.MAX_VALUE : 1,
+                    new WalkVisitor(this.dir, ret)
+            );
+        }
+        ret.sort(Comparator.comparing(Entry::name));
+        return ret;
+    }
+
+    static boolean isClassFileName(@NotNull String name) {
+        if (name.length() < 7 || !name.endsWith(PathUtil.DOT_CLASS)) return false;
+        return !name.equals(PACKAGE_INFO);
+    }
+
+    static @NotNull String stripSuffix(@NotNull String name) {
+        return name.substring(0, name.length() - 6);
+    }
+
+    static long fingerprint(@NotNull BasicFileAttributes attributes) {
+        return (attributes.size() * 0x9E3779B97F4A7C15L) ^ attributes.lastModifiedTime().toMillis();
     }
 
     //
 
-    private <T> @NotNull List<T> list0(
-            boolean recursive,
-            @NotNull IOBiFunction<String, File, T> extract,
-            boolean requiresPath
-    ) throws IOException {
-        return this.list00("", this.dir, recursive, extract, requiresPath);
-    }
-
-    private <T> @NotNull List<T> list00(
-            @NotNull String prefix,
-            @NotNull File root,
-            boolean recursive,
-            @NotNull IOBiFunction<String, File, T> extract,
-            boolean requiresPath
-    ) throws IOException {
-        final File[] ents = root.listFiles();
-        if (ents == null) return Collections.emptyList();
-        final List<T> list = new ArrayList<>(ents.length);
-        this.list000(list, prefix, ents, recursive, extract, requiresPath);
-        return list;
-    }
-
-    private <T> void list000(
-            @NotNull List<T> list,
-            @NotNull String prefix,
-            @NotNull File @NotNull [] ents,
-            boolean recursive,
-            @NotNull IOBiFunction<String, File, T> extract,
-            boolean requiresPath
-    ) throws IOException {
-        for (File ent : ents) {
-            if (ent.isDirectory()) {
-                if (recursive) {
-                    list.addAll(this.list00(
-                            requiresPath ? prefix + ent.getName() + "." : prefix,
-                            ent,
-                            true,
-                            extract,
-                            requiresPath
-                    ));
+    private record Entry(
+            @NotNull String name,
+            @NotNull Path path,
+            @NotNull BasicFileAttributes attributes
+    ) implements AnnolyzeClassEntry {
+
+        @Override
+        public long size() {
+            return this.attributes.size();
+        }
+
+        @Override
+        public long fingerprint() {
+            return AnnolyzeDirectoryImpl.fingerprint(this.attributes);
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return DirectoryFileReader.bytes(this.path, this.attributes.size());
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return DirectoryFileReader.read(this.path, this.attributes.size());
+        }
+
+    }
+
+    private static final class WalkVisitor extends SimpleFileVisitor<Path> {
+
+        private final Path root;
+        private final List<Entry> out;
+
+        WalkVisitor(@NotNull Path root, @NotNull List<Entry> out) {
+            this.root = root;
+            this.out = out;
+        }
+
+        @Override
+        public @NotNull FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+
+            final String fileName = file.getFileName().toString();
+            if (!isClassFileName(fileName)) return FileVisitResult.CONTINUE;
+
+            // Only class files pay for building a name; directories are never concatenated
+            final Path relative = this.root.relativize(file);
+            final int count = relative.getNameCount();
+            final StringBuilder name = new StringBuilder();
+            for (int i=0; i < (count - 1); i++) name.append(relative.getName(i)).append('.');
+            name.append(fileName, 0, fileName.length() - 6);
+
+            this.out.add(new Entry(name.toString(), file, attrs));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public @NotNull FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc) throws IOException {
+            // Symbolic link cycles are silently skipped
+            if (exc instanceof FileSystemLoopException) return FileVisitResult.CONTINUE;
+            throw exc;
+        }
+
+    }
+
+    private static final class WalkTask extends RecursiveTask<List<Entry>> {
+
+        private final Path dir;
+        private final String prefix;
+        private final Ancestor ancestors;
+
+        WalkTask(@NotNull Path dir, @NotNull String prefix, @Nullable Ancestor ancestors) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected @NotNull List<Entry> compute() {
+            try {
+                return this.compute0();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private @NotNull List<Entry> compute0() throws IOException {
+            final Object key = Files.readAttributes(this.dir, BasicFileAttributes.class).fileKey();
+            if (key != null && Ancestor.contains(this.ancestors, key)) return new ArrayList<>(0);
+            final Ancestor self = (key == null) ? this.ancestors : new Ancestor(key, this.ancestors);
+
+            final List<Entry> ret = new ArrayList<>();
+            final List<WalkTask> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+                for (Path child : stream) {
+                    final BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    final String fileName = child.getFileName().toString();
+                    if (attrs.isDirectory()) {
+                        WalkTask task = new WalkTask(child, this.prefix + fileName + ".", self);
+                        task.fork();
+                        children.add(task);
+                    } else if (attrs.isRegularFile() && isClassFileName(fileName)) {
+                        ret.add(new Entry(this.prefix + stripSuffix(fileName), child, attrs));
+                    }
                 }
-                continue;
-            } else if (!ent.isFile()) {
-                continue;
             }
+            for (WalkTask task : children) ret.addAll(task.join());
+            return ret;
+        }
 
-            String name = ent.getName();
-            if (name.length() < 7 || !name.endsWith(PathUtil.DOT_CLASS)) continue;
-            if (name.length() == 18 && name.startsWith("package-info")) continue;
+    }
 
-            list.add(extract.apply(
-                    requiresPath ? prefix + name.substring(0, name.length() - 6) : prefix,
-                    ent
-            ));
+    /**
+     * Linked chain of directory keys from the walk root, used to detect symbolic link cycles.
+     */
+    private record Ancestor(@NotNull Object key, @Nullable Ancestor parent) {
+
+        static boolean contains(@Nullable Ancestor head, @NotNull Object key) {
+            while (head != null) {
+                if (head.key.equals(key)) return true;
+                head = head.parent;
+            }
+            return false;
         }
+
     }
 
 }
@@ -0,0 +1,87 @@
+package io.github.wasabithumb.annolyze.directory;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Keeps the classes of a directory in memory, updated from a {@link java.nio.file.WatchService} as files change on
+ * disk. Only the files and directories named by change events are examined, so an idle watcher costs nothing and a
+ * recompile costs time proportional to what it wrote. If the platform drops events, the whole directory is walked
+ * and compared by size and modification time; unchanged classes are still not read.
+ * <p>
+ * Changes are applied and {@link Listener listeners} notified on a dedicated daemon thread. The views returned by
+ * this watcher are safe to use from any thread, and may reflect a batch of changes which is still being applied.
+ * @see AnnolyzeDirectory#watch(Duration)
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeDirectoryWatcher extends Closeable {
+
+    /**
+     * The debounce used by {@link AnnolyzeDirectory#watch()}.
+     */
+    @NotNull Duration DEFAULT_DEBOUNCE = Duration.ofMillis(100L);
+
+    //
+
+    /**
+     * The directory being watched.
+     */
+    @NotNull AnnolyzeDirectory directory();
+
+    /**
+     * A live view of the classes currently in the directory, keyed and ordered by name.
+     */
+    @NotNull @UnmodifiableView Map<String, ClassFile> classes();
+
+    /**
+     * An index over the classes currently in the directory. The index is rebuilt from memory on the first call
+     * after a change; no classes are read.
+     */
+    @NotNull AnnotationIndex index();
+
+    /**
+     * Adds a listener to be notified of each batch of changes.
+     */
+    void subscribe(@NotNull Listener listener);
+
+    /**
+     * Removes a listener previously added with {@link #subscribe(Listener)}.
+     * @return True if the listener was subscribed.
+     */
+    boolean unsubscribe(@NotNull Listener listener);
+
+    /**
+     * Stops watching the directory. No listener is notified after this returns, unless it is called from a
+     * listener.
+     */
+    @Override
+    void close() throws IOException;
+
+    //
+
+    @FunctionalInterface
+    interface Listener {
+
+        /**
+         * Called after a batch of changes has been applied. Classes which could not be read are not included,
+         * and are retried when their file next changes.
+         */
+        void onChange(@NotNull AnnolyzeScanDelta delta);
+
+        /**
+         * Called when a file or directory could not be read while applying a batch of changes.
+         */
+        default void onError(@NotNull IOException exception) { }
+
+    }
+
+}
@@ -0,0 +1,377 @@
+package io.github.wasabithumb.annolyze.directory;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+@ApiStatus.Internal
+final class AnnolyzeDirectoryWatcherImpl implements AnnolyzeDirectoryWatcher {
+
+    /**
+     * A batch is applied after at most this many debounce periods, even if changes keep arriving, so that a long
+     * running build still produces updates.
+     */
+    private static final int MAX_DEBOUNCE_PERIODS = 10;
+
+    private final AnnolyzeDirectoryImpl directory;
+    private final long debounceNanos;
+    private final WatchService service;
+    private final Thread thread;
+    private final ConcurrentSkipListMap<String, ClassFile> classes = new ConcurrentSkipListMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Only accessed by the watcher thread once started
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> watched = new HashSet<>();
+    private final NavigableMap<String, Long> fingerprints = new TreeMap<>();
+
+    private AnnotationIndex index = null;
+
+    AnnolyzeDirectoryWatcherImpl(@NotNull AnnolyzeDirectoryImpl directory, @NotNull Duration debounce) throws IOException {
+        if (debounce.isNegative()) throw new IllegalArgumentException("Debounce may not be negative");
+        this.directory = directory;
+        this.debounceNanos = debounce.toNanos();
+        this.service = directory.dir.getFileSystem().newWatchService();
+        try {
+            final Batch initial = new Batch();
+            this.reconcile(directory.dir, initial);
+            if (!initial.errors.isEmpty()) throw initial.errors.get(0);
+        } catch (IOException | RuntimeException e) {
+            this.service.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "annolyze-watch-" + directory.dir.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    //
+
+    @Override
+    public @NotNull AnnolyzeDirectory directory() {
+        return this.directory;
+    }
+
+    @Override
+    public @NotNull @UnmodifiableView Map<String, ClassFile> classes() {
+        return Collections.unmodifiableMap(this.classes);
+    }
+
+    @Override
+    public synchronized @NotNull AnnotationIndex index() {
+        AnnotationIndex ret = this.index;
+        if (ret == null) this.index = ret = AnnotationIndex.of(this.classes.values());
+        return ret;
+    }
+
+    @Override
+    public void subscribe(@NotNull Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public boolean unsubscribe(@NotNull Listener listener) {
+        return this.listeners.remove(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.service.close();
+        if (Thread.currentThread() == this.thread) return;
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    //
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = this.service.take();
+                final Batch batch = new Batch();
+                final long deadline = System.nanoTime() + this.debounceNanos * MAX_DEBOUNCE_PERIODS;
+                do {
+                    this.drain(key, batch);
+                    if (System.nanoTime() - deadline >= 0L) break;
+                } while ((key = this.service.poll(this.debounceNanos, TimeUnit.NANOSECONDS)) != null);
+                this.apply(batch);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void drain(@NotNull WatchKey key, @NotNull Batch batch) {
+        final Path dir = this.keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                batch.overflow = true;
+            } else if (dir != null) {
+                batch.paths.add(dir.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            final Path removed = this.keys.remove(key);
+            if (removed != null) this.watched.remove(removed);
+        }
+    }
+
+    private void apply(@NotNull Batch batch) {
+        if (batch.overflow) {
+            this.tryReconcile(this.directory.dir, batch);
+        } else {
+            for (Path path : batch.paths) this.update(path, batch);
+        }
+
+        if (!batch.isEmpty()) {
+            batch.added.sort(Comparator.comparing(ClassFile::name));
+            batch.changed.sort(Comparator.comparing(ClassFile::name));
+            Collections.sort(batch.removed);
+            synchronized (this) {
+                this.index = null;
+            }
+        }
+
+        final AnnolyzeScanDelta delta = batch.isEmpty() ? null :
+                AnnolyzeScanDelta.of(batch.added, batch.changed, batch.removed);
+        for (Listener listener : this.listeners) {
+            try {
+                for (IOException e : batch.errors) listener.onError(e);
+                if (delta != null) listener.onChange(delta);
+            } catch (RuntimeException e) {
+                // A failing listener must not stop the watcher
+                Thread.UncaughtExceptionHandler handler = this.thread.getUncaughtExceptionHandler();
+                handler.uncaughtException(this.thread, e);
+            }
+        }
+    }
+
+    /**
+     * Applies a change event for a single path, which may name a class file, a directory or something which no
+     * longer exists.
+     */
+    private void update(@NotNull Path path, @NotNull Batch batch) {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            this.removeAll(this.name(path), batch);
+            return;
+        } catch (IOException e) {
+            batch.errors.add(e);
+            return;
+        }
+
+        if (attrs.isDirectory()) {
+            this.tryReconcile(path, batch);
+        } else if (attrs.isRegularFile() && AnnolyzeDirectoryImpl.isClassFileName(path.getFileName().toString())) {
+            final List<Candidate> stale = new ArrayList<>(1);
+            this.check(AnnolyzeDirectoryImpl.stripSuffix(this.name(path)), path, attrs, stale);
+            this.read(stale, batch);
+        }
+    }
+
+    private void tryReconcile(@NotNull Path dir, @NotNull Batch batch) {
+        try {
+            this.reconcile(dir, batch);
+        } catch (IOException e) {
+            batch.errors.add(e);
+        }
+    }
+
+    /**
+     * Walks a directory, registering any subdirectories not yet watched, and brings the classes under it up to
+     * date. Classes which were known under the directory but are no longer present are removed.
+     */
+    private void reconcile(@NotNull Path dir, @NotNull Batch batch) throws IOException {
+        final String name = this.name(dir);
+        final String prefix = name.isEmpty() ? "" : name + ".";
+        final Set<String> seen = new HashSet<>();
+        final List<Candidate> stale = new ArrayList<>();
+
+        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+
+            @Override
+            public @NotNull FileVisitResult preVisitDirectory(@NotNull Path d, @NotNull BasicFileAttributes attrs)
+                    throws IOException {
+                // Registered before listing, so that files created during the walk are not missed
+                if (AnnolyzeDirectoryWatcherImpl.this.watched.add(d)) {
+                    final WatchKey key = d.register(
+                            AnnolyzeDirectoryWatcherImpl.this.service,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY
+                    );
+                    // A renamed directory keeps its key, which now belongs to the new path
+                    final Path previous = AnnolyzeDirectoryWatcherImpl.this.keys.put(key, d);
+                    if (previous != null) AnnolyzeDirectoryWatcherImpl.this.watched.remove(previous);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+                final String fileName = file.getFileName().toString();
+                if (!attrs.isRegularFile() || !AnnolyzeDirectoryImpl.isClassFileName(fileName)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final String className = AnnolyzeDirectoryWatcherImpl.this.name(file);
+                final String stripped = AnnolyzeDirectoryImpl.stripSuffix(className);
+                seen.add(stripped);
+                AnnolyzeDirectoryWatcherImpl.this.check(stripped, file, attrs, stale);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc)
+                    throws IOException {
+                // Symbolic link cycles are skipped, as are files deleted during the walk
+                if (exc instanceof FileSystemLoopException || exc instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw exc;
+            }
+
+        });
+
+        final Map<String, Long> known = prefix.isEmpty() ? this.fingerprints :
+                this.fingerprints.subMap(prefix, true, name + "/", false);
+        final Iterator<String> it = known.keySet().iterator();
+        String next;
+        while (it.hasNext()) {
+            next = it.next();
+            if (seen.contains(next)) continue;
+            it.remove();
+            this.classes.remove(next);
+            batch.removed.add(next);
+        }
+
+        this.read(stale, batch);
+    }
+
+    private void check(
+            @NotNull String name,
+            @NotNull Path path,
+            @NotNull BasicFileAttributes attrs,
+            @NotNull List<Candidate> out
+    ) {
+        final long fingerprint = AnnolyzeDirectoryImpl.fingerprint(attrs);
+        final Long old = this.fingerprints.get(name);
+        if (old != null && old == fingerprint) return;
+        out.add(new Candidate(name, path, attrs.size(), fingerprint));
+    }
+
+    /**
+     * Reads stale classes on up to the parallelism of the directory. A class which fails to read keeps its previous
+     * state, and is retried when its file next changes.
+     */
+    private void read(@NotNull List<Candidate> stale, @NotNull Batch batch) {
+        if (stale.isEmpty()) return;
+        final List<ClassFile> read;
+        try {
+            read = ParallelUtil.map(stale, (Candidate c) -> {
+                try {
+                    return DirectoryFileReader.read(c.path(), c.size());
+                } catch (IOException e) {
+                    synchronized (batch.errors) {
+                        batch.errors.add(e);
+                    }
+                    return null;
+                }
+            }, this.directory.parallelism());
+        } catch (IOException e) {
+            // Unreachable; each read handles its own exception
+            batch.errors.add(e);
+            return;
+        }
+
+        for (int i=0; i < stale.size(); i++) {
+            final ClassFile cf = read.get(i);
+            if (cf == null) continue;
+            final Candidate c = stale.get(i);
+            this.fingerprints.put(c.name(), c.fingerprint());
+            if (this.classes.put(c.name(), cf) == null) {
+                batch.added.add(cf);
+            } else {
+                batch.changed.add(cf);
+            }
+        }
+    }
+
+    /**
+     * Removes the class with the given name, and all classes in the package with the given name. Deleting a
+     * directory produces a single event for the directory itself.
+     */
+    private void removeAll(@NotNull String name, @NotNull Batch batch) {
+        if (name.endsWith(".class")) {
+            final String stripped = AnnolyzeDirectoryImpl.stripSuffix(name);
+            if (this.fingerprints.remove(stripped) != null) {
+                this.classes.remove(stripped);
+                batch.removed.add(stripped);
+            }
+        }
+        final Iterator<String> it = this.fingerprints.subMap(name + ".", true, name + "/", false)
+                .keySet().iterator();
+        String next;
+        while (it.hasNext()) {
+            next = it.next();
+            it.remove();
+            this.classes.remove(next);
+            batch.removed.add(next);
+        }
+    }
+
+    /**
+     * The dotted name of a path relative to the watched directory, keeping any file extension.
+     */
+    private @NotNull String name(@NotNull Path path) {
+        final Path relative = this.directory.dir.relativize(path);
+        final int count = relative.getNameCount();
+        final StringBuilder sb = new StringBuilder();
+        for (int i=0; i < count; i++) {
+            if (i != 0) sb.append('.');
+            sb.append(relative.getName(i));
+        }
+        return sb.toString();
+    }
+
+    //
+
+    private record Candidate(@NotNull String name, @NotNull Path path, long size, long fingerprint) { }
+
+    private static final class Batch {
+
+        final Set<Path> paths = new LinkedHashSet<>();
+        final List<ClassFile> added = new ArrayList<>();
+        final List<ClassFile> changed = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        final List<IOException> errors = new ArrayList<>();
+        boolean overflow = false;
+
+        boolean isEmpty() {
+            return this.added.isEmpty() && this.changed.isEmpty() && this.removed.isEmpty();
+        }
+
+    }
+
+}
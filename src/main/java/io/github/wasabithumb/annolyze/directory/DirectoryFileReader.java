@@ -0,0 +1,96 @@
+package io.github.wasabithumb.annolyze.directory;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileBufferReader;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads class files through a {@link FileChannel} into a heap buffer owned by the calling thread, so that each
+ * class costs one open, one read and one close. The thread buffer grows to at most {@link #RETAINED_CAPACITY}
+ * bytes; larger files are read into a buffer of their own, and files at or above {@link #MAP_THRESHOLD} bytes
+ * are mapped instead.
+ */
+@ApiStatus.Internal
+final class DirectoryFileReader {
+
+    /**
+     * Files of at least this size are memory mapped rather than copied into the thread buffer. Mapping has a fixed
+     * cost that only pays off for unusually large class files.
+     */
+    static final long MAP_THRESHOLD = 1L << 20;
+
+    /**
+     * The largest buffer kept by a thread between reads. Heap rather than direct memory is used, so that buffers
+     * held by idle threads are bounded and reclaimed along with them.
+     */
+    static final int RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_CAPACITY));
+
+    /**
+     * Reads the class file at the given path, sizing the read from the channel.
+     */
+    static @NotNull ClassFile read(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, channel.size());
+        }
+    }
+
+    /**
+     * Reads the class file at the given path, sizing the read from attributes already known to the caller.
+     */
+    static @NotNull ClassFile read(@NotNull Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, size);
+        }
+    }
+
+    /**
+     * Reads the raw data of the class file at the given path into a new heap buffer, or maps it if it is at
+     * least {@link #MAP_THRESHOLD} bytes.
+     */
+    static @NotNull ByteBuffer bytes(@NotNull Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (size >= MAP_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            final ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) == -1) break;
+            }
+            return buf.flip();
+        }
+    }
+
+    private static @NotNull ClassFile read(@NotNull FileChannel channel, long size) throws IOException {
+        if (size >= MAP_THRESHOLD) {
+            return (new ClassFileBufferReader(channel.map(FileChannel.MapMode.READ_ONLY, 0L, size))).readClassFile();
+        }
+
+        final ByteBuffer buf = buffer((int) size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) == -1) break;
+        }
+        buf.flip();
+        return (new ClassFileBufferReader(buf)).readClassFile();
+    }
+
+    private static @NotNull ByteBuffer buffer(int size) {
+        if (size > RETAINED_CAPACITY) return ByteBuffer.allocate(size);
+        ByteBuffer buf = BUFFER.get();
+        if (buf.capacity() < size) {
+            buf = ByteBuffer.allocate(Integer.highestOneBit(size - 1) << 1);
+            BUFFER.set(buf);
+        }
+        buf.clear().limit(size);
+        return buf;
+    }
+
+}
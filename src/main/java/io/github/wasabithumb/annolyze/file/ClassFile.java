@@ -321,6 +321,31 @@ public final class ClassFile {
         return ret.toString();
     }
 
+    /**
+     * Returns true if the other object is a class file for the same class, with the same annotations in the same
+     * order, and the same members with the same access flags and annotations.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof ClassFile other)) return false;
+        if (!this.reference.equals(other.reference) || !this.annotations.equals(other.annotations) ||
+                !this.members.equals(other.members)) return false;
+
+        // Member references are equal regardless of their flags
+        final Map<MemberReference<?>, Integer> flags = new HashMap<>(other.members.size());
+        for (MemberReference<?> member : other.members.keySet()) flags.put(member, member.flags().value());
+        for (MemberReference<?> member : this.members.keySet()) {
+            if (flags.get(member) != member.flags().value()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * this.reference.hashCode() + this.annotations.hashCode()) + this.members.hashCode();
+    }
+
     /**
      * Alias for {@code toString(false)}
      * @see #toString(boolean)
@@ -0,0 +1,115 @@
+package io.github.wasabithumb.annolyze.file;
+
+import io.github.wasabithumb.annolyze.file.except.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining content of a {@link ByteBuffer} as a {@link ClassFile}. This is the buffer counterpart to
+ * {@link ClassFileInputStream}; reading advances the position of the buffer. The buffer is not retained by the
+ * resulting class file, so it is safe to reuse once {@link #readClassFile()} returns.
+ */
+public class ClassFileBufferReader {
+
+    private final ByteBuffer buffer;
+
+    public ClassFileBufferReader(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads the remaining content of the buffer as a class file.
+     * @throws ClassFileReadException The content of the buffer is unprocessable as class file data
+     * @throws IOException Generic IO exception; only thrown for buffers backed by a mapped file
+     */
+    public @NotNull ClassFile readClassFile() throws IOException {
+        return (new Decoder(this.buffer)).readClassFile();
+    }
+
+    //
+
+    private static final class Decoder extends ClassFileDecoder {
+
+        private final ByteBuffer buf;
+
+        Decoder(@NotNull ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        protected int read() {
+            if (!this.buf.hasRemaining()) return -1;
+            return this.buf.get() & 0xFF;
+        }
+
+        @Override
+        protected long skip(long count) {
+            final int n = (int) Math.min(count, this.buf.remaining());
+            this.buf.position(this.buf.position() + n);
+            return n;
+        }
+
+        @Override
+        protected int readU2() throws IOException {
+            if (this.buf.remaining() < 2)
+                throw new ClassFileIncompleteDataException("Failed to read U2 field", this.genericEOF());
+            return ((this.buf.get() & 0xFF) << 8) | (this.buf.get() & 0xFF);
+        }
+
+        @Override
+        protected long readU4() throws IOException {
+            if (this.buf.remaining() < 4)
+                throw new ClassFileIncompleteDataException("Failed to read U4 field", this.genericEOF());
+            return ((long) (this.buf.get() & 0xFF) << 24) |
+                    ((this.buf.get() & 0xFF) << 16) |
+                    ((this.buf.get() & 0xFF) << 8) |
+                    (this.buf.get() & 0xFF);
+        }
+
+        @Override
+        protected @NotNull String readModifiedUTF8() throws IOException {
+            // https://docs.oracle.com/javase/specs/jvms/se21/html/jvms-4.html#jvms-4.4.7
+            final int len = this.readU2();
+            if (this.buf.remaining() < len)
+                throw new ClassFileIncompleteDataException("Incomplete string", this.genericEOF());
+
+            final char[] chars = new char[len];
+            final int end = this.buf.position() + len;
+            int count = 0;
+            int a, b, c;
+            int head = this.buf.position();
+            while (head < end) {
+                a = this.buf.get(head++) & 0xFF;
+                switch (a >> 4) {
+                    case 0, 1, 2, 3, 4, 5, 6, 7 -> chars[count++] = (char) a;
+                    case 12, 13 -> {
+                        if (head >= end) throw this.invalidString("partial character at end");
+                        b = this.buf.get(head++);
+                        if ((b & 0xC0) != 0x80) throw this.invalidString("malformed input around byte " + head);
+                        chars[count++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+                    }
+                    case 14 -> {
+                        if ((head + 1) >= end) throw this.invalidString("partial character at end");
+                        b = this.buf.get(head++);
+                        c = this.buf.get(head++);
+                        if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80)
+                            throw this.invalidString("malformed input around byte " + (head - 1));
+                        chars[count++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+                    }
+                    default -> throw this.invalidString("malformed input around byte " + head);
+                }
+            }
+            this.buf.position(end);
+            return new String(chars, 0, count);
+        }
+
+        private @NotNull ClassFileInvalidDataException invalidString(@NotNull String detail) {
+            return new ClassFileInvalidDataException("Invalid string", new UTFDataFormatException(detail));
+        }
+
+    }
+
+}
@@ -0,0 +1,299 @@
+package io.github.wasabithumb.annolyze.file;
+
+import io.github.wasabithumb.annolyze.file.except.ClassFileIncompleteDataException;
+import io.github.wasabithumb.annolyze.file.except.ClassFileInvalidDataException;
+import io.github.wasabithumb.annolyze.file.except.ClassFileMalformedHeaderException;
+import io.github.wasabithumb.annolyze.file.except.ClassFileReadException;
+import io.github.wasabithumb.annolyze.reference.member.MemberReference;
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Writes and reads a {@link ClassFile} in a compact binary form, which holds only what a class file contributes to
+ * its skeleton. A skeleton is typically a small fraction of the size of the class file it was read from, and is
+ * read back without any of the work of parsing a constant pool. Reading a written skeleton yields a class file
+ * which is {@link ClassFile#equals(Object) equal} to the original.
+ * <h2>Format</h2>
+ * All integers other than the magic are unsigned LEB128 varints.
+ * <pre>
+ * u4     magic "ANSK"
+ * u1     major version, u1 minor version
+ * varint string count, then for each string:
+ *        varint length in UTF-16 units, then each unit in 1 to 3 bytes as in modified UTF-8
+ * varint class (string id, descriptor notation)
+ * varint annotation count, then each annotation (string id)
+ * varint field count, then for each field:
+ *        varint access flags, varint name (string id), varint descriptor (string id), annotations as above
+ * varint method count, then each method as for fields
+ * </pre>
+ * Each distinct string is stored once, so descriptors and annotation types repeated across members cost a single
+ * byte per use in most classes. When reading, each distinct annotation type is likewise represented by a single
+ * shared {@link ClassReference}. A reader accepts any minor version of its own major version.
+ */
+public final class ClassFileSkeleton {
+
+    private static final int MAGIC = 0x414E534B; // ANSK
+    private static final int MAJOR_VERSION = 1;
+    private static final int MINOR_VERSION = 0;
+
+    private ClassFileSkeleton() { }
+
+    /**
+     * Writes the skeleton of a class file to a stream.
+     * @throws IOException A generic IO exception from the stream.
+     */
+    public static void write(@NotNull ClassFile cf, @NotNull OutputStream out) throws IOException {
+        (new Encoder(cf)).encode().writeTo(out);
+    }
+
+    /**
+     * Returns the skeleton of a class file as a new array.
+     */
+    public static byte @NotNull [] toByteArray(@NotNull ClassFile cf) {
+        return (new Encoder(cf)).encode().toByteArray();
+    }
+
+    /**
+     * Reads a skeleton from the buffer, advancing its position to the end of the skeleton. Data following the
+     * skeleton is left unread, so skeletons may be read back to back.
+     * @throws ClassFileReadException The content of the buffer is not a valid skeleton.
+     */
+    public static @NotNull ClassFile read(@NotNull ByteBuffer buffer) throws ClassFileReadException {
+        final int start = buffer.position();
+        try {
+            return (new Decoder(buffer)).decode();
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            throw new ClassFileIncompleteDataException("Unexpected end of skeleton", e);
+        } catch (ClassFileReadException e) {
+            buffer.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a skeleton from an array.
+     * @throws ClassFileReadException The array does not begin with a valid skeleton.
+     * @see #read(ByteBuffer)
+     */
+    public static @NotNull ClassFile read(byte @NotNull [] data) throws ClassFileReadException {
+        return read(ByteBuffer.wrap(data));
+    }
+
+    //
+
+    private static final class Encoder {
+
+        private final ClassFile cf;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+
+        Encoder(@NotNull ClassFile cf) {
+            this.cf = cf;
+        }
+
+        @NotNull ByteArrayOutputStream encode() {
+            this.writeString(this.cf.reference().toString());
+            this.writeAnnotations(this.cf.getAnnotations());
+            this.writeMembers(this.cf.getFields());
+            this.writeMembers(this.cf.getMethods());
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(this.body.size() + 16 * this.strings.size());
+            out.write(MAGIC >>> 24);
+            out.write(MAGIC >>> 16);
+            out.write(MAGIC >>> 8);
+            out.write(MAGIC);
+            out.write(MAJOR_VERSION);
+            out.write(MINOR_VERSION);
+            writeVarint(out, this.strings.size());
+            for (String s : this.strings) {
+                final int len = s.length();
+                writeVarint(out, len);
+                char c;
+                for (int i=0; i < len; i++) {
+                    c = s.charAt(i);
+                    if (c < 0x80) {
+                        out.write(c);
+                    } else if (c < 0x800) {
+                        out.write(0xC0 | (c >> 6));
+                        out.write(0x80 | (c & 0x3F));
+                    } else {
+                        out.write(0xE0 | (c >> 12));
+                        out.write(0x80 | ((c >> 6) & 0x3F));
+                        out.write(0x80 | (c & 0x3F));
+                    }
+                }
+            }
+            out.writeBytes(this.body.toByteArray());
+            return out;
+        }
+
+        private void writeMembers(@NotNull Set<? extends MemberReference<?>> members) {
+            writeVarint(this.body, members.size());
+            for (MemberReference<?> member : members) {
+                writeVarint(this.body, member.flags().value());
+                this.writeString(member.name());
+                this.writeString(member.descriptor());
+                this.writeAnnotations(this.cf.getAnnotations(member));
+            }
+        }
+
+        private void writeAnnotations(@NotNull List<ClassReference> annotations) {
+            writeVarint(this.body, annotations.size());
+            for (ClassReference annotation : annotations) this.writeString(annotation.toString());
+        }
+
+        private void writeString(@NotNull String s) {
+            Integer id = this.ids.get(s);
+            if (id == null) {
+                id = this.strings.size();
+                this.ids.put(s, id);
+                this.strings.add(s);
+            }
+            writeVarint(this.body, id);
+        }
+
+        private static void writeVarint(@NotNull ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+    }
+
+    private static final class Decoder {
+
+        private final ByteBuffer buf;
+        private String[] strings;
+        private ClassReference[] classes;
+
+        Decoder(@NotNull ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @NotNull ClassFile decode() throws ClassFileReadException {
+            if (this.buf.remaining() < 6 || this.buf.getInt() != MAGIC)
+                throw new ClassFileMalformedHeaderException("Not a class file skeleton");
+            final int major = this.buf.get() & 0xFF;
+            this.buf.get(); // minor version
+            if (major != MAJOR_VERSION)
+                throw new ClassFileMalformedHeaderException("Unsupported skeleton version " + major);
+
+            final int stringCount = this.readCount();
+            this.strings = new String[stringCount];
+            this.classes = new ClassReference[stringCount];
+            final StringBuilder sb = new StringBuilder();
+            for (int i=0; i < stringCount; i++) {
+                final int len = this.readCount();
+                sb.setLength(0);
+                for (int z=0; z < len; z++) sb.append(this.readChar());
+                this.strings[i] = sb.toString();
+            }
+
+            final ClassFile.Builder builder = ClassFile.builder();
+            final ClassReference reference = this.readClass();
+            builder.setClass(reference);
+            int count = this.readCount();
+            for (int i=0; i < count; i++) builder.addAnnotation(this.readClass());
+
+            for (int kind=0; kind < 2; kind++) {
+                count = this.readCount();
+                for (int i=0; i < count; i++) {
+                    final int flags = this.readVarint();
+                    final String name = this.readString();
+                    final String descriptor = this.readString();
+                    final MemberReference<?> member;
+                    try {
+                        member = (kind == 0) ?
+                                FieldReference.of(reference, name, descriptor, flags) :
+                                MethodReference.of(reference, name, descriptor, flags);
+                    } catch (IllegalArgumentException e) {
+                        throw new ClassFileInvalidDataException("Invalid member " + name + " " + descriptor, e);
+                    }
+                    builder.addMember(member);
+                    final int annotationCount = this.readCount();
+                    for (int z=0; z < annotationCount; z++) builder.addAnnotation(member, this.readClass());
+                }
+            }
+            return builder.build();
+        }
+
+        private @NotNull String readString() throws ClassFileReadException {
+            final int id = this.readVarint();
+            if (id < 0 || id >= this.strings.length)
+                throw new ClassFileInvalidDataException("String id " + id + " out of range");
+            return this.strings[id];
+        }
+
+        private @NotNull ClassReference readClass() throws ClassFileReadException {
+            final int id = this.readVarint();
+            if (id < 0 || id >= this.strings.length)
+                throw new ClassFileInvalidDataException("String id " + id + " out of range");
+            ClassReference ret = this.classes[id];
+            if (ret == null) {
+                try {
+                    ret = ClassReference.of(this.strings[id]);
+                } catch (IllegalArgumentException e) {
+                    throw new ClassFileInvalidDataException("Invalid class reference \"" + this.strings[id] + "\"", e);
+                }
+                this.classes[id] = ret;
+            }
+            return ret;
+        }
+
+        private char readChar() throws ClassFileReadException {
+            final int a = this.buf.get() & 0xFF;
+            if (a < 0x80) return (char) a;
+            if ((a & 0xE0) == 0xC0) return (char) (((a & 0x1F) << 6) | this.readContinuation());
+            if ((a & 0xF0) == 0xE0) {
+                final int b = this.readContinuation();
+                return (char) (((a & 0x0F) << 12) | (b << 6) | this.readContinuation());
+            }
+            throw new ClassFileInvalidDataException("Invalid string data");
+        }
+
+        private int readContinuation() throws ClassFileReadException {
+            final int b = this.buf.get() & 0xFF;
+            if ((b & 0xC0) != 0x80) throw new ClassFileInvalidDataException("Invalid string data");
+            return b & 0x3F;
+        }
+
+        /**
+         * Reads a varint which counts elements of at least one byte each, so that a corrupt count fails fast
+         * instead of allocating.
+         */
+        private int readCount() throws ClassFileReadException {
+            final int ret = this.readVarint();
+            if (ret < 0 || ret > this.buf.remaining())
+                throw new ClassFileIncompleteDataException("Count " + ret + " exceeds remaining data");
+            return ret;
+        }
+
+        private int readVarint() throws ClassFileReadException {
+            int ret = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 28) throw new ClassFileInvalidDataException("Varint too long");
+                b = this.buf.get();
+                ret |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return ret;
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package io.github.wasabithumb.annolyze.incremental;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.List;
+
+/**
+ * The difference between two consecutive scans of an {@link AnnolyzeScanSession}. Each list is in the order of the
+ * source.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeScanDelta {
+
+    @Contract("_, _, _ -> new")
+    static @NotNull AnnolyzeScanDelta of(
+            @NotNull List<ClassFile> added,
+            @NotNull List<ClassFile> changed,
+            @NotNull List<String> removed
+    ) {
+        return new AnnolyzeScanDeltaImpl(List.copyOf(added), List.copyOf(changed), List.copyOf(removed));
+    }
+
+    //
+
+    /**
+     * Classes which were not present in the previous scan.
+     */
+    @NotNull @Unmodifiable List<ClassFile> added();
+
+    /**
+     * Classes whose fingerprint differs from the previous scan. A class may be reported as changed when only its
+     * modification time did, since entries are compared without reading them.
+     */
+    @NotNull @Unmodifiable List<ClassFile> changed();
+
+    /**
+     * Names of the classes which were present in the previous scan but are not anymore, in the order of the
+     * previous scan.
+     */
+    @NotNull @Unmodifiable List<String> removed();
+
+    default boolean isEmpty() {
+        return this.added().isEmpty() && this.changed().isEmpty() && this.removed().isEmpty();
+    }
+
+}
@@ -0,0 +1,15 @@
+package io.github.wasabithumb.annolyze.incremental;
+
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.List;
+
+@ApiStatus.Internal
+record AnnolyzeScanDeltaImpl(
+        @NotNull @Unmodifiable List<ClassFile> added,
+        @NotNull @Unmodifiable List<ClassFile> changed,
+        @NotNull @Unmodifiable List<String> removed
+) implements AnnolyzeScanDelta { }
@@ -0,0 +1,69 @@
+package io.github.wasabithumb.annolyze.incremental;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Rescans a class source repeatedly, reading only the classes which were added or changed since the previous
+ * scan. Changes are detected by comparing the {@link AnnolyzeClassEntry#fingerprint() fingerprint} of each entry,
+ * which for archives and directories costs no reads of class data. Sessions are safe for use by multiple threads;
+ * rescans are serialized.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeScanSession {
+
+    /**
+     * Creates a session with no previous scan, so that the first {@link #rescan()} reports every class as added.
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeScanSession of(@NotNull AnnolyzeClassSource source) {
+        return new AnnolyzeScanSessionImpl(source);
+    }
+
+    /**
+     * Creates a session which continues from the fingerprints {@link #save(Path) saved} by an earlier session over
+     * the same source, such as in a previous run of a build. If the state file is missing or unreadable, this is
+     * equivalent to {@link #of(AnnolyzeClassSource)}.
+     * @throws IOException A generic IO exception.
+     */
+    @Contract("_, _ -> new")
+    static @NotNull AnnolyzeScanSession load(@NotNull AnnolyzeClassSource source, @NotNull Path state) throws IOException {
+        final AnnolyzeScanSessionImpl ret = new AnnolyzeScanSessionImpl(source);
+        ret.load(state);
+        return ret;
+    }
+
+    //
+
+    /**
+     * The source which this session scans.
+     */
+    @NotNull AnnolyzeClassSource source();
+
+    /**
+     * The number of classes seen by the latest scan.
+     */
+    int size();
+
+    /**
+     * Scans the source, reads the classes which were added or changed since the previous scan on up to
+     * {@link AnnolyzeClassSource#parallelism(int) parallelism} threads, and returns the difference.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data. The session is left as it was before the call.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    @NotNull AnnolyzeScanDelta rescan() throws IOException;
+
+    /**
+     * Writes the fingerprints of the latest scan to a file, replacing it atomically where supported.
+     * @throws IOException A generic IO exception.
+     */
+    void save(@NotNull Path state) throws IOException;
+
+}
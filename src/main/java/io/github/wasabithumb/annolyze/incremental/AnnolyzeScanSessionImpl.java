@@ -0,0 +1,116 @@
+package io.github.wasabithumb.annolyze.incremental;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+@ApiStatus.Internal
+final class AnnolyzeScanSessionImpl implements AnnolyzeScanSession {
+
+    private static final int STATE_MAGIC = 0x414E5353; // ANSS
+    private static final int STATE_VERSION = 1;
+
+    private final AnnolyzeClassSource source;
+    private Map<String, Long> fingerprints = new LinkedHashMap<>();
+
+    AnnolyzeScanSessionImpl(@NotNull AnnolyzeClassSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassSource source() {
+        return this.source;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.fingerprints.size();
+    }
+
+    @Override
+    public synchronized @NotNull AnnolyzeScanDelta rescan() throws IOException {
+        final Map<String, Long> previous = this.fingerprints;
+        final Map<String, Long> current = new LinkedHashMap<>(previous.size());
+        final List<AnnolyzeClassEntry> stale = new ArrayList<>();
+        final BitSet changed = new BitSet();
+        final List<ClassFile> read;
+
+        try (AnnolyzeClassScan scan = this.source.scan(true)) {
+            for (AnnolyzeClassEntry entry : scan.entries()) {
+                final long fingerprint = entry.fingerprint();
+                if (current.putIfAbsent(entry.name(), fingerprint) != null) continue;
+                final Long old = previous.get(entry.name());
+                if (old != null && old == fingerprint) continue;
+                if (old != null) changed.set(stale.size());
+                stale.add(entry);
+            }
+            read = ParallelUtil.map(stale, AnnolyzeClassEntry::read, this.source.parallelism());
+        }
+
+        final List<ClassFile> addedList = new ArrayList<>();
+        final List<ClassFile> changedList = new ArrayList<>();
+        for (int i=0; i < read.size(); i++) {
+            (changed.get(i) ? changedList : addedList).add(read.get(i));
+        }
+        final List<String> removedList = new ArrayList<>();
+        for (String name : previous.keySet()) {
+            if (!current.containsKey(name)) removedList.add(name);
+        }
+
+        this.fingerprints = current;
+        return new AnnolyzeScanDeltaImpl(
+                Collections.unmodifiableList(addedList),
+                Collections.unmodifiableList(changedList),
+                Collections.unmodifiableList(removedList)
+        );
+    }
+
+    //
+
+    synchronized void load(@NotNull Path state) {
+        try {
+            if (!Files.isRegularFile(state)) return;
+            final long size = Files.size(state);
+            try (InputStream is = Files.newInputStream(state);
+                 DataInputStream dis = new DataInputStream(new BufferedInputStream(is))
+            ) {
+                if (dis.readInt() != STATE_MAGIC || dis.readInt() != STATE_VERSION) return;
+                // Each entry takes at least 10 bytes, so a count beyond that is corrupt rather than large
+                final int count = dis.readInt();
+                if (count < 0 || count > (size - 12L) / 10L) return;
+                final Map<String, Long> map = new LinkedHashMap<>(Math.max(16, count));
+                for (int i=0; i < count; i++) map.put(dis.readUTF(), dis.readLong());
+                this.fingerprints = map;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable, truncated or corrupt state; start over
+        }
+    }
+
+    @Override
+    public synchronized void save(@NotNull Path state) throws IOException {
+        IOUtil.writeAtomically(state, (Path tmp) -> {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))
+            ) {
+                dos.writeInt(STATE_MAGIC);
+                dos.writeInt(STATE_VERSION);
+                dos.writeInt(this.fingerprints.size());
+                for (Map.Entry<String, Long> entry : this.fingerprints.entrySet()) {
+                    dos.writeUTF(entry.getKey());
+                    dos.writeLong(entry.getValue());
+                }
+            }
+        });
+    }
+
+}
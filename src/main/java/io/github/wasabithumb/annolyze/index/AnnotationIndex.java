@@ -0,0 +1,221 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.ElementType;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps each annotation found in a class source to the classes, fields and methods which carry it. Results are
+ * returned in the order of the source, and are views over compact posting lists of integer ids; a query costs time
+ * proportional to the size of its result.
+ */
+@ApiStatus.NonExtendable
+public interface AnnotationIndex {
+
+    /**
+     * Builds an index over every class in the given source, in a single pass which reads classes on up to
+     * {@link AnnolyzeClassSource#parallelism(int) parallelism} threads. Archives carrying an up-to-date
+     * {@link #embed(File) embedded} index, alone or within a composite, contribute that index and are not read.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws IOException A generic IO exception from the backing source.
+     */
+    static @NotNull AnnotationIndex build(@NotNull AnnolyzeClassSource source) throws IOException {
+        return AnnotationIndexImpl.build(source, AnnotationIndexImpl.ALL_ELEMENTS);
+    }
+
+    /**
+     * Builds an index over the given source which only records annotations on the given kinds of element;
+     * {@link ElementType#TYPE TYPE}, {@link ElementType#FIELD FIELD} and {@link ElementType#METHOD METHOD} are
+     * recognized. Queries for other kinds of element return empty lists.
+     * @see #build(AnnolyzeClassSource)
+     */
+    static @NotNull AnnotationIndex build(
+            @NotNull AnnolyzeClassSource source,
+            @NotNull Set<ElementType> elements
+    ) throws IOException {
+        return AnnotationIndexImpl.build(source, elements);
+    }
+
+    /**
+     * Builds an index over every class in the given source and writes it to a file, holding no more than roughly
+     * the given number of bytes of tables and postings on the heap. Classes are read from a
+     * {@link AnnolyzeClassSource#scan(boolean) scan} in batches; whenever the budget is reached, the classes
+     * indexed so far are written to a temporary run file next to the output, and the runs are
+     * {@link #merge(List, Path) merged} at the end. The file holds the same bytes as writing
+     * {@link #build(AnnolyzeClassSource)} would, except that embedded indexes are not used. Returns the index,
+     * {@link #open(Path) mapped} from the file.
+     * @param heapBudget The estimated heap in bytes above which indexed classes are spilled to disk.
+     * @throws IllegalArgumentException The heap budget is not positive.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws IOException A generic IO exception.
+     */
+    static @NotNull AnnotationIndex build(
+            @NotNull AnnolyzeClassSource source,
+            @NotNull Path file,
+            long heapBudget
+    ) throws IOException {
+        AnnotationIndexSpiller.build(source, AnnotationIndexImpl.ALL_ELEMENTS, file, heapBudget);
+        return open(file);
+    }
+
+    /**
+     * Builds an index over classes which have already been read, in the order given.
+     */
+    static @NotNull AnnotationIndex of(@NotNull Iterable<ClassFile> classes) {
+        return AnnotationIndexImpl.of(classes);
+    }
+
+    /**
+     * Builds an index segment from a delta, holding the changed and added classes and marking the changed and
+     * removed classes as removed. {@link #merge(List, Path) Merging} the segment ahead of the index which the delta
+     * applies to has the same effect as {@link #patch(AnnolyzeScanDelta) patching} that index, except that the
+     * classes of the delta come first. Removal marks are not visible to queries.
+     */
+    static @NotNull AnnotationIndex segment(@NotNull AnnolyzeScanDelta delta) {
+        return AnnotationIndexImpl.segment(delta);
+    }
+
+    /**
+     * Merges indexes previously {@link #write(Path) written} to files into a single index file, such as indexes
+     * built by separate processes over shards of a class path. Segments are memory mapped and streamed into the
+     * output, and are never read into memory as a whole.
+     * <p>
+     * Segments take precedence in the order given, like the sources of a composite: a class with entries in, or
+     * marked as removed by, one segment is dropped from every later segment. Results are in the order of the
+     * segments, and the output depends only on their content and order; merging indexes built over consecutive
+     * shards of a source yields the same bytes as building one index over the whole source. The output is itself
+     * a segment, and keeps the removal marks of its inputs so that it may be merged ahead of further segments.
+     * The output may replace one of the segments.
+     * @throws AnnotationIndexFormatException A segment is not a valid index, or was written by an incompatible
+     * version of the library.
+     * @throws IOException A generic IO exception.
+     * @see #compact(List, Path)
+     */
+    static void merge(@NotNull List<Path> segments, @NotNull Path file) throws IOException {
+        AnnotationIndexMerger.merge(segments, file, false);
+    }
+
+    /**
+     * Merges segments as {@link #merge(List, Path)} does, but drops all removal marks. This compacts a long-lived
+     * incremental index, kept as a full index and the {@link #segment(AnnolyzeScanDelta) segments} of later
+     * deltas, when the segments are given newest first and the full index last: the output is equivalent to an
+     * index built over the current classes.
+     * @throws AnnotationIndexFormatException A segment is not a valid index, or was written by an incompatible
+     * version of the library.
+     * @throws IOException A generic IO exception.
+     */
+    static void compact(@NotNull List<Path> segments, @NotNull Path file) throws IOException {
+        AnnotationIndexMerger.merge(segments, file, true);
+    }
+
+    /**
+     * Opens an index previously {@link #write(Path) written} to a file. The file is memory mapped and queried in
+     * place; nothing is decoded up front.
+     * @throws AnnotationIndexFormatException The file is not a valid index, or was written by an incompatible
+     * version of the library.
+     * @throws IOException A generic IO exception.
+     * @see SharedAnnotationIndex
+     */
+    static @NotNull AnnotationIndex open(@NotNull Path file) throws IOException {
+        return AnnotationIndexFile.open(file);
+    }
+
+    /**
+     * Reads an index previously {@link #write(OutputStream) written} from the remaining content of the buffer. The
+     * buffer is queried in place and must not be modified while the index is in use.
+     * @throws AnnotationIndexFormatException The data is not a valid index, or was written by an incompatible
+     * version of the library.
+     */
+    static @NotNull AnnotationIndex read(@NotNull ByteBuffer buffer) throws AnnotationIndexFormatException {
+        return new AnnotationIndexFile(buffer);
+    }
+
+    //
+
+    /**
+     * The annotations which appear at least once in this index.
+     */
+    @NotNull @Unmodifiable Set<ClassReference> annotations();
+
+    /**
+     * The classes which carry the given annotation.
+     */
+    @NotNull @Unmodifiable List<ClassReference> classes(@NotNull ClassReference annotation);
+
+    /**
+     * The fields which carry the given annotation.
+     */
+    @NotNull @Unmodifiable List<FieldReference> fields(@NotNull ClassReference annotation);
+
+    /**
+     * The methods which carry the given annotation.
+     */
+    @NotNull @Unmodifiable List<MethodReference> methods(@NotNull ClassReference annotation);
+
+    /**
+     * Returns a new index with the classes of a delta applied: removed classes are dropped, changed classes are
+     * indexed in place of their previous entries, and added classes are indexed at the end, after every other class.
+     * Changed classes which previously had no annotations have no entries to replace, and are indexed before the
+     * added classes. No classes are read. Names are matched against the delta as given by an
+     * {@link io.github.wasabithumb.annolyze.incremental.AnnolyzeScanSession} over the unprefixed source which this
+     * index was built from. Classes are indexed with the same projection as this index was
+     * {@link #build(AnnolyzeClassSource, Set) built} with; the binary format does not record projections, so an
+     * index which was read or opened indexes every kind of element.
+     */
+    default @NotNull AnnotationIndex patch(@NotNull AnnolyzeScanDelta delta) {
+        return AnnotationIndexImpl.patch(this, delta);
+    }
+
+    /**
+     * Writes this index in a compact, versioned binary format which can be {@link #read(ByteBuffer) read} back
+     * without deserialization.
+     * @throws IOException A generic IO exception from the stream.
+     */
+    void write(@NotNull OutputStream out) throws IOException;
+
+    /**
+     * Embeds this index in an archive, replacing any index already embedded. {@link #build(AnnolyzeClassSource)}
+     * will then use the embedded index instead of reading the classes of the archive, for as long as the name,
+     * CRC and size of every class entry are unchanged.
+     * @throws IOException A generic IO exception.
+     */
+    default void embed(@NotNull File archive) throws IOException {
+        EmbeddedIndex.embed(archive, this);
+    }
+
+    /**
+     * Writes this index to a file, replacing it atomically where supported.
+     * @see #write(OutputStream)
+     * @see #open(Path)
+     * @throws IOException A generic IO exception.
+     */
+    default void write(@NotNull Path file) throws IOException {
+        IOUtil.writeAtomically(file, (Path tmp) -> {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 BufferedOutputStream bos = new BufferedOutputStream(os)
+            ) {
+                this.write(bos);
+            }
+        });
+    }
+
+}
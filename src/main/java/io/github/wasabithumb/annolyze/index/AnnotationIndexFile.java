@@ -0,0 +1,383 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntFunction;
+
+import static io.github.wasabithumb.annolyze.index.AnnotationIndexFormat.*;
+
+/**
+ * Answers queries directly from an index in the binary format described by {@link AnnotationIndexFormat}. Opening
+ * validates every section, table entry and posting list, so that queries never read out of bounds; strings and
+ * references are only decoded as queries touch them.
+ */
+@ApiStatus.Internal
+final class AnnotationIndexFile implements AnnotationIndex {
+
+    static @NotNull AnnotationIndexFile open(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping remains valid after the channel is closed
+            return new AnnotationIndexFile(channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size()));
+        }
+    }
+
+    //
+
+    private final ByteBuffer buf;
+    private final int stringCount;
+    private final int stringOffsetsPos;
+    private final int stringDataPos;
+    private final int classCount;
+    private final int classTablePos;
+    private final int fieldCount;
+    private final int fieldTablePos;
+    private final int methodCount;
+    private final int methodTablePos;
+    private final int annotationCount;
+    private final int annotationTablePos;
+    private final int bucketCount;
+    private final int bucketTablePos;
+    private final int postingsPos;
+    private final int postingsLength;
+
+    AnnotationIndexFile(@NotNull ByteBuffer buffer) throws AnnotationIndexFormatException {
+        final ByteBuffer buf = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.buf = buf;
+        if (buf.limit() < HEADER_LENGTH) throw new AnnotationIndexFormatException("Truncated header");
+        if (buf.getInt(OFF_MAGIC) != MAGIC) throw new AnnotationIndexFormatException("Not an annotation index");
+        final int major = Short.toUnsignedInt(buf.getShort(OFF_VERSION));
+        if (major != MAJOR_VERSION) {
+            throw new AnnotationIndexFormatException("Unsupported index version " + major + "." +
+                    Short.toUnsignedInt(buf.getShort(OFF_VERSION + 2)) + " (expected " + MAJOR_VERSION + ".x)");
+        }
+
+        this.stringCount = buf.getInt(OFF_STRING_COUNT);
+        this.stringOffsetsPos = buf.getInt(OFF_STRING_OFFSETS);
+        this.stringDataPos = buf.getInt(OFF_STRING_DATA);
+        this.classCount = buf.getInt(OFF_CLASS_COUNT);
+        this.classTablePos = buf.getInt(OFF_CLASS_TABLE);
+        this.fieldCount = buf.getInt(OFF_FIELD_COUNT);
+        this.fieldTablePos = buf.getInt(OFF_FIELD_TABLE);
+        this.methodCount = buf.getInt(OFF_METHOD_COUNT);
+        this.methodTablePos = buf.getInt(OFF_METHOD_TABLE);
+        this.annotationCount = buf.getInt(OFF_ANNOTATION_COUNT);
+        this.annotationTablePos = buf.getInt(OFF_ANNOTATION_TABLE);
+        this.bucketCount = buf.getInt(OFF_BUCKET_COUNT);
+        this.bucketTablePos = buf.getInt(OFF_BUCKET_TABLE);
+        this.postingsPos = buf.getInt(OFF_POSTINGS);
+        this.postingsLength = buf.getInt(OFF_POSTINGS_LENGTH);
+
+        if (this.stringCount < 0) throw new AnnotationIndexFormatException("Negative string count");
+        this.checkSection("string offsets", this.stringOffsetsPos, this.stringCount + 1L, 4);
+        this.checkSection("class table", this.classTablePos, this.classCount, CLASS_ENTRY_LENGTH);
+        this.checkSection("field table", this.fieldTablePos, this.fieldCount, MEMBER_ENTRY_LENGTH);
+        this.checkSection("method table", this.methodTablePos, this.methodCount, MEMBER_ENTRY_LENGTH);
+        this.checkSection("annotation table", this.annotationTablePos, this.annotationCount, ANNOTATION_ENTRY_LENGTH);
+        this.checkSection("hash buckets", this.bucketTablePos, this.bucketCount, 4);
+        this.checkSection("postings", this.postingsPos, this.postingsLength, 1);
+        this.checkSection("string data", this.stringDataPos, buf.getInt(this.stringOffsetsPos + 4 * this.stringCount), 1);
+        if (this.annotationCount > 0 && this.bucketCount == 0)
+            throw new AnnotationIndexFormatException("Missing hash buckets");
+        this.checkTables();
+    }
+
+    private void checkSection(@NotNull String name, int pos, long count, int entryLength)
+            throws AnnotationIndexFormatException {
+        if (pos < HEADER_LENGTH || count < 0 || pos + count * entryLength > this.buf.limit())
+            throw new AnnotationIndexFormatException("Section \"" + name + "\" is out of bounds");
+    }
+
+    /**
+     * Checks that string offsets ascend, that every string id and posting refers to an existing entry, and that
+     * every posting list lies within the postings section.
+     */
+    private void checkTables() throws AnnotationIndexFormatException {
+        int prev = 0;
+        int next;
+        for (int i=0; i <= this.stringCount; i++) {
+            next = this.buf.getInt(this.stringOffsetsPos + 4 * i);
+            if (next < prev) throw new AnnotationIndexFormatException("String offsets are not ascending");
+            prev = next;
+        }
+        for (int i=0; i < this.classCount; i++) {
+            this.checkString(this.buf.getInt(this.classTablePos + i * CLASS_ENTRY_LENGTH));
+        }
+        for (int i=0; i < this.fieldCount; i++) this.checkMember(this.fieldTablePos + i * MEMBER_ENTRY_LENGTH);
+        for (int i=0; i < this.methodCount; i++) this.checkMember(this.methodTablePos + i * MEMBER_ENTRY_LENGTH);
+        int entry;
+        for (int i=0; i < this.annotationCount; i++) {
+            entry = this.annotationTablePos + i * ANNOTATION_ENTRY_LENGTH;
+            this.checkString(this.buf.getInt(entry));
+            this.checkPostings(entry, 4, this.classCount);
+            this.checkPostings(entry, 12, this.fieldCount);
+            this.checkPostings(entry, 20, this.methodCount);
+        }
+    }
+
+    private void checkMember(int pos) throws AnnotationIndexFormatException {
+        for (int i=0; i < 3; i++) this.checkString(this.buf.getInt(pos + 4 * i));
+    }
+
+    private void checkString(int id) throws AnnotationIndexFormatException {
+        if (id < 0 || id >= this.stringCount)
+            throw new AnnotationIndexFormatException("String id " + id + " is out of bounds");
+    }
+
+    /**
+     * Walks a posting list as {@link #decode(int, int)} would, checking that it ends within the postings section
+     * and that every id is below the size of the table it refers to.
+     */
+    private void checkPostings(int entry, int field, int tableCount) throws AnnotationIndexFormatException {
+        final int offset = this.buf.getInt(entry + field);
+        final int count = this.buf.getInt(entry + field + 4);
+        if (offset < 0 || offset > this.postingsLength || count < 0)
+            throw new AnnotationIndexFormatException("Posting list is out of bounds");
+
+        final int end = this.postingsPos + this.postingsLength;
+        int head = this.postingsPos + offset;
+        long id = 0L;
+        long value;
+        int shift;
+        byte b;
+        for (int i=0; i < count; i++) {
+            value = 0L;
+            shift = 0;
+            do {
+                if (head >= end || shift > 28)
+                    throw new AnnotationIndexFormatException("Posting list is malformed");
+                b = this.buf.get(head++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            id += value;
+            if (id >= tableCount) throw new AnnotationIndexFormatException("Posting " + id + " is out of bounds");
+        }
+    }
+
+    //
+
+    @Override
+    public @NotNull @Unmodifiable Set<ClassReference> annotations() {
+        final Set<ClassReference> ret = new LinkedHashSet<>(this.annotationCount);
+        for (int i=0; i < this.annotationCount; i++) {
+            ret.add(ClassReference.of(this.string(this.buf.getInt(this.annotationTablePos + i * ANNOTATION_ENTRY_LENGTH))));
+        }
+        return Collections.unmodifiableSet(ret);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<ClassReference> classes(@NotNull ClassReference annotation) {
+        return new PostingList<>(this.postings(annotation, 4), this::classAt);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<FieldReference> fields(@NotNull ClassReference annotation) {
+        return new PostingList<>(this.postings(annotation, 12), this::fieldAt);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<MethodReference> methods(@NotNull ClassReference annotation) {
+        return new PostingList<>(this.postings(annotation, 20), this::methodAt);
+    }
+
+    @Override
+    public void write(@NotNull OutputStream out) throws IOException {
+        Channels.newChannel(out).write(this.buf.duplicate().clear());
+    }
+
+    //
+
+    @NotNull ClassReference classAt(int id) {
+        return ClassReference.of(this.string(this.buf.getInt(this.classTablePos + id * CLASS_ENTRY_LENGTH)));
+    }
+
+    @NotNull FieldReference fieldAt(int id) {
+        final int pos = this.fieldTablePos + id * MEMBER_ENTRY_LENGTH;
+        return FieldReference.of(
+                ClassReference.of(this.string(this.buf.getInt(pos))),
+                this.string(this.buf.getInt(pos + 4)),
+                this.string(this.buf.getInt(pos + 8)),
+                this.buf.getInt(pos + 12)
+        );
+    }
+
+    @NotNull MethodReference methodAt(int id) {
+        final int pos = this.methodTablePos + id * MEMBER_ENTRY_LENGTH;
+        return MethodReference.of(
+                ClassReference.of(this.string(this.buf.getInt(pos))),
+                this.string(this.buf.getInt(pos + 4)),
+                this.string(this.buf.getInt(pos + 8)),
+                this.buf.getInt(pos + 12)
+        );
+    }
+
+    /**
+     * The annotation in the given slot of the annotation table.
+     */
+    @NotNull ClassReference annotationAt(int slot) {
+        return ClassReference.of(this.string(this.annotationEntry(slot)));
+    }
+
+    /**
+     * Finds the annotation by perfect hash and decodes one of its posting lists.
+     */
+    private int @NotNull [] postings(@NotNull ClassReference annotation, int field) {
+        final int entry = this.find(annotation.toString().getBytes(StandardCharsets.UTF_8));
+        if (entry == -1) return new int[0];
+        return this.decode(entry, field);
+    }
+
+    /**
+     * Decodes a posting list of the annotation entry at the given position, identified by the offset of its
+     * {@code offset, count} pair within the entry.
+     */
+    private int @NotNull [] decode(int entry, int field) {
+        int head = this.postingsPos + this.buf.getInt(entry + field);
+        final int[] ret = new int[this.buf.getInt(entry + field + 4)];
+        int prev = 0;
+        int value;
+        int shift;
+        byte b;
+        for (int i=0; i < ret.length; i++) {
+            value = 0;
+            shift = 0;
+            do {
+                b = this.buf.get(head++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            prev += value;
+            ret[i] = prev;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the position of the annotation entry for the key, or -1 if absent.
+     */
+    private int find(byte @NotNull [] key) {
+        if (this.annotationCount == 0) return -1;
+        final int bucket = Math.floorMod(hash(key, 0), this.bucketCount);
+        final int seed = this.buf.getInt(this.bucketTablePos + 4 * bucket);
+        final int slot = (seed < 0) ? (-seed - 1) : Math.floorMod(hash(key, seed), this.annotationCount);
+        if (slot >= this.annotationCount) return -1;
+
+        final int entry = this.annotationTablePos + slot * ANNOTATION_ENTRY_LENGTH;
+        final int stringId = this.buf.getInt(entry);
+        final int start = this.stringStart(stringId);
+        final int len = this.stringStart(stringId + 1) - start;
+        if (len != key.length) return -1;
+        for (int i=0; i < len; i++) {
+            if (this.buf.get(start + i) != key[i]) return -1;
+        }
+        return entry;
+    }
+
+    private int stringStart(int id) {
+        return this.stringDataPos + this.buf.getInt(this.stringOffsetsPos + 4 * id);
+    }
+
+    private @NotNull String string(int id) {
+        final int start = this.stringStart(id);
+        final byte[] bytes = new byte[this.stringStart(id + 1) - start];
+        this.buf.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Raw access for AnnotationIndexMerger
+
+    int stringCount() {
+        return this.stringCount;
+    }
+
+    /**
+     * The UTF-8 bytes of a string, as a view of the mapped data.
+     */
+    @NotNull ByteBuffer stringBuffer(int id) {
+        final int start = this.stringStart(id);
+        return this.buf.slice(start, this.stringStart(id + 1) - start);
+    }
+
+    int classCount() {
+        return this.classCount;
+    }
+
+    /**
+     * The string id of the class at the given index of the class table.
+     */
+    int classEntry(int id) {
+        return this.buf.getInt(this.classTablePos + id * CLASS_ENTRY_LENGTH);
+    }
+
+    int memberCount(boolean method) {
+        return method ? this.methodCount : this.fieldCount;
+    }
+
+    /**
+     * One of the four words of a field or method table entry: owner, name, descriptor and flags.
+     */
+    int memberEntry(boolean method, int id, int word) {
+        return this.buf.getInt((method ? this.methodTablePos : this.fieldTablePos) + id * MEMBER_ENTRY_LENGTH + 4 * word);
+    }
+
+    int annotationCount() {
+        return this.annotationCount;
+    }
+
+    /**
+     * The string id of the annotation in the given slot of the annotation table.
+     */
+    int annotationEntry(int slot) {
+        return this.buf.getInt(this.annotationTablePos + slot * ANNOTATION_ENTRY_LENGTH);
+    }
+
+    /**
+     * Decodes a posting list of the annotation in the given slot, identified as for {@link #decode(int, int)}.
+     */
+    int @NotNull [] postings(int slot, int field) {
+        return this.decode(this.annotationTablePos + slot * ANNOTATION_ENTRY_LENGTH, field);
+    }
+
+    //
+
+    /**
+     * A view of the table entries selected by a decoded posting list.
+     */
+    private static final class PostingList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final int[] ids;
+        private final IntFunction<T> decoder;
+
+        PostingList(int @NotNull [] ids, @NotNull IntFunction<T> decoder) {
+            this.ids = ids;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public @NotNull T get(int index) {
+            return this.decoder.apply(this.ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return this.ids.length;
+        }
+
+    }
+
+}
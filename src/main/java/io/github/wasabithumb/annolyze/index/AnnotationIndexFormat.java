@@ -0,0 +1,107 @@
+package io.github.wasabithumb.annolyze.index;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ *     Constants and shared routines for the binary annotation index format. All integers are big-endian, and all
+ *     positions are absolute byte offsets from the start of the file. The file is laid out as a fixed header
+ *     followed by these sections:
+ * </p>
+ * <ul>
+ *     <li>String offsets: {@code u4[stringCount + 1]}, relative to the string data. Strings are UTF-8, sorted by
+ *     unsigned byte order and referred to by index.</li>
+ *     <li>String data.</li>
+ *     <li>Class table: {@code u4 descriptor} per class. Entries which no posting refers to mark classes removed by
+ *     an index segment; queries never see them, and merging drops the classes from later segments.</li>
+ *     <li>Field and method tables: {@code u4 owner, u4 name, u4 descriptor, u4 flags} per member.</li>
+ *     <li>Annotation table: {@code u4 descriptor} followed by {@code u4 offset, u4 count} for each of the class,
+ *     field and method posting lists, per annotation. Ordered by minimal perfect hash slot.</li>
+ *     <li>Hash buckets: {@code i4 seed} per bucket. A negative seed {@code -(slot + 1)} places a bucket's only key
+ *     directly.</li>
+ *     <li>Postings: ascending ids, each list encoded as unsigned LEB128 varints of the first id and then the
+ *     gaps between consecutive ids.</li>
+ * </ul>
+ * <p>
+ *     Readers accept any minor version of a known major version; minor versions only add data which older readers
+ *     may ignore.
+ * </p>
+ */
+@ApiStatus.Internal
+final class AnnotationIndexFormat {
+
+    static final int MAGIC = 0x414E4958; // ANIX
+    static final int MAJOR_VERSION = 1;
+    static final int MINOR_VERSION = 0;
+
+    static final int OFF_MAGIC = 0;
+    static final int OFF_VERSION = 4;
+    static final int OFF_STRING_COUNT = 8;
+    static final int OFF_STRING_OFFSETS = 12;
+    static final int OFF_STRING_DATA = 16;
+    static final int OFF_CLASS_COUNT = 20;
+    static final int OFF_CLASS_TABLE = 24;
+    static final int OFF_FIELD_COUNT = 28;
+    static final int OFF_FIELD_TABLE = 32;
+    static final int OFF_METHOD_COUNT = 36;
+    static final int OFF_METHOD_TABLE = 40;
+    static final int OFF_ANNOTATION_COUNT = 44;
+    static final int OFF_ANNOTATION_TABLE = 48;
+    static final int OFF_BUCKET_COUNT = 52;
+    static final int OFF_BUCKET_TABLE = 56;
+    static final int OFF_POSTINGS = 60;
+    static final int OFF_POSTINGS_LENGTH = 64;
+    static final int HEADER_LENGTH = 68;
+
+    static final int CLASS_ENTRY_LENGTH = 4;
+    static final int MEMBER_ENTRY_LENGTH = 16;
+    static final int ANNOTATION_ENTRY_LENGTH = 28;
+
+    /**
+     * Average number of keys per hash bucket.
+     */
+    static final int KEYS_PER_BUCKET = 2;
+
+    static int bucketCount(int keyCount) {
+        return Math.max(1, (keyCount + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+    }
+
+    /**
+     * FNV-1a over the bytes with a seeded basis, finished with the MurmurHash3 mixer.
+     */
+    static int hash(byte @NotNull [] key, int seed) {
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (byte b : key) {
+            h ^= (b & 0xFF);
+            h *= 0x01000193;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Equivalent to {@link #hash(byte[], int)} for a range of the buffer.
+     */
+    static int hash(@NotNull ByteBuffer buf, int start, int len, int seed) {
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i=0; i < len; i++) {
+            h ^= (buf.get(start + i) & 0xFF);
+            h *= 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private AnnotationIndexFormat() { }
+
+}
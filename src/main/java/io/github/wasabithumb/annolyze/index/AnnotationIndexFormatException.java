@@ -0,0 +1,14 @@
+package io.github.wasabithumb.annolyze.index;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a binary annotation index is malformed, truncated or of an unsupported major version.
+ */
+public final class AnnotationIndexFormatException extends IOException {
+
+    public AnnotationIndexFormatException(String message) {
+        super(message);
+    }
+
+}
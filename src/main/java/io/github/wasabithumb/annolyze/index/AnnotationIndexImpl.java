@@ -0,0 +1,623 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.archive.ArchiveBackedSource;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import io.github.wasabithumb.annolyze.reference.member.MemberReference;
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.ElementType;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Predicate;
+
+@ApiStatus.Internal
+final class AnnotationIndexImpl implements AnnotationIndex {
+
+    private static final int[] EMPTY = new int[0];
+    static final Set<ElementType> ALL_ELEMENTS = EnumSet.of(ElementType.TYPE, ElementType.FIELD, ElementType.METHOD);
+
+    static @NotNull AnnotationIndexImpl build(
+            @NotNull AnnolyzeClassSource source,
+            @NotNull Set<ElementType> elements
+    ) throws IOException {
+        final List<AnnolyzeClassSource> sources = new ArrayList<>();
+        flatten(source, sources);
+
+        // Archives with an up-to-date embedded index are not scanned; their classes only shadow later sources
+        final List<Segment> segments = new ArrayList<>(sources.size());
+        final List<AnnolyzeClassScan> scans = new ArrayList<>();
+        final List<AnnolyzeClassEntry> pending = new ArrayList<>();
+        final List<Annotated> annotated;
+        try {
+            final Set<String> seen = new HashSet<>();
+            for (AnnolyzeClassSource s : sources) {
+                final AnnolyzeArchive archive = (s instanceof ArchiveBackedSource backed) ?
+                        backed.archive() : (s instanceof AnnolyzeArchive a) ? a : null;
+                final AnnotationIndex embedded = (archive == null) ? null : EmbeddedIndex.load(archive);
+                if (embedded != null) {
+                    final Set<String> owned = new HashSet<>();
+                    for (String name : s.list(true)) {
+                        if (seen.add(name)) owned.add(name);
+                    }
+                    segments.add(new Segment(embedded, owned, 0, 0));
+                    continue;
+                }
+
+                final AnnolyzeClassScan scan = s.scan(true);
+                scans.add(scan);
+                final int start = pending.size();
+                for (AnnolyzeClassEntry entry : scan.entries()) {
+                    if (seen.add(entry.name())) pending.add(entry);
+                }
+                segments.add(new Segment(null, null, start, pending.size()));
+            }
+
+            // Classes are reduced to their annotated parts on the worker threads, so that skeletons are not retained
+            annotated = ParallelUtil.map(
+                    pending,
+                    (AnnolyzeClassEntry entry) -> Annotated.of(entry.read()),
+                    source.parallelism()
+            );
+        } finally {
+            IOUtil.closeAll(scans);
+        }
+
+        final Builder builder = new Builder(elements);
+        for (Segment segment : segments) {
+            if (segment.index() != null) {
+                for (Annotated a : Annotated.of(segment.index(), segment.owned()::contains)) builder.add(a);
+            } else {
+                for (int i=segment.start(); i < segment.end(); i++) builder.add(annotated.get(i));
+            }
+        }
+        return builder.build();
+    }
+
+    static @NotNull AnnotationIndexImpl of(@NotNull Iterable<ClassFile> classes) {
+        final Builder builder = new Builder(ALL_ELEMENTS);
+        for (ClassFile cf : classes) builder.add(Annotated.of(cf));
+        return builder.build();
+    }
+
+    static @NotNull AnnotationIndexImpl patch(@NotNull AnnotationIndex base, @NotNull AnnolyzeScanDelta delta) {
+        final Set<String> dropped = new HashSet<>(delta.removed());
+        for (ClassFile cf : delta.added()) dropped.add(cf.name());
+        final Map<String, ClassFile> changed = new LinkedHashMap<>();
+        for (ClassFile cf : delta.changed()) changed.put(cf.name(), cf);
+
+        // Changed classes take the place of their previous entries, and are projected as the base index was
+        final Builder builder = new Builder((base instanceof AnnotationIndexImpl impl) ? impl.elements : ALL_ELEMENTS);
+        for (Annotated a : Annotated.of(base, (String name) -> !dropped.contains(name))) {
+            final ClassFile cf = changed.remove(a.reference().name());
+            builder.add((cf == null) ? a : Annotated.of(cf));
+        }
+        for (ClassFile cf : changed.values()) builder.add(Annotated.of(cf));
+        for (ClassFile cf : delta.added()) builder.add(Annotated.of(cf));
+        return builder.build();
+    }
+
+    static @NotNull AnnotationIndexImpl segment(@NotNull AnnolyzeScanDelta delta) {
+        final Builder builder = new Builder(ALL_ELEMENTS);
+        for (ClassFile cf : delta.changed()) builder.add(Annotated.of(cf));
+        for (ClassFile cf : delta.added()) builder.add(Annotated.of(cf));
+
+        // Changed classes may have lost every annotation, so they are marked as well as removed ones
+        for (ClassFile cf : delta.changed()) builder.remove(cf.reference());
+        for (String name : delta.removed()) builder.remove(ClassReference.of("L" + name.replace('.', '/') + ";"));
+        return builder.build();
+    }
+
+    private static void flatten(@NotNull AnnolyzeClassSource source, @NotNull List<AnnolyzeClassSource> out) {
+        if (source instanceof AnnolyzeComposite composite) {
+            for (AnnolyzeClassSource s : composite.sources()) flatten(s, out);
+        } else {
+            out.add(source);
+        }
+    }
+
+    //
+
+    private final Set<ElementType> elements;
+    private final Map<ClassReference, Integer> ids;
+    private final ClassReference[] classes;
+    private final FieldReference[] fields;
+    private final MethodReference[] methods;
+    private final int[][] classPostings;
+    private final int[][] fieldPostings;
+    private final int[][] methodPostings;
+
+    private AnnotationIndexImpl(
+            @NotNull Set<ElementType> elements,
+            @NotNull Map<ClassReference, Integer> ids,
+            @NotNull ClassReference @NotNull [] classes,
+            @NotNull FieldReference @NotNull [] fields,
+            @NotNull MethodReference @NotNull [] methods,
+            int @NotNull [] @NotNull [] classPostings,
+            int @NotNull [] @NotNull [] fieldPostings,
+            int @NotNull [] @NotNull [] methodPostings
+    ) {
+        this.elements = elements;
+        this.ids = ids;
+        this.classes = classes;
+        this.fields = fields;
+        this.methods = methods;
+        this.classPostings = classPostings;
+        this.fieldPostings = fieldPostings;
+        this.methodPostings = methodPostings;
+    }
+
+    @Override
+    public @NotNull @Unmodifiable Set<ClassReference> annotations() {
+        return Collections.unmodifiableSet(this.ids.keySet());
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<ClassReference> classes(@NotNull ClassReference annotation) {
+        return new PostingList<>(this.classes, this.postings(this.classPostings, annotation));
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<FieldReference> fields(@NotNull ClassReference annotation) {
+        return new PostingList<>(this.fields, this.postings(this.fieldPostings, annotation));
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<MethodReference> methods(@NotNull ClassReference annotation) {
+        return new PostingList<>(this.methods, this.postings(this.methodPostings, annotation));
+    }
+
+    @Override
+    public void write(@NotNull OutputStream out) throws IOException {
+        AnnotationIndexWriter.write(this, out);
+    }
+
+    private int @NotNull [] postings(int @NotNull [] @NotNull [] table, @NotNull ClassReference annotation) {
+        final Integer id = this.ids.get(annotation);
+        return (id == null) ? EMPTY : table[id];
+    }
+
+    // Tables for AnnotationIndexWriter
+
+    @NotNull ClassReference @NotNull [] annotationTable() {
+        return this.ids.keySet().toArray(new ClassReference[0]);
+    }
+
+    @NotNull ClassReference @NotNull [] classTable() {
+        return this.classes;
+    }
+
+    @NotNull FieldReference @NotNull [] fieldTable() {
+        return this.fields;
+    }
+
+    @NotNull MethodReference @NotNull [] methodTable() {
+        return this.methods;
+    }
+
+    int @NotNull [] classPostings(int id) {
+        return this.classPostings[id];
+    }
+
+    int @NotNull [] fieldPostings(int id) {
+        return this.fieldPostings[id];
+    }
+
+    int @NotNull [] methodPostings(int id) {
+        return this.methodPostings[id];
+    }
+
+    //
+
+    /**
+     * The annotated parts of a class file.
+     */
+    record Annotated(
+            @NotNull ClassReference reference,
+            @NotNull List<ClassReference> annotations,
+            @NotNull List<MemberReference<?>> members,
+            @NotNull List<List<ClassReference>> memberAnnotations
+    ) {
+
+        static @NotNull Annotated of(@NotNull ClassFile cf) {
+            final List<MemberReference<?>> members = new ArrayList<>(0);
+            final List<List<ClassReference>> memberAnnotations = new ArrayList<>(0);
+            for (MemberReference<?> member : cf.getMembers()) {
+                final List<ClassReference> list = cf.getAnnotations(member);
+                if (list.isEmpty()) continue;
+                members.add(member);
+                memberAnnotations.add(list);
+            }
+            return new Annotated(cf.reference(), cf.getAnnotations(), members, memberAnnotations);
+        }
+
+        /**
+         * Regroups the content of an existing index by class, keeping only classes with the given names. Classes
+         * are returned in the order they were indexed, so that building from them preserves the order of every
+         * query.
+         */
+        static @NotNull List<Annotated> of(@NotNull AnnotationIndex index, @NotNull Predicate<String> names) {
+            final Tables tables = Tables.of(index);
+            final Map<ClassReference, Annotated> map = new HashMap<>();
+            final List<List<ClassReference>> owners = new ArrayList<>(3);
+
+            // Each table holds the entries of a class contiguously and in the order classes were added
+            List<ClassReference> order = new ArrayList<>();
+            for (int i=0; i < tables.classes().size(); i++) {
+                final ClassReference cls = tables.classes().get(i);
+                final List<ClassReference> annotations = tables.classAnnotations().get(i);
+                if (annotations.isEmpty() || !names.test(cls.name())) continue;
+                of(map, cls, order).annotations().addAll(annotations);
+            }
+            owners.add(order);
+
+            order = new ArrayList<>();
+            for (int i=0; i < tables.fields().size(); i++) {
+                final FieldReference field = tables.fields().get(i);
+                final List<ClassReference> annotations = tables.fieldAnnotations().get(i);
+                if (annotations.isEmpty() || !names.test(field.declaringClass().name())) continue;
+                of(map, field.declaringClass(), order).add(field, annotations);
+            }
+            owners.add(order);
+
+            order = new ArrayList<>();
+            for (int i=0; i < tables.methods().size(); i++) {
+                final MethodReference method = tables.methods().get(i);
+                final List<ClassReference> annotations = tables.methodAnnotations().get(i);
+                if (annotations.isEmpty() || !names.test(method.declaringClass().name())) continue;
+                of(map, method.declaringClass(), order).add(method, annotations);
+            }
+            owners.add(order);
+
+            final List<Annotated> ret = new ArrayList<>(map.size());
+            for (ClassReference cls : merge(owners)) ret.add(map.get(cls));
+            return ret;
+        }
+
+        private static @NotNull Annotated of(
+                @NotNull Map<ClassReference, Annotated> map,
+                @NotNull ClassReference cls,
+                @NotNull List<ClassReference> order
+        ) {
+            if (order.isEmpty() || !order.get(order.size() - 1).equals(cls)) order.add(cls);
+            return map.computeIfAbsent(cls, (ClassReference k) ->
+                    new Annotated(k, new ArrayList<>(1), new ArrayList<>(0), new ArrayList<>(0)));
+        }
+
+        /**
+         * Merges the order in which classes appear in each table into a single order which agrees with all of them.
+         * A class absent from a table is unordered against that table's classes, and may be placed anywhere
+         * between its neighbours in the other tables.
+         */
+        private static @NotNull List<ClassReference> merge(@NotNull List<List<ClassReference>> orders) {
+            final List<Map<ClassReference, Integer>> positions = new ArrayList<>(orders.size());
+            for (List<ClassReference> order : orders) {
+                final Map<ClassReference, Integer> map = new HashMap<>(order.size());
+                for (int i=0; i < order.size(); i++) map.putIfAbsent(order.get(i), i);
+                positions.add(map);
+            }
+
+            final int[] heads = new int[orders.size()];
+            final Set<ClassReference> emitted = new HashSet<>();
+            final List<ClassReference> ret = new ArrayList<>();
+            while (true) {
+                for (int s=0; s < orders.size(); s++) {
+                    final List<ClassReference> order = orders.get(s);
+                    while (heads[s] < order.size() && emitted.contains(order.get(heads[s]))) heads[s]++;
+                }
+
+                ClassReference next = null;
+                int fallback = -1;
+                for (int s=0; s < orders.size(); s++) {
+                    final List<ClassReference> order = orders.get(s);
+                    if (heads[s] == order.size()) continue;
+                    if (fallback == -1) fallback = s;
+
+                    // A head may be taken once no other table lists it further ahead
+                    final ClassReference head = order.get(heads[s]);
+                    boolean ready = true;
+                    for (int t=0; ready && t < orders.size(); t++) {
+                        final Integer pos = positions.get(t).get(head);
+                        if (pos != null && pos > heads[t]) ready = false;
+                    }
+                    if (ready) {
+                        next = head;
+                        break;
+                    }
+                }
+                if (fallback == -1) break;
+                // Tables which disagree can only come from a damaged index; they are taken in table order
+                if (next == null) next = orders.get(fallback).get(heads[fallback]);
+                emitted.add(next);
+                ret.add(next);
+            }
+            return ret;
+        }
+
+        private void add(@NotNull MemberReference<?> member, @NotNull List<ClassReference> annotations) {
+            this.members.add(member);
+            this.memberAnnotations.add(annotations);
+        }
+
+    }
+
+    /**
+     * The tables of an index in id order, with the annotations carried by each entry.
+     */
+    private record Tables(
+            @NotNull List<ClassReference> classes,
+            @NotNull List<FieldReference> fields,
+            @NotNull List<MethodReference> methods,
+            @NotNull List<List<ClassReference>> classAnnotations,
+            @NotNull List<List<ClassReference>> fieldAnnotations,
+            @NotNull List<List<ClassReference>> methodAnnotations
+    ) {
+
+        static @NotNull Tables of(@NotNull AnnotationIndex index) {
+            if (index instanceof SharedAnnotationIndexImpl shared) index = shared.snapshot();
+            if (index instanceof AnnotationIndexImpl impl) {
+                final Tables ret = new Tables(
+                        Arrays.asList(impl.classTable()),
+                        Arrays.asList(impl.fieldTable()),
+                        Arrays.asList(impl.methodTable())
+                );
+                final ClassReference[] annotations = impl.annotationTable();
+                for (int i=0; i < annotations.length; i++) {
+                    post(ret.classAnnotations(), impl.classPostings(i), annotations[i]);
+                    post(ret.fieldAnnotations(), impl.fieldPostings(i), annotations[i]);
+                    post(ret.methodAnnotations(), impl.methodPostings(i), annotations[i]);
+                }
+                return ret;
+            }
+
+            final AnnotationIndexFile file;
+            if (index instanceof AnnotationIndexFile f) {
+                file = f;
+            } else {
+                // Not reachable through the API, which implements every index in this package
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try {
+                    index.write(bos);
+                    file = new AnnotationIndexFile(ByteBuffer.wrap(bos.toByteArray()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to serialize index", e);
+                }
+            }
+            final ClassReference[] classes = new ClassReference[file.classCount()];
+            for (int i=0; i < classes.length; i++) classes[i] = file.classAt(i);
+            final FieldReference[] fields = new FieldReference[file.memberCount(false)];
+            for (int i=0; i < fields.length; i++) fields[i] = file.fieldAt(i);
+            final MethodReference[] methods = new MethodReference[file.memberCount(true)];
+            for (int i=0; i < methods.length; i++) methods[i] = file.methodAt(i);
+
+            final Tables ret = new Tables(Arrays.asList(classes), Arrays.asList(fields), Arrays.asList(methods));
+            for (int i=0; i < file.annotationCount(); i++) {
+                final ClassReference annotation = file.annotationAt(i);
+                post(ret.classAnnotations(), file.postings(i, 4), annotation);
+                post(ret.fieldAnnotations(), file.postings(i, 12), annotation);
+                post(ret.methodAnnotations(), file.postings(i, 20), annotation);
+            }
+            return ret;
+        }
+
+        Tables(
+                @NotNull List<ClassReference> classes,
+                @NotNull List<FieldReference> fields,
+                @NotNull List<MethodReference> methods
+        ) {
+            this(classes, fields, methods, lists(classes.size()), lists(fields.size()), lists(methods.size()));
+        }
+
+        private static @NotNull List<List<ClassReference>> lists(int size) {
+            final List<List<ClassReference>> ret = new ArrayList<>(size);
+            for (int i=0; i < size; i++) ret.add(new ArrayList<>(1));
+            return ret;
+        }
+
+        private static void post(
+                @NotNull List<List<ClassReference>> lists,
+                int @NotNull [] postings,
+                @NotNull ClassReference annotation
+        ) {
+            for (int id : postings) lists.get(id).add(annotation);
+        }
+
+    }
+
+    /**
+     * A run of consecutive sources in a build; either an embedded index and the class names it may contribute, or
+     * a range of scanned entries.
+     */
+    private record Segment(
+            @Nullable AnnotationIndex index,
+            @Nullable Set<String> owned,
+            int start,
+            int end
+    ) { }
+
+    /**
+     * Assigns ids in the order classes are added, so that every posting list is sorted. Classes marked as removed
+     * are appended to the class table without postings, where only {@link AnnotationIndexMerger} sees them.
+     */
+    static final class Builder {
+
+        // Rough heap cost of a reference and of a posting, in bytes, for builders which spill to disk
+        private static final int REFERENCE_FOOTPRINT = 64;
+        private static final int MEMBER_FOOTPRINT = 128;
+        private static final int ANNOTATION_FOOTPRINT = 160;
+        private static final int POSTING_FOOTPRINT = 4;
+
+        private final Set<ElementType> elements;
+        private final boolean includeTypes;
+        private final boolean includeFields;
+        private final boolean includeMethods;
+        private final Map<ClassReference, Integer> ids = new LinkedHashMap<>();
+        private final List<ClassReference> classes = new ArrayList<>();
+        private final List<FieldReference> fields = new ArrayList<>();
+        private final List<MethodReference> methods = new ArrayList<>();
+        private final List<IntList> classPostings = new ArrayList<>();
+        private final List<IntList> fieldPostings = new ArrayList<>();
+        private final List<IntList> methodPostings = new ArrayList<>();
+        private final Set<String> removed = new LinkedHashSet<>();
+        private long footprint = 0L;
+
+        Builder(@NotNull Set<ElementType> elements) {
+            this.elements = Set.copyOf(elements);
+            this.includeTypes = elements.contains(ElementType.TYPE);
+            this.includeFields = elements.contains(ElementType.FIELD);
+            this.includeMethods = elements.contains(ElementType.METHOD);
+        }
+
+        void add(@NotNull Annotated a) {
+            if (this.includeTypes && !a.annotations().isEmpty()) {
+                final int classId = this.classes.size();
+                this.classes.add(a.reference());
+                this.footprint += REFERENCE_FOOTPRINT + a.reference().toString().length();
+                for (ClassReference annotation : a.annotations()) {
+                    this.classPostings.get(this.id(annotation)).add(classId);
+                    this.footprint += POSTING_FOOTPRINT;
+                }
+            }
+
+            for (int i=0; i < a.members().size(); i++) {
+                final MemberReference<?> member = a.members().get(i);
+                final List<IntList> postings;
+                final int memberId;
+                if (member instanceof FieldReference field) {
+                    if (!this.includeFields) continue;
+                    memberId = this.fields.size();
+                    this.fields.add(field);
+                    postings = this.fieldPostings;
+                } else if (member instanceof MethodReference method) {
+                    if (!this.includeMethods) continue;
+                    memberId = this.methods.size();
+                    this.methods.add(method);
+                    postings = this.methodPostings;
+                } else {
+                    continue;
+                }
+                this.footprint += MEMBER_FOOTPRINT + member.name().length() + member.descriptor().length();
+                for (ClassReference annotation : a.memberAnnotations().get(i)) {
+                    postings.get(this.id(annotation)).add(memberId);
+                    this.footprint += POSTING_FOOTPRINT;
+                }
+            }
+        }
+
+        void remove(@NotNull ClassReference cls) {
+            this.removed.add(cls.toString());
+        }
+
+        /**
+         * A rough estimate of the heap held by the tables and postings of this builder, in bytes.
+         */
+        long footprint() {
+            return this.footprint;
+        }
+
+        boolean isEmpty() {
+            return this.classes.isEmpty() && this.fields.isEmpty() && this.methods.isEmpty();
+        }
+
+        private int id(@NotNull ClassReference annotation) {
+            Integer id = this.ids.get(annotation);
+            if (id == null) {
+                this.footprint += ANNOTATION_FOOTPRINT + annotation.toString().length();
+                id = this.ids.size();
+                this.ids.put(annotation, id);
+                this.classPostings.add(new IntList());
+                this.fieldPostings.add(new IntList());
+                this.methodPostings.add(new IntList());
+            }
+            return id;
+        }
+
+        @NotNull AnnotationIndexImpl build() {
+            if (!this.removed.isEmpty()) {
+                // Classes with entries of their own need no mark
+                for (ClassReference cls : this.classes) this.removed.remove(cls.toString());
+                for (FieldReference field : this.fields) this.removed.remove(field.declaringClass().toString());
+                for (MethodReference method : this.methods) this.removed.remove(method.declaringClass().toString());
+                for (String cls : this.removed) this.classes.add(ClassReference.of(cls));
+            }
+            return new AnnotationIndexImpl(
+                    this.elements,
+                    this.ids,
+                    this.classes.toArray(new ClassReference[0]),
+                    this.fields.toArray(new FieldReference[0]),
+                    this.methods.toArray(new MethodReference[0]),
+                    trim(this.classPostings),
+                    trim(this.fieldPostings),
+                    trim(this.methodPostings)
+            );
+        }
+
+        private static int @NotNull [] @NotNull [] trim(@NotNull List<IntList> lists) {
+            final int[][] ret = new int[lists.size()][];
+            for (int i=0; i < ret.length; i++) ret[i] = lists.get(i).toArray();
+            return ret;
+        }
+
+    }
+
+    private static final class IntList {
+
+        private int[] data = EMPTY;
+        private int size = 0;
+
+        void add(int value) {
+            // Annotations repeated on one element are recorded once
+            if (this.size != 0 && this.data[this.size - 1] == value) return;
+            if (this.size == this.data.length) this.data = Arrays.copyOf(this.data, Math.max(4, this.size << 1));
+            this.data[this.size++] = value;
+        }
+
+        int @NotNull [] toArray() {
+            return (this.size == 0) ? EMPTY : Arrays.copyOf(this.data, this.size);
+        }
+
+    }
+
+    /**
+     * A view of the elements of a table selected by a posting list.
+     */
+    private static final class PostingList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final T[] table;
+        private final int[] ids;
+
+        PostingList(@NotNull T @NotNull [] table, int @NotNull [] ids) {
+            this.table = table;
+            this.ids = ids;
+        }
+
+        @Override
+        public @NotNull T get(int index) {
+            return this.table[this.ids[index]];
+        }
+
+        @Override
+        public int size() {
+            return this.ids.length;
+        }
+
+    }
+
+}
@@ -0,0 +1,446 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static io.github.wasabithumb.annolyze.index.AnnotationIndexFormat.*;
+
+/**
+ * Merges index segments in the binary format described by {@link AnnotationIndexFormat} into one index. Segments
+ * are memory mapped and read in place. Their sorted string tables are merged by a k-way merge, and every id in the
+ * output is remapped from the id of the segment it came from; only the remapping tables and a single posting list
+ * are held in memory at once. The output depends only on the content and order of the segments.
+ */
+@ApiStatus.Internal
+final class AnnotationIndexMerger {
+
+    /**
+     * Offsets of the class, field and method posting lists within an annotation entry.
+     */
+    private static final int[] POSTING_FIELDS = { 4, 12, 20 };
+
+    static void merge(@NotNull List<Path> paths, @NotNull Path file, boolean compact) throws IOException {
+        final AnnotationIndexFile[] segments = new AnnotationIndexFile[paths.size()];
+        for (int i=0; i < segments.length; i++) segments[i] = AnnotationIndexFile.open(paths.get(i));
+        final AnnotationIndexMerger merger = new AnnotationIndexMerger(segments, compact);
+        merger.plan();
+
+        // Segments stay mapped until the output is in place, so a segment may be replaced by the merge
+        IOUtil.writeAtomically(file, (Path tmp) -> {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                merger.write(channel);
+            }
+        });
+    }
+
+    //
+
+    private final AnnotationIndexFile[] segments;
+    private final boolean compact;
+
+    // Merged strings: the union of the string tables of all segments, in order
+    private int[][] stringRemap;
+    private int[] sourceSegment;
+    private int[] sourceId;
+    private int[] outputId;
+    private final BitSet used = new BitSet();
+
+    // Segment ids of table entries to output ids, or -1 for entries which are dropped
+    private final int[][] classRemap;
+    private final int[][] fieldRemap;
+    private final int[][] methodRemap;
+    private int classCount = 0;
+    private int fieldCount = 0;
+    private int methodCount = 0;
+    private int[] removed;
+
+    // Merged string ids of the output annotations, and the slot of each in every segment or -1
+    private int[] annotations;
+    private int[][] annotationSlots;
+
+    private AnnotationIndexMerger(AnnotationIndexFile @NotNull [] segments, boolean compact) {
+        this.segments = segments;
+        this.compact = compact;
+        this.stringRemap = new int[segments.length][];
+        this.classRemap = new int[segments.length][];
+        this.fieldRemap = new int[segments.length][];
+        this.methodRemap = new int[segments.length][];
+    }
+
+    //
+
+    private void plan() throws AnnotationIndexFormatException {
+        this.mergeStrings();
+        this.selectEntries();
+        this.selectAnnotations();
+
+        this.outputId = new int[this.sourceId.length];
+        Arrays.fill(this.outputId, -1);
+        int next = 0;
+        for (int g = this.used.nextSetBit(0); g >= 0; g = this.used.nextSetBit(g + 1)) this.outputId[g] = next++;
+    }
+
+    private void mergeStrings() {
+        int total = 0;
+        for (AnnotationIndexFile segment : this.segments) total += segment.stringCount();
+        this.sourceSegment = new int[total];
+        this.sourceId = new int[total];
+
+        final PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        for (int s=0; s < this.segments.length; s++) {
+            this.stringRemap[s] = new int[this.segments[s].stringCount()];
+            if (this.segments[s].stringCount() != 0) queue.add(new Cursor(s, this.segments[s]));
+        }
+
+        int merged = -1;
+        ByteBuffer last = null;
+        Cursor cursor;
+        while ((cursor = queue.poll()) != null) {
+            if (last == null || compare(last, cursor.current) != 0) {
+                merged++;
+                this.sourceSegment[merged] = cursor.segment;
+                this.sourceId[merged] = cursor.id;
+                last = cursor.current;
+            }
+            this.stringRemap[cursor.segment][cursor.id] = merged;
+            if (cursor.advance()) queue.add(cursor);
+        }
+        this.sourceSegment = Arrays.copyOf(this.sourceSegment, merged + 1);
+        this.sourceId = Arrays.copyOf(this.sourceId, merged + 1);
+    }
+
+    /**
+     * Decides which table entries are kept. A segment covers the classes it holds entries for or marks as removed,
+     * and entries of classes covered by an earlier segment are dropped.
+     */
+    private void selectEntries() throws AnnotationIndexFormatException {
+        final BitSet covered = new BitSet();
+        final BitSet owned = new BitSet();
+        final BitSet segmentCovered = new BitSet();
+        final BitSet referenced = new BitSet();
+
+        for (int s=0; s < this.segments.length; s++) {
+            final AnnotationIndexFile segment = this.segments[s];
+            segmentCovered.clear();
+
+            // Class entries without postings are removal marks
+            referenced.clear();
+            for (int slot=0; slot < segment.annotationCount(); slot++) {
+                for (int id : segment.postings(slot, POSTING_FIELDS[0])) referenced.set(id);
+            }
+
+            final int[] classes = new int[segment.classCount()];
+            for (int i=0; i < classes.length; i++) {
+                final int owner = this.string(s, segment.classEntry(i));
+                segmentCovered.set(owner);
+                if (covered.get(owner) || !referenced.get(i)) {
+                    classes[i] = -1;
+                } else {
+                    classes[i] = this.classCount++;
+                    owned.set(owner);
+                    this.used.set(owner);
+                }
+            }
+            this.classRemap[s] = classes;
+
+            for (int kind=0; kind < 2; kind++) {
+                final boolean method = (kind == 1);
+                final int[] members = new int[segment.memberCount(method)];
+                for (int i=0; i < members.length; i++) {
+                    final int owner = this.string(s, segment.memberEntry(method, i, 0));
+                    segmentCovered.set(owner);
+                    if (covered.get(owner)) {
+                        members[i] = -1;
+                        continue;
+                    }
+                    members[i] = method ? this.methodCount++ : this.fieldCount++;
+                    owned.set(owner);
+                    this.used.set(owner);
+                    this.used.set(this.string(s, segment.memberEntry(method, i, 1)));
+                    this.used.set(this.string(s, segment.memberEntry(method, i, 2)));
+                }
+                if (method) {
+                    this.methodRemap[s] = members;
+                } else {
+                    this.fieldRemap[s] = members;
+                }
+            }
+
+            covered.or(segmentCovered);
+        }
+
+        // The output is a segment in its own right, so it marks whatever its inputs covered without entries
+        if (this.compact) {
+            this.removed = new int[0];
+        } else {
+            covered.andNot(owned);
+            this.removed = covered.stream().toArray();
+            this.used.or(covered);
+            this.classCount += this.removed.length;
+        }
+    }
+
+    private void selectAnnotations() throws AnnotationIndexFormatException {
+        final SortedMap<Integer, int[]> slots = new TreeMap<>();
+        for (int s=0; s < this.segments.length; s++) {
+            for (int slot=0; slot < this.segments[s].annotationCount(); slot++) {
+                slots.computeIfAbsent(this.string(s, this.segments[s].annotationEntry(slot)), (Integer k) -> {
+                    final int[] ret = new int[this.segments.length];
+                    Arrays.fill(ret, -1);
+                    return ret;
+                })[s] = slot;
+            }
+        }
+
+        // Annotations whose every element was dropped are dropped with them
+        final List<Integer> kept = new ArrayList<>(slots.size());
+        final List<int[]> keptSlots = new ArrayList<>(slots.size());
+        for (Map.Entry<Integer, int[]> entry : slots.entrySet()) {
+            if (!this.isEmpty(entry.getValue())) {
+                kept.add(entry.getKey());
+                keptSlots.add(entry.getValue());
+                this.used.set(entry.getKey());
+            }
+        }
+        this.annotations = new int[kept.size()];
+        for (int i=0; i < this.annotations.length; i++) this.annotations[i] = kept.get(i);
+        this.annotationSlots = keptSlots.toArray(new int[0][]);
+    }
+
+    private boolean isEmpty(int @NotNull [] slots) throws AnnotationIndexFormatException {
+        for (int s=0; s < slots.length; s++) {
+            if (slots[s] == -1) continue;
+            for (int kind=0; kind < 3; kind++) {
+                final int[] remap = this.remap(s, kind);
+                for (int id : this.segments[s].postings(slots[s], POSTING_FIELDS[kind])) {
+                    if (this.posting(remap, id) != -1) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    //
+
+    private void write(@NotNull FileChannel channel) throws IOException {
+        final int stringCount = this.used.cardinality();
+        int stringDataLength = 0;
+        for (int g = this.used.nextSetBit(0); g >= 0; g = this.used.nextSetBit(g + 1)) {
+            stringDataLength += this.stringBuffer(g).remaining();
+        }
+
+        final int stringOffsetsPos = HEADER_LENGTH;
+        final int stringDataPos = stringOffsetsPos + 4 * (stringCount + 1);
+        final int classTablePos = stringDataPos + stringDataLength;
+        final int fieldTablePos = classTablePos + CLASS_ENTRY_LENGTH * this.classCount;
+        final int methodTablePos = fieldTablePos + MEMBER_ENTRY_LENGTH * this.fieldCount;
+        final int annotationTablePos = methodTablePos + MEMBER_ENTRY_LENGTH * this.methodCount;
+        final int bucketTablePos = annotationTablePos + ANNOTATION_ENTRY_LENGTH * this.annotations.length;
+
+        // Place annotations by minimal perfect hash
+        final byte[][] keys = new byte[this.annotations.length][];
+        for (int i=0; i < keys.length; i++) {
+            final ByteBuffer key = this.stringBuffer(this.annotations[i]);
+            keys[i] = new byte[key.remaining()];
+            key.get(keys[i]);
+        }
+        final int[] seeds = new int[bucketCount(keys.length)];
+        final int[] slots = AnnotationIndexWriter.place(keys, seeds);
+        final int[] bySlot = new int[keys.length];
+        for (int i=0; i < slots.length; i++) bySlot[slots[i]] = i;
+        final int postingsPos = bucketTablePos + 4 * seeds.length;
+
+        // The header and annotation table are written last, once the postings have been
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        dos.write(new byte[HEADER_LENGTH]);
+
+        int head = 0;
+        for (int g = this.used.nextSetBit(0); g >= 0; g = this.used.nextSetBit(g + 1)) {
+            dos.writeInt(head);
+            head += this.stringBuffer(g).remaining();
+        }
+        dos.writeInt(head);
+        byte[] scratch = new byte[64];
+        for (int g = this.used.nextSetBit(0); g >= 0; g = this.used.nextSetBit(g + 1)) {
+            final ByteBuffer s = this.stringBuffer(g);
+            final int len = s.remaining();
+            if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length << 1)];
+            s.get(scratch, 0, len);
+            dos.write(scratch, 0, len);
+        }
+
+        for (int s=0; s < this.segments.length; s++) {
+            for (int i=0; i < this.classRemap[s].length; i++) {
+                if (this.classRemap[s][i] != -1) dos.writeInt(this.output(s, this.segments[s].classEntry(i)));
+            }
+        }
+        for (int g : this.removed) dos.writeInt(this.outputId[g]);
+
+        for (int kind=0; kind < 2; kind++) {
+            final boolean method = (kind == 1);
+            for (int s=0; s < this.segments.length; s++) {
+                final int[] remap = method ? this.methodRemap[s] : this.fieldRemap[s];
+                final AnnotationIndexFile segment = this.segments[s];
+                for (int i=0; i < remap.length; i++) {
+                    if (remap[i] == -1) continue;
+                    dos.writeInt(this.output(s, segment.memberEntry(method, i, 0)));
+                    dos.writeInt(this.output(s, segment.memberEntry(method, i, 1)));
+                    dos.writeInt(this.output(s, segment.memberEntry(method, i, 2)));
+                    dos.writeInt(segment.memberEntry(method, i, 3));
+                }
+            }
+        }
+
+        dos.write(new byte[ANNOTATION_ENTRY_LENGTH * this.annotations.length]);
+        for (int seed : seeds) dos.writeInt(seed);
+
+        // Lists are concatenated in segment order; ids were assigned in that order, so they remain ascending
+        final ByteBuffer annotationTable = ByteBuffer.allocate(ANNOTATION_ENTRY_LENGTH * this.annotations.length);
+        for (int slot=0; slot < bySlot.length; slot++) {
+            final int a = bySlot[slot];
+            annotationTable.putInt(this.outputId[this.annotations[a]]);
+            for (int kind=0; kind < 3; kind++) {
+                annotationTable.putInt(dos.size() - postingsPos);
+                int count = 0;
+                int prev = 0;
+                for (int s=0; s < this.segments.length; s++) {
+                    final int segmentSlot = this.annotationSlots[a][s];
+                    if (segmentSlot == -1) continue;
+                    final int[] remap = this.remap(s, kind);
+                    for (int id : this.segments[s].postings(segmentSlot, POSTING_FIELDS[kind])) {
+                        final int out = this.posting(remap, id);
+                        if (out == -1) continue;
+                        writeVarInt(dos, out - prev);
+                        prev = out;
+                        count++;
+                    }
+                }
+                annotationTable.putInt(count);
+            }
+        }
+        final int postingsLength = dos.size() - postingsPos;
+        dos.flush();
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC);
+        header.putShort((short) MAJOR_VERSION);
+        header.putShort((short) MINOR_VERSION);
+        header.putInt(stringCount);
+        header.putInt(stringOffsetsPos);
+        header.putInt(stringDataPos);
+        header.putInt(this.classCount);
+        header.putInt(classTablePos);
+        header.putInt(this.fieldCount);
+        header.putInt(fieldTablePos);
+        header.putInt(this.methodCount);
+        header.putInt(methodTablePos);
+        header.putInt(this.annotations.length);
+        header.putInt(annotationTablePos);
+        header.putInt(seeds.length);
+        header.putInt(bucketTablePos);
+        header.putInt(postingsPos);
+        header.putInt(postingsLength);
+        writeFully(channel, header.flip(), 0L);
+        writeFully(channel, annotationTable.flip(), annotationTablePos);
+    }
+
+    //
+
+    /**
+     * Maps a string id of a segment to its merged id.
+     */
+    private int string(int segment, int id) throws AnnotationIndexFormatException {
+        final int[] remap = this.stringRemap[segment];
+        if (id < 0 || id >= remap.length) throw new AnnotationIndexFormatException("String id " + id + " out of range");
+        return remap[id];
+    }
+
+    /**
+     * Maps a string id of a segment to its output id.
+     */
+    private int output(int segment, int id) throws AnnotationIndexFormatException {
+        return this.outputId[this.string(segment, id)];
+    }
+
+    private @NotNull ByteBuffer stringBuffer(int merged) {
+        return this.segments[this.sourceSegment[merged]].stringBuffer(this.sourceId[merged]);
+    }
+
+    private int @NotNull [] remap(int segment, int kind) {
+        return switch (kind) {
+            case 0 -> this.classRemap[segment];
+            case 1 -> this.fieldRemap[segment];
+            default -> this.methodRemap[segment];
+        };
+    }
+
+    private int posting(int @NotNull [] remap, int id) throws AnnotationIndexFormatException {
+        if (id < 0 || id >= remap.length) throw new AnnotationIndexFormatException("Posting " + id + " out of range");
+        return remap[id];
+    }
+
+    /**
+     * Compares strings by unsigned byte order, as they are sorted in the string table.
+     */
+    private static int compare(@NotNull ByteBuffer a, @NotNull ByteBuffer b) {
+        final int i = a.mismatch(b);
+        if (i == -1) return 0;
+        if (i == a.remaining() || i == b.remaining()) return a.remaining() - b.remaining();
+        return Byte.compareUnsigned(a.get(a.position() + i), b.get(b.position() + i));
+    }
+
+    private static void writeVarInt(@NotNull DataOutputStream dos, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dos.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dos.write(value);
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf, pos + buf.position());
+    }
+
+    //
+
+    /**
+     * The next unmerged string of a segment. Equal strings are taken from earlier segments first.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final int segment;
+        private final AnnotationIndexFile file;
+        private int id = 0;
+        private ByteBuffer current;
+
+        Cursor(int segment, @NotNull AnnotationIndexFile file) {
+            this.segment = segment;
+            this.file = file;
+            this.current = file.stringBuffer(0);
+        }
+
+        boolean advance() {
+            if (++this.id >= this.file.stringCount()) return false;
+            this.current = this.file.stringBuffer(this.id);
+            return true;
+        }
+
+        @Override
+        public int compareTo(@NotNull Cursor other) {
+            final int cmp = compare(this.current, other.current);
+            return (cmp != 0) ? cmp : Integer.compare(this.segment, other.segment);
+        }
+
+    }
+
+}
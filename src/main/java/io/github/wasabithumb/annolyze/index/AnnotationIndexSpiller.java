@@ -0,0 +1,103 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.ElementType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds an index over a source too large to index in memory. Classes are read in batches and added to a builder
+ * until its estimated footprint reaches the heap budget; the builder is then written to a temporary file as a
+ * run, and a new builder is started. Runs cover consecutive classes of the scan, so
+ * {@link AnnotationIndexMerger merging} them in order yields the same bytes as a single build.
+ */
+@ApiStatus.Internal
+final class AnnotationIndexSpiller {
+
+    /**
+     * Number of classes read at once per thread. Only the annotated parts of a batch are held until it is added.
+     */
+    private static final int BATCH_PER_THREAD = 256;
+
+    static void build(
+            @NotNull AnnolyzeClassSource source,
+            @NotNull Set<ElementType> elements,
+            @NotNull Path file,
+            long heapBudget
+    ) throws IOException {
+        if (heapBudget <= 0L) throw new IllegalArgumentException("Heap budget must be positive");
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        final List<Path> runs = new ArrayList<>();
+        try {
+            AnnotationIndexImpl.Builder builder = new AnnotationIndexImpl.Builder(elements);
+            try (AnnolyzeClassScan scan = source.scan(true)) {
+                final List<AnnolyzeClassEntry> entries = scan.entries();
+                final int parallelism = source.parallelism();
+                final int batch = BATCH_PER_THREAD * parallelism;
+                for (int start=0; start < entries.size(); start += batch) {
+                    final List<AnnotationIndexImpl.Annotated> annotated = ParallelUtil.map(
+                            entries.subList(start, Math.min(start + batch, entries.size())),
+                            (AnnolyzeClassEntry entry) -> AnnotationIndexImpl.Annotated.of(entry.read()),
+                            parallelism
+                    );
+                    for (AnnotationIndexImpl.Annotated a : annotated) {
+                        builder.add(a);
+                        if (builder.footprint() < heapBudget) continue;
+                        runs.add(spill(builder.build(), parent, file));
+                        builder = new AnnotationIndexImpl.Builder(elements);
+                    }
+                }
+            }
+
+            if (runs.isEmpty()) {
+                builder.build().write(file);
+                return;
+            }
+            if (!builder.isEmpty()) runs.add(spill(builder.build(), parent, file));
+            AnnotationIndexMerger.merge(runs, file, false);
+        } finally {
+            for (Path run : runs) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException ignored) {
+                    // Some platforms refuse to delete files which are still mapped
+                }
+            }
+        }
+    }
+
+    private static @NotNull Path spill(
+            @NotNull AnnotationIndex run,
+            @Nullable Path parent,
+            @NotNull Path file
+    ) throws IOException {
+        final Path ret = Files.createTempFile(parent, file.getFileName().toString(), ".run");
+        try (OutputStream os = Files.newOutputStream(ret);
+             BufferedOutputStream bos = new BufferedOutputStream(os)
+        ) {
+            run.write(bos);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(ret);
+            throw e;
+        }
+        return ret;
+    }
+
+    private AnnotationIndexSpiller() { }
+
+}
@@ -0,0 +1,247 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.reference.member.MemberReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static io.github.wasabithumb.annolyze.index.AnnotationIndexFormat.*;
+
+/**
+ * Writes an {@link AnnotationIndexImpl} in the binary format described by {@link AnnotationIndexFormat}.
+ */
+@ApiStatus.Internal
+final class AnnotationIndexWriter {
+
+    private static final int MAX_SEED = 1 << 24;
+
+    static void write(@NotNull AnnotationIndexImpl index, @NotNull OutputStream out) throws IOException {
+        (new AnnotationIndexWriter(index)).write(out);
+    }
+
+    //
+
+    private final AnnotationIndexImpl index;
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private byte[][] strings;
+
+    private AnnotationIndexWriter(@NotNull AnnotationIndexImpl index) {
+        this.index = index;
+    }
+
+    private void write(@NotNull OutputStream os) throws IOException {
+        final ClassReference[] annotations = this.index.annotationTable();
+        final ClassReference[] classes = this.index.classTable();
+        final MemberReference<?>[] fields = this.index.fieldTable();
+        final MemberReference<?>[] methods = this.index.methodTable();
+        this.collectStrings(annotations, classes, fields, methods);
+
+        // Place annotations by minimal perfect hash, in string order so that the placement depends only on content
+        final Integer[] order = new Integer[annotations.length];
+        for (int i=0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> this.stringId(annotations[i].toString())));
+        final byte[][] keys = new byte[annotations.length][];
+        for (int i=0; i < keys.length; i++) keys[i] = this.strings[this.stringId(annotations[order[i]].toString())];
+        final int[] seeds = new int[bucketCount(keys.length)];
+        final int[] slots = place(keys, seeds);
+        final int[] bySlot = new int[keys.length];
+        for (int i=0; i < slots.length; i++) bySlot[slots[i]] = order[i];
+
+        // Encode postings in slot order
+        final VarIntBuffer postings = new VarIntBuffer();
+        final int[][] postingOffsets = new int[keys.length][3];
+        for (int slot=0; slot < bySlot.length; slot++) {
+            final int id = bySlot[slot];
+            postingOffsets[slot][0] = postings.writeList(this.index.classPostings(id));
+            postingOffsets[slot][1] = postings.writeList(this.index.fieldPostings(id));
+            postingOffsets[slot][2] = postings.writeList(this.index.methodPostings(id));
+        }
+
+        // Layout
+        int stringDataLength = 0;
+        for (byte[] s : this.strings) stringDataLength += s.length;
+        final int stringOffsetsPos = HEADER_LENGTH;
+        final int stringDataPos = stringOffsetsPos + 4 * (this.strings.length + 1);
+        final int classTablePos = stringDataPos + stringDataLength;
+        final int fieldTablePos = classTablePos + CLASS_ENTRY_LENGTH * classes.length;
+        final int methodTablePos = fieldTablePos + MEMBER_ENTRY_LENGTH * fields.length;
+        final int annotationTablePos = methodTablePos + MEMBER_ENTRY_LENGTH * methods.length;
+        final int bucketTablePos = annotationTablePos + ANNOTATION_ENTRY_LENGTH * annotations.length;
+        final int postingsPos = bucketTablePos + 4 * seeds.length;
+
+        final DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(MAGIC);
+        dos.writeShort(MAJOR_VERSION);
+        dos.writeShort(MINOR_VERSION);
+        dos.writeInt(this.strings.length);
+        dos.writeInt(stringOffsetsPos);
+        dos.writeInt(stringDataPos);
+        dos.writeInt(classes.length);
+        dos.writeInt(classTablePos);
+        dos.writeInt(fields.length);
+        dos.writeInt(fieldTablePos);
+        dos.writeInt(methods.length);
+        dos.writeInt(methodTablePos);
+        dos.writeInt(annotations.length);
+        dos.writeInt(annotationTablePos);
+        dos.writeInt(seeds.length);
+        dos.writeInt(bucketTablePos);
+        dos.writeInt(postingsPos);
+        dos.writeInt(postings.size());
+
+        int head = 0;
+        for (byte[] s : this.strings) {
+            dos.writeInt(head);
+            head += s.length;
+        }
+        dos.writeInt(head);
+        for (byte[] s : this.strings) dos.write(s);
+
+        for (ClassReference cls : classes) dos.writeInt(this.stringId(cls.toString()));
+        for (MemberReference<?> field : fields) this.writeMember(dos, field);
+        for (MemberReference<?> method : methods) this.writeMember(dos, method);
+
+        for (int slot=0; slot < bySlot.length; slot++) {
+            final int id = bySlot[slot];
+            dos.writeInt(this.stringId(annotations[id].toString()));
+            dos.writeInt(postingOffsets[slot][0]);
+            dos.writeInt(this.index.classPostings(id).length);
+            dos.writeInt(postingOffsets[slot][1]);
+            dos.writeInt(this.index.fieldPostings(id).length);
+            dos.writeInt(postingOffsets[slot][2]);
+            dos.writeInt(this.index.methodPostings(id).length);
+        }
+
+        for (int seed : seeds) dos.writeInt(seed);
+        postings.writeTo(dos);
+        dos.flush();
+    }
+
+    private void writeMember(@NotNull DataOutputStream dos, @NotNull MemberReference<?> member) throws IOException {
+        dos.writeInt(this.stringId(member.declaringClass().toString()));
+        dos.writeInt(this.stringId(member.name()));
+        dos.writeInt(this.stringId(member.descriptor()));
+        dos.writeInt(member.flags().value());
+    }
+
+    private void collectStrings(
+            @NotNull ClassReference @NotNull [] annotations,
+            @NotNull ClassReference @NotNull [] classes,
+            @NotNull MemberReference<?> @NotNull [] fields,
+            @NotNull MemberReference<?> @NotNull [] methods
+    ) {
+        final Set<String> set = new HashSet<>();
+        for (ClassReference ref : annotations) set.add(ref.toString());
+        for (ClassReference ref : classes) set.add(ref.toString());
+        for (MemberReference<?>[] members : List.of(fields, methods)) {
+            for (MemberReference<?> member : members) {
+                set.add(member.declaringClass().toString());
+                set.add(member.name());
+                set.add(member.descriptor());
+            }
+        }
+
+        final List<byte[]> sorted = new ArrayList<>(set.size());
+        for (String s : set) sorted.add(s.getBytes(StandardCharsets.UTF_8));
+        sorted.sort(Arrays::compareUnsigned);
+        this.strings = sorted.toArray(new byte[0][]);
+        for (int i=0; i < this.strings.length; i++) {
+            this.stringIds.put(new String(this.strings[i], StandardCharsets.UTF_8), i);
+        }
+    }
+
+    private int stringId(@NotNull String s) {
+        return this.stringIds.get(s);
+    }
+
+    /**
+     * Builds a minimal perfect hash by hash-and-displace: larger buckets are placed first, each by searching for a
+     * seed which sends all of its keys to free slots. Buckets holding a single key are then placed directly.
+     * Returns the slot of each key and fills in the seed of each bucket.
+     */
+    static int @NotNull [] place(byte @NotNull [] @NotNull [] keys, int @NotNull [] seeds) {
+        final int n = keys.length;
+        final int[] slots = new int[n];
+        if (n == 0) return slots;
+
+        final List<List<Integer>> buckets = new ArrayList<>(seeds.length);
+        for (int i=0; i < seeds.length; i++) buckets.add(new ArrayList<>(KEYS_PER_BUCKET));
+        for (int i=0; i < n; i++) buckets.get(Math.floorMod(hash(keys[i], 0), seeds.length)).add(i);
+
+        final Integer[] order = new Integer[seeds.length];
+        for (int i=0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (Integer a, Integer b) -> buckets.get(b).size() - buckets.get(a).size());
+
+        final boolean[] taken = new boolean[n];
+        int free = 0;
+        for (int b : order) {
+            final List<Integer> bucket = buckets.get(b);
+            if (bucket.isEmpty()) continue;
+
+            if (bucket.size() == 1) {
+                while (taken[free]) free++;
+                taken[free] = true;
+                slots[bucket.get(0)] = free;
+                seeds[b] = -(free + 1);
+                continue;
+            }
+
+            final int[] candidate = new int[bucket.size()];
+            int seed = 1;
+            search:
+            for (;; seed++) {
+                if (seed >= MAX_SEED) throw new IllegalStateException("Failed to build perfect hash");
+                for (int i=0; i < candidate.length; i++) {
+                    final int slot = Math.floorMod(hash(keys[bucket.get(i)], seed), n);
+                    if (taken[slot]) continue search;
+                    for (int z=0; z < i; z++) {
+                        if (candidate[z] == slot) continue search;
+                    }
+                    candidate[i] = slot;
+                }
+                break;
+            }
+            for (int i=0; i < candidate.length; i++) {
+                taken[candidate[i]] = true;
+                slots[bucket.get(i)] = candidate[i];
+            }
+            seeds[b] = seed;
+        }
+        return slots;
+    }
+
+    //
+
+    private static final class VarIntBuffer extends ByteArrayOutputStream {
+
+        /**
+         * Writes an ascending list as its first value followed by gaps, returning the offset of the list.
+         */
+        int writeList(int @NotNull [] ids) {
+            final int ret = this.count;
+            int prev = 0;
+            for (int id : ids) {
+                this.writeVarInt(id - prev);
+                prev = id;
+            }
+            return ret;
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                this.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.write(value);
+        }
+
+    }
+
+}
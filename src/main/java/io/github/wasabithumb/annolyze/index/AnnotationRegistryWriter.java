@@ -0,0 +1,76 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.ClassNameFilter;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * <p>
+ *     Generates the Java source of a registry class holding the annotations of a set of class files, for services
+ *     which cannot afford to read an index at startup. The registry is plain Java with no dependency on this
+ *     library; its tables are static arrays, so discovery at runtime costs no IO.
+ * </p>
+ * <p>
+ *     The registry offers {@code annotations()}, {@code classes(..)}, {@code fields(..)} and {@code methods(..)}
+ *     lookups by annotation name or class, and {@code classLiterals(..)} for annotated classes which may be
+ *     referenced directly. Output is ordered as in {@link ClassFile#toString(boolean) ClassFile.toString(true)}, so
+ *     equivalent inputs always generate the same source.
+ * </p>
+ */
+@ApiStatus.NonExtendable
+public interface AnnotationRegistryWriter {
+
+    /**
+     * Creates a writer for a registry with the given fully qualified name.
+     * @throws IllegalArgumentException The name is not a valid qualified Java name.
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnotationRegistryWriter of(@NotNull String className) throws IllegalArgumentException {
+        return new AnnotationRegistryWriterImpl(className);
+    }
+
+    //
+
+    /**
+     * Adds the annotations of a class file to the registry. If a class with the same name was already added, the
+     * class file is ignored.
+     */
+    @Contract("_ -> this")
+    @NotNull AnnotationRegistryWriter add(@NotNull ClassFile classFile);
+
+    /**
+     * Adds the annotations of each class file to the registry.
+     * @see #add(ClassFile)
+     */
+    @Contract("_ -> this")
+    default @NotNull AnnotationRegistryWriter addAll(@NotNull Iterable<? extends ClassFile> classFiles) {
+        for (ClassFile cf : classFiles) this.add(cf);
+        return this;
+    }
+
+    /**
+     * Sets which annotated classes are emitted as class literals. Class files do not record whether a class is
+     * accessible from the registry, so by default only top-level classes in the package of the registry are
+     * emitted; nested classes, and classes in the unnamed package of a named registry, never are.
+     */
+    @Contract("_ -> this")
+    @NotNull AnnotationRegistryWriter classLiterals(@NotNull ClassNameFilter filter);
+
+    /**
+     * Writes the source of the registry.
+     * @throws IOException A generic IO exception from the output.
+     */
+    void write(@NotNull Appendable out) throws IOException;
+
+    /**
+     * Writes the source of the registry to its place under a source root, and returns the path of the file.
+     * @throws IOException A generic IO exception.
+     */
+    @NotNull Path write(@NotNull Path sourceRoot) throws IOException;
+
+}
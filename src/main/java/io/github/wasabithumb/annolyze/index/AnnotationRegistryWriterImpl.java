@@ -0,0 +1,382 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.ClassNameFilter;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.reference.member.MemberReference;
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import javax.lang.model.SourceVersion;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+@ApiStatus.Internal
+final class AnnotationRegistryWriterImpl implements AnnotationRegistryWriter {
+
+    /**
+     * Assignments per generated initializer class. Each class has its own code size and constant pool limits, so
+     * splitting the tables keeps large registries compilable.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final Comparator<MemberReference<?>> MEMBER_ORDER =
+            Comparator.<MemberReference<?>>naturalOrder().thenComparing(MemberReference::descriptor);
+
+    private final String className;
+    private final String pkg;
+    private final String simpleName;
+    private final SortedMap<String, ClassFile> classes = new TreeMap<>();
+    private ClassNameFilter literals;
+
+    AnnotationRegistryWriterImpl(@NotNull String className) throws IllegalArgumentException {
+        if (!SourceVersion.isName(className))
+            throw new IllegalArgumentException("\"" + className + "\" is not a valid class name");
+        this.className = className;
+        final int dot = className.lastIndexOf('.');
+        this.pkg = (dot == -1) ? "" : className.substring(0, dot);
+        this.simpleName = className.substring(dot + 1);
+        final String prefix = this.pkg.isEmpty() ? "" : this.pkg.replace('.', '/') + "/";
+        this.literals = (String internalName) -> internalName.startsWith(prefix) &&
+                internalName.indexOf('/', prefix.length()) == -1;
+    }
+
+    @Override
+    public @NotNull AnnotationRegistryWriter add(@NotNull ClassFile classFile) {
+        this.classes.putIfAbsent(classFile.name(), classFile);
+        return this;
+    }
+
+    @Override
+    public @NotNull AnnotationRegistryWriter classLiterals(@NotNull ClassNameFilter filter) {
+        this.literals = filter;
+        return this;
+    }
+
+    @Override
+    public @NotNull Path write(@NotNull Path sourceRoot) throws IOException {
+        Path file = sourceRoot;
+        if (!this.pkg.isEmpty()) {
+            for (String part : this.pkg.split("\\.")) file = file.resolve(part);
+        }
+        Files.createDirectories(file);
+        file = file.resolve(this.simpleName + ".java");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            this.write(writer);
+        }
+        return file;
+    }
+
+    @Override
+    public void write(@NotNull Appendable out) throws IOException {
+        (new Tables(this)).write(out);
+    }
+
+    //
+
+    private boolean isLiteralSafe(@NotNull String name) {
+        // Nested classes may be private, and class files do not record the access of the top-level class either
+        if (name.indexOf('$') != -1 || !SourceVersion.isName(name)) return false;
+        if (name.indexOf('.') == -1 && !this.pkg.isEmpty()) return false;
+        return this.literals.test(name.replace('.', '/'));
+    }
+
+    private static @NotNull String quote(@NotNull String value) {
+        final StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        char c;
+        for (int i=0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7F) {
+                // Not a unicode escape, since those are translated before line terminators are recognized; always three
+                // digits, since a shorter escape would absorb a digit which follows it
+                sb.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7F) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    //
+
+    /**
+     * The tables of a registry, laid out like the binary index: a string table led by the sorted annotation names,
+     * and per annotation an offset into flat lists of class string ids and of member (owner, name, descriptor)
+     * string id triples.
+     */
+    private static final class Tables {
+
+        private final AnnotationRegistryWriterImpl parent;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final int annotationCount;
+        private final int[] classOffsets;
+        private final int[] fieldOffsets;
+        private final int[] methodOffsets;
+        private final List<Integer> classTable = new ArrayList<>();
+        private final List<Integer> fieldTable = new ArrayList<>();
+        private final List<Integer> methodTable = new ArrayList<>();
+        private final List<String> literals = new ArrayList<>();
+
+        Tables(@NotNull AnnotationRegistryWriterImpl parent) {
+            this.parent = parent;
+
+            final SortedMap<String, List<String>> classes = new TreeMap<>();
+            final SortedMap<String, List<MemberReference<?>>> fields = new TreeMap<>();
+            final SortedMap<String, List<MemberReference<?>>> methods = new TreeMap<>();
+            for (ClassFile cf : parent.classes.values()) {
+                for (ClassReference annotation : sorted(cf.getAnnotations())) {
+                    classes.computeIfAbsent(annotation.name(), (String k) -> new ArrayList<>()).add(cf.name());
+                }
+                final List<MemberReference<?>> members = new ArrayList<>(cf.getMembers());
+                members.sort(MEMBER_ORDER);
+                for (MemberReference<?> member : members) {
+                    final SortedMap<String, List<MemberReference<?>>> target =
+                            (member instanceof FieldReference) ? fields : methods;
+                    for (ClassReference annotation : sorted(cf.getAnnotations(member))) {
+                        target.computeIfAbsent(annotation.name(), (String k) -> new ArrayList<>()).add(member);
+                    }
+                }
+            }
+
+            final SortedSet<String> annotations = new TreeSet<>(classes.keySet());
+            annotations.addAll(fields.keySet());
+            annotations.addAll(methods.keySet());
+            for (String annotation : annotations) this.id(annotation);
+            this.annotationCount = annotations.size();
+
+            this.classOffsets = new int[this.annotationCount + 1];
+            this.fieldOffsets = new int[this.annotationCount + 1];
+            this.methodOffsets = new int[this.annotationCount + 1];
+            int i = 0;
+            for (String annotation : annotations) {
+                for (String name : classes.getOrDefault(annotation, List.of())) {
+                    this.classTable.add(this.id(name));
+                    this.literals.add(parent.isLiteralSafe(name) ? name : null);
+                }
+                this.addMembers(this.fieldTable, fields.getOrDefault(annotation, List.of()));
+                this.addMembers(this.methodTable, methods.getOrDefault(annotation, List.of()));
+                i++;
+                this.classOffsets[i] = this.classTable.size();
+                this.fieldOffsets[i] = this.fieldTable.size() / 3;
+                this.methodOffsets[i] = this.methodTable.size() / 3;
+            }
+        }
+
+        private static @NotNull List<ClassReference> sorted(@NotNull List<ClassReference> list) {
+            final List<ClassReference> ret = new ArrayList<>(list);
+            Collections.sort(ret);
+            return ret;
+        }
+
+        private void addMembers(@NotNull List<Integer> table, @NotNull List<MemberReference<?>> members) {
+            for (MemberReference<?> member : members) {
+                table.add(this.id(member.declaringClass().name()));
+                table.add(this.id(member.name()));
+                table.add(this.id(member.descriptor()));
+            }
+        }
+
+        private int id(@NotNull String value) {
+            Integer id = this.stringIds.get(value);
+            if (id == null) {
+                id = this.strings.size();
+                this.strings.add(value);
+                this.stringIds.put(value, id);
+            }
+            return id;
+        }
+
+        //
+
+        void write(@NotNull Appendable out) throws IOException {
+            final String name = this.parent.simpleName;
+            final List<String> init = new ArrayList<>();
+            for (int i=0; i < this.strings.size(); i++) init.add("STRINGS[" + i + "] = " + quote(this.strings.get(i)));
+            assignments(init, "CLASS_OFFSETS", this.classOffsets);
+            assignments(init, "FIELD_OFFSETS", this.fieldOffsets);
+            assignments(init, "METHOD_OFFSETS", this.methodOffsets);
+            assignments(init, "CLASSES", this.classTable);
+            assignments(init, "FIELDS", this.fieldTable);
+            assignments(init, "METHODS", this.methodTable);
+
+            final List<String> literalInit = new ArrayList<>();
+            for (int i=0; i < this.literals.size(); i++) {
+                final String literal = this.literals.get(i);
+                if (literal != null) literalInit.add("CLASSES[" + i + "] = " + literal + ".class");
+            }
+
+            out.append("// Generated by Annolyze from ").append(String.valueOf(this.parent.classes.size()))
+                    .append(" classes. Do not edit.\n");
+            if (!this.parent.pkg.isEmpty()) out.append("package ").append(this.parent.pkg).append(";\n");
+            out.append("\n");
+            out.append("import java.lang.annotation.Annotation;\n");
+            out.append("import java.util.ArrayList;\n");
+            out.append("import java.util.Arrays;\n");
+            out.append("import java.util.Collections;\n");
+            out.append("import java.util.List;\n");
+            out.append("\n");
+            out.append("/**\n");
+            out.append(" * Annotations of classes, fields and methods found at build time. Annotations and classes are given by\n");
+            out.append(" * binary name; results are ordered by class name.\n");
+            out.append(" */\n");
+            out.append("public final class ").append(name).append(" {\n\n");
+            out.append("    private static final int ANNOTATION_COUNT = ").append(String.valueOf(this.annotationCount)).append(";\n");
+            field(out, "String", "STRINGS", this.strings.size());
+            field(out, "int", "CLASS_OFFSETS", this.classOffsets.length);
+            field(out, "int", "FIELD_OFFSETS", this.fieldOffsets.length);
+            field(out, "int", "METHOD_OFFSETS", this.methodOffsets.length);
+            field(out, "int", "CLASSES", this.classTable.size());
+            field(out, "int", "FIELDS", this.fieldTable.size());
+            field(out, "int", "METHODS", this.methodTable.size());
+            out.append("\n    static {\n");
+            for (int i=0; i < chunks(init); i++) out.append("        Init").append(String.valueOf(i)).append(".run();\n");
+            out.append("    }\n\n");
+            out.append("    private ").append(name).append("() { }\n\n");
+
+            out.append("""
+                        /**
+                         * The names of all annotations in this registry, sorted.
+                         */
+                        public static List<String> annotations() {
+                            return Collections.unmodifiableList(Arrays.asList(STRINGS).subList(0, ANNOTATION_COUNT));
+                        }
+
+                        /**
+                         * The names of the classes carrying the given annotation.
+                         */
+                        public static List<String> classes(String annotation) {
+                            final int id = find(annotation);
+                            if (id < 0) return List.of();
+                            final String[] ret = new String[CLASS_OFFSETS[id + 1] - CLASS_OFFSETS[id]];
+                            for (int i = 0; i < ret.length; i++) ret[i] = STRINGS[CLASSES[CLASS_OFFSETS[id] + i]];
+                            return List.of(ret);
+                        }
+
+                        public static List<String> classes(Class<? extends Annotation> annotation) {
+                            return classes(annotation.getName());
+                        }
+
+                        /**
+                         * The classes carrying the given annotation which could be referenced directly when this registry
+                         * was generated. Calling this loads those classes, but does not initialize them.
+                         */
+                        public static List<Class<?>> classLiterals(Class<? extends Annotation> annotation) {
+                            final int id = find(annotation.getName());
+                            if (id < 0) return List.of();
+                            final List<Class<?>> ret = new ArrayList<>();
+                            for (int i = CLASS_OFFSETS[id]; i < CLASS_OFFSETS[id + 1]; i++) {
+                                if (Literals.CLASSES[i] != null) ret.add(Literals.CLASSES[i]);
+                            }
+                            return Collections.unmodifiableList(ret);
+                        }
+
+                        /**
+                         * The fields carrying the given annotation.
+                         */
+                        public static List<Member> fields(String annotation) {
+                            return members(annotation, FIELD_OFFSETS, FIELDS);
+                        }
+
+                        public static List<Member> fields(Class<? extends Annotation> annotation) {
+                            return fields(annotation.getName());
+                        }
+
+                        /**
+                         * The methods and constructors carrying the given annotation.
+                         */
+                        public static List<Member> methods(String annotation) {
+                            return members(annotation, METHOD_OFFSETS, METHODS);
+                        }
+
+                        public static List<Member> methods(Class<? extends Annotation> annotation) {
+                            return methods(annotation.getName());
+                        }
+
+                        private static List<Member> members(String annotation, int[] offsets, int[] table) {
+                            final int id = find(annotation);
+                            if (id < 0) return List.of();
+                            final Member[] ret = new Member[offsets[id + 1] - offsets[id]];
+                            for (int i = 0; i < ret.length; i++) {
+                                final int head = 3 * (offsets[id] + i);
+                                ret[i] = new Member(STRINGS[table[head]], STRINGS[table[head + 1]], STRINGS[table[head + 2]]);
+                            }
+                            return List.of(ret);
+                        }
+
+                        private static int find(String annotation) {
+                            return Arrays.binarySearch(STRINGS, 0, ANNOTATION_COUNT, annotation);
+                        }
+
+                        /**
+                         * A field or method, given by the binary name of its declaring class, its name and its JVM descriptor.
+                         */
+                        public record Member(String owner, String name, String descriptor) { }
+
+                        private static final class Literals {
+
+                    """);
+            out.append("        static final Class<?>[] CLASSES = new Class<?>[").append(String.valueOf(this.literals.size()))
+                    .append("];\n\n");
+            out.append("        static {\n");
+            for (int i=0; i < chunks(literalInit); i++) out.append("            LiteralInit").append(String.valueOf(i)).append(".run();\n");
+            out.append("        }\n\n");
+            out.append("    }\n");
+
+            writeChunks(out, "Init", "", init);
+            writeChunks(out, "LiteralInit", "Literals.", literalInit);
+            out.append("\n}\n");
+        }
+
+        private static void field(@NotNull Appendable out, @NotNull String type, @NotNull String name, int length)
+                throws IOException {
+            out.append("    private static final ").append(type).append("[] ").append(name).append(" = new ")
+                    .append(type).append('[').append(String.valueOf(length)).append("];\n");
+        }
+
+        private static void assignments(@NotNull List<String> out, @NotNull String array, int @NotNull [] values) {
+            for (int i=0; i < values.length; i++) {
+                if (values[i] != 0) out.add(array + "[" + i + "] = " + values[i]);
+            }
+        }
+
+        private static void assignments(@NotNull List<String> out, @NotNull String array, @NotNull List<Integer> values) {
+            for (int i=0; i < values.size(); i++) {
+                if (values.get(i) != 0) out.add(array + "[" + i + "] = " + values.get(i));
+            }
+        }
+
+        private static int chunks(@NotNull List<String> statements) {
+            return (statements.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+
+        private static void writeChunks(
+                @NotNull Appendable out,
+                @NotNull String prefix,
+                @NotNull String qualifier,
+                @NotNull List<String> statements
+        ) throws IOException {
+            for (int i=0; i < chunks(statements); i++) {
+                out.append("\n    private static final class ").append(prefix).append(String.valueOf(i)).append(" {\n\n");
+                out.append("        static void run() {\n");
+                final int end = Math.min(statements.size(), (i + 1) * CHUNK_SIZE);
+                for (int z=(i * CHUNK_SIZE); z < end; z++) {
+                    out.append("            ").append(qualifier).append(statements.get(z)).append(";\n");
+                }
+                out.append("        }\n\n");
+                out.append("    }\n");
+            }
+        }
+
+    }
+
+}
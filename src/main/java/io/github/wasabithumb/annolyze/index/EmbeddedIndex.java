@@ -0,0 +1,142 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.misc.ZipDirectory;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Reads and writes indexes embedded in archives. An embedded index is stored alongside a checksum over the name,
+ * CRC and size of every class entry in the archive, so that an index left behind by a build which has since changed
+ * the classes is detected from the central directory alone, without inflating any entry.
+ */
+@ApiStatus.Internal
+final class EmbeddedIndex {
+
+    static final String INDEX_ENTRY = "META-INF/annolyze/index.bin";
+    static final String CHECKSUM_ENTRY = "META-INF/annolyze/index.crc";
+
+    private static final int CHECKSUM_MAGIC = 0x414E4943; // ANIC
+    private static final int CHECKSUM_LENGTH = 12;
+
+    /**
+     * Returns the index embedded in the archive, or null if there is none, it does not match the classes in the
+     * archive, or it cannot be decoded. Only whole archives are considered, since an index covers every class in its
+     * archive.
+     */
+    static @Nullable AnnotationIndex load(@NotNull AnnolyzeArchive archive) throws IOException {
+        if (!archive.pkg().isEmpty()) return null;
+        try (FileChannel channel = FileChannel.open(archive.file().toPath(), StandardOpenOption.READ)) {
+            final List<ZipDirectory.Entry> entries = ZipDirectory.read(channel);
+            ZipDirectory.Entry index = null;
+            ZipDirectory.Entry checksum = null;
+            for (ZipDirectory.Entry entry : entries) {
+                if (INDEX_ENTRY.equals(entry.name())) {
+                    index = entry;
+                } else if (CHECKSUM_ENTRY.equals(entry.name())) {
+                    checksum = entry;
+                }
+            }
+            if (index == null || checksum == null) return null;
+
+            final ByteBuffer expected = ZipDirectory.readEntry(channel, checksum);
+            if (!expected.equals(checksum(entries))) return null;
+            try {
+                return AnnotationIndex.read(ZipDirectory.readEntry(channel, index));
+            } catch (AnnotationIndexFormatException e) {
+                // Damaged, or written by a newer version; the classes are read instead
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the archive with the given index embedded, replacing any index already present.
+     */
+    static void embed(@NotNull File archive, @NotNull AnnotationIndex index) throws IOException {
+        final ByteBuffer checksum;
+        try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            checksum = checksum(ZipDirectory.read(channel));
+        }
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        index.write(data);
+
+        IOUtil.writeAtomically(archive.toPath(), (Path tmp) -> {
+            try (ZipFile zf = new ZipFile(archive);
+                 OutputStream os = Files.newOutputStream(tmp);
+                 ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(os))
+            ) {
+                final Enumeration<? extends ZipEntry> en = zf.entries();
+                ZipEntry ze;
+                while (en.hasMoreElements()) {
+                    ze = en.nextElement();
+                    if (INDEX_ENTRY.equals(ze.getName()) || CHECKSUM_ENTRY.equals(ze.getName())) continue;
+                    final ZipEntry copy = new ZipEntry(ze);
+                    // Entries are recompressed, so the compressed size may change; the CRC and size may not
+                    if (copy.getMethod() != ZipEntry.STORED) copy.setCompressedSize(-1L);
+                    zos.putNextEntry(copy);
+                    try (InputStream is = zf.getInputStream(ze)) {
+                        is.transferTo(zos);
+                    }
+                    zos.closeEntry();
+                }
+                putStored(zos, INDEX_ENTRY, data.toByteArray());
+                putStored(zos, CHECKSUM_ENTRY, checksum.array());
+            }
+        });
+    }
+
+    private static void putStored(@NotNull ZipOutputStream zos, @NotNull String name, byte @NotNull [] data)
+            throws IOException {
+        // Stored so that the index can be read with a single positioned read
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    /**
+     * Computes the content of the checksum entry for the class entries of an archive, in name order.
+     */
+    private static @NotNull ByteBuffer checksum(@NotNull List<ZipDirectory.Entry> entries) {
+        final List<ZipDirectory.Entry> classes = new ArrayList<>(entries.size());
+        for (ZipDirectory.Entry entry : entries) {
+            if (entry.name().endsWith(".class")) classes.add(entry);
+        }
+        classes.sort(Comparator.comparing(ZipDirectory.Entry::name));
+
+        final CRC32C crc = new CRC32C();
+        final ByteBuffer fields = ByteBuffer.allocate(13);
+        for (ZipDirectory.Entry entry : classes) {
+            crc.update(entry.name().getBytes(StandardCharsets.UTF_8));
+            fields.clear();
+            fields.put((byte) 0).putInt((int) entry.crc()).putLong(entry.size());
+            crc.update(fields.array());
+        }
+
+        final ByteBuffer ret = ByteBuffer.allocate(CHECKSUM_LENGTH);
+        ret.putInt(CHECKSUM_MAGIC).putInt(classes.size()).putInt((int) crc.getValue());
+        return ret.flip();
+    }
+
+}
@@ -0,0 +1,80 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * An index in a file which any number of processes map read-only at once, and which a writer replaces by
+ * {@link #publish(Path, AnnotationIndex) publishing} a new generation. The index lives in the page cache rather
+ * than on the heap, so processes on the same host share a single copy of it.
+ * <p>
+ * Each generation is written to a new file and renamed over the old one, so readers never see a partial index.
+ * Just before the rename, the writer marks the file it replaces as superseded in its header. Readers check this
+ * mark on every query, with a plain memory read and no locks or system calls, and map the new generation once
+ * they find the mark and a newer file at the path. Results returned before the switch stay valid, since the old
+ * mapping outlives the rename.
+ * <p>
+ * Writers on the same file are serialized with a lock file next to it. Replacing a mapped file is not supported
+ * on Windows.
+ */
+@ApiStatus.NonExtendable
+public interface SharedAnnotationIndex extends AnnotationIndex {
+
+    /**
+     * Maps the current generation of a shared index.
+     * @throws AnnotationIndexFormatException The file is not a shared index, or was written by an incompatible
+     * version of the library.
+     * @throws IOException A generic IO exception, including the file not existing.
+     */
+    @Contract("_ -> new")
+    static @NotNull SharedAnnotationIndex open(@NotNull Path file) throws IOException {
+        return SharedAnnotationIndexImpl.open(file);
+    }
+
+    /**
+     * Maps the current generation of a shared index, first building it over the given source and publishing it if
+     * the file does not exist. Processes racing to open a missing file build it only once; the others wait for it.
+     * @throws io.github.wasabithumb.annolyze.file.except.ClassFileReadException An exception caused by malformed
+     * class file data.
+     * @throws AnnotationIndexFormatException The file is not a shared index, or was written by an incompatible
+     * version of the library.
+     * @throws IOException A generic IO exception.
+     * @see AnnotationIndex#build(AnnolyzeClassSource)
+     */
+    @Contract("_, _ -> new")
+    static @NotNull SharedAnnotationIndex open(
+            @NotNull Path file,
+            @NotNull AnnolyzeClassSource source
+    ) throws IOException {
+        SharedAnnotationIndexImpl.publishIfAbsent(file, source);
+        return SharedAnnotationIndexImpl.open(file);
+    }
+
+    /**
+     * Publishes an index as the next generation of a shared index, creating the file if it does not exist, and
+     * returns the number of the new generation. Generations are numbered from 1.
+     * @throws IOException A generic IO exception.
+     */
+    static long publish(@NotNull Path file, @NotNull AnnotationIndex index) throws IOException {
+        return SharedAnnotationIndexImpl.publish(file, index);
+    }
+
+    //
+
+    /**
+     * The file holding this index.
+     */
+    @NotNull Path file();
+
+    /**
+     * The generation currently answering queries. Calling this also switches to a newer generation if one has
+     * been published.
+     */
+    long generation();
+
+}
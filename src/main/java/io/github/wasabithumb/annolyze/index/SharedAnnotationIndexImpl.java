@@ -0,0 +1,328 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ *     A shared index file is an index in the format described by {@link AnnotationIndexFormat}, preceded by a
+ *     header of its own. All integers are big-endian.
+ * </p>
+ * <ul>
+ *     <li>{@code u4 magic}, {@code u2 major}, {@code u2 minor}</li>
+ *     <li>{@code u8 generation}: the number of this generation, from 1.</li>
+ *     <li>{@code u8 successor}: zero while this file is current; the number of the generation which replaces it,
+ *     written just before the new file is renamed into place. Any nonzero value tells readers to check the file
+ *     at the path, which they map again only once it is another file with a newer generation; a torn write, or
+ *     a writer which stops before the rename, therefore leaves readers on this generation.</li>
+ *     <li>{@code u4 length}: the length of the index which follows, and 4 reserved bytes.</li>
+ * </ul>
+ */
+@ApiStatus.Internal
+final class SharedAnnotationIndexImpl implements SharedAnnotationIndex {
+
+    private static final int MAGIC = 0x414E5348; // ANSH
+    private static final int MAJOR_VERSION = 1;
+    private static final int MINOR_VERSION = 0;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_GENERATION = 8;
+    private static final int OFF_SUCCESSOR = 16;
+    private static final int OFF_LENGTH = 24;
+    private static final int HEADER_LENGTH = 32;
+
+    // Volatile access requires alignment, which holds since mappings start on a page boundary
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final Map<Path, ReentrantLock> WRITERS = new ConcurrentHashMap<>();
+
+    static @NotNull SharedAnnotationIndexImpl open(@NotNull Path file) throws IOException {
+        return new SharedAnnotationIndexImpl(file, map(file));
+    }
+
+    static long publish(@NotNull Path file, @NotNull AnnotationIndex index) throws IOException {
+        final WriterLock lock = WriterLock.acquire(file);
+        try {
+            return publish0(file, index);
+        } finally {
+            lock.close();
+        }
+    }
+
+    static void publishIfAbsent(@NotNull Path file, @NotNull AnnolyzeClassSource source) throws IOException {
+        if (Files.exists(file)) return;
+        final WriterLock lock = WriterLock.acquire(file);
+        try {
+            // Another process may have published while this one waited for the lock
+            if (!Files.exists(file)) publish0(file, AnnotationIndex.build(source));
+        } finally {
+            lock.close();
+        }
+    }
+
+    private static long publish0(@NotNull Path file, @NotNull AnnotationIndex index) throws IOException {
+        FileChannel previous = null;
+        try {
+            long generation = 1L;
+            try {
+                previous = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                while (header.hasRemaining() && previous.read(header, header.position()) != -1);
+                generation = checkHeader(header.flip(), previous.size()) + 1L;
+            } catch (NoSuchFileException ignored) { }
+
+            final long next = generation;
+            final FileChannel replaced = previous;
+            try {
+                IOUtil.writeAtomically(file, (Path tmp) -> {
+                    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                        channel.position(HEADER_LENGTH);
+                        final OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+                        index.write(os);
+                        os.flush();
+
+                        final long length = channel.size() - HEADER_LENGTH;
+                        if (length > Integer.MAX_VALUE) throw new IOException("Index is too large to share");
+                        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                                .putInt(OFF_MAGIC, MAGIC)
+                                .putShort(OFF_VERSION, (short) MAJOR_VERSION)
+                                .putShort(OFF_VERSION + 2, (short) MINOR_VERSION)
+                                .putLong(OFF_GENERATION, next)
+                                .putLong(OFF_SUCCESSOR, 0L)
+                                .putInt(OFF_LENGTH, (int) length);
+                        writeFully(channel, header, 0L);
+                        // Readers may map the file as soon as it is renamed
+                        channel.force(true);
+                    }
+
+                    // Before the rename, so that readers are never left unaware of a file which has been replaced;
+                    // readers who see the mark early find the old file still at the path and keep it
+                    if (replaced != null) writeSuccessor(replaced, next);
+                });
+            } catch (IOException | RuntimeException e) {
+                // Spares readers from checking the path on every query until the next publish
+                if (previous != null) {
+                    try {
+                        writeSuccessor(previous, 0L);
+                    } catch (IOException e2) {
+                        e.addSuppressed(e2);
+                    }
+                }
+                throw e;
+            }
+            return generation;
+        } finally {
+            if (previous != null) previous.close();
+        }
+    }
+
+    private static @NotNull Generation map(@NotNull Path file) throws IOException {
+        // Read before opening; should the file be replaced in between, the key only causes one needless map later
+        final Object key = fileKey(file);
+        final ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping remains valid after the channel is closed, and after the file is replaced
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        final long generation = checkHeader(buf, buf.limit());
+        final AnnotationIndex index = AnnotationIndex.read(buf.slice(HEADER_LENGTH, buf.getInt(OFF_LENGTH)));
+        return new Generation(generation, key, buf, index);
+    }
+
+    /**
+     * Returns the key which identifies the file at the path, or null if the platform provides none.
+     */
+    private static @Nullable Object fileKey(@NotNull Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Validates a header and returns its generation.
+     */
+    private static long checkHeader(@NotNull ByteBuffer header, long size) throws AnnotationIndexFormatException {
+        if (header.limit() < HEADER_LENGTH) throw new AnnotationIndexFormatException("Truncated header");
+        if (header.getInt(OFF_MAGIC) != MAGIC) throw new AnnotationIndexFormatException("Not a shared annotation index");
+        final int major = Short.toUnsignedInt(header.getShort(OFF_VERSION));
+        if (major != MAJOR_VERSION) {
+            throw new AnnotationIndexFormatException("Unsupported shared index version " + major + "." +
+                    Short.toUnsignedInt(header.getShort(OFF_VERSION + 2)) + " (expected " + MAJOR_VERSION + ".x)");
+        }
+        final long length = Integer.toUnsignedLong(header.getInt(OFF_LENGTH));
+        if (HEADER_LENGTH + length > size) throw new AnnotationIndexFormatException("Truncated index");
+        return header.getLong(OFF_GENERATION);
+    }
+
+    private static void writeSuccessor(@NotNull FileChannel channel, long successor) throws IOException {
+        writeFully(channel, ByteBuffer.allocate(8).putLong(0, successor), OFF_SUCCESSOR);
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf, pos + buf.position());
+    }
+
+    //
+
+    private final Path file;
+    private volatile Generation current;
+
+    private SharedAnnotationIndexImpl(@NotNull Path file, @NotNull Generation current) {
+        this.file = file;
+        this.current = current;
+    }
+
+    //
+
+    /**
+     * Returns the current generation, mapping a newer one first if this one has been marked as superseded and
+     * another file has taken its place. A failure to map the newer generation, such as when it was itself replaced
+     * while being opened, is retried on the next query.
+     */
+    private @NotNull Generation current() {
+        final Generation ret = this.current;
+        if ((long) LONG.getVolatile(ret.buf(), OFF_SUCCESSOR) == 0L) return ret;
+        final Generation next;
+        try {
+            // The mark precedes the rename, and outlives a writer which stopped before it
+            final Object key = fileKey(this.file);
+            if (key != null && key.equals(ret.key())) return ret;
+            next = map(this.file);
+        } catch (IOException e) {
+            return ret;
+        }
+        if (next.number() <= ret.number()) return ret;
+        // Racing readers may each map the new generation; all of them are equivalent
+        this.current = next;
+        return next;
+    }
+
+    /**
+     * The index of the current generation, which stays valid after it is superseded.
+     */
+    @NotNull AnnotationIndex snapshot() {
+        return this.current().index();
+    }
+
+    @Override
+    public @NotNull Path file() {
+        return this.file;
+    }
+
+    @Override
+    public long generation() {
+        return this.current().number();
+    }
+
+    @Override
+    public @NotNull @Unmodifiable Set<ClassReference> annotations() {
+        return this.current().index().annotations();
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<ClassReference> classes(@NotNull ClassReference annotation) {
+        return this.current().index().classes(annotation);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<FieldReference> fields(@NotNull ClassReference annotation) {
+        return this.current().index().fields(annotation);
+    }
+
+    @Override
+    public @NotNull @Unmodifiable List<MethodReference> methods(@NotNull ClassReference annotation) {
+        return this.current().index().methods(annotation);
+    }
+
+    @Override
+    public void write(@NotNull OutputStream out) throws IOException {
+        this.current().index().write(out);
+    }
+
+    //
+
+    private record Generation(
+            long number,
+            @Nullable Object key,
+            @NotNull ByteBuffer buf,
+            @NotNull AnnotationIndex index
+    ) { }
+
+    /**
+     * Excludes other writers of the same file: threads of this JVM with a lock, and other processes with a
+     * {@link FileLock} on a sibling file. The lock file is never deleted, since a process could otherwise lock a
+     * file which another has already replaced.
+     */
+    private static final class WriterLock implements Closeable {
+
+        static @NotNull WriterLock acquire(@NotNull Path file) throws IOException {
+            final Path path = file.toAbsolutePath().normalize();
+            final ReentrantLock lock = WRITERS.computeIfAbsent(path, (Path k) -> new ReentrantLock());
+            lock.lock();
+            FileChannel channel = null;
+            try {
+                final Path parent = path.getParent();
+                if (parent != null) Files.createDirectories(parent);
+                channel = FileChannel.open(
+                        path.resolveSibling(path.getFileName() + ".lock"),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE
+                );
+                return new WriterLock(lock, channel, channel.lock());
+            } catch (IOException | RuntimeException e) {
+                if (channel != null) channel.close();
+                lock.unlock();
+                throw e;
+            }
+        }
+
+        //
+
+        private final ReentrantLock lock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private WriterLock(@NotNull ReentrantLock lock, @NotNull FileChannel channel, @NotNull FileLock fileLock) {
+            this.lock = lock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.fileLock.release();
+                this.channel.close();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+    }
+
+}
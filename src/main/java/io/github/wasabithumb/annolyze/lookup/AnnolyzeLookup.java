@@ -0,0 +1,60 @@
+package io.github.wasabithumb.annolyze.lookup;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A prebuilt index from class name to location over an ordered list of sources. Reading a class is a hash probe
+ * followed, for archives, by a single positioned read of the entry; no class path walk or archive directory parse
+ * is needed per lookup. As with {@link io.github.wasabithumb.annolyze.composite.AnnolyzeComposite}, earlier sources
+ * shadow classes of the same name in later sources. Archives are held open until the lookup is closed; closing
+ * any view closes the lookup.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeLookup extends AnnolyzeClassSource, Closeable {
+
+    /**
+     * Builds a lookup over the given sources. Composites are flattened into their sources.
+     * @throws IOException A generic IO exception while listing the sources.
+     */
+    @Contract("_ -> new")
+    static @NotNull AnnolyzeLookup of(@NotNull List<? extends AnnolyzeClassSource> sources) throws IOException {
+        return new AnnolyzeLookupImpl(LookupTable.build(sources));
+    }
+
+    /**
+     * Loads a lookup over the given sources from a snapshot file, or builds one and writes the snapshot if the file
+     * does not exist, is stale or cannot be decoded. Archive locations are taken from the snapshot as long as the
+     * archive size and modification time are unchanged; other sources are listed again.
+     * @throws IOException A generic IO exception while writing the snapshot, or listing the sources.
+     */
+    @Contract("_, _ -> new")
+    static @NotNull AnnolyzeLookup of(
+            @NotNull List<? extends AnnolyzeClassSource> sources,
+            @NotNull Path snapshot
+    ) throws IOException {
+        return new AnnolyzeLookupImpl(LookupTable.load(sources, snapshot));
+    }
+
+    //
+
+    /**
+     * Returns true if this lookup has a location for the class with the given name.
+     */
+    boolean contains(@NotNull String className);
+
+    @Override
+    @NotNull AnnolyzeLookup sub(@NotNull String pkg);
+
+    @Override
+    @Contract("_ -> new")
+    @NotNull AnnolyzeLookup parallelism(int parallelism) throws IllegalArgumentException;
+
+}
@@ -0,0 +1,117 @@
+package io.github.wasabithumb.annolyze.lookup;
+
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+@ApiStatus.Internal
+class AnnolyzeLookupImpl extends AbstractAnnolyzeClassSource implements AnnolyzeLookup {
+
+    protected final LookupTable table;
+    protected final String prefix;
+
+    @ApiStatus.Internal
+    AnnolyzeLookupImpl(@NotNull LookupTable table, @NotNull String prefix, int parallelism) {
+        super(parallelism);
+        this.table = table;
+        this.prefix = prefix;
+    }
+
+    @ApiStatus.Internal
+    AnnolyzeLookupImpl(@NotNull LookupTable table) {
+        this(table, "", 1);
+    }
+
+    //
+
+    @Override
+    public boolean contains(@NotNull String className) {
+        return this.table.slot(this.prefix + className) != -1;
+    }
+
+    @Override
+    public @NotNull AnnolyzeLookup sub(@NotNull String pkg) {
+        return new AnnolyzeLookupImpl(this.table, this.prefix + pkg + ".", this.parallelism);
+    }
+
+    @Override
+    public @NotNull AnnolyzeLookup parallelism(int parallelism) throws IllegalArgumentException {
+        return new AnnolyzeLookupImpl(this.table, this.prefix, parallelism);
+    }
+
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        final int slot = this.table.slot(this.prefix + className);
+        if (slot == -1) throw new FileNotFoundException("Class " + this.prefix + className + " not found in lookup");
+        return this.table.read(slot);
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) {
+        final int prefixLen = this.prefix.length();
+        final int count = this.table.size();
+        final List<Entry> entries = new ArrayList<>();
+        String name;
+        for (int i=0; i < count; i++) {
+            name = this.table.name(i);
+            if (!name.startsWith(this.prefix)) continue;
+            if (!recursive && name.indexOf('.', prefixLen) != -1) continue;
+            entries.add(new Entry(name.substring(prefixLen), i));
+        }
+        return AnnolyzeClassScan.of(entries, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.table.close();
+    }
+
+    //
+
+    private final class Entry implements AnnolyzeClassEntry {
+
+        private final String name;
+        private final int slot;
+
+        Entry(@NotNull String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        public @NotNull String name() {
+            return this.name;
+        }
+
+        @Override
+        public long size() {
+            return AnnolyzeLookupImpl.this.table.size(this.slot);
+        }
+
+        @Override
+        public long fingerprint() throws IOException {
+            return AnnolyzeLookupImpl.this.table.fingerprint(this.slot);
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return AnnolyzeLookupImpl.this.table.bytes(this.slot);
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return AnnolyzeLookupImpl.this.table.read(this.slot);
+        }
+
+    }
+
+}
@@ -0,0 +1,302 @@
+package io.github.wasabithumb.annolyze.lookup;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileBufferReader;
+import io.github.wasabithumb.annolyze.misc.IOUtil;
+import io.github.wasabithumb.annolyze.misc.ZipDirectory;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Shared state behind an {@link AnnolyzeLookup} and all of its views.
+ */
+@ApiStatus.Internal
+final class LookupTable implements Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x414E4C4B; // ANLK
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * The fewest bytes an archive entry takes in a snapshot: two empty strings, the method and four longs.
+     */
+    private static final int SNAPSHOT_ENTRY_MIN_LENGTH = 2 + 2 + 2 + 4 * 8;
+
+    private static final byte KIND_OTHER = 0;
+    private static final byte KIND_ARCHIVE = 1;
+
+    static @NotNull LookupTable build(@NotNull List<? extends AnnolyzeClassSource> sources) throws IOException {
+        final LookupTable table = new LookupTable(flatten(sources));
+        try {
+            for (int i=0; i < table.sources.size(); i++) table.populate(i, null);
+        } catch (IOException | RuntimeException e) {
+            table.close();
+            throw e;
+        }
+        return table;
+    }
+
+    static @NotNull LookupTable load(
+            @NotNull List<? extends AnnolyzeClassSource> sources,
+            @NotNull Path snapshot
+    ) throws IOException {
+        final LookupTable table = new LookupTable(flatten(sources));
+        try {
+            final Map<Integer, List<Located>> persisted = table.readSnapshot(snapshot);
+            for (int i=0; i < table.sources.size(); i++) {
+                table.populate(i, (persisted == null) ? null : persisted.get(i));
+            }
+            if (persisted == null) table.writeSnapshot(snapshot);
+        } catch (IOException | RuntimeException e) {
+            table.close();
+            throw e;
+        }
+        return table;
+    }
+
+    private static @NotNull List<AnnolyzeClassSource> flatten(@NotNull List<? extends AnnolyzeClassSource> sources) {
+        final List<AnnolyzeClassSource> ret = new ArrayList<>(sources.size());
+        for (AnnolyzeClassSource source : sources) {
+            if (source instanceof AnnolyzeComposite composite) {
+                ret.addAll(flatten(composite.sources()));
+            } else {
+                ret.add(source);
+            }
+        }
+        return ret;
+    }
+
+    //
+
+    private final List<AnnolyzeClassSource> sources;
+    private final FileChannel[] channels;
+    private final List<List<Located>> archiveEntries;
+    private final List<AnnolyzeClassScan> scans = new ArrayList<>();
+    private final List<Located> located = new ArrayList<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private LookupTable(@NotNull List<AnnolyzeClassSource> sources) {
+        this.sources = sources;
+        this.channels = new FileChannel[sources.size()];
+        this.archiveEntries = new ArrayList<>(Collections.nCopies(sources.size(), null));
+    }
+
+    int size() {
+        return this.located.size();
+    }
+
+    int slot(@NotNull String name) {
+        final Integer slot = this.slots.get(name);
+        return (slot == null) ? -1 : slot;
+    }
+
+    @NotNull String name(int slot) {
+        return this.located.get(slot).name();
+    }
+
+    long size(int slot) {
+        final ZipDirectory.Entry entry = this.located.get(slot).entry();
+        return (entry == null) ? -1L : entry.size();
+    }
+
+    long fingerprint(int slot) throws IOException {
+        final Located loc = this.located.get(slot);
+        final ZipDirectory.Entry entry = loc.entry();
+        if (entry == null) return Objects.requireNonNull(loc.classEntry()).fingerprint();
+        return (entry.crc() << 32) | (entry.size() & 0xFFFFFFFFL);
+    }
+
+    @NotNull ByteBuffer bytes(int slot) throws IOException {
+        final Located loc = this.located.get(slot);
+        final ZipDirectory.Entry entry = loc.entry();
+        if (entry == null) return Objects.requireNonNull(loc.classEntry()).bytes();
+        return ZipDirectory.readEntry(this.channels[loc.source()], entry);
+    }
+
+    @NotNull ClassFile read(int slot) throws IOException {
+        final Located loc = this.located.get(slot);
+        final ZipDirectory.Entry entry = loc.entry();
+        if (entry == null) return Objects.requireNonNull(loc.classEntry()).read();
+        return (new ClassFileBufferReader(ZipDirectory.readEntry(this.channels[loc.source()], entry))).readClassFile();
+    }
+
+    @Override
+    public void close() throws IOException {
+        final List<Closeable> resources = new ArrayList<>(this.channels.length + this.scans.size());
+        for (FileChannel channel : this.channels) {
+            if (channel != null) resources.add(channel);
+        }
+        resources.addAll(this.scans);
+        IOUtil.closeAll(resources);
+    }
+
+    //
+
+    /**
+     * Adds the classes of a source to the table, skipping names already provided by an earlier source. Archives
+     * are located from the given persisted entries if present, otherwise from their central directory.
+     */
+    private void populate(int index, @Nullable List<Located> persisted) throws IOException {
+        final AnnolyzeClassSource source = this.sources.get(index);
+        if (!(source instanceof AnnolyzeArchive archive)) {
+            // Other sources are kept scanned, so that their entries can be read without resolving names again
+            final AnnolyzeClassScan scan = source.scan(true);
+            this.scans.add(scan);
+            for (AnnolyzeClassEntry entry : scan.entries()) this.add(new Located(entry.name(), index, null, entry));
+            return;
+        }
+
+        final FileChannel channel = FileChannel.open(archive.file().toPath(), StandardOpenOption.READ);
+        this.channels[index] = channel;
+        if (persisted != null) {
+            this.archiveEntries.set(index, persisted);
+            for (Located loc : persisted) this.add(loc);
+            return;
+        }
+
+        // Class names are derived from the central directory as read here, rather than listing the archive again
+        final List<Located> list = new ArrayList<>();
+        String name;
+        for (ZipDirectory.Entry entry : ZipDirectory.read(channel)) {
+            name = archive.className(entry.name());
+            if (name == null) continue;
+            list.add(new Located(name, index, entry, null));
+        }
+        this.archiveEntries.set(index, list);
+        for (Located loc : list) this.add(loc);
+    }
+
+    private void add(@NotNull Located loc) {
+        if (this.slots.putIfAbsent(loc.name(), this.located.size()) == null) this.located.add(loc);
+    }
+
+    //
+
+    /**
+     * Reads the persisted archive locations from a snapshot, or returns null if the snapshot is missing, unreadable
+     * or does not match the current sources. Counts and entries are checked against the size of the snapshot and
+     * of each archive, so that a corrupt snapshot is rebuilt rather than trusted.
+     */
+    private @Nullable Map<Integer, List<Located>> readSnapshot(@NotNull Path snapshot) {
+        try {
+            if (!Files.isRegularFile(snapshot)) return null;
+            return this.readSnapshot0(snapshot, Files.size(snapshot));
+        } catch (IOException | RuntimeException e) {
+            // Unreadable, truncated or corrupt snapshot; rebuild
+            return null;
+        }
+    }
+
+    private @Nullable Map<Integer, List<Located>> readSnapshot0(@NotNull Path snapshot, long length) throws IOException {
+        try (InputStream is = Files.newInputStream(snapshot);
+             DataInputStream dis = new DataInputStream(new BufferedInputStream(is))
+        ) {
+            if (dis.readInt() != SNAPSHOT_MAGIC || dis.readInt() != SNAPSHOT_VERSION) return null;
+            final int sourceCount = dis.readInt();
+            if (sourceCount != this.sources.size()) return null;
+
+            final Map<Integer, List<Located>> ret = new HashMap<>();
+            for (int i=0; i < sourceCount; i++) {
+                final byte kind = dis.readByte();
+                final AnnolyzeClassSource source = this.sources.get(i);
+                if (kind == KIND_OTHER) {
+                    if (source instanceof AnnolyzeArchive) return null;
+                    continue;
+                }
+                if (kind != KIND_ARCHIVE || !(source instanceof AnnolyzeArchive archive)) return null;
+
+                final String path = dis.readUTF();
+                final String pkg = dis.readUTF();
+                final long size = dis.readLong();
+                final long modified = dis.readLong();
+                if (!path.equals(archive.file().getAbsolutePath()) || !pkg.equals(archive.pkg())) return null;
+                final BasicFileAttributes attrs = Files.readAttributes(archive.file().toPath(), BasicFileAttributes.class);
+                if (attrs.size() != size || attrs.lastModifiedTime().toMillis() != modified) return null;
+
+                final int count = dis.readInt();
+                if (count < 0 || count > length / SNAPSHOT_ENTRY_MIN_LENGTH) return null;
+                final List<Located> list = new ArrayList<>(count);
+                for (int z=0; z < count; z++) {
+                    final String name = dis.readUTF();
+                    final ZipDirectory.Entry entry = new ZipDirectory.Entry(
+                            dis.readUTF(),
+                            dis.readUnsignedShort(),
+                            dis.readLong(),
+                            dis.readLong(),
+                            dis.readLong(),
+                            dis.readLong()
+                    );
+                    if (entry.compressedSize() < 0L || entry.size() < 0L || entry.localHeaderOffset() < 0L ||
+                            entry.localHeaderOffset() > size - entry.compressedSize()) return null;
+                    list.add(new Located(name, i, entry, null));
+                }
+                ret.put(i, list);
+            }
+            return ret;
+        }
+    }
+
+    private void writeSnapshot(@NotNull Path snapshot) throws IOException {
+        IOUtil.writeAtomically(snapshot, (Path tmp) -> {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))
+            ) {
+                dos.writeInt(SNAPSHOT_MAGIC);
+                dos.writeInt(SNAPSHOT_VERSION);
+                dos.writeInt(this.sources.size());
+                for (int i=0; i < this.sources.size(); i++) {
+                    if (!(this.sources.get(i) instanceof AnnolyzeArchive archive)) {
+                        dos.writeByte(KIND_OTHER);
+                        continue;
+                    }
+                    dos.writeByte(KIND_ARCHIVE);
+                    dos.writeUTF(archive.file().getAbsolutePath());
+                    dos.writeUTF(archive.pkg());
+                    final BasicFileAttributes attrs =
+                            Files.readAttributes(archive.file().toPath(), BasicFileAttributes.class);
+                    dos.writeLong(attrs.size());
+                    dos.writeLong(attrs.lastModifiedTime().toMillis());
+
+                    // Includes shadowed entries, since shadowing may differ if another source changes
+                    final List<Located> list = this.archiveEntries.get(i);
+                    dos.writeInt(list.size());
+                    for (Located loc : list) {
+                        final ZipDirectory.Entry entry = Objects.requireNonNull(loc.entry());
+                        dos.writeUTF(loc.name());
+                        dos.writeUTF(entry.name());
+                        dos.writeShort(entry.method());
+                        dos.writeLong(entry.crc());
+                        dos.writeLong(entry.compressedSize());
+                        dos.writeLong(entry.size());
+                        dos.writeLong(entry.localHeaderOffset());
+                    }
+                }
+            }
+        });
+    }
+
+    //
+
+    /**
+     * A class name and where to find it; either an archive entry, or an entry from a scan of another kind of source.
+     */
+    private record Located(
+            @NotNull String name,
+            int source,
+            @Nullable ZipDirectory.Entry entry,
+            @Nullable AnnolyzeClassEntry classEntry
+    ) { }
+
+}
@@ -0,0 +1,74 @@
+package io.github.wasabithumb.annolyze.runtime;
+
+import io.github.wasabithumb.annolyze.AnnolyzeClassSource;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Utility for reading out the class files in a Java runtime image through the {@code jrt:/} file system. Class
+ * files are read as data and never loaded.
+ */
+@ApiStatus.NonExtendable
+public interface AnnolyzeRuntimeImage extends AnnolyzeClassSource {
+
+    /**
+     * Provides the runtime image of the running JVM, including all of its modules.
+     * @throws IOException The {@code jrt:/} file system is not available.
+     */
+    static @NotNull AnnolyzeRuntimeImage current() throws IOException {
+        return AnnolyzeRuntimeImageImpl.current();
+    }
+
+    /**
+     * Provides the runtime image of the JDK or jlinked runtime at the given home directory, including all of its
+     * modules. The file system for each home is opened once and kept open for the lifetime of the JVM.
+     * @throws IOException The image could not be opened.
+     */
+    static @NotNull AnnolyzeRuntimeImage of(@NotNull Path javaHome) throws IOException {
+        return AnnolyzeRuntimeImageImpl.of(javaHome);
+    }
+
+    //
+
+    /**
+     * Returns the names of the modules included in this view, in sorted order.
+     */
+    @NotNull @Unmodifiable Set<String> modules();
+
+    /**
+     * Returns a view of this image which only includes the given modules.
+     * @throws IllegalArgumentException A module is not included in this view.
+     */
+    @Contract("_ -> new")
+    @NotNull AnnolyzeRuntimeImage modules(@NotNull Collection<String> names) throws IllegalArgumentException;
+
+    /**
+     * Returns a view of this image which only includes the given modules.
+     * @throws IllegalArgumentException A module is not included in this view.
+     * @see #modules(Collection)
+     */
+    @Contract("_ -> new")
+    default @NotNull AnnolyzeRuntimeImage modules(@NotNull String @NotNull ... names) throws IllegalArgumentException {
+        return this.modules(Arrays.asList(names));
+    }
+
+    @Override
+    @NotNull AnnolyzeRuntimeImage sub(@NotNull String pkg);
+
+    /**
+     * {@inheritDoc}
+     * Modules are also walked in parallel when this is greater than 1.
+     */
+    @Override
+    @Contract("_ -> new")
+    @NotNull AnnolyzeRuntimeImage parallelism(int parallelism) throws IllegalArgumentException;
+
+}
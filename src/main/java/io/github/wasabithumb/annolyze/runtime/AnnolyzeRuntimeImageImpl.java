@@ -0,0 +1,211 @@
+package io.github.wasabithumb.annolyze.runtime;
+
+import io.github.wasabithumb.annolyze.AbstractAnnolyzeClassSource;
+import io.github.wasabithumb.annolyze.AnnolyzeClassEntry;
+import io.github.wasabithumb.annolyze.AnnolyzeClassScan;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileBufferReader;
+import io.github.wasabithumb.annolyze.misc.ParallelUtil;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.wasabithumb.annolyze.misc.PathUtil.*;
+
+@ApiStatus.Internal
+class AnnolyzeRuntimeImageImpl extends AbstractAnnolyzeClassSource implements AnnolyzeRuntimeImage {
+
+    private static final URI JRT = URI.create("jrt:/");
+    private static final String PACKAGE_INFO = "package-info" + DOT_CLASS;
+    private static final String MODULE_INFO = "module-info" + DOT_CLASS;
+    private static final Map<Path, FileSystem> FOREIGN = new ConcurrentHashMap<>();
+
+    static @NotNull AnnolyzeRuntimeImageImpl current() throws IOException {
+        final FileSystem fs;
+        try {
+            fs = FileSystems.getFileSystem(JRT);
+        } catch (FileSystemNotFoundException | ProviderNotFoundException e) {
+            throw new IOException("Runtime image is not available", e);
+        }
+        return create(fs);
+    }
+
+    static @NotNull AnnolyzeRuntimeImageImpl of(@NotNull Path javaHome) throws IOException {
+        final Path key = javaHome.toAbsolutePath().normalize();
+        FileSystem fs = FOREIGN.get(key);
+        if (fs == null) {
+            synchronized (FOREIGN) {
+                fs = FOREIGN.get(key);
+                if (fs == null) {
+                    try {
+                        fs = FileSystems.newFileSystem(JRT, Map.of("java.home", key.toString()));
+                    } catch (ProviderNotFoundException e) {
+                        throw new IOException("Runtime image at " + key + " is not available", e);
+                    }
+                    FOREIGN.put(key, fs);
+                }
+            }
+        }
+        return create(fs);
+    }
+
+    private static @NotNull AnnolyzeRuntimeImageImpl create(@NotNull FileSystem fs) throws IOException {
+        final Set<String> modules = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/modules"))) {
+            for (Path child : stream) modules.add(child.getFileName().toString());
+        }
+        return new AnnolyzeRuntimeImageImpl(fs, Collections.unmodifiableSet(modules), "", 1);
+    }
+
+    //
+
+    protected final FileSystem fs;
+    protected final Set<String> modules;
+    protected final String prefix;
+
+    @ApiStatus.Internal
+    AnnolyzeRuntimeImageImpl(
+            @NotNull FileSystem fs,
+            @NotNull @Unmodifiable Set<String> modules,
+            @NotNull String prefix,
+            int parallelism
+    ) throws IllegalArgumentException {
+        super(parallelism);
+        this.fs = fs;
+        this.modules = modules;
+        this.prefix = prefix;
+    }
+
+    //
+
+    @Override
+    public @NotNull @Unmodifiable Set<String> modules() {
+        return this.modules;
+    }
+
+    @Override
+    public @NotNull AnnolyzeRuntimeImage modules(@NotNull Collection<String> names) throws IllegalArgumentException {
+        final Set<String> selected = new TreeSet<>();
+        for (String name : names) {
+            if (!this.modules.contains(name))
+                throw new IllegalArgumentException("Module \"" + name + "\" is not included in this view");
+            selected.add(name);
+        }
+        return new AnnolyzeRuntimeImageImpl(
+                this.fs,
+                Collections.unmodifiableSet(selected),
+                this.prefix,
+                this.parallelism
+        );
+    }
+
+    @Override
+    public @NotNull AnnolyzeRuntimeImage sub(@NotNull String pkg) {
+        return new AnnolyzeRuntimeImageImpl(this.fs, this.modules, this.prefix + pkg + ".", this.parallelism);
+    }
+
+    @Override
+    public @NotNull AnnolyzeRuntimeImage parallelism(int parallelism) throws IllegalArgumentException {
+        return new AnnolyzeRuntimeImageImpl(this.fs, this.modules, this.prefix, parallelism);
+    }
+
+    /**
+     * Reads a class, using the {@code /packages} directory of the image to find the module which holds it.
+     */
+    @Override
+    public @NotNull ClassFile read(@NotNull String className) throws IOException {
+        final String fullName = this.prefix + className;
+        final int lastDot = fullName.lastIndexOf('.');
+        if (lastDot != -1) {
+            final Path pkgDir = this.fs.getPath("/packages", fullName.substring(0, lastDot));
+            if (Files.isDirectory(pkgDir)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(pkgDir)) {
+                    for (Path link : stream) {
+                        final String module = link.getFileName().toString();
+                        if (!this.modules.contains(module)) continue;
+                        final Path path = this.fs.getPath("/modules", module, classNameToPath(fullName));
+                        if (Files.isRegularFile(path)) return readPath(path);
+                    }
+                }
+            }
+        }
+        throw new FileNotFoundException("Class " + fullName + " not found in runtime image");
+    }
+
+    @Override
+    public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+        final List<List<Entry>> perModule = ParallelUtil.map(
+                new ArrayList<>(this.modules),
+                (String module) -> this.walk(module, recursive),
+                this.parallelism
+        );
+        final List<Entry> ret = new ArrayList<>();
+        for (List<Entry> list : perModule) ret.addAll(list);
+        ret.sort(Comparator.comparing(Entry::name));
+        return AnnolyzeClassScan.of(ret, null);
+    }
+
+    //
+
+    private @NotNull List<Entry> walk(@NotNull String module, boolean recursive) throws IOException {
+        Path dir = this.fs.getPath("/modules", module);
+        final int prefixLen = this.prefix.length();
+        if (prefixLen != 0) dir = dir.resolve(dotsToSlashes(this.prefix.substring(0, prefixLen - 1), false));
+        if (!Files.isDirectory(dir)) return new ArrayList<>(0);
+
+        final Path root = dir;
+        final List<Entry> ret = new ArrayList<>();
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), recursive ? Integer.MAX_VALUE : 1,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public @NotNull FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+                        if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                        final String fileName = file.getFileName().toString();
+                        if (!fileName.endsWith(DOT_CLASS) || fileName.equals(PACKAGE_INFO) ||
+                                fileName.equals(MODULE_INFO)) return FileVisitResult.CONTINUE;
+
+                        final String relative = root.relativize(file).toString();
+                        final String name = slashesToDots(relative.substring(0, relative.length() - 6));
+                        ret.add(new Entry(name, file, attrs.size()));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return ret;
+    }
+
+    private static @NotNull ClassFile readPath(@NotNull Path path) throws IOException {
+        return (new ClassFileBufferReader(ByteBuffer.wrap(Files.readAllBytes(path)))).readClassFile();
+    }
+
+    //
+
+    private record Entry(@NotNull String name, @NotNull Path path, long size) implements AnnolyzeClassEntry {
+
+        @Override
+        public long fingerprint() throws IOException {
+            // Reading jrt attributes does not touch the image, which only changes with the runtime anyway
+            return (this.size * 0x9E3779B97F4A7C15L) ^ Files.getLastModifiedTime(this.path).toMillis();
+        }
+
+        @Override
+        public @NotNull ByteBuffer bytes() throws IOException {
+            return ByteBuffer.wrap(Files.readAllBytes(this.path));
+        }
+
+        @Override
+        public @NotNull ClassFile read() throws IOException {
+            return readPath(this.path);
+        }
+
+    }
+
+}
@@ -1,19 +1,83 @@
 package io.github.wasabithumb.annolyze;
 
 import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.cache.AnnolyzeDiskCache;
+import io.github.wasabithumb.annolyze.cache.AnnolyzeMemoryCache;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeDuplicateGroup;
 import io.github.wasabithumb.annolyze.cp.ConstantPool;
+import io.github.wasabithumb.annolyze.daemon.AnnolyzeDaemon;
+import io.github.wasabithumb.annolyze.daemon.AnnolyzeDaemonSource;
 import io.github.wasabithumb.annolyze.directory.AnnolyzeDirectory;
+import io.github.wasabithumb.annolyze.directory.AnnolyzeDirectoryWatcher;
 import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.file.ClassFileSkeleton;
+import io.github.wasabithumb.annolyze.file.except.ClassFileReadException;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanSession;
+import io.github.wasabithumb.annolyze.index.AnnotationIndex;
+import io.github.wasabithumb.annolyze.index.AnnotationRegistryWriter;
+import io.github.wasabithumb.annolyze.lookup.AnnolyzeLookup;
 import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
 import io.github.wasabithumb.annolyze.reference.type.TypeReference;
 import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import io.github.wasabithumb.annolyze.runtime.AnnolyzeRuntimeImage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.ThrowingConsumer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Documented;
+import java.net.URL;
+import java.net.StandardProtocolFamily;
+import java.net.URLClassLoader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -46,6 +110,25 @@ class AnnolyzeTest {
         assertEquals(ClassReference.of(Test.class), annotations.get(0));
     }
 
+    // Ensure that the buffer reader produces the same skeleton as the stream reader
+    @Test()
+    void buffer() {
+        assertDoesNotThrow(() -> {
+            final byte[] bytes;
+            try (InputStream is = this.getClass().getResourceAsStream(this.getClass().getSimpleName() + ".class")) {
+                assertNotNull(is);
+                bytes = is.readAllBytes();
+            }
+
+            final ClassFile a = Annolyze.read(new ByteArrayInputStream(bytes));
+            final ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            final ClassFile b = Annolyze.read(buf);
+
+            assertEquals(a.toString(true), b.toString(true));
+            assertFalse(buf.hasRemaining());
+        });
+    }
+
     // Ensure that Annolyze can read the "dummy" classes using the directory loader
     @Test()
     void directory() {
@@ -58,10 +141,126 @@ class AnnolyzeTest {
             assertNotNull(cf.getField("DUMMY_FIELD_FOUR"));
         });
 
+        // Long and Double constants occupy two constant pool slots; entries after them must still resolve
+        directory(dir, "DummyB", (ClassFile cf) -> {
+            assertNotNull(cf.getField("DUMMY_FIELD_ONE"));
+            assertNotNull(cf.getField("DUMMY_FIELD_TWO"));
+            assertNotNull(cf.getField("DUMMY_FIELD_THREE"));
+            assertNotNull(cf.getField("DUMMY_FIELD_FOUR"));
+            assertTrue(cf.toString(true).contains("@java.lang.Deprecated"));
+        });
+
         assertDoesNotThrow(() -> {
             assertNotEquals(0, dir.list(false).size());
             assertNotEquals(0, dir.list(true).size());
         });
+
+        // Lazy variants yield the same classes in the same order, parallel or not
+        assertDoesNotThrow(() -> {
+            final List<String> expected = dir.readAll().stream().map(ClassFile::name).toList();
+            try (Stream<ClassFile> stream = dir.stream()) {
+                assertEquals(expected, stream.parallel().map(ClassFile::name).toList());
+            }
+            try (AnnolyzeClassIterator iterator = dir.iterator()) {
+                for (String name : expected) assertEquals(name, iterator.next().name());
+                assertFalse(iterator.hasNext());
+            }
+        });
+    }
+
+    // Ensure that a parallel directory walk finds the same classes in the same order as a sequential one, skipping
+    // package-info, non-class files and symbolic link cycles
+    @Test()
+    void directoryParallel() {
+        assertDoesNotThrow(() -> {
+            final byte[] bytes;
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("dummy/DummyA.class"))) {
+                bytes = is.readAllBytes();
+            }
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final List<String> expected = new ArrayList<>();
+                for (int i=0; i < 4; i++) {
+                    for (int z=0; z < 3; z++) {
+                        final Path pkg = Files.createDirectories(dir.resolve("p" + i).resolve("q" + z));
+                        Files.write(pkg.resolve("C.class"), bytes);
+                        Files.write(pkg.resolve("package-info.class"), bytes);
+                        Files.write(pkg.resolve("C.txt"), bytes);
+                        expected.add("p" + i + ".q" + z + ".C");
+                    }
+                    Files.write(dir.resolve("p" + i).resolve("B.class"), bytes);
+                    expected.add("p" + i + ".B");
+                }
+                Files.write(dir.resolve("A.class"), bytes);
+                expected.add("A");
+                Files.createSymbolicLink(dir.resolve("p0").resolve("q0").resolve("loop"), dir.resolve("p0"));
+                expected.sort(null);
+
+                final AnnolyzeDirectory sequential = AnnolyzeDirectory.of(dir);
+                assertEquals(expected, sequential.list(true));
+                assertEquals(List.of("A"), sequential.list(false));
+                for (int parallelism : new int[] { 2, 4, 8 }) {
+                    final AnnolyzeDirectory parallel = sequential.parallelism(parallelism);
+                    assertEquals(expected, parallel.list(true));
+                    assertEquals(List.of("A"), parallel.list(false));
+                    assertEquals(List.of("q0.C", "q1.C", "q2.C", "B").stream().sorted().toList(),
+                            parallel.sub("p1").list(true));
+                    assertEquals(expected.size(), parallel.readAll(true).size());
+                }
+            }
+        });
+    }
+
+    // Ensure that globs match internal names as documented, and that filtered views drop excluded classes from
+    // scans and reads, including within packages
+    @Test()
+    void filter() {
+        final ClassNameFilter controller = ClassNameFilter.glob("*Controller");
+        assertTrue(controller.test("com/acme/web/UserController"));
+        assertFalse(controller.test("com/acme/web/UserControllerTest"));
+        final ClassNameFilter nested = ClassNameFilter.glob("*$*");
+        assertTrue(nested.test("com/acme/Foo$Bar"));
+        assertFalse(nested.test("com/acme/Foo"));
+
+        final ClassNameFilter shallow = ClassNameFilter.glob("com.acme.*");
+        assertTrue(shallow.test("com/acme/Foo"));
+        assertFalse(shallow.test("com/acme/web/Foo"));
+        final ClassNameFilter deep = ClassNameFilter.glob("com/acme/**");
+        assertTrue(deep.test("com/acme/Foo"));
+        assertTrue(deep.test("com/acme/web/Foo"));
+        assertFalse(deep.test("com/acmex/Foo"));
+        final ClassNameFilter anywhere = ClassNameFilter.glob("**.Foo");
+        assertTrue(anywhere.test("Foo"));
+        assertTrue(anywhere.test("com/acme/Foo"));
+        assertFalse(anywhere.test("com/acme/XFoo"));
+        final ClassNameFilter single = ClassNameFilter.glob("com.acme.Fo?");
+        assertTrue(single.test("com/acme/Foo"));
+        assertFalse(single.test("com/acme/Fooo"));
+        assertFalse(single.test("com/acme/Fo/"));
+        assertTrue(ClassNameFilter.glob("a.b+c").test("a/b+c"));
+        assertFalse(ClassNameFilter.glob("a.b+c").test("a/bbc"));
+
+        final ClassNameFilter combined = deep.and(controller.negate()).or(ClassNameFilter.regex("org/.*Test"));
+        assertTrue(combined.test("com/acme/Foo"));
+        assertFalse(combined.test("com/acme/FooController"));
+        assertTrue(combined.test("org/acme/FooTest"));
+        assertFalse(combined.test("org/acme/Foo"));
+
+        assertDoesNotThrow(() -> {
+            final String pkg = "io.github.wasabithumb.annolyze.dummy";
+            final AnnolyzeClassSource filtered = Annolyze.directory()
+                    .filter(ClassNameFilter.glob("**.Dummy*").and(ClassNameFilter.glob("*B").negate()));
+            assertEquals(List.of(pkg + ".DummyA"), filtered.list());
+            assertEquals(1, filtered.parallelism(4).readAll().size());
+            assertEquals(pkg + ".DummyA", filtered.read(pkg + ".DummyA").name());
+            assertThrows(FileNotFoundException.class, () -> filtered.read(pkg + ".DummyB"));
+
+            // Names within a package are still matched in full
+            final AnnolyzeClassSource sub = filtered.sub(pkg);
+            assertEquals(List.of("DummyA"), sub.list());
+            assertThrows(FileNotFoundException.class, () -> sub.read("DummyB"));
+            assertEquals(0, Annolyze.directory().sub(pkg).filter(ClassNameFilter.glob("dummy.*")).list().size());
+        });
     }
 
     private void directory(@NotNull AnnolyzeDirectory dir, @NotNull String name, @Nullable ThrowingConsumer<ClassFile> checks) {
@@ -69,6 +268,809 @@ class AnnolyzeTest {
         if (checks != null) assertDoesNotThrow(() -> checks.accept(file));
     }
 
+    // Ensure that the annotation index finds the @Test methods of this class
+    @Test()
+    void index() {
+        assertDoesNotThrow(() -> {
+            final AnnolyzeClassSource source = Annolyze.directory().filter(ClassNameFilter.glob("AnnolyzeTest"));
+            final AnnotationIndex index = AnnotationIndex.build(source.parallelism(2));
+            final ClassReference test = ClassReference.of(Test.class);
+
+            assertTrue(index.annotations().contains(test));
+            assertEquals(0, index.classes(test).size());
+            assertEquals(0, index.fields(test).size());
+
+            final List<String> names = index.methods(test).stream().map(MethodReference::name).toList();
+            assertTrue(names.containsAll(List.of("read", "buffer", "directory", "index", "archive")));
+            for (MethodReference method : index.methods(test)) {
+                assertEquals(ClassReference.of(this.getClass()), method.declaringClass());
+            }
+        });
+    }
+
+    // Ensure that a generated registry compiles, finds the same test methods as the index, and keeps names intact
+    @Test()
+    void registry() {
+        assertDoesNotThrow(() -> {
+            final List<ClassFile> classes = Annolyze.directory().filter(ClassNameFilter.glob("AnnolyzeTest")).readAll();
+            // A control character followed by a digit must not be quoted as a longer octal escape
+            final String fieldName = "a" + (char) 1 + "7";
+            final FieldReference field = FieldReference.of(ClassReference.of(Annolyze.class), fieldName, "I", 0x0001);
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path source = AnnotationRegistryWriter.of("io.github.wasabithumb.annolyze.TestRegistry")
+                        .addAll(classes)
+                        .add(ClassFile.builder()
+                                .setClass(ClassReference.of(Annolyze.class))
+                                .addAnnotation(ClassReference.of(Deprecated.class))
+                                .addAnnotation(field, ClassReference.of(Deprecated.class))
+                                .build())
+                        .write(dir);
+                final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+                assertEquals(0, compiler.run(null, null, null,
+                        "-d", dir.toString(), "-cp", System.getProperty("java.class.path"), source.toString()));
+
+                final URL[] urls = { dir.toUri().toURL() };
+                try (URLClassLoader loader = new URLClassLoader(urls, this.getClass().getClassLoader())) {
+                    final Class<?> registry = loader.loadClass("io.github.wasabithumb.annolyze.TestRegistry");
+                    final List<?> methods = (List<?>) registry.getMethod("methods", Class.class).invoke(null, Test.class);
+                    assertTrue(methods.toString().contains("name=registry, descriptor=()V"));
+                    assertEquals(
+                            List.of(Annolyze.class),
+                            registry.getMethod("classLiterals", Class.class).invoke(null, Deprecated.class)
+                    );
+                    final List<?> fields = (List<?>) registry.getMethod("fields", Class.class).invoke(null, Deprecated.class);
+                    assertEquals(1, fields.size());
+                    assertEquals(fieldName, fields.get(0).getClass().getMethod("name").invoke(fields.get(0)));
+                }
+            }
+        });
+    }
+
+    // Ensure that a scan session reports only what changed between scans, and that an index can be patched with it
+    @Test()
+    void incremental() {
+        assertDoesNotThrow(() -> {
+            final String name = this.getClass().getName();
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path file = dir.resolve(name.replace('.', File.separatorChar) + ".class");
+                final Path state = dir.resolve("session.bin");
+                Files.createDirectories(file.getParent());
+                try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"))) {
+                    Files.copy(is, file);
+                }
+
+                final AnnolyzeDirectory source = AnnolyzeDirectory.of(dir);
+                final AnnolyzeScanSession session = AnnolyzeScanSession.of(source);
+                assertEquals(List.of(name), session.rescan().added().stream().map(ClassFile::name).toList());
+                assertTrue(session.rescan().isEmpty());
+                session.save(state);
+                assertTrue(AnnolyzeScanSession.load(source, state).rescan().isEmpty());
+
+                // A corrupt entry count is treated as a missing state file
+                final byte[] saved = Files.readAllBytes(state);
+                final Path corrupt = dir.resolve("corrupt.bin");
+                for (int count : new int[] { -1, Integer.MAX_VALUE }) {
+                    ByteBuffer.wrap(saved).putInt(8, count);
+                    Files.write(corrupt, saved);
+                    assertEquals(1, AnnolyzeScanSession.load(source, corrupt).rescan().added().size());
+                }
+
+                Files.setLastModifiedTime(file, FileTime.from(Instant.EPOCH));
+                assertEquals(1, session.rescan().changed().size());
+
+                final AnnotationIndex index = AnnotationIndex.build(source);
+                Files.delete(file);
+                final AnnolyzeScanDelta delta = session.rescan();
+                assertEquals(List.of(name), delta.removed());
+                assertFalse(index.methods(ClassReference.of(Test.class)).isEmpty());
+                assertTrue(index.patch(delta).methods(ClassReference.of(Test.class)).isEmpty());
+            }
+        });
+    }
+
+    // Ensure that a directory watcher reports classes added to and deleted from a directory, including classes
+    // in package directories created after the watch started
+    @Test()
+    void watch() {
+        assertDoesNotThrow(() -> {
+            final String name = this.getClass().getName();
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path file = dir.resolve(name.replace('.', File.separatorChar) + ".class");
+                try (AnnolyzeDirectoryWatcher watcher = AnnolyzeDirectory.of(dir).watch()) {
+                    final BlockingQueue<AnnolyzeScanDelta> deltas = new LinkedBlockingQueue<>();
+                    watcher.subscribe(deltas::add);
+                    assertTrue(watcher.classes().isEmpty());
+
+                    // The package directories are created after the watch starts, and must be picked up
+                    Files.createDirectories(file.getParent());
+                    try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"))) {
+                        Files.copy(is, file);
+                    }
+                    AnnolyzeScanDelta delta = deltas.poll(10L, TimeUnit.SECONDS);
+                    assertNotNull(delta);
+                    assertEquals(List.of(name), delta.added().stream().map(ClassFile::name).toList());
+                    assertTrue(watcher.classes().containsKey(name));
+                    assertFalse(watcher.index().methods(ClassReference.of(Test.class)).isEmpty());
+
+                    Files.delete(file);
+                    delta = deltas.poll(10L, TimeUnit.SECONDS);
+                    assertNotNull(delta);
+                    assertEquals(List.of(name), delta.removed());
+                    assertTrue(watcher.index().methods(ClassReference.of(Test.class)).isEmpty());
+                }
+            }
+        });
+    }
+
+    // Ensure that a disk cache serves the same classes as the source it wraps, and leaves embedded indexes usable
+    @Test()
+    void diskCache() {
+        assertDoesNotThrow(() -> {
+            final String entryName = this.getClass().getName().replace('.', '/') + ".class";
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path jar = dir.resolve("test.jar");
+                try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"));
+                     ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))
+                ) {
+                    zos.putNextEntry(new ZipEntry(entryName));
+                    is.transferTo(zos);
+                    zos.closeEntry();
+                }
+
+                final AnnolyzeArchive archive = Annolyze.archive(jar.toFile());
+                final AnnolyzeDiskCache cache = AnnolyzeDiskCache.open(dir.resolve("cache"));
+                final String expected = archive.readAll().get(0).toString(true);
+                assertEquals(expected, cache.wrap(archive).readAll().get(0).toString(true));
+                assertEquals(expected, cache.wrap(archive).readAll().get(0).toString(true));
+
+                // Classes outside archives are addressed by content
+                try (AnnolyzeClassScan scan = archive.scan()) {
+                    assertEquals(expected, cache.read(scan.entries().get(0)).toString(true));
+                }
+                try (Stream<Path> stream = Files.walk(cache.directory())) {
+                    assertEquals(2, stream.filter(Files::isRegularFile).toList().size());
+                }
+
+                // Index builds use an embedded index through the cache instead of reading the archive
+                final Path embedded = dir.resolve("embedded.jar");
+                Files.copy(jar, embedded);
+                AnnotationIndex.build(archive).embed(embedded.toFile());
+                final AnnolyzeDiskCache fresh = AnnolyzeDiskCache.open(dir.resolve("fresh"));
+                final AnnotationIndex index = AnnotationIndex.build(
+                        fresh.wrap(AnnolyzeComposite.of(Annolyze.archive(embedded.toFile())))
+                );
+                assertEquals(AnnotationIndex.build(archive).annotations(), index.annotations());
+                try (Stream<Path> stream = Files.walk(fresh.directory())) {
+                    assertEquals(0, stream.filter(Files::isRegularFile).toList().size());
+                }
+            }
+        });
+    }
+
+    // Ensure that a lookup snapshot is reused while its archive is unchanged, and that a corrupt or truncated
+    // snapshot is rebuilt rather than trusted
+    @Test()
+    void lookupSnapshot() {
+        assertDoesNotThrow(() -> {
+            final String name = this.getClass().getName();
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path jar = dir.resolve("test.jar");
+                final Path snapshot = dir.resolve("lookup.bin");
+                try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"));
+                     ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))
+                ) {
+                    zos.putNextEntry(new ZipEntry(name.replace('.', '/') + ".class"));
+                    is.transferTo(zos);
+                    zos.closeEntry();
+                }
+
+                final AnnolyzeArchive archive = Annolyze.archive(jar.toFile());
+                assertEquals(name, archive.className(archive.entryName(name)));
+                assertNull(archive.className("META-INF/MANIFEST.MF"));
+                final String expected = archive.read(name).toString(true);
+                try (AnnolyzeLookup lookup = AnnolyzeLookup.of(List.of(archive), snapshot)) {
+                    assertEquals(expected, lookup.read(name).toString(true));
+                }
+                final byte[] written = Files.readAllBytes(snapshot);
+
+                // An unchanged archive is served from the snapshot, which is left as is
+                Files.setLastModifiedTime(snapshot, FileTime.from(Instant.EPOCH));
+                try (AnnolyzeLookup lookup = AnnolyzeLookup.of(List.of(archive), snapshot)) {
+                    assertEquals(expected, lookup.read(name).toString(true));
+                }
+                assertEquals(FileTime.from(Instant.EPOCH), Files.getLastModifiedTime(snapshot));
+
+                // An entry count larger than the snapshot could hold
+                final int countOffset = 13 + utfLength(jar.toFile().getAbsolutePath()) + utfLength(archive.pkg()) + 16;
+                final byte[] corrupt = written.clone();
+                ByteBuffer.wrap(corrupt).putInt(countOffset, Integer.MAX_VALUE);
+                Files.write(snapshot, corrupt);
+                try (AnnolyzeLookup lookup = AnnolyzeLookup.of(List.of(archive), snapshot)) {
+                    assertEquals(expected, lookup.read(name).toString(true));
+                }
+                assertArrayEquals(written, Files.readAllBytes(snapshot));
+
+                // An entry pointing past the end of the archive
+                ByteBuffer.wrap(corrupt).putInt(countOffset, 1).putLong(written.length - 8, Long.MAX_VALUE);
+                Files.write(snapshot, corrupt);
+                try (AnnolyzeLookup lookup = AnnolyzeLookup.of(List.of(archive), snapshot)) {
+                    assertEquals(expected, lookup.read(name).toString(true));
+                }
+                assertArrayEquals(written, Files.readAllBytes(snapshot));
+
+                // A truncated snapshot
+                Files.write(snapshot, Arrays.copyOf(written, written.length - 1));
+                try (AnnolyzeLookup lookup = AnnolyzeLookup.of(List.of(archive), snapshot)) {
+                    assertEquals(expected, lookup.read(name).toString(true));
+                }
+                assertArrayEquals(written, Files.readAllBytes(snapshot));
+            }
+        });
+    }
+
+    private static int utfLength(@NotNull String s) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DataOutputStream(bos).writeUTF(s);
+        return bos.size();
+    }
+
+    // Ensure that earlier sources of a composite shadow classes of the same name in later ones, and that shadowed
+    // classes are never read
+    @Test()
+    void composite() {
+        assertDoesNotThrow(() -> {
+            final byte[] a;
+            final byte[] b;
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("dummy/DummyA.class"))) {
+                a = is.readAllBytes();
+            }
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("dummy/DummyB.class"))) {
+                b = is.readAllBytes();
+            }
+            final String nameA = "io.github.wasabithumb.annolyze.dummy.DummyA";
+            final String nameB = "io.github.wasabithumb.annolyze.dummy.DummyB";
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path first = Files.createDirectories(dir.resolve("first").resolve("x"));
+                Files.write(first.resolve("C.class"), a);
+                Files.write(first.resolve("D.class"), a);
+                // Unreadable, but shadowed by the first source
+                final Path second = Files.createDirectories(dir.resolve("second").resolve("x"));
+                Files.write(second.resolve("C.class"), new byte[] { 1, 2, 3 });
+                Files.write(second.resolve("E.class"), b);
+                final Path jar = dir.resolve("third.jar");
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+                    for (String name : List.of("x/C.class", "x/F.class")) {
+                        zos.putNextEntry(new ZipEntry(name));
+                        zos.write(b);
+                        zos.closeEntry();
+                    }
+                }
+
+                final AnnolyzeComposite composite = AnnolyzeComposite.ofFiles(List.of(
+                        first.getParent().toFile(),
+                        second.getParent().toFile(),
+                        jar.toFile()
+                ));
+                assertEquals(List.of("x.C", "x.D", "x.E", "x.F"), composite.list());
+                assertEquals(List.of(nameA, nameA, nameB, nameB),
+                        composite.readAll().stream().map(ClassFile::name).toList());
+                assertEquals(composite.readAll(), composite.parallelism(4).readAll());
+                assertEquals(nameA, composite.read("x.C").name());
+                assertEquals(nameB, composite.read("x.E").name());
+                assertEquals(nameB, composite.read("x.F").name());
+                assertThrows(FileNotFoundException.class, () -> composite.read("x.G"));
+                assertThrows(ClassFileReadException.class, () -> composite.sources().get(1).read("x.C"));
+
+                // Packages narrow every source, and directories without the package are omitted
+                assertEquals(List.of("C", "D", "E", "F"), composite.sub("x").list());
+                assertEquals(nameA, composite.sub("x").read("C").name());
+                assertEquals(1, composite.sub("y").sources().size());
+                assertEquals(0, composite.sub("y").list().size());
+
+                // Precedence follows the order of the sources
+                final List<AnnolyzeClassSource> sources = composite.sources();
+                final AnnolyzeComposite reversed = AnnolyzeComposite.of(sources.get(2), sources.get(0));
+                assertEquals(nameB, reversed.read("x.C").name());
+                assertEquals(List.of(nameB, nameB, nameA),
+                        reversed.readAll().stream().map(ClassFile::name).toList());
+            }
+        });
+    }
+
+    // Ensure that a class shaded under another name is parsed once, and that every copy is reported
+    @Test()
+    void deduplicate() {
+        assertDoesNotThrow(() -> {
+            final String entryName = this.getClass().getName().replace('.', '/') + ".class";
+            final byte[] bytes;
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"))) {
+                bytes = is.readAllBytes();
+            }
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path first = dir.resolve("first.jar");
+                final Path second = dir.resolve("second.jar");
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(first))) {
+                    zos.putNextEntry(new ZipEntry(entryName));
+                    zos.write(bytes);
+                    zos.closeEntry();
+                }
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(second))) {
+                    for (String name : List.of(entryName, "shaded/" + entryName)) {
+                        zos.putNextEntry(new ZipEntry(name));
+                        zos.write(bytes);
+                        zos.closeEntry();
+                    }
+                }
+
+                final AnnolyzeComposite composite = AnnolyzeComposite.of(
+                        Annolyze.archive(first.toFile()),
+                        Annolyze.archive(second.toFile())
+                );
+                final List<ClassFile> plain = composite.readAll();
+                assertEquals(2, plain.size());
+                assertNotSame(plain.get(0), plain.get(1));
+                final List<ClassFile> shared = composite.deduplicated().parallelism(2).readAll();
+                assertEquals(2, shared.size());
+                assertSame(shared.get(0), shared.get(1));
+                assertEquals(plain.get(0).toString(true), shared.get(0).toString(true));
+
+                // The shadowed copy is reported too
+                final List<AnnolyzeDuplicateGroup> groups = composite.duplicates();
+                assertEquals(1, groups.size());
+                final AnnolyzeDuplicateGroup group = groups.get(0);
+                assertEquals(64, group.hash().length());
+                assertEquals(bytes.length, (int) group.size());
+                final String name = this.getClass().getName();
+                assertEquals(List.of(name, name, "shaded." + name), group.names());
+                final List<AnnolyzeClassSource> sources = composite.sources();
+                assertEquals(List.of(sources.get(0), sources.get(1), sources.get(1)), group.sources());
+            }
+        });
+    }
+
+    // Ensure that a memory cache shares entries between views, parses a class missed concurrently once, and leaves
+    // embedded indexes usable
+    @Test()
+    void memoryCache() {
+        assertDoesNotThrow(() -> {
+            final String name = this.getClass().getName();
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path file = dir.resolve(name.replace('.', File.separatorChar) + ".class");
+                Files.createDirectories(file.getParent());
+                try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"))) {
+                    Files.copy(is, file);
+                }
+
+                final AnnolyzeMemoryCache cache = AnnolyzeMemoryCache.of(Runtime.getRuntime().maxMemory(), true);
+                final AnnolyzeClassSource source = cache.wrap(AnnolyzeDirectory.of(dir));
+                final ClassFile first = source.read(name);
+                assertSame(first, source.read(name));
+                assertSame(first, source.sub(this.getClass().getPackageName()).read(this.getClass().getSimpleName()));
+                assertEquals(1, cache.size());
+                assertEquals(AnnolyzeMemoryCache.weigh(first), cache.weight());
+
+                // Concurrent misses for one class parse it once
+                cache.invalidateAll();
+                final List<CompletableFuture<ClassFile>> futures = new ArrayList<>();
+                for (int i=0; i < 8; i++) futures.add(source.readAsync(name));
+                for (CompletableFuture<ClassFile> future : futures) assertSame(futures.get(0).join(), future.join());
+                assertEquals(2, (int) cache.stats().misses());
+                assertEquals(9, (int) cache.stats().hits());
+
+                // Index builds use an embedded index through the cache instead of reading the archive
+                final Path jar = dir.resolve("embedded.jar");
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+                    zos.putNextEntry(new ZipEntry(name.replace('.', '/') + ".class"));
+                    Files.copy(file, zos);
+                    zos.closeEntry();
+                }
+                final AnnotationIndex expected = AnnotationIndex.build(Annolyze.archive(jar.toFile()));
+                expected.embed(jar.toFile());
+                cache.invalidateAll();
+                for (AnnolyzeClassSource wrapped : List.of(
+                        cache.wrap(Annolyze.archive(jar.toFile())),
+                        cache.wrap(AnnolyzeComposite.of(Annolyze.archive(jar.toFile())))
+                )) {
+                    assertEquals(expected.annotations(), AnnotationIndex.build(wrapped).annotations());
+                }
+                assertEquals(0, cache.size());
+            }
+        });
+    }
+
+    // Ensure that a daemon serves the same classes as reading them locally, notices changes to a directory, and
+    // that its sources fall back to reading classes themselves once it stops
+    @Test()
+    void daemon() {
+        assertDoesNotThrow(() -> {
+            final String name = this.getClass().getName();
+            final String pkg = this.getClass().getPackageName();
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path file = dir.resolve(name.replace('.', File.separatorChar) + ".class");
+                final Path socket = dir.resolve("d.sock");
+                Files.createDirectories(file.getParent());
+                try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"))) {
+                    Files.copy(is, file);
+                }
+
+                final AnnolyzeClassSource local = AnnolyzeDirectory.of(dir);
+                final AnnolyzeDaemonSource source = AnnolyzeDaemon.source(socket, dir.toFile());
+                try (AnnolyzeDaemon daemon = AnnolyzeDaemon.start(socket, 2)) {
+                    daemon.warm(dir.toFile());
+                    assertThrows(IOException.class, () -> AnnolyzeDaemon.start(socket).close());
+                    assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(socket));
+                    try (Stream<Path> stream = Files.list(dir)) {
+                        assertEquals(Set.of("d.sock", "io"), stream.map((Path p) -> p.getFileName().toString())
+                                .collect(Collectors.toSet()));
+                    }
+                    assertTrue(source.isDaemonRunning());
+
+                    assertEquals(local.list(), source.list());
+                    assertEquals(local.read(name).toString(true), source.read(name).toString(true));
+                    assertEquals(local.sub(pkg).list(false), source.sub(pkg).list(false));
+                    assertEquals(
+                            local.read(name).toString(true),
+                            source.sub(pkg).read(this.getClass().getSimpleName()).toString(true)
+                    );
+                    assertEquals(1, source.readAll().size());
+                    assertEquals(AnnotationIndex.build(local).annotations(), source.index().annotations());
+                    assertThrows(IOException.class, () -> source.read("does.not.Exist"));
+
+                    // Class data is read from the local source, once per scan
+                    try (AnnolyzeClassScan scan = source.sub(pkg).scan(true);
+                         AnnolyzeClassScan expected = local.sub(pkg).scan(true)
+                    ) {
+                        assertEquals(1, scan.entries().size());
+                        assertEquals(expected.entries().get(0).bytes(), scan.entries().get(0).bytes());
+                    }
+
+                    // A class added to a watched directory is served without waiting for the directory to expire
+                    final Path copy = file.resolveSibling("Copy.class");
+                    Files.copy(file, copy);
+                    List<String> names = source.list();
+                    for (int i=0; names.size() < 2 && i < 50; i++) {
+                        Thread.sleep(100L);
+                        names = source.list();
+                    }
+                    assertEquals(local.list(), names);
+                    Files.delete(copy);
+                }
+
+                // Without a daemon, the source reads classes itself
+                assertFalse(source.isDaemonRunning());
+                assertFalse(Files.exists(socket));
+                assertEquals(local.list(), source.list());
+                assertEquals(local.read(name).toString(true), source.read(name).toString(true));
+
+                // A daemon which answers with a negative count is ignored
+                try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                    server.bind(UnixDomainSocketAddress.of(socket));
+                    final Thread thread = new Thread(() -> {
+                        try (SocketChannel client = server.accept()) {
+                            final DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+                            final DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+                            in.readInt();
+                            in.readUnsignedShort();
+                            out.writeByte(0);
+                            in.readUnsignedByte();
+                            in.readUTF();
+                            in.readUTF();
+                            in.readBoolean();
+                            out.writeByte(0);
+                            out.writeInt(-1);
+                        } catch (IOException ignored) { }
+                    });
+                    thread.start();
+                    assertEquals(local.list(), source.list());
+                    thread.join();
+                }
+                Files.delete(socket);
+
+                // A daemon which never answers is abandoned once the timeout has passed
+                try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                     AnnolyzeDaemonSource wedged = AnnolyzeDaemon.source(socket, dir.toFile(), Duration.ofMillis(200L))
+                ) {
+                    server.bind(UnixDomainSocketAddress.of(socket));
+                    final long start = System.nanoTime();
+                    assertEquals(local.list(), wedged.list());
+                    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10L));
+                }
+                Files.delete(socket);
+
+                // A closed source keeps answering from the local source
+                source.close();
+                assertEquals(local.list(), source.list());
+                assertEquals(local.sub(pkg).list(false), source.sub(pkg).list(false));
+            }
+        });
+    }
+
+    // Ensure that a publisher reads on the given executor, delivers classes in order, sends no more classes than
+    // were requested, and stops once cancelled
+    @Test()
+    void publisher() {
+        final ExecutorService executor = Executors.newFixedThreadPool(4, (Runnable r) -> {
+            final Thread thread = new Thread(r, "publisher-test");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            assertDoesNotThrow(() -> {
+                final AnnolyzeClassSource source = Annolyze.directory().parallelism(4);
+                final List<String> expected = source.readAll().stream().map(ClassFile::name).toList();
+                assertTrue(expected.size() > 3);
+
+                final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+                final CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+                source.publisher(true, executor).subscribe(new Flow.Subscriber<ClassFile>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscribed.complete(subscription);
+                    }
+
+                    @Override
+                    public void onNext(ClassFile item) {
+                        signals.add(Thread.currentThread().getName().equals("publisher-test") ? item.name() : "wrong thread");
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        signals.add(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        signals.add("complete");
+                    }
+                });
+                final Flow.Subscription subscription = subscribed.get(10L, TimeUnit.SECONDS);
+
+                // Nothing is sent beyond the demand
+                subscription.request(1L);
+                assertEquals(expected.get(0), signals.poll(10L, TimeUnit.SECONDS));
+                assertNull(signals.poll(200L, TimeUnit.MILLISECONDS));
+                subscription.request(2L);
+                assertEquals(expected.get(1), signals.poll(10L, TimeUnit.SECONDS));
+                assertEquals(expected.get(2), signals.poll(10L, TimeUnit.SECONDS));
+                assertNull(signals.poll(200L, TimeUnit.MILLISECONDS));
+
+                // The rest arrives in order, followed by completion
+                subscription.request(Long.MAX_VALUE);
+                for (String name : expected.subList(3, expected.size()))
+                    assertEquals(name, signals.poll(10L, TimeUnit.SECONDS));
+                assertEquals("complete", signals.poll(10L, TimeUnit.SECONDS));
+
+                // A cancelled subscription receives nothing more, not even completion
+                final BlockingQueue<Object> cancelled = new LinkedBlockingQueue<>();
+                source.publisher(true, executor).subscribe(new Flow.Subscriber<ClassFile>() {
+                    private Flow.Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onNext(ClassFile item) {
+                        cancelled.add(item.name());
+                        this.subscription.cancel();
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        cancelled.add(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        cancelled.add("complete");
+                    }
+                });
+                assertEquals(expected.get(0), cancelled.poll(10L, TimeUnit.SECONDS));
+                assertNull(cancelled.poll(500L, TimeUnit.MILLISECONDS));
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Ensure that the constant pool prefilter steps over the two slots of Long and Double constants, never rejects
+    // a class which matches, and spares findFirst from parsing the classes it rejects
+    @Test()
+    void findFirst() {
+        assertDoesNotThrow(() -> {
+            // Slots 1-2 hold a Long and slots 3-4 a Double; the bytes after the pool would read as Utf8 "X"
+            final ByteBuffer crafted = ByteBuffer.allocate(64)
+                    .putInt(0xCAFEBABE).putShort((short) 0).putShort((short) 61).putShort((short) 6)
+                    .put((byte) 5).putLong(Long.MAX_VALUE)
+                    .put((byte) 6).putDouble(2.5d)
+                    .put((byte) 1).putShort((short) 1).put((byte) 'Y')
+                    .put((byte) 1).putShort((short) 1).put((byte) 'X')
+                    .flip();
+            assertTrue(ConstantPoolFilter.containsAll("Y").test(crafted));
+            assertFalse(ConstantPoolFilter.containsAny("X").test(crafted));
+            assertEquals(0, crafted.position());
+
+            final byte[] dummyB;
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("dummy/DummyB.class"))) {
+                dummyB = is.readAllBytes();
+            }
+            final ConstantPoolFilter deprecated = ConstantPoolFilter.annotation("java.lang.Deprecated");
+            assertTrue(deprecated.test(ByteBuffer.wrap(dummyB)));
+            assertTrue(ConstantPoolFilter.containsAll("DUMMY_FIELD_ONE", "DUMMY_FIELD_FOUR", "dummyMethod")
+                    .test(ByteBuffer.wrap(dummyB)));
+            assertFalse(ConstantPoolFilter.containsAll("DUMMY_FIELD_ONE", "Missing").test(ByteBuffer.wrap(dummyB)));
+            assertTrue(ConstantPoolFilter.containsAny("Missing", "dummyMethod").test(ByteBuffer.wrap(dummyB)));
+            // Data which can not be walked is left for the parser to report
+            assertTrue(deprecated.test(ByteBuffer.wrap(Arrays.copyOf(dummyB, 20))));
+
+            // Nested annotations are matched by binary name or by reference
+            final byte[] marked;
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest$Marked.class"))) {
+                marked = is.readAllBytes();
+            }
+            assertTrue(ConstantPoolFilter.annotation(Marker.class).test(ByteBuffer.wrap(marked)));
+            assertTrue(ConstantPoolFilter.annotation(ClassReference.of(Marker.class)).test(ByteBuffer.wrap(marked)));
+            assertTrue(ConstantPoolFilter.annotation(Marker.class.getName()).test(ByteBuffer.wrap(marked)));
+            assertFalse(ConstantPoolFilter.annotation(Marker.class.getCanonicalName()).test(ByteBuffer.wrap(marked)));
+            assertFalse(ConstantPoolFilter.annotation(Marker.class).test(ByteBuffer.wrap(dummyB)));
+
+            final String pkg = "io.github.wasabithumb.annolyze.dummy";
+            final AnnolyzeDirectory dir = Annolyze.directory().sub(pkg);
+            final Predicate<ClassFile> annotated = (ClassFile cf) -> cf.getMethods().stream()
+                    .anyMatch((MethodReference m) -> !cf.getAnnotations(m).isEmpty());
+            for (int parallelism : new int[] { 1, 4 }) {
+                final AtomicInteger tested = new AtomicInteger(0);
+                final Optional<ClassFile> found = dir.parallelism(parallelism).findFirst(
+                        deprecated,
+                        (ClassFile cf) -> {
+                            tested.incrementAndGet();
+                            return annotated.test(cf);
+                        }
+                );
+                assertEquals(pkg + ".DummyB", found.map(ClassFile::name).orElse(null));
+                assertEquals(1, tested.get());
+                assertFalse(dir.parallelism(parallelism).anyMatch(
+                        ConstantPoolFilter.containsAny("Missing"),
+                        (ClassFile cf) -> true
+                ));
+                assertEquals(pkg + ".DummyA", dir.parallelism(parallelism).findFirst((ClassFile cf) -> true)
+                        .map(ClassFile::name).orElse(null));
+            }
+        });
+    }
+
+    // Ensure that asynchronous reads run on the given executor, split bulk reads into one task per thread, stop
+    // at the next class once cancelled, and fail when the executor rejects them
+    @Test()
+    void async() {
+        final ExecutorService pool = Executors.newFixedThreadPool(3, (Runnable r) -> new Thread(r, "test-async"));
+        try {
+            assertDoesNotThrow(() -> {
+                final AnnolyzeDirectory dir = Annolyze.directory();
+                final List<ClassFile> expected = dir.readAll();
+                final AtomicInteger submitted = new AtomicInteger(0);
+                final Executor counting = (Runnable r) -> {
+                    submitted.incrementAndGet();
+                    pool.execute(r);
+                };
+
+                CountingSource source = new CountingSource(dir, 3);
+                assertEquals(expected.get(0), source.readAsync(expected.get(0).name(), counting).get(10L, TimeUnit.SECONDS));
+                assertEquals(1, submitted.get());
+                assertEquals(expected.size(), source.listAsync(true, counting).get(10L, TimeUnit.SECONDS).size());
+                assertEquals(2, submitted.get());
+                assertEquals(expected, source.readAllAsync(true, counting).get(10L, TimeUnit.SECONDS));
+                assertEquals(2 + 1 + 3, submitted.get());
+                assertEquals(Set.of("test-async"), Set.copyOf(source.threads));
+                assertEquals(expected.size() + 1, source.threads.size());
+
+                // Cancelled before starting; nothing is scanned or read
+                final Queue<Runnable> queue = new ArrayDeque<>();
+                source = new CountingSource(dir, 1);
+                CompletableFuture<List<ClassFile>> future = source.readAllAsync(true, queue::add);
+                assertTrue(future.cancel(false));
+                while (!queue.isEmpty()) queue.remove().run();
+                assertEquals(0, source.scans.get());
+                assertEquals(0, source.threads.size());
+
+                // Cancelled after the first class; the scan is still closed
+                source = new CountingSource(dir, 1);
+                future = source.readAllAsync(true, queue::add);
+                source.onRead = future;
+                while (!queue.isEmpty()) queue.remove().run();
+                assertTrue(future.isCancelled());
+                assertEquals(1, source.threads.size());
+                assertEquals(1, source.scans.get());
+                assertEquals(0, source.open.get());
+
+                final Executor rejecting = (Runnable r) -> {
+                    throw new RejectedExecutionException("test");
+                };
+                final CompletionException e = assertThrows(
+                        CompletionException.class,
+                        () -> dir.readAllAsync(true, rejecting).join()
+                );
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test()
+    void skeleton() {
+        assertDoesNotThrow(() -> {
+            final byte[] bytes;
+            try (InputStream is = Objects.requireNonNull(this.getClass().getResourceAsStream("AnnolyzeTest.class"))) {
+                bytes = is.readAllBytes();
+            }
+            final ClassFile cf = Annolyze.read(ByteBuffer.wrap(bytes));
+            final byte[] skeleton = ClassFileSkeleton.toByteArray(cf);
+            assertTrue(skeleton.length < bytes.length / 4);
+
+            // Skeletons may be read back to back
+            final ByteBuffer buf = ByteBuffer.allocate(skeleton.length * 2).put(skeleton).put(skeleton).flip();
+            assertEquals(cf, ClassFileSkeleton.read(buf));
+            assertEquals(cf, ClassFileSkeleton.read(buf));
+            assertFalse(buf.hasRemaining());
+
+            final byte[] truncated = Arrays.copyOf(skeleton, skeleton.length - 1);
+            assertThrows(ClassFileReadException.class, () -> ClassFileSkeleton.read(truncated));
+        });
+    }
+
+    // Ensure that the runtime image reads classes of the running JVM, and that module views and packages narrow
+    // both reads and scans
+    @Test()
+    void runtimeImage() {
+        assertDoesNotThrow(() -> {
+            final AnnolyzeRuntimeImage image = Annolyze.runtimeImage();
+            assertTrue(image.modules().containsAll(List.of("java.base", "java.sql")));
+            assertEquals(image.modules().stream().sorted().toList(), List.copyOf(image.modules()));
+
+            final ClassFile deprecated = image.read("java.lang.Deprecated");
+            assertEquals("java.lang.Deprecated", deprecated.name());
+            assertTrue(deprecated.getAnnotations().contains(ClassReference.of(Documented.class)));
+            assertEquals(deprecated, image.sub("java.lang").read("Deprecated"));
+            assertEquals("java.sql.Connection", image.read("java.sql.Connection").name());
+            assertThrows(FileNotFoundException.class, () -> image.read("java.lang.Missing"));
+
+            // Views only read and scan their own modules
+            final AnnolyzeRuntimeImage base = image.modules("java.base");
+            assertEquals(Set.of("java.base"), base.modules());
+            assertEquals(deprecated, base.read("java.lang.Deprecated"));
+            assertThrows(FileNotFoundException.class, () -> base.read("java.sql.Connection"));
+            assertThrows(IllegalArgumentException.class, () -> base.modules("java.sql"));
+            assertThrows(IllegalArgumentException.class, () -> image.modules("no.such.module"));
+
+            final List<String> shallow = base.sub("java.lang").list(false);
+            assertTrue(shallow.contains("Deprecated"));
+            assertFalse(shallow.contains("annotation.Retention"));
+            final List<String> deep = base.sub("java.lang").list(true);
+            assertTrue(deep.contains("annotation.Retention"));
+            assertTrue(deep.containsAll(shallow));
+            assertEquals(deep.stream().sorted().toList(), deep);
+            assertEquals(deep, base.sub("java.lang").parallelism(4).list(true));
+            assertFalse(base.list().contains("module-info"));
+            assertTrue(image.modules("java.sql").sub("java.lang").list().isEmpty());
+
+            final List<ClassFile> annotations = base.sub("java.lang.annotation").readAll(false);
+            assertTrue(annotations.stream().anyMatch((ClassFile cf) -> cf.name().equals("java.lang.annotation.Retention")));
+            assertTrue(annotations.stream().allMatch((ClassFile cf) -> cf.name().startsWith("java.lang.annotation.")));
+        });
+    }
+
     // Ensure that Annolyze can read classes using the archive loader
     // We use the "internals" JAR as :internals:jar is guaranteed to run before :test, convenient!
     @Test()
@@ -103,4 +1105,85 @@ class AnnolyzeTest {
         });
     }
 
-}
\ No newline at end of file
+    //
+
+    /**
+     * Delegates to another source, recording the thread of each read and the scans opened and not yet closed. The
+     * future set as {@link #onRead} is cancelled after the first class is read.
+     */
+    private static final class CountingSource extends AbstractAnnolyzeClassSource {
+
+        private final AnnolyzeClassSource delegate;
+        private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger scans = new AtomicInteger(0);
+        private final AtomicInteger open = new AtomicInteger(0);
+        private volatile CompletableFuture<?> onRead = null;
+
+        CountingSource(@NotNull AnnolyzeClassSource delegate, int parallelism) {
+            super(parallelism);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @NotNull AnnolyzeClassSource sub(@NotNull String pkg) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public @NotNull AnnolyzeClassSource parallelism(int parallelism) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public @NotNull ClassFile read(@NotNull String className) throws IOException {
+            this.threads.add(Thread.currentThread().getName());
+            return this.delegate.read(className);
+        }
+
+        @Override
+        public @NotNull AnnolyzeClassScan scan(boolean recursive) throws IOException {
+            final AnnolyzeClassScan scan = this.delegate.scan(recursive);
+            this.scans.incrementAndGet();
+            this.open.incrementAndGet();
+            final List<AnnolyzeClassEntry> entries = new ArrayList<>();
+            for (AnnolyzeClassEntry entry : scan.entries()) {
+                entries.add(new AnnolyzeClassEntry() {
+                    @Override
+                    public @NotNull String name() {
+                        return entry.name();
+                    }
+
+                    @Override
+                    public long size() {
+                        return entry.size();
+                    }
+
+                    @Override
+                    public @NotNull ByteBuffer bytes() throws IOException {
+                        return entry.bytes();
+                    }
+
+                    @Override
+                    public @NotNull ClassFile read() throws IOException {
+                        CountingSource.this.threads.add(Thread.currentThread().getName());
+                        final ClassFile ret = entry.read();
+                        final CompletableFuture<?> future = CountingSource.this.onRead;
+                        if (future != null) future.cancel(false);
+                        return ret;
+                    }
+                });
+            }
+            return AnnolyzeClassScan.of(entries, () -> {
+                this.open.decrementAndGet();
+                scan.close();
+            });
+        }
+
+    }
+
+    @interface Marker { }
+
+    @Marker
+    private static final class Marked { }
+
+}
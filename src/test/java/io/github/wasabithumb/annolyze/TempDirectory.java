@@ -0,0 +1,45 @@
+package io.github.wasabithumb.annolyze;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A temporary directory for a test, which is deleted along with everything in it when closed.
+ */
+public final class TempDirectory implements AutoCloseable {
+
+    public static @NotNull TempDirectory create() throws IOException {
+        return new TempDirectory(Files.createTempDirectory("annolyze"));
+    }
+
+    //
+
+    private final Path path;
+
+    private TempDirectory(@NotNull Path path) {
+        this.path = path;
+    }
+
+    //
+
+    public @NotNull Path path() {
+        return this.path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final List<Path> paths;
+        try (Stream<Path> stream = Files.walk(this.path)) {
+            // Children before their parents; symbolic links are deleted, not followed
+            paths = stream.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) Files.delete(path);
+    }
+
+}
@@ -0,0 +1,16 @@
+package io.github.wasabithumb.annolyze.dummy;
+
+@SuppressWarnings("unused")
+class DummyB {
+
+    static final long   DUMMY_FIELD_ONE   = 1234567890123L;
+    static final double DUMMY_FIELD_TWO   = 2.5d;
+    static final long   DUMMY_FIELD_THREE = -3L;
+    static final double DUMMY_FIELD_FOUR  = 4.25d;
+
+    @Deprecated
+    long dummyMethod() {
+        return System.nanoTime() * 31L + (long) (Math.random() * 1e9d);
+    }
+
+}
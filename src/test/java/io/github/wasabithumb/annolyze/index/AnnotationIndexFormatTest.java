@@ -0,0 +1,551 @@
+package io.github.wasabithumb.annolyze.index;
+
+import io.github.wasabithumb.annolyze.TempDirectory;
+import io.github.wasabithumb.annolyze.archive.AnnolyzeArchive;
+import io.github.wasabithumb.annolyze.composite.AnnolyzeComposite;
+import io.github.wasabithumb.annolyze.file.ClassFile;
+import io.github.wasabithumb.annolyze.incremental.AnnolyzeScanDelta;
+import io.github.wasabithumb.annolyze.reference.member.field.FieldReference;
+import io.github.wasabithumb.annolyze.reference.member.method.MethodReference;
+import io.github.wasabithumb.annolyze.reference.type.boxed.ClassReference;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pins the binary layout of {@link AnnotationIndexFormat}. A change which breaks these tests breaks indexes
+ * already written to disk, and must come with a version bump.
+ */
+class AnnotationIndexFormatTest {
+
+    private static final ClassReference A = ClassReference.of("Lcom/example/A;");
+    private static final ClassReference B = ClassReference.of("Lcom/example/B;");
+    private static final ClassReference OWNER = ClassReference.of("Lcom/example/Owner;");
+
+    // Ensure that an empty index has the exact v1.0 layout
+    @Test()
+    void golden() {
+        final byte[] bytes = assertDoesNotThrow(() -> write(AnnotationIndexImpl.of(List.of())));
+        final ByteBuffer buf = ByteBuffer.wrap(bytes);
+        assertArrayEquals(new byte[] { 'A', 'N', 'I', 'X', 0, 1, 0, 0 }, Arrays.copyOf(bytes, 8));
+        assertEquals(0, buf.getInt(8));                         // string count
+        assertEquals(68, buf.getInt(12));                       // string offsets, directly after the header
+        assertEquals(72, buf.getInt(16));                       // string data
+        for (int i=20; i < 52; i += 8) {
+            assertEquals(0, buf.getInt(i), "count at " + i);     // class, field, method, annotation tables
+            assertEquals(72, buf.getInt(i + 4), "offset at " + (i + 4));
+        }
+        assertEquals(1, buf.getInt(52));                        // bucket count, never zero
+        assertEquals(72, buf.getInt(56));                       // bucket table
+        assertEquals(76, buf.getInt(60));                       // postings
+        assertEquals(0, buf.getInt(64));                        // postings length
+        assertEquals(0, buf.getInt(68));                        // end of string data
+        assertEquals(76, bytes.length);
+    }
+
+    // Ensure that a written index reads back with the same content
+    @Test()
+    void roundTrip() {
+        assertDoesNotThrow(() -> {
+            final FieldReference field = FieldReference.of(OWNER, "value", "I", 0x0002);
+            final MethodReference method = MethodReference.of(OWNER, "run", "(Ljava/lang/String;)V", 0x0001);
+            final AnnotationIndexImpl expected = AnnotationIndexImpl.of(List.of(
+                    ClassFile.builder()
+                            .setClass(OWNER)
+                            .addAnnotation(A)
+                            .addAnnotation(field, B)
+                            .addAnnotation(method, A)
+                            .addAnnotation(method, B)
+                            .build(),
+                    ClassFile.builder()
+                            .setClass(ClassReference.of("Lcom/example/Other;"))
+                            .addAnnotation(A)
+                            .build()
+            ));
+
+            final AnnotationIndex actual = AnnotationIndex.read(ByteBuffer.wrap(write(expected)));
+            assertEquals(expected.annotations(), actual.annotations());
+            for (ClassReference annotation : expected.annotations()) {
+                assertEquals(expected.classes(annotation), actual.classes(annotation));
+                assertEquals(expected.fields(annotation), actual.fields(annotation));
+                assertEquals(expected.methods(annotation), actual.methods(annotation));
+            }
+            assertEquals(List.of(field), actual.fields(B));
+            assertEquals(0, actual.classes(ClassReference.of("Lcom/example/Missing;")).size());
+
+            final Path file = Files.createTempFile("annolyze", ".idx");
+            try {
+                actual.write(file);
+                final AnnotationIndex mapped = AnnotationIndex.open(file);
+                assertEquals(expected.methods(A), mapped.methods(A));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        });
+    }
+
+    // Ensure that every key of a large index is found by the perfect hash, and that absent keys are not
+    @Test()
+    void perfectHash() {
+        assertDoesNotThrow(() -> {
+            final List<ClassFile> classes = new ArrayList<>();
+            for (int i=0; i < 1000; i++) {
+                classes.add(ClassFile.builder()
+                        .setClass(ClassReference.of("Lcom/example/C" + i + ";"))
+                        .addAnnotation(ClassReference.of("Lcom/example/ann/A" + i + ";"))
+                        .addAnnotation(ClassReference.of("Lcom/example/ann/A" + (i / 2) + ";"))
+                        .build());
+            }
+            final AnnotationIndex index = AnnotationIndex.read(ByteBuffer.wrap(write(AnnotationIndexImpl.of(classes))));
+            assertEquals(1000, index.annotations().size());
+            for (int i=0; i < 1000; i++) {
+                final List<ClassReference> found = index.classes(ClassReference.of("Lcom/example/ann/A" + i + ";"));
+                assertEquals((i == 0) ? 2 : (i < 500) ? 3 : 1, found.size(), "A" + i);
+                assertEquals(ClassReference.of("Lcom/example/C" + i + ";"), found.get(0));
+            }
+            for (int i=1000; i < 2000; i++) {
+                assertEquals(0, index.classes(ClassReference.of("Lcom/example/ann/A" + i + ";")).size());
+            }
+        });
+    }
+
+    // Ensure that patching keeps classes in the order they were indexed, whether the index is in memory or mapped
+    @Test()
+    void patchOrder() {
+        assertDoesNotThrow(() -> {
+            final ClassReference first = ClassReference.of("Lcom/example/First;");
+            final ClassReference second = ClassReference.of("Lcom/example/Second;");
+            final AnnotationIndexImpl index = AnnotationIndexImpl.of(List.of(
+                    ClassFile.builder()
+                            .setClass(OWNER)
+                            .addAnnotation(MethodReference.of(OWNER, "run", "()V", 0x0001), B)
+                            .build(),
+                    ClassFile.builder().setClass(first).addAnnotation(A).build(),
+                    ClassFile.builder()
+                            .setClass(second)
+                            .addAnnotation(A)
+                            .addAnnotation(MethodReference.of(second, "run", "()V", 0x0001), B)
+                            .build()
+            ));
+            final AnnolyzeScanDelta empty = AnnolyzeScanDelta.of(List.of(), List.of(), List.of());
+            final byte[] expected = write(index);
+            for (AnnotationIndex base : List.of(index, AnnotationIndex.read(ByteBuffer.wrap(expected)))) {
+                final AnnotationIndex patched = base.patch(empty);
+                assertEquals(List.of(first, second), patched.classes(A));
+                assertArrayEquals(expected, write(patched));
+            }
+        });
+    }
+
+    // Ensure that a changed class keeps its place in a patched index, while added classes are indexed at the end
+    @Test()
+    void patchSplice() {
+        assertDoesNotThrow(() -> {
+            final List<ClassFile> classes = new ArrayList<>();
+            for (int i=0; i < 5; i++) classes.add(annotated(i));
+            final AnnotationIndexImpl index = AnnotationIndexImpl.of(classes);
+            final ClassFile changed = ClassFile.builder()
+                    .setClass(ref(2))
+                    .addAnnotation(A)
+                    .addAnnotation(MethodReference.of(ref(2), "n", "()V", 0x0001), B)
+                    .build();
+            final AnnolyzeScanDelta delta = AnnolyzeScanDelta.of(
+                    List.of(annotated(5)),
+                    List.of(changed),
+                    List.of(ref(3).name())
+            );
+
+            final AnnotationIndex patched = index.patch(delta);
+            assertEquals(List.of(ref(0), ref(1), ref(2), ref(4), ref(5)), patched.classes(A));
+            assertEquals(
+                    List.of(ref(1), ref(2), ref(5)),
+                    patched.methods(B).stream().map(MethodReference::declaringClass).toList()
+            );
+            assertEquals("n", patched.methods(B).get(1).name());
+
+            // The same classes indexed from scratch, in the same order, give the same bytes
+            final List<ClassFile> expected = new ArrayList<>(List.of(classes.get(0), classes.get(1), changed));
+            expected.add(classes.get(4));
+            expected.add(annotated(5));
+            assertArrayEquals(write(AnnotationIndexImpl.of(expected)), write(patched));
+        });
+    }
+
+    // Ensure that patching a projected index only indexes the projected kinds of element of changed and added classes
+    @Test()
+    void patchProjection() {
+        final AnnotationIndexImpl.Builder builder = new AnnotationIndexImpl.Builder(EnumSet.of(ElementType.METHOD));
+        for (int i=0; i < 3; i++) builder.add(AnnotationIndexImpl.Annotated.of(annotated(i)));
+        final AnnotationIndex patched = builder.build().patch(AnnolyzeScanDelta.of(
+                List.of(annotated(3)),
+                List.of(annotated(1)),
+                List.of()
+        ));
+        assertEquals(0, patched.classes(A).size());
+        assertEquals(0, patched.fields(B).size());
+        assertEquals(List.of(ref(0), ref(2)), patched.methods(A).stream().map(MethodReference::declaringClass).toList());
+        assertEquals(List.of(ref(1), ref(3)), patched.methods(B).stream().map(MethodReference::declaringClass).toList());
+    }
+
+    // Ensure that damaged or foreign data is rejected up front
+    @Test()
+    void invalid() {
+        final byte[] valid = assertDoesNotThrow(() -> write(AnnotationIndexImpl.of(List.of(
+                ClassFile.builder().setClass(OWNER).addAnnotation(A).build()
+        ))));
+
+        final byte[] magic = valid.clone();
+        magic[0] = 'X';
+        assertThrows(AnnotationIndexFormatException.class, () -> AnnotationIndex.read(ByteBuffer.wrap(magic)));
+
+        final byte[] major = valid.clone();
+        major[5] = 2;
+        assertThrows(AnnotationIndexFormatException.class, () -> AnnotationIndex.read(ByteBuffer.wrap(major)));
+
+        final byte[] minor = valid.clone();
+        minor[7] = 9;
+        assertDoesNotThrow(() -> AnnotationIndex.read(ByteBuffer.wrap(minor)));
+
+        for (int len : new int[] { 0, 8, 67, valid.length - 1 }) {
+            assertThrows(
+                    AnnotationIndexFormatException.class,
+                    () -> AnnotationIndex.read(ByteBuffer.wrap(valid, 0, len)),
+                    "truncated to " + len
+            );
+        }
+
+        // Tables and postings which point outside their targets
+        final ByteBuffer buf = ByteBuffer.wrap(valid);
+        final int strings = buf.getInt(12);
+        final int annotation = buf.getInt(48);
+        final int postings = buf.getInt(60) + buf.getInt(annotation + 4);
+        final Map<String, byte[]> damaged = new LinkedHashMap<>();
+        damaged.put("string offsets", withInt(valid, strings + 4, buf.getInt(strings + 8) + 1));
+        damaged.put("class string", withInt(valid, buf.getInt(24), 2));
+        damaged.put("annotation string", withInt(valid, annotation, -1));
+        damaged.put("posting offset", withInt(valid, annotation + 4, buf.getInt(64) + 1));
+        damaged.put("posting count", withInt(valid, annotation + 8, 1000));
+        final byte[] id = valid.clone();
+        id[postings] = 1;
+        damaged.put("posting id", id);
+        final byte[] varint = valid.clone();
+        varint[postings] |= (byte) 0x80;
+        damaged.put("posting varint", varint);
+        for (Map.Entry<String, byte[]> entry : damaged.entrySet()) {
+            assertThrows(
+                    AnnotationIndexFormatException.class,
+                    () -> AnnotationIndex.read(ByteBuffer.wrap(entry.getValue())),
+                    entry.getKey()
+            );
+        }
+    }
+
+    // Ensure that an embedded index is used in place of reading an archive, unless its classes have changed
+    @Test()
+    void embedded() {
+        assertDoesNotThrow(() -> {
+            final ClassReference self = ClassReference.of(Sample.class);
+            final ClassReference deprecated = ClassReference.of(Deprecated.class);
+            final Path jar = Files.createTempFile("annolyze", ".jar");
+            final Path plain = Files.createTempFile("annolyze", ".jar");
+            try {
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+                    putClass(zos, Sample.class);
+                }
+                final AnnolyzeArchive archive = AnnolyzeArchive.of(jar.toFile());
+                assertEquals(1, AnnotationIndex.build(archive).methods(deprecated).size());
+                Files.copy(jar, plain, StandardCopyOption.REPLACE_EXISTING);
+
+                // An index which disagrees with the classes proves that the classes were not read
+                AnnotationIndexImpl.of(List.of(ClassFile.builder().setClass(self).addAnnotation(A).build()))
+                        .embed(jar.toFile());
+                final AnnotationIndex embedded = AnnotationIndex.build(AnnolyzeComposite.of(archive));
+                assertEquals(List.of(self), embedded.classes(A));
+                assertEquals(0, embedded.methods(deprecated).size());
+
+                // Classes shadowed by an earlier source are not contributed
+                final AnnotationIndex shadowed = AnnotationIndex.build(AnnolyzeComposite.of(
+                        AnnolyzeArchive.of(plain.toFile()),
+                        archive
+                ));
+                assertEquals(0, shadowed.classes(A).size());
+                assertEquals(1, shadowed.methods(deprecated).size());
+
+                final Path changed = Files.createTempFile("annolyze", ".jar");
+                try (ZipFile zf = new ZipFile(jar.toFile());
+                     ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(changed))
+                ) {
+                    final Enumeration<? extends ZipEntry> en = zf.entries();
+                    while (en.hasMoreElements()) {
+                        final ZipEntry ze = en.nextElement();
+                        zos.putNextEntry(new ZipEntry(ze.getName()));
+                        try (InputStream is = zf.getInputStream(ze)) {
+                            is.transferTo(zos);
+                        }
+                    }
+                    putClass(zos, AnnotationIndexFormatException.class);
+                }
+                Files.move(changed, jar, StandardCopyOption.REPLACE_EXISTING);
+                final AnnotationIndex stale = AnnotationIndex.build(archive);
+                assertEquals(0, stale.classes(A).size());
+                assertEquals(1, stale.methods(deprecated).size());
+            } finally {
+                Files.deleteIfExists(jar);
+                Files.deleteIfExists(plain);
+            }
+        });
+    }
+
+    // Ensure that an embedded index which cannot be decoded is ignored, and the archive is read instead
+    @Test()
+    void embeddedInvalid() {
+        assertDoesNotThrow(() -> {
+            final ClassReference deprecated = ClassReference.of(Deprecated.class);
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path jar = temp.path().resolve("sample.jar");
+                final Path damaged = temp.path().resolve("damaged.jar");
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+                    putClass(zos, Sample.class);
+                }
+                AnnotationIndexImpl.of(List.of(ClassFile.builder().setClass(OWNER).addAnnotation(A).build()))
+                        .embed(jar.toFile());
+
+                final byte[] valid;
+                try (ZipFile zf = new ZipFile(jar.toFile());
+                     InputStream is = zf.getInputStream(zf.getEntry(EmbeddedIndex.INDEX_ENTRY))
+                ) {
+                    valid = is.readAllBytes();
+                }
+                final byte[] major = valid.clone();
+                major[5] = 2;
+                for (byte[] data : List.of(Arrays.copyOf(valid, valid.length - 1), major)) {
+                    try (ZipFile zf = new ZipFile(jar.toFile());
+                         ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(damaged))
+                    ) {
+                        final Enumeration<? extends ZipEntry> en = zf.entries();
+                        while (en.hasMoreElements()) {
+                            final ZipEntry ze = en.nextElement();
+                            zos.putNextEntry(new ZipEntry(ze.getName()));
+                            if (EmbeddedIndex.INDEX_ENTRY.equals(ze.getName())) {
+                                zos.write(data);
+                            } else {
+                                try (InputStream is = zf.getInputStream(ze)) {
+                                    is.transferTo(zos);
+                                }
+                            }
+                        }
+                    }
+                    final AnnotationIndex index = AnnotationIndex.build(AnnolyzeArchive.of(damaged.toFile()));
+                    assertEquals(0, index.classes(A).size());
+                    assertEquals(1, index.methods(deprecated).size());
+                }
+            }
+        });
+    }
+
+    // Ensure that merging shards reproduces a full build, and that removal marks survive merges but not compaction
+    @Test()
+    void merge() {
+        assertDoesNotThrow(() -> {
+            final List<ClassFile> classes = new ArrayList<>();
+            for (int i=0; i < 10; i++) classes.add(annotated(i));
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path first = dir.resolve("first.idx");
+                final Path second = dir.resolve("second.idx");
+                final Path merged = dir.resolve("merged.idx");
+                AnnotationIndexImpl.of(classes.subList(0, 4)).write(first);
+                AnnotationIndexImpl.of(classes.subList(4, 10)).write(second);
+                AnnotationIndex.merge(List.of(first, second), merged);
+                assertArrayEquals(write(AnnotationIndexImpl.of(classes)), Files.readAllBytes(merged));
+
+                // Earlier segments shadow later ones
+                AnnotationIndex.merge(List.of(second, merged), merged);
+                assertEquals(ref(4), AnnotationIndex.open(merged).classes(A).get(0));
+                assertEquals(10, AnnotationIndex.open(merged).classes(A).size());
+
+                final ClassFile changed = ClassFile.builder().setClass(ref(1)).build();
+                final AnnotationIndex full = AnnotationIndexImpl.of(classes);
+                final AnnolyzeScanDelta delta = AnnolyzeScanDelta.of(
+                        List.of(annotated(10)),
+                        List.of(changed),
+                        List.of(ref(2).name())
+                );
+                final Path segment = dir.resolve("segment.idx");
+                AnnotationIndex.segment(delta).write(segment);
+                full.write(first);
+                AnnotationIndex.merge(List.of(segment, first), merged);
+                AnnotationIndex.compact(List.of(segment, first), second);
+
+                final AnnotationIndex patched = full.patch(delta);
+                for (Path file : List.of(merged, second)) {
+                    final AnnotationIndex index = AnnotationIndex.open(file);
+                    assertEquals(patched.annotations(), index.annotations());
+                    for (ClassReference annotation : patched.annotations()) {
+                        assertEquals(new HashSet<>(patched.classes(annotation)), new HashSet<>(index.classes(annotation)));
+                        assertEquals(new HashSet<>(patched.fields(annotation)), new HashSet<>(index.fields(annotation)));
+                        assertEquals(new HashSet<>(patched.methods(annotation)), new HashSet<>(index.methods(annotation)));
+                    }
+                }
+
+                // The marks for the changed and removed classes are kept by the merge, and dropped by compaction
+                assertEquals(11, ByteBuffer.wrap(Files.readAllBytes(merged)).getInt(20));
+                assertEquals(9, ByteBuffer.wrap(Files.readAllBytes(second)).getInt(20));
+                AnnotationIndex.compact(List.of(merged), merged);
+                assertArrayEquals(Files.readAllBytes(second), Files.readAllBytes(merged));
+            }
+        });
+    }
+
+    // Ensure that readers of a shared index switch to a newly published generation, and keep earlier results valid
+    @Test()
+    void shared() {
+        assertDoesNotThrow(() -> {
+            final List<ClassFile> classes = new ArrayList<>();
+            for (int i=0; i < 6; i++) classes.add(annotated(i));
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path jar = dir.resolve("sample.jar");
+                final Path file = dir.resolve("shared.idx");
+                assertEquals(1L, SharedAnnotationIndex.publish(file, AnnotationIndexImpl.of(classes.subList(0, 2))));
+                final SharedAnnotationIndex shared = SharedAnnotationIndex.open(file);
+                final SharedAnnotationIndex other = SharedAnnotationIndex.open(file);
+                final List<ClassReference> before = shared.classes(A);
+                assertEquals(List.of(ref(0), ref(1)), before);
+
+                assertEquals(2L, SharedAnnotationIndex.publish(file, AnnotationIndexImpl.of(classes)));
+                assertEquals(6, shared.classes(A).size());
+                assertEquals(2L, shared.generation());
+                assertEquals(2L, other.generation());
+                assertEquals(List.of(ref(0), ref(1)), before);
+                assertArrayEquals(write(AnnotationIndexImpl.of(classes)), write(shared));
+
+                // A writer which marked the file but stopped before the rename leaves readers where they are
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(8).putLong(0, 3L), 16L);
+                }
+                assertEquals(2L, shared.generation());
+                assertEquals(6, shared.classes(A).size());
+                assertEquals(3L, SharedAnnotationIndex.publish(file, AnnotationIndexImpl.of(classes.subList(0, 4))));
+                assertEquals(4, shared.classes(A).size());
+                assertEquals(3L, other.generation());
+
+                // Only a missing file is built from the source
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+                    putClass(zos, Sample.class);
+                }
+                final AnnolyzeArchive archive = AnnolyzeArchive.of(jar.toFile());
+                assertEquals(4, SharedAnnotationIndex.open(file, archive).classes(A).size());
+                final SharedAnnotationIndex built = SharedAnnotationIndex.open(dir.resolve("built.idx"), archive);
+                assertEquals(1L, built.generation());
+                assertEquals(1, built.methods(ClassReference.of(Deprecated.class)).size());
+
+                // Plain indexes are not shared indexes, and are not replaced
+                final Path plain = dir.resolve("plain.idx");
+                AnnotationIndexImpl.of(classes).write(plain);
+                assertThrows(AnnotationIndexFormatException.class, () -> SharedAnnotationIndex.open(plain));
+                assertThrows(AnnotationIndexFormatException.class, () -> SharedAnnotationIndex.publish(plain, shared));
+            }
+        });
+    }
+
+    // Ensure that spilling runs to disk under a tiny heap budget yields the same bytes as an in-memory build
+    @Test()
+    void spill() {
+        assertDoesNotThrow(() -> {
+            try (TempDirectory temp = TempDirectory.create()) {
+                final Path dir = temp.path();
+                final Path jar = dir.resolve("sample.jar");
+                try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(jar))) {
+                    putClass(zos, Sample.class);
+                    for (Class<?> cls : List.of(Deprecated.class, FunctionalInterface.class, Override.class,
+                            SafeVarargs.class, Documented.class, Inherited.class, Retention.class, Target.class)) {
+                        putClass(zos, cls);
+                    }
+                }
+                final AnnolyzeArchive archive = AnnolyzeArchive.of(jar.toFile());
+                final byte[] expected = write(AnnotationIndex.build(archive));
+
+                final Path spilled = dir.resolve("spilled.idx");
+                assertEquals(4, AnnotationIndex.build(archive.parallelism(2), spilled, 1).annotations().size());
+                assertArrayEquals(expected, Files.readAllBytes(spilled));
+                final Path whole = dir.resolve("whole.idx");
+                AnnotationIndex.build(archive, whole, Runtime.getRuntime().maxMemory());
+                assertArrayEquals(expected, Files.readAllBytes(whole));
+
+                // Runs are deleted once merged
+                try (Stream<Path> stream = Files.list(dir)) {
+                    assertEquals(3, stream.count());
+                }
+                assertThrows(IllegalArgumentException.class, () -> AnnotationIndex.build(archive, whole, 0));
+            }
+        });
+    }
+
+    //
+
+    private static @NotNull ClassReference ref(int i) {
+        return ClassReference.of("Lcom/example/C" + i + ";");
+    }
+
+    private static @NotNull ClassFile annotated(int i) {
+        final ClassReference cls = ref(i);
+        return ClassFile.builder()
+                .setClass(cls)
+                .addAnnotation(A)
+                .addAnnotation(FieldReference.of(cls, "f" + i, "I", 0x0001), B)
+                .addAnnotation(MethodReference.of(cls, "m", "()V", 0x0001), (i % 2 == 0) ? A : B)
+                .build();
+    }
+
+    private static final class Sample {
+
+        @Deprecated
+        void sample() { }
+
+    }
+
+    private static void putClass(@NotNull ZipOutputStream zos, @NotNull Class<?> cls) throws IOException {
+        final String name = cls.getName().replace('.', '/') + ".class";
+        zos.putNextEntry(new ZipEntry(name));
+        final ClassLoader loader = Objects.requireNonNullElse(cls.getClassLoader(), ClassLoader.getSystemClassLoader());
+        try (InputStream is = Objects.requireNonNull(loader.getResourceAsStream(name))) {
+            is.transferTo(zos);
+        }
+        zos.closeEntry();
+    }
+
+    private static byte @NotNull [] withInt(byte @NotNull [] data, int pos, int value) {
+        final byte[] ret = data.clone();
+        ByteBuffer.wrap(ret).putInt(pos, value);
+        return ret;
+    }
+
+    private static byte @NotNull [] write(@NotNull AnnotationIndex index) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        return out.toByteArray();
+    }
+
+}